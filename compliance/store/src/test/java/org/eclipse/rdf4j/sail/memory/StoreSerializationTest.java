@@ -8,6 +8,9 @@
 package org.eclipse.rdf4j.sail.memory;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.rdf4j.common.io.FileUtil;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
@@ -179,4 +182,155 @@ public class StoreSerializationTest extends TestCase {
 		con.close();
 		store.shutDown();
 	}
+
+	public void testChangeLog() throws Exception {
+		MemoryStore store = new MemoryStore(dataDir);
+		store.initialize();
+
+		ValueFactory factory = store.getValueFactory();
+		IRI foo = factory.createIRI("http://www.foo.example/foo");
+		IRI bar = factory.createIRI("http://www.foo.example/bar");
+
+		SailConnection con = store.getConnection();
+		con.begin();
+		con.addStatement(foo, RDF.TYPE, bar);
+		con.addStatement(bar, RDF.TYPE, foo, foo);
+		con.setNamespace("foo", "http://www.foo.example/");
+		con.commit();
+
+		// the change is appended to the change log of the initial, empty data
+		// file
+		File logFile = new File(dataDir, MemoryStore.LOG_FILE_NAME);
+		assertTrue(logFile.exists());
+
+		con.close();
+		store.shutDown();
+
+		store = new MemoryStore(dataDir);
+		store.initialize();
+
+		con = store.getConnection();
+		assertEquals(2, count(con.getStatements(null, null, null, false)));
+		assertEquals("http://www.foo.example/", con.getNamespace("foo"));
+
+		con.begin();
+		con.removeStatements(foo, RDF.TYPE, bar);
+		con.commit();
+		con.close();
+		store.shutDown();
+
+		store = new MemoryStore(dataDir);
+		store.initialize();
+
+		con = store.getConnection();
+		assertEquals(0, count(con.getStatements(foo, null, null, false)));
+		assertEquals(1, count(con.getStatements(bar, RDF.TYPE, foo, false, foo)));
+		con.close();
+		store.shutDown();
+	}
+
+	public void testIncompleteChangeLog() throws Exception {
+		MemoryStore store = new MemoryStore(dataDir);
+		store.initialize();
+
+		ValueFactory factory = store.getValueFactory();
+		IRI foo = factory.createIRI("http://www.foo.example/foo");
+
+		SailConnection con = store.getConnection();
+		con.begin();
+		con.addStatement(foo, RDF.TYPE, foo);
+		con.commit();
+		con.close();
+		store.shutDown();
+
+		// simulate a crash while appending to the change log
+		File logFile = new File(dataDir, MemoryStore.LOG_FILE_NAME);
+		long logLength = logFile.length();
+		try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+			out.write(new byte[] { 0, 0, 0, 42, 1, 2, 3 });
+		}
+
+		store = new MemoryStore(dataDir);
+		store.initialize();
+		assertEquals(logLength, logFile.length());
+
+		con = store.getConnection();
+		assertEquals(1, count(con.getStatements(null, null, null, false)));
+		con.close();
+		store.shutDown();
+	}
+
+	public void testFailedChangeLogAppend() throws Exception {
+		AtomicBoolean failAppend = new AtomicBoolean();
+		MemoryStore store = new MemoryStore(dataDir) {
+
+			@Override
+			void appendChanges(byte[] changes) throws IOException {
+				if (failAppend.get()) {
+					throw new IOException("append failed");
+				}
+				super.appendChanges(changes);
+			}
+		};
+		store.setSyncDelay(-1L);
+		store.initialize();
+
+		ValueFactory factory = store.getValueFactory();
+		IRI foo = factory.createIRI("http://www.foo.example/foo");
+		IRI bar = factory.createIRI("http://www.foo.example/bar");
+
+		SailConnection con = store.getConnection();
+		con.begin();
+		for (int i = 0; i < 100; i++) {
+			con.addStatement(foo, RDF.VALUE, factory.createLiteral(i));
+		}
+		con.commit();
+		store.sync();
+
+		// the change log has outgrown the data file, which is rewritten
+		con.begin();
+		con.addStatement(foo, RDF.TYPE, bar);
+		con.commit();
+		store.sync();
+
+		failAppend.set(true);
+		con.begin();
+		con.addStatement(bar, RDF.TYPE, foo);
+		con.commit();
+		try {
+			store.sync();
+			fail("sync should have failed");
+		} catch (SailException e) {
+			// expected
+		}
+
+		failAppend.set(false);
+		con.begin();
+		con.addStatement(foo, RDF.TYPE, foo);
+		con.commit();
+		con.close();
+		store.shutDown();
+
+		store = new MemoryStore(dataDir);
+		store.initialize();
+
+		con = store.getConnection();
+		assertEquals(103, count(con.getStatements(null, null, null, false)));
+		assertEquals(1, count(con.getStatements(bar, RDF.TYPE, foo, false)));
+		con.close();
+		store.shutDown();
+	}
+
+	private int count(CloseableIteration<? extends Statement, SailException> iter) throws Exception {
+		try {
+			int count = 0;
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+			return count;
+		} finally {
+			iter.close();
+		}
+	}
 }
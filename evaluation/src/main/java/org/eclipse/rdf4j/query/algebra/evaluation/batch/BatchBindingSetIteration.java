@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Bridges a {@link BatchIteration} to the binding set iterations of the regular evaluation strategy.
+ */
+public class BatchBindingSetIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final BatchIteration batches;
+
+	private BindingSetBatch batch;
+
+	private int row;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public BatchBindingSetIteration(BatchIteration batches) {
+		this.batches = batches;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement() throws QueryEvaluationException {
+		while (batch == null || row >= batch.size()) {
+			batch = batches.nextBatch();
+			row = 0;
+			if (batch == null) {
+				return null;
+			}
+		}
+		return batch.getBindingSet(row++);
+	}
+
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			super.handleClose();
+		} finally {
+			batch = null;
+			batches.close();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.StrictEvaluationStrategy;
+
+/**
+ * Evaluates query model trees in batches of solutions, see {@link BatchIteration}. Only statement patterns and the
+ * filters and projections on top of them are supported, which covers simple scans. Batches start small, so that
+ * patterns that are evaluated for many bindings with few results each are not penalized, and grow up to
+ * {@link #MAX_BATCH_SIZE} rows.
+ *
+ * @see StrictEvaluationStrategy#setBatchEvaluation(boolean)
+ */
+public class BatchEvaluator {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	public static final int INITIAL_BATCH_SIZE = 16;
+
+	public static final int MAX_BATCH_SIZE = 1024;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final StrictEvaluationStrategy strategy;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public BatchEvaluator(StrictEvaluationStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Checks whether the supplied query model tree can be evaluated in batches.
+	 */
+	public static boolean isSupported(TupleExpr expr) {
+		if (expr instanceof StatementPattern) {
+			return true;
+		} else if (expr instanceof Filter) {
+			return isSupported(((Filter) expr).getArg());
+		} else if (expr instanceof Projection) {
+			return isSupported(((Projection) expr).getArg());
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluates a query model tree that is supported by this evaluator.
+	 *
+	 * @throws QueryEvaluationException If the query model tree is not supported, or if its evaluation fails.
+	 */
+	public BatchIteration evaluate(TupleExpr expr, BindingSet bindings) throws QueryEvaluationException {
+		if (expr instanceof StatementPattern) {
+			StatementPattern sp = (StatementPattern) expr;
+			return new StatementPatternBatchIteration(sp, strategy.evaluateStatements(sp, bindings), bindings);
+		} else if (expr instanceof Filter) {
+			Filter filter = (Filter) expr;
+			return new FilterBatchIteration(filter, evaluate(filter.getArg(), bindings), strategy);
+		} else if (expr instanceof Projection) {
+			Projection projection = (Projection) expr;
+			return new ProjectionBatchIteration(projection, evaluate(projection.getArg(), bindings), bindings);
+		}
+		throw new QueryEvaluationException("Unsupported tuple expr type for batch evaluation: " + expr.getClass());
+	}
+
+	/**
+	 * Gets an empty batch to fill with the next rows of a scan. The previous batch is reused once batches have reached
+	 * their maximum size.
+	 *
+	 * @param previous The previous batch of the scan, or <tt>null</tt> for the first batch.
+	 */
+	static BindingSetBatch nextBatch(BindingSetBatch previous, String[] names) {
+		if (previous == null) {
+			return new BindingSetBatch(names, INITIAL_BATCH_SIZE);
+		} else if (previous.capacity() < MAX_BATCH_SIZE) {
+			return new BindingSetBatch(names, Math.min(2 * previous.capacity(), MAX_BATCH_SIZE));
+		}
+		previous.clear();
+		return previous;
+	}
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * An iteration over blocks of solutions. Operators of the batch evaluation pipeline pass {@link BindingSetBatch}es to
+ * each other instead of individual binding sets, which avoids a virtual call chain and a binding set copy per solution
+ * and operator.
+ *
+ * @see BatchEvaluator
+ */
+public interface BatchIteration extends AutoCloseable {
+
+	/**
+	 * Gets the binding names of the slots of the batches of this iteration.
+	 */
+	String[] getBindingNames();
+
+	/**
+	 * Gets the next batch of solutions. The returned batch may be reused by the iteration, it is only valid until the
+	 * next call to this method or to {@link #close()}.
+	 *
+	 * @return A non-empty batch, or <tt>null</tt> if the iteration is exhausted.
+	 */
+	BindingSetBatch nextBatch() throws QueryEvaluationException;
+
+	/**
+	 * Closes this iteration and releases any resources that it holds.
+	 */
+	@Override
+	void close() throws QueryEvaluationException;
+}
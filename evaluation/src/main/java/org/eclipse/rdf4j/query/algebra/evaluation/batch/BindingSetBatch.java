@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+
+/**
+ * A block of solutions that is stored column by column. Each binding name has a fixed slot, and each slot has an array
+ * with the values of that binding for all rows of the block. A <tt>null</tt> value means that the binding is unbound in
+ * that row.
+ */
+public final class BindingSetBatch {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final String[] names;
+
+	private final List<String> nameList;
+
+	private final Value[][] columns;
+
+	private final int capacity;
+
+	private int size;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new, empty batch.
+	 *
+	 * @param names    The binding names, one for each slot.
+	 * @param capacity The maximum number of rows in the batch.
+	 */
+	public BindingSetBatch(String[] names, int capacity) {
+		this.names = names;
+		this.nameList = Arrays.asList(names);
+		this.columns = new Value[names.length][capacity];
+		this.capacity = capacity;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * Gets the slot of the supplied binding name.
+	 *
+	 * @return The slot, or <tt>-1</tt> if this batch has no slot for the binding name.
+	 */
+	public int getSlot(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean isFull() {
+		return size >= capacity;
+	}
+
+	/**
+	 * Adds a row with unbound values for all slots.
+	 *
+	 * @return The index of the new row.
+	 */
+	public int addRow() {
+		int row = size++;
+		for (Value[] column : columns) {
+			column[row] = null;
+		}
+		return row;
+	}
+
+	public Value get(int slot, int row) {
+		return columns[slot][row];
+	}
+
+	public void set(int slot, int row, Value value) {
+		columns[slot][row] = value;
+	}
+
+	/**
+	 * Removes all rows, so that the batch can be reused.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Gets the values of a row as a {@link BindingSet}. The binding set does not depend on the batch, so it remains
+	 * valid when the batch is cleared or reused.
+	 */
+	public BindingSet getBindingSet(int row) {
+		Value[] values = new Value[columns.length];
+		for (int slot = 0; slot < columns.length; slot++) {
+			values[slot] = columns[slot][row];
+		}
+		return new ListBindingSet(nameList, values);
+	}
+}
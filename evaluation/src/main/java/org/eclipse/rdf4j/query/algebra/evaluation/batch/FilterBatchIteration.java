@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.SubQueryValueOperator;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.evaluation.ValueExprEvaluationException;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+
+/**
+ * Removes the rows of batches that do not satisfy the condition of a {@link Filter}. Like
+ * {@link org.eclipse.rdf4j.query.algebra.evaluation.iterator.FilterIterator}, the condition is evaluated on the
+ * bindings that are in scope for the filter only.
+ */
+public class FilterBatchIteration implements BatchIteration {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Filter filter;
+
+	private final BatchIteration arg;
+
+	private final EvaluationStrategy strategy;
+
+	/**
+	 * The binding names that are in scope for the filter, and their slots in the batches of the argument.
+	 */
+	private final List<String> scopeNames;
+
+	private final int[] scopeSlots;
+
+	private BindingSetBatch batch;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public FilterBatchIteration(Filter filter, BatchIteration arg, EvaluationStrategy strategy) {
+		this.filter = filter;
+		this.arg = arg;
+		this.strategy = strategy;
+
+		String[] names = arg.getBindingNames();
+		if (isPartOfSubQuery(filter)) {
+			// see FilterIterator
+			scopeNames = Arrays.asList(names);
+			scopeSlots = new int[names.length];
+			for (int i = 0; i < names.length; i++) {
+				scopeSlots[i] = i;
+			}
+		} else {
+			Set<String> scopeBindingNames = filter.getBindingNames();
+			scopeNames = new ArrayList<>();
+			List<Integer> slots = new ArrayList<>();
+			for (int i = 0; i < names.length; i++) {
+				if (scopeBindingNames.contains(names[i])) {
+					scopeNames.add(names[i]);
+					slots.add(i);
+				}
+			}
+			scopeSlots = new int[slots.size()];
+			for (int i = 0; i < scopeSlots.length; i++) {
+				scopeSlots[i] = slots.get(i);
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public String[] getBindingNames() {
+		return arg.getBindingNames();
+	}
+
+	@Override
+	public BindingSetBatch nextBatch() throws QueryEvaluationException {
+		BindingSetBatch input;
+		while ((input = arg.nextBatch()) != null) {
+			if (batch == null || batch.capacity() < input.size()) {
+				batch = new BindingSetBatch(getBindingNames(), input.capacity());
+			} else {
+				batch.clear();
+			}
+
+			String[] names = input.getNames();
+			for (int row = 0; row < input.size(); row++) {
+				if (accept(input, row)) {
+					int targetRow = batch.addRow();
+					for (int slot = 0; slot < names.length; slot++) {
+						batch.set(slot, targetRow, input.get(slot, row));
+					}
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				return batch;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws QueryEvaluationException {
+		batch = null;
+		arg.close();
+	}
+
+	private boolean accept(BindingSetBatch input, int row) throws QueryEvaluationException {
+		Value[] values = new Value[scopeSlots.length];
+		for (int i = 0; i < scopeSlots.length; i++) {
+			values[i] = input.get(scopeSlots[i], row);
+		}
+
+		try {
+			return strategy.isTrue(filter.getCondition(), new ListBindingSet(scopeNames, values));
+		} catch (ValueExprEvaluationException e) {
+			// failed to evaluate condition
+			return false;
+		}
+	}
+
+	private static boolean isPartOfSubQuery(QueryModelNode node) {
+		if (node instanceof SubQueryValueOperator) {
+			return true;
+		}
+
+		QueryModelNode parent = node.getParentNode();
+		return parent != null && isPartOfSubQuery(parent);
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.MultiProjection;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.ProjectionElem;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+
+/**
+ * Maps the slots of batches to the target names of a {@link Projection}, with the same semantics as
+ * {@link org.eclipse.rdf4j.query.algebra.evaluation.iterator.ProjectionIterator}. The mapping is computed once, so
+ * projecting a row only copies its values.
+ */
+public class ProjectionBatchIteration implements BatchIteration {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final BatchIteration arg;
+
+	private final String[] names;
+
+	/**
+	 * The slots of the argument that fill the slots of this iteration, or <tt>-1</tt> if a slot is filled from the
+	 * parent bindings only.
+	 */
+	private final int[] sourceSlots;
+
+	/**
+	 * The values from the parent bindings for each slot, used if the source slot is unbound.
+	 */
+	private final Value[] parentValues;
+
+	private BindingSetBatch batch;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ProjectionBatchIteration(Projection projection, BatchIteration arg, BindingSet parentBindings) {
+		this.arg = arg;
+
+		// see ProjectionIterator
+		boolean includeAllParentBindings = !isOuterProjection(projection);
+
+		List<String> nameList = new ArrayList<>();
+		List<String> sourceNames = new ArrayList<>();
+		for (ProjectionElem pe : projection.getProjectionElemList().getElements()) {
+			if (!nameList.contains(pe.getTargetName())) {
+				nameList.add(pe.getTargetName());
+				sourceNames.add(pe.getSourceName());
+			}
+		}
+		if (includeAllParentBindings) {
+			for (Binding binding : parentBindings) {
+				if (!nameList.contains(binding.getName())) {
+					nameList.add(binding.getName());
+					sourceNames.add(null);
+				}
+			}
+		}
+
+		names = nameList.toArray(new String[nameList.size()]);
+		sourceSlots = new int[names.length];
+		parentValues = new Value[names.length];
+		String[] argNames = arg.getBindingNames();
+		for (int i = 0; i < names.length; i++) {
+			String sourceName = sourceNames.get(i);
+			sourceSlots[i] = -1;
+			if (sourceName != null) {
+				for (int j = 0; j < argNames.length; j++) {
+					if (argNames[j].equals(sourceName)) {
+						sourceSlots[i] = j;
+						break;
+					}
+				}
+				parentValues[i] = includeAllParentBindings ? parentBindings.getValue(names[i])
+						: parentBindings.getValue(sourceName);
+			} else {
+				parentValues[i] = parentBindings.getValue(names[i]);
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public String[] getBindingNames() {
+		return names;
+	}
+
+	@Override
+	public BindingSetBatch nextBatch() throws QueryEvaluationException {
+		BindingSetBatch input = arg.nextBatch();
+		if (input == null) {
+			return null;
+		}
+
+		if (batch == null || batch.capacity() < input.size()) {
+			batch = new BindingSetBatch(names, input.capacity());
+		} else {
+			batch.clear();
+		}
+
+		for (int row = 0; row < input.size(); row++) {
+			int targetRow = batch.addRow();
+			for (int slot = 0; slot < names.length; slot++) {
+				int sourceSlot = sourceSlots[slot];
+				Value value = sourceSlot < 0 ? null : input.get(sourceSlot, row);
+				batch.set(slot, targetRow, value == null ? parentValues[slot] : value);
+			}
+		}
+
+		return batch;
+	}
+
+	@Override
+	public void close() throws QueryEvaluationException {
+		batch = null;
+		arg.close();
+	}
+
+	private static boolean isOuterProjection(Projection projection) {
+		QueryModelNode ancestor = projection;
+		while (ancestor.getParentNode() != null) {
+			ancestor = ancestor.getParentNode();
+			if (ancestor instanceof Projection || ancestor instanceof MultiProjection) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
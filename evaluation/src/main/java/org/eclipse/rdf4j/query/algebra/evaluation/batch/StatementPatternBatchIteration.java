@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.Var;
+
+/**
+ * Fills batches with the values of statements that match a {@link StatementPattern}. Each variable of the pattern gets
+ * a slot that is filled directly from the subject, predicate, object or context of the statements. Bindings that are
+ * supplied to the pattern get a slot with the same value in all rows.
+ */
+public class StatementPatternBatchIteration implements BatchIteration {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int SUBJECT = 0;
+
+	private static final int PREDICATE = 1;
+
+	private static final int OBJECT = 2;
+
+	private static final int CONTEXT = 3;
+
+	private static final int BOUND = 4;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final CloseableIteration<? extends Statement, QueryEvaluationException> statements;
+
+	private final String[] names;
+
+	/**
+	 * The statement component that fills each slot, or {@link #BOUND} for the slots of the supplied bindings.
+	 */
+	private final int[] sources;
+
+	/**
+	 * The values of the slots of the supplied bindings.
+	 */
+	private final Value[] boundValues;
+
+	private BindingSetBatch batch;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param sp         The statement pattern.
+	 * @param statements The statements that match the pattern.
+	 * @param bindings   The bindings that were supplied to the evaluation of the pattern.
+	 */
+	public StatementPatternBatchIteration(StatementPattern sp,
+			CloseableIteration<? extends Statement, QueryEvaluationException> statements, BindingSet bindings) {
+		this.statements = statements;
+
+		List<String> nameList = new ArrayList<>();
+		List<Integer> sourceList = new ArrayList<>();
+		List<Value> valueList = new ArrayList<>();
+
+		Var[] vars = { sp.getSubjectVar(), sp.getPredicateVar(), sp.getObjectVar(), sp.getContextVar() };
+		for (int source = SUBJECT; source <= CONTEXT; source++) {
+			Var var = vars[source];
+			if (var != null && !var.isConstant() && !nameList.contains(var.getName())) {
+				Value value = bindings.getValue(var.getName());
+				nameList.add(var.getName());
+				sourceList.add(value == null ? source : BOUND);
+				valueList.add(value);
+			}
+		}
+		for (Binding binding : bindings) {
+			if (!nameList.contains(binding.getName())) {
+				nameList.add(binding.getName());
+				sourceList.add(BOUND);
+				valueList.add(binding.getValue());
+			}
+		}
+
+		names = nameList.toArray(new String[nameList.size()]);
+		sources = new int[names.length];
+		for (int i = 0; i < sources.length; i++) {
+			sources[i] = sourceList.get(i);
+		}
+		boundValues = valueList.toArray(new Value[names.length]);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public String[] getBindingNames() {
+		return names;
+	}
+
+	@Override
+	public BindingSetBatch nextBatch() throws QueryEvaluationException {
+		if (!statements.hasNext()) {
+			return null;
+		}
+
+		batch = BatchEvaluator.nextBatch(batch, names);
+
+		while (!batch.isFull() && statements.hasNext()) {
+			Statement st = statements.next();
+			int row = batch.addRow();
+			for (int slot = 0; slot < sources.length; slot++) {
+				Value value;
+				switch (sources[slot]) {
+				case SUBJECT:
+					value = st.getSubject();
+					break;
+				case PREDICATE:
+					value = st.getPredicate();
+					break;
+				case OBJECT:
+					value = st.getObject();
+					break;
+				case CONTEXT:
+					value = st.getContext();
+					break;
+				default:
+					value = boundValues[slot];
+				}
+				batch.set(slot, row, value);
+			}
+		}
+
+		return batch;
+	}
+
+	@Override
+	public void close() throws QueryEvaluationException {
+		batch = null;
+		statements.close();
+	}
+}
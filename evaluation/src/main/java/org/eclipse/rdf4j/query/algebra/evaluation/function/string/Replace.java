@@ -17,6 +17,7 @@ import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.FN;
 import org.eclipse.rdf4j.query.algebra.evaluation.ValueExprEvaluationException;
 import org.eclipse.rdf4j.query.algebra.evaluation.function.Function;
+import org.eclipse.rdf4j.query.algebra.evaluation.util.PatternCache;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.QueryEvaluationUtil;
 
 /**
@@ -99,7 +100,7 @@ public class Replace implements Function {
 				}
 			}
 
-			Pattern p = Pattern.compile(patternString, f);
+			Pattern p = PatternCache.getInstance().getPattern(patternString, f);
 			String result = p.matcher(argString).replaceAll(replacementString);
 
 			Optional<String> lang = arg.getLanguage();
@@ -18,6 +18,10 @@ public abstract class AbstractEvaluationStrategyFactory implements EvaluationStr
 
 	private long querySolutionCacheThreshold;
 
+	private boolean batchEvaluation;
+
+	private int parallelism = 1;
+
 	@Override
 	public void setQuerySolutionCacheThreshold(long threshold) {
 		this.querySolutionCacheThreshold = threshold;
@@ -28,4 +32,31 @@ public abstract class AbstractEvaluationStrategyFactory implements EvaluationStr
 		return querySolutionCacheThreshold;
 	}
 
+	/**
+	 * Enables or disables batch evaluation in the created strategies, see
+	 * {@link StrictEvaluationStrategy#setBatchEvaluation(boolean)}. Disabled by default.
+	 */
+	public void setBatchEvaluation(boolean batchEvaluation) {
+		this.batchEvaluation = batchEvaluation;
+	}
+
+	public boolean isBatchEvaluation() {
+		return batchEvaluation;
+	}
+
+	/**
+	 * Sets the maximum number of threads that the created strategies use to evaluate a single query, see
+	 * {@link StrictEvaluationStrategy#setParallelism(int)}. Defaults to one, i.e. sequential evaluation.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
 }
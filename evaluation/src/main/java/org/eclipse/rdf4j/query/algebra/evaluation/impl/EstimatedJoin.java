@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.impl;
+
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+
+/**
+ * A join that has been created by the {@link QueryJoinOptimizer} with cost-based join enumeration. It keeps the
+ * estimated result size and cost of the join, which are shown in the signature of the join and therefore in printed
+ * query plans.
+ */
+public class EstimatedJoin extends Join {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final double resultSizeEstimate;
+
+	private final double costEstimate;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param leftArg            The left argument of the join, which is evaluated first.
+	 * @param rightArg           The right argument of the join.
+	 * @param resultSizeEstimate The estimated number of results of the join.
+	 * @param costEstimate       The sum of the estimated cardinalities of the arguments of the join and all
+	 *                           intermediate results.
+	 */
+	public EstimatedJoin(TupleExpr leftArg, TupleExpr rightArg, double resultSizeEstimate, double costEstimate) {
+		super(leftArg, rightArg);
+		this.resultSizeEstimate = resultSizeEstimate;
+		this.costEstimate = costEstimate;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public double getResultSizeEstimate() {
+		return resultSizeEstimate;
+	}
+
+	public double getCostEstimate() {
+		return costEstimate;
+	}
+
+	@Override
+	public String getSignature() {
+		return super.getSignature() + " (resultSizeEstimate=" + Math.round(resultSizeEstimate) + ", costEstimate="
+				+ Math.round(costEstimate) + ")";
+	}
+
+	@Override
+	public EstimatedJoin clone() {
+		return (EstimatedJoin) super.clone();
+	}
+}
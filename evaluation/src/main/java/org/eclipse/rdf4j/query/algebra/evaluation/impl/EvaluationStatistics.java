@@ -8,6 +8,7 @@
 package org.eclipse.rdf4j.query.algebra.evaluation.impl;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 import org.eclipse.rdf4j.query.algebra.ArbitraryLengthPath;
@@ -49,6 +50,38 @@ public class EvaluationStatistics {
 		return new CardinalityCalculator();
 	}
 
+	/**
+	 * Indicates whether the estimates of these statistics are based on the actual data, so that the
+	 * {@link QueryJoinOptimizer} can enumerate bushy join trees by their estimated cost. Otherwise joins are ordered
+	 * greedily. The default estimates only count the unbound variables of statement patterns.
+	 */
+	public boolean supportsJoinEstimation() {
+		return false;
+	}
+
+	/**
+	 * Estimates the number of distinct values of a binding in the results of a tuple expression, which determines the
+	 * selectivity of joins on that binding. Defaults to the cardinality of the expression, i.e. every result is assumed
+	 * to have a distinct value.
+	 */
+	public double getDistinctValueCount(TupleExpr expr, String bindingName) {
+		return getCardinality(expr);
+	}
+
+	/**
+	 * Estimates the cardinality of a star-shaped join of statement patterns that share the same unbound subject
+	 * variable, have a bound predicate and do not restrict the context. Unlike estimates from the
+	 * {@link #getDistinctValueCount(TupleExpr, String) distinct values} of the join variables, such estimates can take
+	 * into account which predicates occur together on the same subjects. The {@link QueryJoinOptimizer} uses them for
+	 * the star-shaped subsets of the join arguments that it enumerates.
+	 * 
+	 * @param patterns The statement patterns of the join.
+	 * @return The estimated cardinality, or a negative value if no estimate can be made, which is the default.
+	 */
+	public double getStarCardinality(List<StatementPattern> patterns) {
+		return -1;
+	}
+
 	/*-----------------------------------*
 	 * Inner class CardinalityCalculator *
 	 *-----------------------------------*/
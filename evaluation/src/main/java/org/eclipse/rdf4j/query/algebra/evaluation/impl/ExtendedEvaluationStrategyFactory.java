@@ -37,7 +37,11 @@ public class ExtendedEvaluationStrategyFactory extends AbstractEvaluationStrateg
 
 	@Override
 	public EvaluationStrategy createEvaluationStrategy(Dataset dataset, TripleSource tripleSource) {
-		return new ExtendedEvaluationStrategy(tripleSource, dataset, serviceResolver, getQuerySolutionCacheThreshold());
+		ExtendedEvaluationStrategy strategy = new ExtendedEvaluationStrategy(tripleSource, dataset, serviceResolver,
+				getQuerySolutionCacheThreshold());
+		strategy.setBatchEvaluation(isBatchEvaluation());
+		strategy.setParallelism(getParallelism());
+		return strategy;
 	}
 
 }
\ No newline at end of file
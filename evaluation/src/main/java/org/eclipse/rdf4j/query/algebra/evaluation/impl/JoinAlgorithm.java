@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.impl;
+
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.HashJoinIteration;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.JoinIterator;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.MergeJoinIteration;
+
+/**
+ * The algorithms that {@link StrictEvaluationStrategy} can use to evaluate a join.
+ *
+ * @see StrictEvaluationStrategy#getJoinAlgorithm(org.eclipse.rdf4j.query.algebra.Join)
+ */
+public enum JoinAlgorithm {
+
+	/**
+	 * Evaluates the right argument once for each solution of the left argument, see {@link JoinIterator}.
+	 */
+	NESTED_LOOP,
+
+	/**
+	 * Evaluates both arguments once and puts the smaller one in a hash table, see {@link HashJoinIteration}.
+	 */
+	HASH,
+
+	/**
+	 * Evaluates both arguments once, sorts them on the join attributes and merges them, see
+	 * {@link MergeJoinIteration}.
+	 */
+	MERGE
+}
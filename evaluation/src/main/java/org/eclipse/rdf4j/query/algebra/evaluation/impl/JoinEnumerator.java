@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Finds the cheapest bushy join tree without cartesian products for a set of relations, with the DPccp algorithm of
+ * Moerkotte and Neumann ("Analysis of Two Existing and One New Dynamic Programming Algorithm for the Generation of
+ * Optimal Bushy Join Trees without Cross Products", VLDB 2006). The algorithm enumerates each pair of connected
+ * subsets of the join graph that can be joined exactly once, so that the cheapest plan for every connected subset is
+ * known before it is used.
+ * <p>
+ * The cost of a plan is the sum of the cardinalities of its relations and of all intermediate results. The cardinality
+ * of a join is estimated from the number of distinct values of the variables it joins on, assuming that each value of
+ * the side with fewer distinct values matches a value of the other side, unless a cardinality is supplied for the
+ * subset of the relations that it joins. If the join graph is not connected, the plans of its components are combined
+ * with cartesian products, smallest first.
+ */
+class JoinEnumerator {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The maximum number of relations, beyond which the number of connected subsets becomes too large to enumerate.
+	 */
+	static final int MAX_RELATIONS = 12;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final int relationCount;
+
+	private final double[] cardinalities;
+
+	private final List<Map<String, Double>> distinctValueCounts;
+
+	private final IntToDoubleFunction subsetCardinalities;
+
+	/**
+	 * The relations that share a join variable with each relation, as bit sets.
+	 */
+	private final int[] neighbors;
+
+	/**
+	 * The cheapest plan for each connected subset of the relations, indexed by the bit set of the subset.
+	 */
+	private final Plan[] plans;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param cardinalities       The estimated cardinality of each relation.
+	 * @param distinctValueCounts The join variables of each relation, with the estimated number of distinct values of
+	 *                            that variable in the relation.
+	 */
+	public JoinEnumerator(double[] cardinalities, List<Map<String, Double>> distinctValueCounts) {
+		this(cardinalities, distinctValueCounts, subset -> -1);
+	}
+
+	/**
+	 * @param cardinalities       The estimated cardinality of each relation.
+	 * @param distinctValueCounts The join variables of each relation, with the estimated number of distinct values of
+	 *                            that variable in the relation.
+	 * @param subsetCardinalities Supplies the estimated cardinality of the join of a subset of the relations, given as
+	 *                            a bit set, or a negative value if it should be estimated from the distinct values.
+	 */
+	public JoinEnumerator(double[] cardinalities, List<Map<String, Double>> distinctValueCounts,
+			IntToDoubleFunction subsetCardinalities) {
+		if (cardinalities.length > MAX_RELATIONS) {
+			throw new IllegalArgumentException("Too many relations: " + cardinalities.length);
+		}
+		this.relationCount = cardinalities.length;
+		this.cardinalities = cardinalities;
+		this.distinctValueCounts = distinctValueCounts;
+		this.subsetCardinalities = subsetCardinalities;
+		this.neighbors = new int[relationCount];
+		this.plans = new Plan[1 << relationCount];
+
+		for (int i = 0; i < relationCount; i++) {
+			Set<String> vars = distinctValueCounts.get(i).keySet();
+			for (int j = 0; j < relationCount; j++) {
+				if (i != j && shareVariable(vars, distinctValueCounts.get(j).keySet())) {
+					neighbors[i] |= 1 << j;
+				}
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the cheapest plan that joins all relations.
+	 */
+	public Plan enumerate() {
+		for (int i = 0; i < relationCount; i++) {
+			plans[1 << i] = new Plan(i, cardinalities[i], distinctValueCounts.get(i));
+		}
+
+		// enumerate the connected subsets, starting from the relation with the highest index
+		for (int i = relationCount - 1; i >= 0; i--) {
+			int relation = 1 << i;
+			emitCsg(relation);
+			enumerateCsgRec(relation, lowerOrEqual(i));
+		}
+
+		// combine the connected components
+		List<Plan> components = new ArrayList<>();
+		int remaining = (1 << relationCount) - 1;
+		while (remaining != 0) {
+			int component = getComponent(Integer.lowestOneBit(remaining));
+			components.add(plans[component]);
+			remaining &= ~component;
+		}
+		components.sort((p1, p2) -> Double.compare(p1.getCardinality(), p2.getCardinality()));
+
+		Plan result = components.get(0);
+		for (int i = 1; i < components.size(); i++) {
+			Plan component = components.get(i);
+			double cardinality = result.getCardinality() * component.getCardinality();
+			result = new Plan(result, component, cardinality, join(result, component, cardinality));
+		}
+		return result;
+	}
+
+	/**
+	 * Enumerates the connected subsets that extend a connected subset with neighbors that are not excluded.
+	 */
+	private void enumerateCsgRec(int subset, int excluded) {
+		int neighborhood = getNeighborhood(subset) & ~excluded;
+		for (int extension = neighborhood & -neighborhood; extension != 0; extension = nextSubset(extension,
+				neighborhood)) {
+			emitCsg(subset | extension);
+		}
+		for (int extension = neighborhood & -neighborhood; extension != 0; extension = nextSubset(extension,
+				neighborhood)) {
+			enumerateCsgRec(subset | extension, excluded | neighborhood);
+		}
+	}
+
+	/**
+	 * Enumerates the connected complements of a connected subset, and joins them with it.
+	 */
+	private void emitCsg(int subset) {
+		int excluded = subset | lowerOrEqual(Integer.numberOfTrailingZeros(subset));
+		int neighborhood = getNeighborhood(subset) & ~excluded;
+		for (int i = relationCount - 1; i >= 0; i--) {
+			int relation = 1 << i;
+			if ((neighborhood & relation) != 0) {
+				emitCsgCmp(subset, relation);
+				enumerateCmpRec(subset, relation, excluded | (lowerOrEqual(i) & neighborhood));
+			}
+		}
+	}
+
+	private void enumerateCmpRec(int subset, int complement, int excluded) {
+		int neighborhood = getNeighborhood(complement) & ~excluded;
+		for (int extension = neighborhood & -neighborhood; extension != 0; extension = nextSubset(extension,
+				neighborhood)) {
+			emitCsgCmp(subset, complement | extension);
+		}
+		for (int extension = neighborhood & -neighborhood; extension != 0; extension = nextSubset(extension,
+				neighborhood)) {
+			enumerateCmpRec(subset, complement | extension, excluded | neighborhood);
+		}
+	}
+
+	/**
+	 * Joins the cheapest plans of two connected subsets that are connected to each other, and keeps the join if it is
+	 * the cheapest plan for their union.
+	 */
+	private void emitCsgCmp(int subset1, int subset2) {
+		Plan plan1 = plans[subset1];
+		Plan plan2 = plans[subset2];
+		int union = subset1 | subset2;
+		Plan best = plans[union];
+
+		// the cardinality of a subset does not depend on how it is joined, so only estimate it once
+		double cardinality = best != null ? best.getCardinality() : estimateJoinCardinality(union, plan1, plan2);
+		Plan plan = new Plan(plan1, plan2, cardinality, join(plan1, plan2, cardinality));
+		if (best == null || plan.getCost() < best.getCost()) {
+			plans[union] = plan;
+		}
+	}
+
+	private double estimateJoinCardinality(int subset, Plan plan1, Plan plan2) {
+		double subsetCardinality = subsetCardinalities.applyAsDouble(subset);
+		if (subsetCardinality >= 0) {
+			return subsetCardinality;
+		}
+
+		double cardinality = plan1.getCardinality() * plan2.getCardinality();
+		for (Map.Entry<String, Double> entry : plan1.distinctValueCounts.entrySet()) {
+			Double distinct2 = plan2.distinctValueCounts.get(entry.getKey());
+			if (distinct2 != null) {
+				cardinality /= Math.max(1.0, Math.max(entry.getValue(), distinct2));
+			}
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Estimates the distinct values of the variables of a join of two plans.
+	 */
+	private Map<String, Double> join(Plan plan1, Plan plan2, double cardinality) {
+		Map<String, Double> result = new HashMap<>();
+		for (Map.Entry<String, Double> entry : plan1.distinctValueCounts.entrySet()) {
+			result.put(entry.getKey(), Math.min(entry.getValue(), cardinality));
+		}
+		for (Map.Entry<String, Double> entry : plan2.distinctValueCounts.entrySet()) {
+			Double distinct1 = result.get(entry.getKey());
+			double distinct = Math.min(entry.getValue(), cardinality);
+			result.put(entry.getKey(), distinct1 == null ? distinct : Math.min(distinct1, distinct));
+		}
+		return result;
+	}
+
+	private int getNeighborhood(int subset) {
+		int neighborhood = 0;
+		for (int remaining = subset; remaining != 0; remaining &= remaining - 1) {
+			neighborhood |= neighbors[Integer.numberOfTrailingZeros(remaining)];
+		}
+		return neighborhood & ~subset;
+	}
+
+	private int getComponent(int start) {
+		int component = start;
+		int neighborhood = getNeighborhood(component);
+		while (neighborhood != 0) {
+			component |= neighborhood;
+			neighborhood = getNeighborhood(component);
+		}
+		return component;
+	}
+
+	/**
+	 * Gets the next non-empty subset of a set in increasing order, so that each subset is enumerated before its
+	 * supersets and the plans of the subsets of a connected subset are known when it is joined.
+	 *
+	 * @return The next subset, or <tt>0</tt> if there are no more subsets.
+	 */
+	private static int nextSubset(int subset, int set) {
+		return (subset - set) & set;
+	}
+
+	/**
+	 * Gets the bit set of the relations with an index lower than or equal to the given index.
+	 */
+	private static int lowerOrEqual(int index) {
+		return (1 << (index + 1)) - 1;
+	}
+
+	private static boolean shareVariable(Set<String> vars1, Set<String> vars2) {
+		for (String var : vars1) {
+			if (vars2.contains(var)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*------------------*
+	 * Inner class Plan *
+	 *------------------*/
+
+	/**
+	 * A join tree over a subset of the relations. The cheaper side of a join, which is evaluated first, is on the left.
+	 */
+	static class Plan {
+
+		private final int relation;
+
+		private final Plan left;
+
+		private final Plan right;
+
+		private final double cardinality;
+
+		private final double cost;
+
+		private final Map<String, Double> distinctValueCounts;
+
+		Plan(int relation, double cardinality, Map<String, Double> distinctValueCounts) {
+			this.relation = relation;
+			this.left = null;
+			this.right = null;
+			this.cardinality = cardinality;
+			this.cost = cardinality;
+			this.distinctValueCounts = distinctValueCounts;
+		}
+
+		Plan(Plan plan1, Plan plan2, double cardinality, Map<String, Double> distinctValueCounts) {
+			boolean swap = plan2.getCardinality() < plan1.getCardinality();
+			this.relation = -1;
+			this.left = swap ? plan2 : plan1;
+			this.right = swap ? plan1 : plan2;
+			this.cardinality = cardinality;
+			this.cost = cardinality + plan1.getCost() + plan2.getCost();
+			this.distinctValueCounts = distinctValueCounts;
+		}
+
+		/**
+		 * Gets the index of the relation of a leaf of the join tree.
+		 *
+		 * @return The index, or <tt>-1</tt> if this plan is a join.
+		 */
+		public int getRelation() {
+			return relation;
+		}
+
+		public boolean isJoin() {
+			return relation < 0;
+		}
+
+		public Plan getLeft() {
+			return left;
+		}
+
+		public Plan getRight() {
+			return right;
+		}
+
+		public double getCardinality() {
+			return cardinality;
+		}
+
+		public double getCost() {
+			return cost;
+		}
+	}
+}
@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.Dataset;
 import org.eclipse.rdf4j.query.algebra.Extension;
@@ -101,6 +102,9 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 				joinArgs.removeAll(orderedSubselects);
 				priorityArgs.addAll(orderedSubselects);
 
+				// the bushy join tree of the remaining join arguments, if it has been enumerated by cost
+				TupleExpr enumeratedJoins = null;
+
 				// We order all remaining join arguments based on cardinality and
 				// variable frequency statistics
 				if (joinArgs.size() > 0) {
@@ -123,6 +127,13 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 						getVarFreqMap(varList, varFreqMap);
 					}
 
+					if (joinArgs.size() >= 3 && joinArgs.size() <= JoinEnumerator.MAX_RELATIONS
+							&& statistics.supportsJoinEstimation()) {
+						enumeratedJoins = enumerateJoins(joinArgs, cardinalityMap, varsMap);
+						orderedJoinArgs.addAll(joinArgs);
+						joinArgs.clear();
+					}
+
 					// order all other join arguments based on available statistics
 					while (!joinArgs.isEmpty()) {
 						TupleExpr tupleExpr = selectNextTupleExpr(joinArgs, cardinalityMap, varsMap, varFreqMap,
@@ -147,7 +158,16 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 					}
 				}
 
-				if (orderedJoinArgs.size() > 0) {
+				if (enumeratedJoins != null) {
+					TupleExpr replacement = enumeratedJoins;
+					if (priorityJoins != null) {
+						replacement = new Join(priorityJoins, replacement);
+					}
+
+					// Replace old join hierarchy
+					node.replaceWith(replacement);
+
+				} else if (orderedJoinArgs.size() > 0) {
 					// Note: generated hierarchy is right-recursive to help the
 					// IterativeEvaluationOptimizer to factor out the left-most join
 					// argument
@@ -173,6 +193,109 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 			}
 		}
 
+		/**
+		 * Finds the cheapest bushy join tree for the join arguments with {@link JoinEnumerator}, and recursively
+		 * optimizes the join arguments in the order in which they will be evaluated. The joins of the tree are
+		 * {@link EstimatedJoin}s that keep their estimated result size and cost.
+		 */
+		private TupleExpr enumerateJoins(List<TupleExpr> joinArgs, Map<TupleExpr, Double> cardinalityMap,
+				Map<TupleExpr, List<Var>> varsMap) {
+			double[] cardinalities = new double[joinArgs.size()];
+			List<Map<String, Double>> distinctValueCounts = new ArrayList<>(joinArgs.size());
+
+			for (int i = 0; i < joinArgs.size(); i++) {
+				TupleExpr tupleExpr = joinArgs.get(i);
+				List<Var> vars = varsMap.get(tupleExpr);
+
+				// Compensate for variables that are bound outside of the join
+				double cardinality = cardinalityMap.get(tupleExpr);
+				int nonConstantVarCount = vars.size() - getConstantVars(vars).size();
+				if (nonConstantVarCount > 0) {
+					cardinality = Math.pow(cardinality, (double) getUnboundVars(vars).size() / nonConstantVarCount);
+				}
+				cardinalities[i] = cardinality;
+
+				Set<String> constantNames = new HashSet<>();
+				for (Var var : getConstantVars(vars)) {
+					constantNames.add(var.getName());
+				}
+
+				Map<String, Double> counts = new HashMap<>();
+				for (String name : tupleExpr.getBindingNames()) {
+					if (!constantNames.contains(name) && !boundVars.contains(name)) {
+						counts.put(name, Math.min(cardinality, statistics.getDistinctValueCount(tupleExpr, name)));
+					}
+				}
+				distinctValueCounts.add(counts);
+			}
+
+			JoinEnumerator.Plan plan = new JoinEnumerator(cardinalities, distinctValueCounts,
+					subset -> getStarCardinality(joinArgs, subset)).enumerate();
+
+			// Recursively optimize join arguments, in evaluation order
+			List<TupleExpr> evaluationOrder = new ArrayList<>(joinArgs.size());
+			getEvaluationOrder(plan, joinArgs, evaluationOrder);
+			for (TupleExpr tupleExpr : evaluationOrder) {
+				tupleExpr.visit(this);
+				boundVars.addAll(tupleExpr.getBindingNames());
+			}
+
+			return createJoinTree(plan, joinArgs);
+		}
+
+		/**
+		 * Estimates the cardinality of a subset of the join arguments with
+		 * {@link EvaluationStatistics#getStarCardinality(List)} if it consists of statement patterns that form a star
+		 * on a subject variable, none of whose variables are bound outside of the join.
+		 * 
+		 * @param subset The join arguments of the subset, as a bit set of their indexes.
+		 * @return The estimated cardinality, or a negative value if the subset is not such a star.
+		 */
+		private double getStarCardinality(List<TupleExpr> joinArgs, int subset) {
+			List<StatementPattern> patterns = new ArrayList<>(Integer.bitCount(subset));
+			for (int remaining = subset; remaining != 0; remaining &= remaining - 1) {
+				TupleExpr tupleExpr = joinArgs.get(Integer.numberOfTrailingZeros(remaining));
+				if (!(tupleExpr instanceof StatementPattern)) {
+					return -1;
+				}
+
+				StatementPattern sp = (StatementPattern) tupleExpr;
+				Var subjVar = sp.getSubjectVar();
+				if (subjVar.hasValue() || !(sp.getPredicateVar().getValue() instanceof IRI)
+						|| sp.getContextVar() != null) {
+					return -1;
+				}
+				if (!patterns.isEmpty() && !patterns.get(0).getSubjectVar().getName().equals(subjVar.getName())) {
+					return -1;
+				}
+				for (Var var : sp.getVarList()) {
+					if (!var.hasValue() && boundVars.contains(var.getName())) {
+						return -1;
+					}
+				}
+				patterns.add(sp);
+			}
+			return statistics.getStarCardinality(patterns);
+		}
+
+		private void getEvaluationOrder(JoinEnumerator.Plan plan, List<TupleExpr> joinArgs, List<TupleExpr> order) {
+			if (plan.isJoin()) {
+				getEvaluationOrder(plan.getLeft(), joinArgs, order);
+				getEvaluationOrder(plan.getRight(), joinArgs, order);
+			} else {
+				order.add(joinArgs.get(plan.getRelation()));
+			}
+		}
+
+		private TupleExpr createJoinTree(JoinEnumerator.Plan plan, List<TupleExpr> joinArgs) {
+			if (!plan.isJoin()) {
+				return joinArgs.get(plan.getRelation());
+			}
+			TupleExpr leftArg = createJoinTree(plan.getLeft(), joinArgs);
+			TupleExpr rightArg = createJoinTree(plan.getRight(), joinArgs);
+			return new EstimatedJoin(leftArg, rightArg, plan.getCardinality(), plan.getCost());
+		}
+
 		protected <L extends List<TupleExpr>> L getJoinArgs(TupleExpr tupleExpr, L joinArgs) {
 			if (tupleExpr instanceof Join) {
 				Join join = (Join) tupleExpr;
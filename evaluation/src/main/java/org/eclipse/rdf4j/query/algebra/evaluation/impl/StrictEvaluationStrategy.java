@@ -7,11 +7,16 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.query.algebra.evaluation.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Pattern;
 
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
@@ -112,6 +117,8 @@ import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
 import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
 import org.eclipse.rdf4j.query.algebra.evaluation.ValueExprEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.batch.BatchBindingSetIteration;
+import org.eclipse.rdf4j.query.algebra.evaluation.batch.BatchEvaluator;
 import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedService;
 import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedServiceResolverClient;
@@ -127,22 +134,28 @@ import org.eclipse.rdf4j.query.algebra.evaluation.iterator.GroupIterator;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.HashJoinIteration;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.JoinIterator;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.LeftJoinIterator;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.MergeJoinIteration;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.MultiProjectionIterator;
-import org.eclipse.rdf4j.query.algebra.evaluation.iterator.OrderIterator;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.ParallelBindJoinIteration;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.ParallelEvaluationIteration;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.ParallelFilterIteration;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.ParallelUnionIteration;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.PathIteration;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.ProjectionIterator;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.SPARQLMinusIteration;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.SortIterator;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.ZeroLengthPathIteration;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.EvaluationStrategies;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.MathUtil;
-import org.eclipse.rdf4j.query.algebra.evaluation.util.OrderComparator;
+import org.eclipse.rdf4j.query.algebra.evaluation.util.PatternCache;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.QueryEvaluationUtil;
-import org.eclipse.rdf4j.query.algebra.evaluation.util.ValueComparator;
 import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
 import org.eclipse.rdf4j.query.algebra.helpers.TupleExprs;
 import org.eclipse.rdf4j.query.algebra.helpers.VarNameCollector;
 import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.util.UUIDable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Minimally-conforming SPARQL 1.1 Query Evaluation strategy, to evaluate one {@link TupleExpr} on the given
@@ -161,6 +174,21 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The estimated cost of evaluating the right argument of a nested loop join for a single solution of the left
+	 * argument, relative to the cost of processing one solution.
+	 */
+	protected static final double NESTED_LOOP_PROBE_COST = 4.0;
+
+	/**
+	 * The estimated number of solutions above which the smaller argument of a join is not put in a hash table, but
+	 * both arguments are sorted and merged instead. Unless the iteration cache sync threshold is set, this is also the
+	 * number of solutions that a merge join sorts in memory.
+	 */
+	protected static final double MAX_HASH_TABLE_SIZE = 1000000.0;
+
+	private static final Logger logger = LoggerFactory.getLogger(StrictEvaluationStrategy.class);
+
 	protected final TripleSource tripleSource;
 
 	protected final Dataset dataset;
@@ -176,6 +204,32 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 
 	private final UUID uuid;
 
+	/**
+	 * The statistics that are used to choose a join algorithm, or <tt>null</tt> if joins are always evaluated as index
+	 * nested loop joins.
+	 */
+	private volatile EvaluationStatistics evaluationStatistics;
+
+	/**
+	 * The join algorithms that have been chosen for the joins that have been evaluated.
+	 */
+	private final Map<Join, JoinAlgorithm> joinAlgorithms = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	/**
+	 * The compiled patterns of the regex operators with a constant pattern and flags that have been evaluated.
+	 */
+	private final Map<Regex, Pattern> regexPatterns = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	private volatile boolean batchEvaluation;
+
+	private volatile int parallelism = 1;
+
+	/**
+	 * The permits for the worker tasks of parallel iterations, or <tt>null</tt> if queries are evaluated sequentially.
+	 * The thread that consumes the results does not need a permit.
+	 */
+	private volatile Semaphore workerPermits;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -209,6 +263,69 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 		return uuid;
 	}
 
+	/**
+	 * Sets the statistics that are used to choose between an index nested loop join, a hash join and a sort-merge join
+	 * for each join. Without statistics, joins are evaluated as index nested loop joins.
+	 */
+	public void setEvaluationStatistics(EvaluationStatistics evaluationStatistics) {
+		this.evaluationStatistics = evaluationStatistics;
+	}
+
+	public EvaluationStatistics getEvaluationStatistics() {
+		return evaluationStatistics;
+	}
+
+	/**
+	 * Gets the algorithm that has been chosen to evaluate the supplied join.
+	 * 
+	 * @return The join algorithm, or <tt>null</tt> if the join has not been evaluated by this strategy.
+	 */
+	public JoinAlgorithm getJoinAlgorithm(Join join) {
+		return joinAlgorithms.get(join);
+	}
+
+	/**
+	 * Enables or disables batch evaluation. If enabled, projections and filters over a statement pattern are evaluated
+	 * by a {@link BatchEvaluator}, which passes blocks of solutions between the operators and only creates binding sets
+	 * for the final results. Statement patterns are then evaluated through {@link #evaluateStatements}, so subclasses
+	 * that override the evaluation of statement patterns, projections or filters should not enable it. Disabled by
+	 * default.
+	 */
+	public void setBatchEvaluation(boolean batchEvaluation) {
+		this.batchEvaluation = batchEvaluation;
+	}
+
+	public boolean isBatchEvaluation() {
+		return batchEvaluation;
+	}
+
+	/**
+	 * Sets the maximum number of threads that evaluate a query concurrently. If larger than one, the branches of
+	 * unions, the right arguments of nested loop joins for batches of left solutions and the conditions of filters for
+	 * partitions of their arguments are evaluated concurrently on a shared work-stealing pool. Operators that are
+	 * evaluated for bindings of an enclosing operator or by a worker of another parallel operator, and operators for
+	 * which no more threads are available, are evaluated sequentially. Defaults to one, i.e. sequential evaluation.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		this.workerPermits = parallelism > 1 ? new Semaphore(parallelism - 1) : null;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Acquires permits for the workers of a parallel iteration, without waiting. No permits are acquired by the workers
+	 * of other parallel iterations, so that the workers never wait for nested workers to get a thread of the pool.
+	 * 
+	 * @param max The maximum number of workers that can be used.
+	 * @return The number of permits that were acquired, which is zero if the operator should be evaluated sequentially.
+	 */
+	protected int acquireWorkers(int max) {
+		return ParallelEvaluationIteration.acquireWorkers(workerPermits, max);
+	}
+
 	@Override
 	public void setFederatedServiceResolver(FederatedServiceResolver resolver) {
 		serviceResolver = resolver;
@@ -415,6 +532,44 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 		final Var objVar = sp.getObjectVar();
 		final Var conVar = sp.getContextVar();
 
+		// Return an iterator that converts the statements to var bindings
+		return new ConvertingIteration<Statement, BindingSet, QueryEvaluationException>(
+				evaluateStatements(sp, bindings)) {
+
+			@Override
+			protected BindingSet convert(Statement st) {
+				QueryBindingSet result = new QueryBindingSet(bindings);
+
+				if (subjVar != null && !subjVar.isConstant() && !result.hasBinding(subjVar.getName())) {
+					result.addBinding(subjVar.getName(), st.getSubject());
+				}
+				if (predVar != null && !predVar.isConstant() && !result.hasBinding(predVar.getName())) {
+					result.addBinding(predVar.getName(), st.getPredicate());
+				}
+				if (objVar != null && !objVar.isConstant() && !result.hasBinding(objVar.getName())) {
+					result.addBinding(objVar.getName(), st.getObject());
+				}
+				if (conVar != null && !conVar.isConstant() && !result.hasBinding(conVar.getName())
+						&& st.getContext() != null) {
+					result.addBinding(conVar.getName(), st.getContext());
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Evaluates the statements that match a statement pattern, for the supplied bindings and the dataset of this
+	 * strategy, before they are converted to binding sets.
+	 */
+	public CloseableIteration<? extends Statement, QueryEvaluationException> evaluateStatements(StatementPattern sp,
+			final BindingSet bindings) throws QueryEvaluationException {
+		final Var subjVar = sp.getSubjectVar();
+		final Var predVar = sp.getPredicateVar();
+		final Var objVar = sp.getObjectVar();
+		final Var conVar = sp.getContextVar();
+
 		final Value subjValue = getVarValue(subjVar, bindings);
 		final Value predValue = getVarValue(predVar, bindings);
 		final Value objValue = getVarValue(objVar, bindings);
@@ -423,7 +578,6 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 		CloseableIteration<? extends Statement, QueryEvaluationException> stIter1 = null;
 		CloseableIteration<? extends Statement, QueryEvaluationException> stIter2 = null;
 		CloseableIteration<? extends Statement, QueryEvaluationException> stIter3 = null;
-		ConvertingIteration<Statement, BindingSet, QueryEvaluationException> result = null;
 
 		if (isUnbound(subjVar, bindings) || isUnbound(predVar, bindings) || isUnbound(objVar, bindings)
 				|| isUnbound(conVar, bindings)) {
@@ -550,52 +704,22 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 				}
 			};
 
-			// Return an iterator that converts the statements to var bindings
-			result = new ConvertingIteration<Statement, BindingSet, QueryEvaluationException>(stIter3) {
-
-				@Override
-				protected BindingSet convert(Statement st) {
-					QueryBindingSet result = new QueryBindingSet(bindings);
-
-					if (subjVar != null && !subjVar.isConstant() && !result.hasBinding(subjVar.getName())) {
-						result.addBinding(subjVar.getName(), st.getSubject());
-					}
-					if (predVar != null && !predVar.isConstant() && !result.hasBinding(predVar.getName())) {
-						result.addBinding(predVar.getName(), st.getPredicate());
-					}
-					if (objVar != null && !objVar.isConstant() && !result.hasBinding(objVar.getName())) {
-						result.addBinding(objVar.getName(), st.getObject());
-					}
-					if (conVar != null && !conVar.isConstant() && !result.hasBinding(conVar.getName())
-							&& st.getContext() != null) {
-						result.addBinding(conVar.getName(), st.getContext());
-					}
-
-					return result;
-				}
-			};
 			allGood = true;
-			return result;
+			return stIter3;
 		} finally {
 			if (!allGood) {
 				try {
-					if (result != null) {
-						result.close();
+					if (stIter3 != null) {
+						stIter3.close();
 					}
 				} finally {
 					try {
-						if (stIter3 != null) {
-							stIter3.close();
+						if (stIter2 != null) {
+							stIter2.close();
 						}
 					} finally {
-						try {
-							if (stIter2 != null) {
-								stIter2.close();
-							}
-						} finally {
-							if (stIter1 != null) {
-								stIter1.close();
-							}
+						if (stIter1 != null) {
+							stIter1.close();
 						}
 					}
 				}
@@ -712,6 +836,10 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Projection projection, BindingSet bindings)
 			throws QueryEvaluationException {
+		if (batchEvaluation && BatchEvaluator.isSupported(projection)) {
+			return new BatchBindingSetIteration(new BatchEvaluator(this).evaluate(projection, bindings));
+		}
+
 		CloseableIteration<BindingSet, QueryEvaluationException> result;
 
 		result = this.evaluate(projection.getArg(), bindings);
@@ -729,6 +857,17 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Filter filter, BindingSet bindings)
 			throws QueryEvaluationException {
+		if (batchEvaluation && BatchEvaluator.isSupported(filter)) {
+			return new BatchBindingSetIteration(new BatchEvaluator(this).evaluate(filter, bindings));
+		}
+
+		if (bindings.size() == 0) {
+			int workers = acquireWorkers(parallelism - 1);
+			if (workers > 0) {
+				return new ParallelFilterIteration(this, filter, bindings, workerPermits, workers);
+			}
+		}
+
 		CloseableIteration<BindingSet, QueryEvaluationException> result;
 		result = this.evaluate(filter.getArg(), bindings);
 		result = new FilterIterator(filter, result, this);
@@ -778,16 +917,15 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Group node, BindingSet bindings)
 			throws QueryEvaluationException {
-		return new GroupIterator(this, node, bindings, iterationCacheSyncThreshold);
+		return new GroupIterator(this, node, bindings, iterationCacheSyncThreshold, workerPermits);
 	}
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Order node, BindingSet bindings)
 			throws QueryEvaluationException {
-		ValueComparator vcmp = new ValueComparator();
-		OrderComparator cmp = new OrderComparator(this, node, vcmp);
 		boolean reduced = isReducedOrDistinct(node);
 		long limit = getLimit(node);
-		return new OrderIterator(evaluate(node.getArg(), bindings), cmp, limit, reduced, iterationCacheSyncThreshold);
+		return new SortIterator(this, node, evaluate(node.getArg(), bindings), limit, reduced,
+				iterationCacheSyncThreshold);
 	}
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(BinaryTupleOperator expr,
@@ -819,12 +957,98 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 		}
 
 		if (TupleExprs.containsSubquery(join.getRightArg())) {
+			joinAlgorithms.put(join, JoinAlgorithm.HASH);
 			return new HashJoinIteration(this, join, bindings);
-		} else {
+		}
+
+		switch (chooseJoinAlgorithm(join, bindings)) {
+		case HASH:
+			return new HashJoinIteration(this, join, bindings);
+		case MERGE:
+			return new MergeJoinIteration(this, join, bindings,
+					iterationCacheSyncThreshold > 0 ? iterationCacheSyncThreshold : (long) MAX_HASH_TABLE_SIZE);
+		default:
+			if (bindings.size() == 0 && isParallelBindJoin(join)) {
+				int workers = acquireWorkers(parallelism - 1);
+				if (workers > 0) {
+					return new ParallelBindJoinIteration(this, join, bindings, workerPermits, workers);
+				}
+			}
 			return new JoinIterator(this, join, bindings);
 		}
 	}
 
+	/**
+	 * Checks whether the left argument of a nested loop join is expected to have enough solutions to evaluate the
+	 * right argument for them in parallel.
+	 */
+	private boolean isParallelBindJoin(Join join) {
+		if (parallelism <= 1) {
+			return false;
+		}
+		EvaluationStatistics statistics = evaluationStatistics;
+		return statistics == null
+				|| statistics.getCardinality(join.getLeftArg()) >= ParallelBindJoinIteration.BATCH_SIZE;
+	}
+
+	/**
+	 * Chooses the algorithm to evaluate a join with, based on the estimated cardinalities of its arguments. An index
+	 * nested loop join evaluates the right argument once for each solution of the left argument, while hash and merge
+	 * joins evaluate both arguments once. The latter are only used if the join attributes are bound in all solutions
+	 * of both arguments and not by the supplied bindings, i.e. if the join is not nested in an index nested loop join
+	 * that already binds them.
+	 */
+	protected JoinAlgorithm chooseJoinAlgorithm(Join join, BindingSet bindings) {
+		EvaluationStatistics statistics = evaluationStatistics;
+		if (statistics == null) {
+			return JoinAlgorithm.NESTED_LOOP;
+		}
+
+		TupleExpr leftArg = join.getLeftArg();
+		TupleExpr rightArg = join.getRightArg();
+
+		Set<String> joinAttributes = new HashSet<>(leftArg.getBindingNames());
+		joinAttributes.retainAll(rightArg.getBindingNames());
+		for (String name : bindings.getBindingNames()) {
+			if (joinAttributes.contains(name)) {
+				return JoinAlgorithm.NESTED_LOOP;
+			}
+		}
+
+		JoinAlgorithm algorithm = joinAlgorithms.get(join);
+		if (algorithm != null) {
+			return algorithm;
+		}
+
+		algorithm = JoinAlgorithm.NESTED_LOOP;
+		if (!joinAttributes.isEmpty() && leftArg.getAssuredBindingNames().containsAll(joinAttributes)
+				&& rightArg.getAssuredBindingNames().containsAll(joinAttributes)) {
+			double leftCardinality = statistics.getCardinality(leftArg);
+			double rightCardinality = statistics.getCardinality(rightArg);
+
+			// the cardinality of the right argument for a single solution of the
+			// left argument, which binds the join attributes
+			int rightVarCount = rightArg.getBindingNames().size();
+			double probeCardinality = Math.pow(rightCardinality,
+					(double) (rightVarCount - joinAttributes.size()) / rightVarCount);
+
+			double nestedLoopCost = leftCardinality * (NESTED_LOOP_PROBE_COST + probeCardinality);
+			double hashCost = leftCardinality + rightCardinality;
+
+			if (hashCost < nestedLoopCost) {
+				if (Math.min(leftCardinality, rightCardinality) > MAX_HASH_TABLE_SIZE) {
+					algorithm = JoinAlgorithm.MERGE;
+				} else {
+					algorithm = JoinAlgorithm.HASH;
+				}
+			}
+		}
+
+		joinAlgorithms.put(join, algorithm);
+		logger.debug("Evaluating join as {} join:\n{}", algorithm, join);
+		return algorithm;
+	}
+
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(LeftJoin leftJoin,
 			final BindingSet bindings) throws QueryEvaluationException {
 		if (TupleExprs.containsSubquery(leftJoin.getRightArg())) {
@@ -854,6 +1078,15 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 	@SuppressWarnings("unchecked")
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final Union union,
 			final BindingSet bindings) throws QueryEvaluationException {
+		if (bindings.size() == 0 && parallelism > 1) {
+			List<TupleExpr> branches = new ArrayList<>();
+			collectUnionBranches(union, branches);
+			int workers = acquireWorkers(Math.min(branches.size(), parallelism - 1));
+			if (workers > 0) {
+				return new ParallelUnionIteration(this, branches, bindings, workerPermits, workers);
+			}
+		}
+
 		Iteration<BindingSet, QueryEvaluationException> leftArg, rightArg;
 
 		leftArg = new DelayedIteration<BindingSet, QueryEvaluationException>() {
@@ -877,6 +1110,15 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 		return new UnionIteration<>(leftArg, rightArg);
 	}
 
+	private void collectUnionBranches(TupleExpr expr, List<TupleExpr> branches) {
+		if (expr instanceof Union) {
+			collectUnionBranches(((Union) expr).getLeftArg(), branches);
+			collectUnionBranches(((Union) expr).getRightArg(), branches);
+		} else {
+			branches.add(expr);
+		}
+	}
+
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final Intersection intersection,
 			final BindingSet bindings) throws QueryEvaluationException {
 		Iteration<BindingSet, QueryEvaluationException> leftArg, rightArg;
@@ -1275,6 +1517,16 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 	public Value evaluate(Regex node, BindingSet bindings)
 			throws ValueExprEvaluationException, QueryEvaluationException {
 		Value arg = evaluate(node.getArg(), bindings);
+
+		Pattern pattern = regexPatterns.get(node);
+		if (pattern != null) {
+			// the pattern and flags are constant and have already been compiled
+			if (QueryEvaluationUtil.isStringLiteral(arg)) {
+				return BooleanLiteral.valueOf(pattern.matcher(((Literal) arg).getLabel()).find());
+			}
+			throw new ValueExprEvaluationException();
+		}
+
 		Value parg = evaluate(node.getPatternArg(), bindings);
 		Value farg = null;
 		ValueExpr flagsArg = node.getFlagsArg();
@@ -1290,7 +1542,6 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 			if (farg != null) {
 				flags = ((Literal) farg).getLabel();
 			}
-			// TODO should this Pattern be cached?
 			int f = 0;
 			for (char c : flags.toCharArray()) {
 				switch (c) {
@@ -1317,7 +1568,15 @@ public class StrictEvaluationStrategy implements EvaluationStrategy, FederatedSe
 					throw new ValueExprEvaluationException(flags);
 				}
 			}
-			Pattern pattern = Pattern.compile(ptn, f);
+
+			if (node.getPatternArg() instanceof ValueConstant
+					&& (flagsArg == null || flagsArg instanceof ValueConstant)) {
+				// compile a constant pattern once for this operator
+				pattern = Pattern.compile(ptn, f);
+				regexPatterns.put(node, pattern);
+			} else {
+				pattern = PatternCache.getInstance().getPattern(ptn, f);
+			}
 			boolean result = pattern.matcher(text).find();
 			return BooleanLiteral.valueOf(result);
 		}
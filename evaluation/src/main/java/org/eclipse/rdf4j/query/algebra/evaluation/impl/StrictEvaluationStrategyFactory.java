@@ -37,6 +37,10 @@ public class StrictEvaluationStrategyFactory extends AbstractEvaluationStrategyF
 
 	@Override
 	public EvaluationStrategy createEvaluationStrategy(Dataset dataset, TripleSource tripleSource) {
-		return new StrictEvaluationStrategy(tripleSource, dataset, serviceResolver, getQuerySolutionCacheThreshold());
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(tripleSource, dataset, serviceResolver,
+				getQuerySolutionCacheThreshold());
+		strategy.setBatchEvaluation(isBatchEvaluation());
+		strategy.setParallelism(getParallelism());
+		return strategy;
 	}
 }
\ No newline at end of file
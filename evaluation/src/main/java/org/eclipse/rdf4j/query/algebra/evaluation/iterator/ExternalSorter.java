@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Sorts objects of which only a limited number is kept in memory. The objects are sorted in runs of at most that many
+ * objects, which are written to temporary files and merged when the sorted objects are read. Used by
+ * {@link SortIterator} and {@link MergeJoinIteration}.
+ */
+class ExternalSorter<T extends Serializable> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of objects after which the object stream of a run is reset, so that it does not keep references to
+	 * all written objects.
+	 */
+	private static final int RUN_RESET_INTERVAL = 1024;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Comparator<? super T> comparator;
+
+	private final int maxInMemory;
+
+	private final long runLimit;
+
+	private final List<Run<T>> runs = new ArrayList<>();
+
+	private List<T> buffer = new ArrayList<>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param comparator  The order to sort the objects in.
+	 * @param maxInMemory The maximum number of objects that are sorted in memory.
+	 * @param runLimit    The maximum number of objects of each run that can be read, the remaining objects of a run are
+	 *                    dropped.
+	 */
+	public ExternalSorter(Comparator<? super T> comparator, int maxInMemory, long runLimit) {
+		this.comparator = comparator;
+		this.maxInMemory = maxInMemory;
+		this.runLimit = runLimit;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Adds an object to sort. If the number of objects in memory reaches the maximum, they are sorted and written to a
+	 * new run.
+	 */
+	public void add(T object) throws QueryEvaluationException {
+		buffer.add(object);
+
+		if (buffer.size() >= maxInMemory) {
+			Run<T> run = new Run<>();
+			runs.add(run);
+			run.write(sort(buffer));
+			buffer = new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Gets the sorted objects. No more objects can be added once this method has been called.
+	 */
+	public Iterator<T> iterator() throws QueryEvaluationException {
+		Iterator<T> last = sort(buffer).iterator();
+		buffer = null;
+		if (runs.isEmpty()) {
+			return last;
+		}
+
+		List<Iterator<T>> iterators = new ArrayList<>(runs.size() + 1);
+		for (Run<T> run : runs) {
+			iterators.add(run.read());
+		}
+		iterators.add(last);
+		return new MergeIterator(iterators);
+	}
+
+	/**
+	 * Deletes the temporary files of the runs.
+	 */
+	public void delete() {
+		for (Run<T> run : runs) {
+			run.delete();
+		}
+	}
+
+	private List<T> sort(List<T> buffer) {
+		@SuppressWarnings("unchecked")
+		T[] array = buffer.toArray((T[]) new Serializable[buffer.size()]);
+		Arrays.parallelSort(array, comparator);
+		List<T> sorted = Arrays.asList(array);
+		if (sorted.size() > runLimit) {
+			sorted = sorted.subList(0, (int) runLimit);
+		}
+		return sorted;
+	}
+
+	/*-----------------*
+	 * Inner class Run *
+	 *-----------------*/
+
+	/**
+	 * A sorted run of objects in a temporary file.
+	 */
+	private static class Run<T> {
+
+		private final File file;
+
+		private int size;
+
+		private ObjectInputStream input;
+
+		public Run() throws QueryEvaluationException {
+			try {
+				file = File.createTempFile("sortiter", null);
+			} catch (IOException e) {
+				throw new QueryEvaluationException("could not create sort run", e);
+			}
+		}
+
+		public void write(List<T> objects) throws QueryEvaluationException {
+			try (ObjectOutputStream output = new ObjectOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)))) {
+				for (T object : objects) {
+					output.writeObject(object);
+					if (++size % RUN_RESET_INTERVAL == 0) {
+						output.reset();
+					}
+				}
+			} catch (IOException e) {
+				throw new QueryEvaluationException("could not write sort run", e);
+			}
+		}
+
+		public Iterator<T> read() throws QueryEvaluationException {
+			try {
+				input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			} catch (IOException e) {
+				throw new QueryEvaluationException("could not read sort run", e);
+			}
+
+			return new Iterator<T>() {
+
+				private int position;
+
+				@Override
+				public boolean hasNext() {
+					return position < size;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public T next() {
+					if (position >= size) {
+						throw new NoSuchElementException();
+					}
+					try {
+						position++;
+						return (T) input.readObject();
+					} catch (IOException | ClassNotFoundException e) {
+						throw new QueryEvaluationException("could not read sort run", e);
+					}
+				}
+			};
+		}
+
+		public void delete() {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					// ignore, the file is deleted anyway
+				}
+			}
+			file.delete();
+		}
+	}
+
+	/*---------------------------*
+	 * Inner class MergeIterator *
+	 *---------------------------*/
+
+	/**
+	 * Merges sorted iterators, with a heap of their current objects.
+	 */
+	private class MergeIterator implements Iterator<T> {
+
+		private final PriorityQueue<Head<T>> heads;
+
+		public MergeIterator(List<Iterator<T>> iterators) {
+			heads = new PriorityQueue<>(iterators.size(), (h1, h2) -> comparator.compare(h1.object, h2.object));
+			for (Iterator<T> iterator : iterators) {
+				if (iterator.hasNext()) {
+					heads.add(new Head<>(iterator));
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public T next() {
+			Head<T> head = heads.poll();
+			if (head == null) {
+				throw new NoSuchElementException();
+			}
+			T result = head.object;
+			if (head.iterator.hasNext()) {
+				head.object = head.iterator.next();
+				heads.add(head);
+			}
+			return result;
+		}
+	}
+
+	private static class Head<T> {
+
+		private final Iterator<T> iterator;
+
+		private T object;
+
+		public Head(Iterator<T> iterator) {
+			this.iterator = iterator;
+			this.object = iterator.next();
+		}
+	}
+}
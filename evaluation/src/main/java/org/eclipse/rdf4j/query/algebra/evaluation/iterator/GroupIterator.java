@@ -7,17 +7,30 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
@@ -52,6 +65,12 @@ import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
 /**
+ * Evaluates a {@link Group} with a hash aggregation. If an iteration cache sync threshold is set and all aggregates
+ * can be computed from partial results (COUNT, SUM, MIN, MAX, AVG and SAMPLE without DISTINCT), the groups are
+ * divided in partitions by hash code, and the partitions with the most groups are spilled to disk whenever the number
+ * of groups in memory exceeds the threshold. The spilled partitions are aggregated afterwards, concurrently by the
+ * calling thread and as many pool threads as permits of the evaluation strategy are available.
+ * 
  * @author David Huynh
  * @author Arjohn Kampman
  * @author Jeen Broekstra
@@ -63,6 +82,25 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The number of bits of a group's hash code that select its partition at each level of partitioning.
+	 */
+	private static final int PARTITION_BITS = 4;
+
+	private static final int PARTITION_COUNT = 1 << PARTITION_BITS;
+
+	/**
+	 * The deepest level of partitioning, at which all remaining hash bits have been used and partitions are no longer
+	 * spilled.
+	 */
+	private static final int MAX_PARTITION_LEVEL = 32 / PARTITION_BITS - 1;
+
+	/**
+	 * The number of records after which the object stream of a spilled partition is reset, so that it does not keep
+	 * references to all written records.
+	 */
+	private static final int SPILL_RESET_INTERVAL = 1024;
+
 	private final SimpleValueFactory vf = SimpleValueFactory.getInstance();
 
 	private final EvaluationStrategy strategy;
@@ -85,6 +123,19 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	 */
 	private final long iterationCacheSyncThreshold;
 
+	/**
+	 * The permits for the pool threads that aggregate spilled partitions, or <tt>null</tt> if they are aggregated in
+	 * the calling thread only.
+	 */
+	private final Semaphore workerPermits;
+
+	private final String[] groupBindingNames;
+
+	/**
+	 * The spilled partitions that have not been aggregated yet.
+	 */
+	private final List<SpilledPartition> spilledPartitions = Collections.synchronizedList(new ArrayList<>());
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -96,10 +147,25 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 	public GroupIterator(EvaluationStrategy strategy, Group group, BindingSet parentBindings,
 			long iterationCacheSyncThreshold) throws QueryEvaluationException {
+		this(strategy, group, parentBindings, iterationCacheSyncThreshold, null);
+	}
+
+	/**
+	 * @param iterationCacheSyncThreshold The number of groups that are kept in memory before partitions are spilled to
+	 *                                    disk, or <tt>0</tt> to keep all groups in memory.
+	 * @param workerPermits               The permits of the evaluation strategy for pool threads that aggregate
+	 *                                    spilled partitions, or <tt>null</tt> to aggregate them in the calling thread.
+	 */
+	public GroupIterator(EvaluationStrategy strategy, Group group, BindingSet parentBindings,
+			long iterationCacheSyncThreshold, Semaphore workerPermits) throws QueryEvaluationException {
 		this.strategy = strategy;
 		this.group = group;
 		this.parentBindings = parentBindings;
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
+		this.workerPermits = workerPermits;
+
+		Set<String> names = group.getGroupBindingNames();
+		this.groupBindingNames = names.toArray(new String[names.size()]);
 
 		if (this.iterationCacheSyncThreshold > 0) {
 			try {
@@ -149,8 +215,12 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		try {
 			super.handleClose();
 		} finally {
-			if (db != null) {
-				db.close();
+			try {
+				deleteSpilledPartitions();
+			} finally {
+				if (db != null) {
+					db.close();
+				}
 			}
 		}
 	}
@@ -164,29 +234,36 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	}
 
 	private Iterator<BindingSet> createIterator() throws QueryEvaluationException {
-		Collection<Entry> entries = buildEntries();
 		Set<BindingSet> bindingSets = createSet("bindingsets");
 
-		for (Entry entry : entries) {
-			QueryBindingSet sol = new QueryBindingSet(parentBindings);
-
-			for (String name : group.getGroupBindingNames()) {
-				BindingSet prototype = entry.getPrototype();
-				if (prototype != null) {
-					Value value = prototype.getValue(name);
-					if (value != null) {
-						// Potentially overwrites bindings from super
-						sol.setBinding(name, value);
-					}
-				}
+		if (db != null && isMergeable()) {
+			buildSpilledEntries(Collections.synchronizedSet(bindingSets));
+		} else {
+			for (Entry entry : buildEntries()) {
+				bindingSets.add(createSolution(entry));
 			}
+		}
 
-			entry.bindSolution(sol);
+		return bindingSets.iterator();
+	}
 
-			bindingSets.add(sol);
+	private BindingSet createSolution(Entry entry) throws QueryEvaluationException {
+		QueryBindingSet sol = new QueryBindingSet(parentBindings);
+
+		for (String name : groupBindingNames) {
+			BindingSet prototype = entry.getPrototype();
+			if (prototype != null) {
+				Value value = prototype.getValue(name);
+				if (value != null) {
+					// Potentially overwrites bindings from super
+					sol.setBinding(name, value);
+				}
+			}
 		}
 
-		return bindingSets.iterator();
+		entry.bindSolution(sol);
+
+		return sol;
 	}
 
 	private Collection<Entry> buildEntries() throws QueryEvaluationException {
@@ -194,7 +271,7 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		iter = strategy.evaluate(group.getArg(), parentBindings);
 
 		try {
-			Map<Key, Entry> entries = new LinkedHashMap<>();
+			GroupTable entries = new GroupTable();
 
 			if (!iter.hasNext()) {
 				// no solutions, but if aggregates are present we still need to process them to produce a
@@ -202,12 +279,10 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				final Entry entry = new Entry(null);
 				if (!entry.getAggregates().isEmpty()) {
 					entry.addSolution(EmptyBindingSet.getInstance());
-					entries.put(new Key(EmptyBindingSet.getInstance()), entry);
+					return Collections.singletonList(entry);
 				}
 			}
 
-			// long count = 0;
-
 			while (iter.hasNext()) {
 				BindingSet sol;
 				try {
@@ -215,29 +290,428 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				} catch (NoSuchElementException e) {
 					break; // closed
 				}
-				Key key = new Key(sol);
-				Entry entry = entries.get(key);
+				entries.get(sol, hash(sol)).addSolution(sol);
+			}
 
-				if (entry == null) {
-					entry = new Entry(sol);
-					entries.put(key, entry);
-				}
+			return entries.getEntries();
+		} finally {
+			iter.close();
+		}
+
+	}
 
-				entry.addSolution(sol);
+	/**
+	 * Aggregates the solutions of the argument in partitions, spilling partitions to disk when the number of groups in
+	 * memory exceeds the iteration cache sync threshold.
+	 */
+	private void buildSpilledEntries(Collection<BindingSet> results) throws QueryEvaluationException {
+		List<SpilledPartition> spilled;
+
+		CloseableIteration<BindingSet, QueryEvaluationException> iter;
+		iter = strategy.evaluate(group.getArg(), parentBindings);
+		try {
+			if (!iter.hasNext()) {
+				// no solutions, but the aggregates still produce a zero-result.
+				final Entry entry = new Entry(null);
+				if (!entry.getAggregates().isEmpty()) {
+					entry.addSolution(EmptyBindingSet.getInstance());
+					results.add(createSolution(entry));
+				}
+				return;
 			}
 
-			return entries.values();
+			PartitionedAggregation aggregation = new PartitionedAggregation(0);
+			while (iter.hasNext()) {
+				BindingSet sol;
+				try {
+					sol = iter.next();
+				} catch (NoSuchElementException e) {
+					break; // closed
+				}
+				aggregation.addSolution(sol);
+			}
+			spilled = aggregation.finish(results);
 		} finally {
 			iter.close();
 		}
 
+		int workers = ParallelEvaluationIteration.acquireWorkers(workerPermits, spilled.size() - 1);
+		if (workers == 0) {
+			for (SpilledPartition partition : spilled) {
+				aggregateSpilled(partition, 1, results);
+			}
+			return;
+		}
+
+		// aggregate the spilled partitions concurrently, in this thread and in the pool threads that got a permit
+		final AtomicInteger nextPartition = new AtomicInteger();
+		List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			try {
+				tasks.add(ParallelEvaluationIteration.WorkerPool.POOL.submit(() -> {
+					try {
+						aggregateSpilled(spilled, nextPartition, results);
+					} finally {
+						workerPermits.release();
+					}
+					return null;
+				}));
+			} catch (RuntimeException e) {
+				// the permits of the tasks that were not submitted
+				workerPermits.release(workers - i);
+				throw e;
+			}
+		}
+		aggregateSpilled(spilled, nextPartition, results);
+
+		for (ForkJoinTask<Void> task : tasks) {
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new QueryEvaluationException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof QueryEvaluationException) {
+					throw (QueryEvaluationException) e.getCause();
+				}
+				throw new QueryEvaluationException(e.getCause());
+			}
+		}
+	}
+
+	private void aggregateSpilled(List<SpilledPartition> partitions, AtomicInteger nextPartition,
+			Collection<BindingSet> results) throws QueryEvaluationException {
+		int index;
+		while (!isClosed() && (index = nextPartition.getAndIncrement()) < partitions.size()) {
+			aggregateSpilled(partitions.get(index), 1, results);
+		}
+	}
+
+	/**
+	 * Aggregates the records of a spilled partition, spilling its sub-partitions at the next level if they do not fit
+	 * in memory.
+	 */
+	private void aggregateSpilled(SpilledPartition partition, int level, Collection<BindingSet> results)
+			throws QueryEvaluationException {
+		List<SpilledPartition> spilled;
+		try {
+			PartitionedAggregation aggregation = new PartitionedAggregation(level);
+			partition.read(aggregation);
+			spilled = aggregation.finish(results);
+		} finally {
+			partition.delete();
+		}
+
+		for (SpilledPartition subPartition : spilled) {
+			aggregateSpilled(subPartition, level + 1, results);
+		}
+	}
+
+	private void deleteSpilledPartitions() {
+		synchronized (spilledPartitions) {
+			for (SpilledPartition partition : new ArrayList<>(spilledPartitions)) {
+				partition.delete();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether all aggregates of the group can be computed by merging partial results.
+	 */
+	private boolean isMergeable() {
+		for (GroupElem ge : group.getGroupElements()) {
+			AggregateOperator operator = ge.getOperator();
+			if (!(operator instanceof Count || operator instanceof Sum || operator instanceof Min
+					|| operator instanceof Max || operator instanceof Avg || operator instanceof Sample)) {
+				return false;
+			}
+			if (((AbstractAggregateOperator) operator).isDistinct()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the hash code of the values of the group binding names in a solution.
+	 */
+	private int hash(BindingSet bindingSet) {
+		int hash = 0;
+		for (String name : groupBindingNames) {
+			Value value = bindingSet.getValue(name);
+			hash = 31 * hash + (value == null ? 0 : value.hashCode());
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Checks whether two solutions have the same values for the group binding names.
+	 */
+	private boolean sameGroup(BindingSet bindingSet1, BindingSet bindingSet2) {
+		for (String name : groupBindingNames) {
+			if (!ObjectUtil.nullEquals(bindingSet1.getValue(name), bindingSet2.getValue(name))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A hash table of groups that is probed with solutions, so that no key needs to be created for each solution.
+	 */
+	private class GroupTable {
+
+		private Entry[] buckets = new Entry[16];
+
+		private int size;
+
+		/**
+		 * Gets the group of a solution, creating it if it does not exist yet.
+		 */
+		public Entry get(BindingSet bindingSet, int hash) throws QueryEvaluationException {
+			int index = hash & (buckets.length - 1);
+			for (Entry entry = buckets[index]; entry != null; entry = entry.next) {
+				if (entry.hash == hash && sameGroup(entry.getPrototype(), bindingSet)) {
+					return entry;
+				}
+			}
+
+			Entry entry = new Entry(bindingSet);
+			entry.hash = hash;
+			entry.next = buckets[index];
+			buckets[index] = entry;
+			if (++size > buckets.length * 3 / 4) {
+				resize();
+			}
+			return entry;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public List<Entry> getEntries() {
+			List<Entry> entries = new ArrayList<>(size);
+			for (Entry bucket : buckets) {
+				for (Entry entry = bucket; entry != null; entry = entry.next) {
+					entries.add(entry);
+				}
+			}
+			return entries;
+		}
+
+		private void resize() {
+			Entry[] newBuckets = new Entry[buckets.length * 2];
+			for (Entry bucket : buckets) {
+				Entry entry = bucket;
+				while (entry != null) {
+					Entry next = entry.next;
+					int index = entry.hash & (newBuckets.length - 1);
+					entry.next = newBuckets[index];
+					newBuckets[index] = entry;
+					entry = next;
+				}
+			}
+			buckets = newBuckets;
+		}
+	}
+
+	/**
+	 * Aggregates solutions and partial groups in memory, in partitions that are selected by the bits of the group hash
+	 * code at a partitioning level. When there are more groups in memory than the iteration cache sync threshold, the
+	 * partition with the most groups is spilled: its groups are written to disk as partial groups, followed by all
+	 * records of the partition that are added later.
+	 */
+	private class PartitionedAggregation {
+
+		private final int level;
+
+		private final GroupTable[] tables = new GroupTable[PARTITION_COUNT];
+
+		private final SpilledPartition[] spilled = new SpilledPartition[PARTITION_COUNT];
+
+		private long groupCount;
+
+		public PartitionedAggregation(int level) {
+			this.level = level;
+			for (int i = 0; i < PARTITION_COUNT; i++) {
+				tables[i] = new GroupTable();
+			}
+		}
+
+		public void addSolution(BindingSet bindingSet) throws QueryEvaluationException {
+			int hash = hash(bindingSet);
+			int partition = getPartition(hash);
+			if (spilled[partition] != null) {
+				spilled[partition].write(bindingSet);
+			} else {
+				getEntry(partition, bindingSet, hash).addSolution(bindingSet);
+				checkMemory();
+			}
+		}
+
+		public void addPartialGroup(PartialGroup partialGroup) throws QueryEvaluationException {
+			int hash = hash(partialGroup.prototype);
+			int partition = getPartition(hash);
+			if (spilled[partition] != null) {
+				spilled[partition].write(partialGroup);
+			} else {
+				getEntry(partition, partialGroup.prototype, hash).mergeStates(partialGroup.states);
+				checkMemory();
+			}
+		}
+
+		/**
+		 * Adds the groups in memory to the results.
+		 *
+		 * @return The partitions that have been spilled.
+		 */
+		public List<SpilledPartition> finish(Collection<BindingSet> results) throws QueryEvaluationException {
+			List<SpilledPartition> result = new ArrayList<>();
+			for (int i = 0; i < PARTITION_COUNT; i++) {
+				if (spilled[i] != null) {
+					spilled[i].finishWriting();
+					result.add(spilled[i]);
+				} else {
+					for (Entry entry : tables[i].getEntries()) {
+						results.add(createSolution(entry));
+					}
+					tables[i] = null;
+				}
+			}
+			return result;
+		}
+
+		private int getPartition(int hash) {
+			return (hash >>> (level * PARTITION_BITS)) & (PARTITION_COUNT - 1);
+		}
+
+		private Entry getEntry(int partition, BindingSet bindingSet, int hash) throws QueryEvaluationException {
+			GroupTable table = tables[partition];
+			int size = table.size();
+			Entry entry = table.get(bindingSet, hash);
+			if (table.size() > size) {
+				groupCount++;
+			}
+			return entry;
+		}
+
+		private void checkMemory() throws QueryEvaluationException {
+			if (groupCount <= iterationCacheSyncThreshold || level >= MAX_PARTITION_LEVEL) {
+				return;
+			}
+
+			int largest = -1;
+			for (int i = 0; i < PARTITION_COUNT; i++) {
+				if (spilled[i] == null && (largest == -1 || tables[i].size() > tables[largest].size())) {
+					largest = i;
+				}
+			}
+
+			SpilledPartition partition = new SpilledPartition();
+			spilled[largest] = partition;
+			for (Entry entry : tables[largest].getEntries()) {
+				partition.write(new PartialGroup(entry.getPrototype(), entry.getStates()));
+			}
+			groupCount -= tables[largest].size();
+			tables[largest] = null;
+		}
+	}
+
+	/**
+	 * The aggregated values of a group that has been spilled to disk.
+	 */
+	private static class PartialGroup implements Serializable {
+
+		private static final long serialVersionUID = -2379432532456713204L;
+
+		private final BindingSet prototype;
+
+		private final Serializable[] states;
+
+		public PartialGroup(BindingSet prototype, Serializable[] states) {
+			this.prototype = prototype;
+			this.states = states;
+		}
+	}
+
+	/**
+	 * A partition that has been spilled to a temporary file, holding solutions and partial groups.
+	 */
+	private class SpilledPartition {
+
+		private final File file;
+
+		private ObjectOutputStream out;
+
+		private long recordCount;
+
+		public SpilledPartition() throws QueryEvaluationException {
+			try {
+				file = File.createTempFile("group-partition", null);
+				out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			} catch (IOException e) {
+				throw new QueryEvaluationException("could not spill group partition", e);
+			}
+			spilledPartitions.add(this);
+		}
+
+		public void write(Serializable record) throws QueryEvaluationException {
+			try {
+				out.writeObject(record);
+				if (++recordCount % SPILL_RESET_INTERVAL == 0) {
+					out.reset();
+				}
+			} catch (IOException e) {
+				throw new QueryEvaluationException("could not spill group partition", e);
+			}
+		}
+
+		public void finishWriting() throws QueryEvaluationException {
+			try {
+				out.close();
+				out = null;
+			} catch (IOException e) {
+				throw new QueryEvaluationException("could not spill group partition", e);
+			}
+		}
+
+		public void read(PartitionedAggregation aggregation) throws QueryEvaluationException {
+			try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				for (long i = 0; i < recordCount && !isClosed(); i++) {
+					Object record = in.readObject();
+					if (record instanceof PartialGroup) {
+						aggregation.addPartialGroup((PartialGroup) record);
+					} else {
+						aggregation.addSolution((BindingSet) record);
+					}
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				throw new QueryEvaluationException("could not read spilled group partition", e);
+			}
+		}
+
+		public void delete() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore, the file is deleted anyway
+				}
+				out = null;
+			}
+			file.delete();
+			spilledPartitions.remove(this);
+		}
 	}
 
 	/**
 	 * A unique key for a set of existing bindings.
 	 * 
 	 * @author David Huynh
+	 * @deprecated No longer used by this class, groups are looked up with the solutions themselves.
 	 */
+	@Deprecated
 	protected class Key implements Serializable {
 
 		private static final long serialVersionUID = 4461951265373324084L;
@@ -291,6 +765,13 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 		private volatile Map<String, Aggregate> aggregates;
 
+		/**
+		 * The hash code of the group and the next entry in the same bucket of a {@link GroupTable}.
+		 */
+		private int hash;
+
+		private Entry next;
+
 		public Entry(BindingSet prototype) throws ValueExprEvaluationException, QueryEvaluationException {
 			this.prototype = prototype;
 
@@ -325,6 +806,26 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		/**
+		 * Gets the partial results of the aggregates, which can be merged into another entry of the same group.
+		 */
+		public Serializable[] getStates() throws QueryEvaluationException {
+			Collection<Aggregate> values = getAggregates().values();
+			Serializable[] states = new Serializable[values.size()];
+			int i = 0;
+			for (Aggregate aggregate : values) {
+				states[i++] = aggregate.getState();
+			}
+			return states;
+		}
+
+		public void mergeStates(Serializable[] states) throws QueryEvaluationException {
+			int i = 0;
+			for (Aggregate aggregate : getAggregates().values()) {
+				aggregate.mergeState(states[i++]);
+			}
+		}
+
 		public void bindSolution(QueryBindingSet sol) throws QueryEvaluationException {
 			for (String name : getAggregates().keySet()) {
 				try {
@@ -383,6 +884,20 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 		public abstract void processAggregate(BindingSet bindingSet) throws QueryEvaluationException;
 
+		/**
+		 * Gets the partial result of this aggregate. Only supported by aggregates without DISTINCT.
+		 */
+		public Serializable getState() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Merges the partial result of another aggregate for the same group into this aggregate.
+		 */
+		public void mergeState(Serializable state) throws QueryEvaluationException {
+			throw new UnsupportedOperationException();
+		}
+
 		protected boolean distinctValue(Value value) {
 			if (distinctValues == null) {
 				return true;
@@ -457,6 +972,16 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			return result;
 		}
 
+		@Override
+		public Serializable getState() {
+			return count;
+		}
+
+		@Override
+		public void mergeState(Serializable state) {
+			count += (Long) state;
+		}
+
 		@Override
 		public Value getValue() {
 			return vf.createLiteral(Long.toString(count), XMLSchema.INTEGER);
@@ -485,6 +1010,19 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public Serializable getState() {
+			return min;
+		}
+
+		@Override
+		public void mergeState(Serializable state) {
+			Value v = (Value) state;
+			if (v != null && (min == null || comparator.compare(v, min) < 0)) {
+				min = v;
+			}
+		}
+
 		@Override
 		public Value getValue() {
 			return min;
@@ -513,6 +1051,19 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public Serializable getState() {
+			return max;
+		}
+
+		@Override
+		public void mergeState(Serializable state) {
+			Value v = (Value) state;
+			if (v != null && (max == null || comparator.compare(v, max) > 0)) {
+				max = v;
+			}
+		}
+
 		@Override
 		public Value getValue() {
 			return max;
@@ -552,6 +1103,22 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public Serializable getState() {
+			return new Serializable[] { sum, typeError };
+		}
+
+		@Override
+		public void mergeState(Serializable state) throws QueryEvaluationException {
+			Serializable[] values = (Serializable[]) state;
+			if (typeError == null) {
+				typeError = (ValueExprEvaluationException) values[1];
+			}
+			if (typeError == null) {
+				sum = MathUtil.compute(sum, (Literal) values[0], MathOp.PLUS);
+			}
+		}
+
 		@Override
 		public Value getValue() throws ValueExprEvaluationException {
 			if (typeError != null) {
@@ -603,6 +1170,23 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public Serializable getState() {
+			return new Serializable[] { sum, count, typeError };
+		}
+
+		@Override
+		public void mergeState(Serializable state) throws QueryEvaluationException {
+			Serializable[] values = (Serializable[]) state;
+			if (typeError == null) {
+				typeError = (ValueExprEvaluationException) values[2];
+			}
+			if (typeError == null) {
+				sum = MathUtil.compute(sum, (Literal) values[0], MathOp.PLUS);
+				count += (Long) values[1];
+			}
+		}
+
 		@Override
 		public Value getValue() throws ValueExprEvaluationException {
 			if (typeError != null) {
@@ -643,6 +1227,19 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public Serializable getState() {
+			return sample;
+		}
+
+		@Override
+		public void mergeState(Serializable state) {
+			Value v = (Value) state;
+			if (v != null && (sample == null || random.nextFloat() < 0.5f)) {
+				sample = v;
+			}
+		}
+
 		@Override
 		public Value getValue() {
 			return sample;
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+
+/**
+ * Sort-merge join implementation. Both arguments are evaluated independently, sorted on the values of the join
+ * attributes and then merged. The join attributes must be bound in all solutions of both arguments, which is the case
+ * for the assured binding names of the arguments.
+ * <p>
+ * The arguments are sorted in runs of a limited number of solutions, which are written to temporary files and merged
+ * when they are read. Apart from the runs being sorted, only the solutions of the right argument with the join
+ * attribute values of the current solution of the left argument are kept in memory.
+ */
+public class MergeJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+
+	protected final String[] joinAttributes;
+
+	private final Comparator<BindingSet> comparator;
+
+	private final int maxSolutionsInMemory;
+
+	private ExternalSorter<BindingSet> leftSorter;
+
+	private ExternalSorter<BindingSet> rightSorter;
+
+	private Iterator<BindingSet> leftSorted;
+
+	private Iterator<BindingSet> rightSorted;
+
+	/**
+	 * The next solution of the right argument that has not been added to the current group yet.
+	 */
+	private BindingSet nextRight;
+
+	/**
+	 * The solutions of the right argument with the join attribute values of the current left solution.
+	 */
+	private final List<BindingSet> rightGroup = new ArrayList<>();
+
+	private BindingSet leftBindings;
+
+	/**
+	 * The position of the next right solution to join with the current left solution.
+	 */
+	private int rightPos;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public MergeJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings)
+			throws QueryEvaluationException {
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings);
+	}
+
+	public MergeJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right, BindingSet bindings)
+			throws QueryEvaluationException {
+		this(strategy, left, right, bindings, 0);
+	}
+
+	/**
+	 * @param maxSolutionsInMemory The maximum number of solutions of each argument that are sorted in memory, or
+	 *                             <tt>0</tt> to sort all solutions in memory.
+	 */
+	public MergeJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings,
+			long maxSolutionsInMemory) throws QueryEvaluationException {
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, maxSolutionsInMemory);
+	}
+
+	/**
+	 * @param maxSolutionsInMemory The maximum number of solutions of each argument that are sorted in memory, or
+	 *                             <tt>0</tt> to sort all solutions in memory.
+	 */
+	public MergeJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right, BindingSet bindings,
+			long maxSolutionsInMemory) throws QueryEvaluationException {
+		this(strategy.evaluate(left, bindings), left.getBindingNames(), strategy.evaluate(right, bindings),
+				right.getBindingNames(), maxSolutionsInMemory);
+	}
+
+	public MergeJoinIteration(CloseableIteration<BindingSet, QueryEvaluationException> leftIter,
+			Set<String> leftBindingNames, CloseableIteration<BindingSet, QueryEvaluationException> rightIter,
+			Set<String> rightBindingNames) throws QueryEvaluationException {
+		this(leftIter, leftBindingNames, rightIter, rightBindingNames, 0);
+	}
+
+	/**
+	 * @param maxSolutionsInMemory The maximum number of solutions of each argument that are sorted in memory, or
+	 *                             <tt>0</tt> to sort all solutions in memory.
+	 */
+	public MergeJoinIteration(CloseableIteration<BindingSet, QueryEvaluationException> leftIter,
+			Set<String> leftBindingNames, CloseableIteration<BindingSet, QueryEvaluationException> rightIter,
+			Set<String> rightBindingNames, long maxSolutionsInMemory) throws QueryEvaluationException {
+		this.leftIter = leftIter;
+		this.rightIter = rightIter;
+		this.maxSolutionsInMemory = maxSolutionsInMemory > 0 ? (int) Math.min(maxSolutionsInMemory, Integer.MAX_VALUE)
+				: Integer.MAX_VALUE;
+
+		List<String> joinAttributeNames = new ArrayList<>(leftBindingNames);
+		joinAttributeNames.retainAll(rightBindingNames);
+		joinAttributes = joinAttributeNames.toArray(new String[joinAttributeNames.size()]);
+
+		comparator = (b1, b2) -> {
+			for (String name : joinAttributes) {
+				int result = compare(b1.getValue(name), b2.getValue(name));
+				if (result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		};
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement() throws QueryEvaluationException {
+		if (leftSorted == null) {
+			leftSorter = new ExternalSorter<>(comparator, maxSolutionsInMemory, Long.MAX_VALUE);
+			leftSorted = sort(leftIter, leftSorter);
+			rightSorter = new ExternalSorter<>(comparator, maxSolutionsInMemory, Long.MAX_VALUE);
+			rightSorted = sort(rightIter, rightSorter);
+			nextRight = rightSorted.hasNext() ? rightSorted.next() : null;
+		}
+
+		while (leftBindings == null || rightPos >= rightGroup.size()) {
+			if (!leftSorted.hasNext()) {
+				return null;
+			}
+
+			BindingSet next = leftSorted.next();
+			if (leftBindings == null || comparator.compare(leftBindings, next) != 0) {
+				nextGroup(next);
+				if (rightGroup.isEmpty() && nextRight == null) {
+					// no more right solutions to join with
+					return null;
+				}
+			}
+			leftBindings = next;
+			rightPos = 0;
+		}
+
+		BindingSet rightBindings = rightGroup.get(rightPos++);
+
+		QueryBindingSet result = new QueryBindingSet(leftBindings);
+		for (String name : rightBindings.getBindingNames()) {
+			if (!result.hasBinding(name)) {
+				Value v = rightBindings.getValue(name);
+				if (v != null) {
+					result.addBinding(name, v);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			super.handleClose();
+		} finally {
+			try {
+				leftIter.close();
+			} finally {
+				try {
+					rightIter.close();
+				} finally {
+					rightGroup.clear();
+					if (leftSorter != null) {
+						leftSorter.delete();
+					}
+					if (rightSorter != null) {
+						rightSorter.delete();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the solutions of the right argument with the join attribute values of a left solution, skipping the
+	 * right solutions with smaller values.
+	 */
+	private void nextGroup(BindingSet leftBindings) {
+		rightGroup.clear();
+		while (nextRight != null) {
+			int result = comparator.compare(nextRight, leftBindings);
+			if (result > 0) {
+				break;
+			} else if (result == 0) {
+				rightGroup.add(nextRight);
+			}
+			nextRight = rightSorted.hasNext() ? rightSorted.next() : null;
+		}
+	}
+
+	private Iterator<BindingSet> sort(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+			ExternalSorter<BindingSet> sorter) throws QueryEvaluationException {
+		while (iter.hasNext()) {
+			sorter.add(iter.next());
+		}
+		return sorter.iterator();
+	}
+
+	/**
+	 * Compares two values in an order that is consistent with {@link Value#equals(Object)}. The order itself has no
+	 * meaning.
+	 */
+	private static int compare(Value v1, Value v2) {
+		if (v1 == v2) {
+			return 0;
+		} else if (v1 == null) {
+			return -1;
+		} else if (v2 == null) {
+			return 1;
+		}
+
+		int result = Integer.compare(typeRank(v1), typeRank(v2));
+		if (result == 0) {
+			result = v1.stringValue().compareTo(v2.stringValue());
+		}
+		if (result == 0 && v1 instanceof Literal) {
+			Literal l1 = (Literal) v1;
+			Literal l2 = (Literal) v2;
+			result = l1.getDatatype().stringValue().compareTo(l2.getDatatype().stringValue());
+			if (result == 0) {
+				result = l1.getLanguage().orElse("").compareTo(l2.getLanguage().orElse(""));
+			}
+		}
+		return result;
+	}
+
+	private static int typeRank(Value value) {
+		if (value instanceof IRI) {
+			return 0;
+		} else if (value instanceof BNode) {
+			return 1;
+		} else {
+			return 2;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+
+/**
+ * A nested loop join that evaluates the right argument for batches of solutions of the left argument concurrently.
+ * Workers take the next batch of left solutions from the shared left iteration and evaluate the right argument for
+ * each of them. The order of the results is not preserved.
+ */
+public class ParallelBindJoinIteration extends ParallelEvaluationIteration {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of solutions of the left argument that a worker takes at once.
+	 */
+	public static final int BATCH_SIZE = 64;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final TupleExpr rightArg;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelBindJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings,
+			Semaphore workerPermits, int workerCount) throws QueryEvaluationException {
+		super(workerPermits, workerCount, DEFAULT_QUEUE_CAPACITY);
+		this.strategy = strategy;
+		this.rightArg = join.getRightArg();
+		try {
+			this.leftIter = strategy.evaluate(join.getLeftArg(), bindings);
+		} catch (RuntimeException e) {
+			releaseWorkers();
+			throw e;
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected boolean processNext() throws QueryEvaluationException, InterruptedException {
+		List<BindingSet> batch = new ArrayList<>(BATCH_SIZE);
+		synchronized (leftIter) {
+			while (batch.size() < BATCH_SIZE && !isClosed() && leftIter.hasNext()) {
+				batch.add(leftIter.next());
+			}
+		}
+
+		for (BindingSet leftBindings : batch) {
+			if (isClosed()) {
+				return false;
+			}
+			putAll(strategy.evaluate(rightArg, leftBindings));
+		}
+		return !batch.isEmpty();
+	}
+
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			super.handleClose();
+		} finally {
+			// the workers have finished; the monitor orders the close after their last read of the input
+			synchronized (leftIter) {
+				leftIter.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.impl.QueueCursor;
+
+/**
+ * Base class for iterations that compute their results with a number of worker tasks on a shared work-stealing pool.
+ * The workers put their results in a bounded queue, and block when it is full. This keeps the memory that is used by
+ * a parallel evaluation bounded when the results are consumed slowly.
+ * <p>
+ * Each worker holds a permit of the supplied semaphore, which is released when the worker finishes. This bounds the
+ * number of workers of all parallel iterations of a query. Workers do not start workers of their own, see
+ * {@link #isWorkerThread()}, and wait for the consumer as managed blockers, so that the pool is never exhausted by
+ * tasks that wait for other tasks.
+ */
+public abstract class ParallelEvaluationIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of results that workers can put in the queue before they block.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Semaphore workerPermits;
+
+	private final int workerCount;
+
+	/**
+	 * The number of workers that have not finished. Also the monitor on which {@link #handleClose()} waits for them.
+	 */
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+
+	private final QueueCursor<BindingSet> queue;
+
+	/**
+	 * Flag indicating whether the workers have been started, or can no longer be started. Guarded by
+	 * {@link #activeWorkers}.
+	 */
+	private boolean started;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param workerPermits The semaphore to release a permit of when a worker finishes.
+	 * @param workerCount   The number of workers, for which permits have already been acquired.
+	 * @param queueCapacity The maximum number of results that have not been consumed yet.
+	 */
+	protected ParallelEvaluationIteration(Semaphore workerPermits, int workerCount, int queueCapacity) {
+		this.workerPermits = workerPermits;
+		this.workerCount = workerCount;
+		this.queue = new QueueCursor<>(queueCapacity);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Performs the next unit of work of a worker, and puts its results with {@link #put(BindingSet)}. Called
+	 * concurrently by all workers.
+	 *
+	 * @return <tt>false</tt> if there is no more work to do.
+	 */
+	protected abstract boolean processNext() throws QueryEvaluationException, InterruptedException;
+
+	/**
+	 * Adds a result, blocking while the queue is full.
+	 */
+	protected void put(final BindingSet bindings) throws InterruptedException {
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+			private boolean done;
+
+			@Override
+			public boolean block() throws InterruptedException {
+				queue.put(bindings);
+				done = true;
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return done;
+			}
+		});
+	}
+
+	/**
+	 * Acquires permits for workers on the shared pool, without waiting. No permits are acquired by threads of the pool
+	 * itself, so that workers never wait for nested workers to get a thread of the pool.
+	 * 
+	 * @param permits The semaphore to acquire the permits of, or <tt>null</tt> if no workers can be used.
+	 * @param max     The maximum number of workers that can be used.
+	 * @return The number of permits that were acquired, which is zero if the work should be done by the calling thread.
+	 */
+	public static int acquireWorkers(Semaphore permits, int max) {
+		if (permits == null || isWorkerThread()) {
+			return 0;
+		}
+		int count = 0;
+		while (count < max && permits.tryAcquire()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Checks whether the current thread is a thread of the pool that runs the workers. Operators that are evaluated by
+	 * a worker should be evaluated sequentially, because the pool may not have a free thread for any nested workers.
+	 */
+	public static boolean isWorkerThread() {
+		Thread thread = Thread.currentThread();
+		return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == WorkerPool.POOL;
+	}
+
+	/**
+	 * Adds all results of an iteration and closes it.
+	 */
+	protected void putAll(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+			throws QueryEvaluationException, InterruptedException {
+		try {
+			while (!isClosed() && iter.hasNext()) {
+				put(iter.next());
+			}
+		} finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Releases the permits of the workers, if they have not been started yet. Subclasses call this method when their
+	 * constructor fails, since the iteration is then never closed.
+	 */
+	protected void releaseWorkers() {
+		if (!markStarted()) {
+			workerPermits.release(workerCount);
+		}
+	}
+
+	@Override
+	protected BindingSet getNextElement() throws QueryEvaluationException {
+		startWorkers();
+
+		return hasNext(queue) ? queue.next() : null;
+	}
+
+	/**
+	 * Waits for the next result as a managed blocker, so that the pool can compensate if it is called from one of its
+	 * threads.
+	 */
+	private static boolean hasNext(final QueueCursor<BindingSet> queue) throws QueryEvaluationException {
+		final boolean[] hasNext = new boolean[1];
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+				private boolean done;
+
+				@Override
+				public boolean block() {
+					hasNext[0] = queue.hasNext();
+					done = true;
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return done;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryEvaluationException(e);
+		}
+		return hasNext[0];
+	}
+
+	/**
+	 * Closes the queue, which makes the workers stop, and waits until all workers have finished. Subclasses close the
+	 * inputs of the workers after calling this method, so that no worker still reads them.
+	 */
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			super.handleClose();
+		} finally {
+			try {
+				queue.close();
+			} finally {
+				if (markStarted()) {
+					awaitWorkers();
+				} else {
+					// the permits of workers that never started
+					workerPermits.release(workerCount);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the started flag.
+	 * 
+	 * @return <tt>true</tt> if the flag was already set.
+	 */
+	private boolean markStarted() {
+		synchronized (activeWorkers) {
+			boolean wasStarted = started;
+			started = true;
+			return wasStarted;
+		}
+	}
+
+	private void startWorkers() {
+		synchronized (activeWorkers) {
+			if (started) {
+				return;
+			}
+			started = true;
+			// counted before they run, so that a concurrent close waits for them
+			activeWorkers.set(workerCount);
+		}
+		for (int i = 0; i < workerCount; i++) {
+			WorkerPool.POOL.execute(this::runWorker);
+		}
+	}
+
+	/**
+	 * Waits until all workers have finished. The wait is not interrupted, since the inputs of the workers can only be
+	 * closed once they have finished, but the interrupted status of the thread is restored.
+	 */
+	private void awaitWorkers() {
+		boolean interrupted = false;
+		synchronized (activeWorkers) {
+			while (activeWorkers.get() > 0) {
+				try {
+					activeWorkers.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void runWorker() {
+		try {
+			while (!isClosed() && processNext()) {
+				// continue with the next unit of work
+			}
+		} catch (InterruptedException e) {
+			queue.toss(e);
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			queue.toss(e);
+		} finally {
+			workerPermits.release();
+			if (activeWorkers.decrementAndGet() == 0) {
+				queue.done();
+				synchronized (activeWorkers) {
+					activeWorkers.notifyAll();
+				}
+			}
+		}
+	}
+
+	/*------------------------*
+	 * Inner class WorkerPool *
+	 *------------------------*/
+
+	/**
+	 * Holds the pool that is shared by all parallel iterations and other parallel operators, which is only created when
+	 * it is first used.
+	 */
+	static class WorkerPool {
+
+		static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("rdf4j-parallel-evaluation-" + thread.getPoolIndex());
+			return thread;
+		}, null, true);
+	}
+}
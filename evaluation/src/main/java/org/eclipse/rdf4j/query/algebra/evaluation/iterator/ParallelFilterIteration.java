@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+
+/**
+ * Evaluates the condition of a filter concurrently on partitions of the solutions of its argument, typically a scan
+ * of a statement pattern. The argument is read by one worker at a time, in partitions of {@link #PARTITION_SIZE}
+ * solutions, and each partition is filtered by a {@link FilterIterator}. The order of the results is not preserved.
+ */
+public class ParallelFilterIteration extends ParallelEvaluationIteration {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of solutions of the argument that a worker takes at once.
+	 */
+	public static final int PARTITION_SIZE = 256;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Filter filter;
+
+	private final EvaluationStrategy strategy;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> argIter;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelFilterIteration(EvaluationStrategy strategy, Filter filter, BindingSet bindings,
+			Semaphore workerPermits, int workerCount) throws QueryEvaluationException {
+		super(workerPermits, workerCount, DEFAULT_QUEUE_CAPACITY);
+		this.filter = filter;
+		this.strategy = strategy;
+		try {
+			this.argIter = strategy.evaluate(filter.getArg(), bindings);
+		} catch (RuntimeException e) {
+			releaseWorkers();
+			throw e;
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected boolean processNext() throws QueryEvaluationException, InterruptedException {
+		List<BindingSet> partition = new ArrayList<>(PARTITION_SIZE);
+		synchronized (argIter) {
+			while (partition.size() < PARTITION_SIZE && !isClosed() && argIter.hasNext()) {
+				partition.add(argIter.next());
+			}
+		}
+
+		if (partition.isEmpty()) {
+			return false;
+		}
+		putAll(new FilterIterator(filter, new CloseableIteratorIteration<>(partition.iterator()), strategy));
+		return true;
+	}
+
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			super.handleClose();
+		} finally {
+			// the workers have finished; the monitor orders the close after their last read of the input
+			synchronized (argIter) {
+				argIter.close();
+			}
+		}
+	}
+}
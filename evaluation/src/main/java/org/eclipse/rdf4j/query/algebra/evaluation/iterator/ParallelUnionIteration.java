@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+
+/**
+ * Evaluates the branches of a union concurrently. Each worker repeatedly takes the next branch that has not been
+ * evaluated yet, until all branches have been evaluated.
+ */
+public class ParallelUnionIteration extends ParallelEvaluationIteration {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final List<TupleExpr> branches;
+
+	private final BindingSet bindings;
+
+	private final AtomicInteger nextBranch = new AtomicInteger();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelUnionIteration(EvaluationStrategy strategy, List<TupleExpr> branches, BindingSet bindings,
+			Semaphore workerPermits, int workerCount) {
+		super(workerPermits, workerCount, DEFAULT_QUEUE_CAPACITY);
+		this.strategy = strategy;
+		this.branches = branches;
+		this.bindings = bindings;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected boolean processNext() throws QueryEvaluationException, InterruptedException {
+		int branch = nextBranch.getAndIncrement();
+		if (branch >= branches.size()) {
+			return false;
+		}
+		putAll(strategy.evaluate(branches.get(branch), bindings));
+		return true;
+	}
+}
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.DelayedIteration;
+import org.eclipse.rdf4j.common.iteration.Iteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Order;
+import org.eclipse.rdf4j.query.algebra.OrderElem;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.evaluation.ValueExprEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.util.OrderComparator;
+import org.eclipse.rdf4j.query.algebra.evaluation.util.ValueComparator;
+
+/**
+ * Sorts the input on the elements of an {@link Order} and optionally applies limit and distinct. The sort keys are
+ * evaluated once for each solution, instead of for each comparison.
+ * <p>
+ * If the limit does not exceed the number of solutions that may be kept in memory, the first solutions are selected
+ * with a bounded heap. Otherwise the input is sorted in runs of at most that many solutions, which are written to
+ * temporary files and merged.
+ */
+public class SortIterator extends DelayedIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+
+	private final OrderElem[] elements;
+
+	private final ValueComparator valueComparator = new ValueComparator();
+
+	/**
+	 * Orders solutions with equal sort keys in the same way as {@link OrderComparator}.
+	 */
+	private final OrderComparator tieBreaker;
+
+	private final Comparator<SortedSolution> comparator = this::compare;
+
+	private final long limit;
+
+	private final boolean distinct;
+
+	private final int maxSolutionsInMemory;
+
+	private ExternalSorter<SortedSolution> sorter;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param strategy             The strategy to evaluate the sort keys with.
+	 * @param order                The order to sort on.
+	 * @param iter                 The solutions to sort.
+	 * @param limit                The maximum number of solutions to return.
+	 * @param distinct             Whether duplicate solutions should be removed.
+	 * @param maxSolutionsInMemory The maximum number of solutions that are sorted in memory, or <tt>0</tt> to sort all
+	 *                             solutions in memory.
+	 */
+	public SortIterator(EvaluationStrategy strategy, Order order,
+			CloseableIteration<BindingSet, QueryEvaluationException> iter, long limit, boolean distinct,
+			long maxSolutionsInMemory) {
+		this.strategy = strategy;
+		this.iter = iter;
+		List<OrderElem> elementList = order.getElements();
+		this.elements = elementList.toArray(new OrderElem[elementList.size()]);
+		this.tieBreaker = new OrderComparator(strategy, new Order(), valueComparator);
+		this.limit = limit;
+		this.distinct = distinct;
+		this.maxSolutionsInMemory = maxSolutionsInMemory > 0 ? (int) Math.min(maxSolutionsInMemory, Integer.MAX_VALUE)
+				: Integer.MAX_VALUE;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected Iteration<BindingSet, QueryEvaluationException> createIteration() throws QueryEvaluationException {
+		try {
+			if (limit <= 0) {
+				return new SortedSolutionIteration(Collections.<SortedSolution>emptyIterator());
+			} else if (limit <= maxSolutionsInMemory) {
+				return new SortedSolutionIteration(selectFirst().iterator());
+			} else {
+				return new SortedSolutionIteration(sortExternally());
+			}
+		} finally {
+			iter.close();
+		}
+	}
+
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			super.handleClose();
+		} finally {
+			try {
+				iter.close();
+			} finally {
+				if (sorter != null) {
+					sorter.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Selects the first solutions up to the limit with a heap that has the greatest selected solution at its head.
+	 */
+	private List<SortedSolution> selectFirst() throws QueryEvaluationException {
+		PriorityQueue<SortedSolution> heap = new PriorityQueue<>(11, comparator.reversed());
+		Set<BindingSet> selected = distinct ? new HashSet<>() : null;
+
+		while (iter.hasNext()) {
+			SortedSolution solution;
+			try {
+				solution = createSortedSolution(iter.next());
+			} catch (NoSuchElementException e) {
+				break; // closed
+			}
+
+			if (heap.size() >= limit) {
+				if (compare(solution, heap.peek()) >= 0) {
+					continue;
+				}
+				if (selected != null && selected.contains(solution.bindings)) {
+					continue;
+				}
+				SortedSolution removed = heap.poll();
+				if (selected != null) {
+					selected.remove(removed.bindings);
+				}
+			} else if (selected != null && selected.contains(solution.bindings)) {
+				continue;
+			}
+
+			heap.add(solution);
+			if (selected != null) {
+				selected.add(solution.bindings);
+			}
+		}
+
+		SortedSolution[] result = heap.toArray(new SortedSolution[heap.size()]);
+		Arrays.parallelSort(result, comparator);
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * Sorts the input in runs that fit in memory, writes the runs to disk and merges them. Unless duplicates are
+	 * removed later on, the solutions of a run that are beyond the limit will never be returned and are dropped.
+	 */
+	private Iterator<SortedSolution> sortExternally() throws QueryEvaluationException {
+		sorter = new ExternalSorter<>(comparator, maxSolutionsInMemory, distinct ? Long.MAX_VALUE : limit);
+		while (iter.hasNext()) {
+			try {
+				sorter.add(createSortedSolution(iter.next()));
+			} catch (NoSuchElementException e) {
+				break; // closed
+			}
+		}
+		return sorter.iterator();
+	}
+
+	private SortedSolution createSortedSolution(BindingSet bindings) throws QueryEvaluationException {
+		Value[] keys = new Value[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			try {
+				keys[i] = strategy.evaluate(elements[i].getExpr(), bindings);
+			} catch (ValueExprEvaluationException e) {
+				// unbound or invalid sort keys are ordered first, like in OrderComparator
+				keys[i] = null;
+			}
+		}
+		return new SortedSolution(keys, bindings);
+	}
+
+	private int compare(SortedSolution s1, SortedSolution s2) {
+		for (int i = 0; i < elements.length; i++) {
+			int result = valueComparator.compare(s1.keys[i], s2.keys[i]);
+			if (result != 0) {
+				return elements[i].isAscending() ? result : -result;
+			}
+		}
+		return tieBreaker.compare(s1.bindings, s2.bindings);
+	}
+
+	/*----------------------------*
+	 * Inner class SortedSolution *
+	 *----------------------------*/
+
+	/**
+	 * A solution together with the values of its sort keys.
+	 */
+	private static class SortedSolution implements Serializable {
+
+		private static final long serialVersionUID = 6480238123716372165L;
+
+		private final Value[] keys;
+
+		private final BindingSet bindings;
+
+		public SortedSolution(Value[] keys, BindingSet bindings) {
+			this.keys = keys;
+			this.bindings = bindings;
+		}
+	}
+
+	/*-------------------------------------*
+	 * Inner class SortedSolutionIteration *
+	 *-------------------------------------*/
+
+	/**
+	 * Returns the bindings of sorted solutions up to the limit, skipping duplicates if distinct is set. Duplicates are
+	 * adjacent, because equal solutions have equal sort keys.
+	 */
+	private class SortedSolutionIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final Iterator<SortedSolution> solutions;
+
+		private BindingSet previous;
+
+		private long count;
+
+		public SortedSolutionIteration(Iterator<SortedSolution> solutions) {
+			this.solutions = solutions;
+		}
+
+		@Override
+		protected BindingSet getNextElement() throws QueryEvaluationException {
+			while (count < limit && solutions.hasNext()) {
+				BindingSet next = solutions.next().bindings;
+				if (distinct && next.equals(previous)) {
+					continue;
+				}
+				previous = next;
+				count++;
+				return next;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache that can be shared by many threads. When the cache is full, approximately the least recently used
+ * entries are evicted.
+ * <p>
+ * Lookups and insertions never block. Each entry records the value of a logical clock when it was last used, which
+ * is only advanced when an entry is used that is not the most recently used one. Entries are evicted in batches by a
+ * single thread at a time, so the number of entries can briefly exceed the capacity while other threads add entries.
+ */
+public class BoundedConcurrentCache<K, V> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The fraction of the capacity that is evicted at once, so that eviction is not needed for every insertion.
+	 */
+	private static final float EVICTION_FRACTION = 0.1f;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final int capacity;
+
+	private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param capacity The maximum number of entries in the cache.
+	 */
+	public BoundedConcurrentCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the value of a key, and records a hit or a miss.
+	 *
+	 * @return The value, or <tt>null</tt> if the key is not in the cache.
+	 */
+	public V get(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			missCount.increment();
+			return null;
+		}
+
+		if (entry.lastUsed < clock.get()) {
+			entry.lastUsed = clock.incrementAndGet();
+		}
+		hitCount.increment();
+		return entry.value;
+	}
+
+	/**
+	 * Adds or replaces the value of a key, evicting the least recently used entries if the cache is full.
+	 */
+	public void put(K key, V value) {
+		entries.put(key, new Entry<>(value, clock.incrementAndGet()));
+		while (entries.size() > capacity && evictionLock.tryLock()) {
+			try {
+				evict();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Removes a key from the cache.
+	 */
+	public void remove(K key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all entries from the cache. The hit and miss counts are not reset.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Gets the number of entries in the cache.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of lookups that found the key in the cache.
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the number of lookups that did not find the key in the cache.
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Gets the fraction of lookups that found the key in the cache, or <tt>0</tt> if there have been no lookups.
+	 */
+	public double getHitRate() {
+		long hits = hitCount.sum();
+		long total = hits + missCount.sum();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * Evicts the entries that were used least recently, until the number of entries is a fraction below the capacity.
+	 * Entries that are used while they are evicted are kept.
+	 */
+	private void evict() {
+		int excess = entries.size() - capacity + (int) (capacity * EVICTION_FRACTION);
+		if (excess <= 0) {
+			return;
+		}
+
+		long[] lastUsed = new long[entries.size()];
+		int count = 0;
+		for (Entry<V> entry : entries.values()) {
+			if (count == lastUsed.length) {
+				break;
+			}
+			lastUsed[count++] = entry.lastUsed;
+		}
+		if (count == 0) {
+			return;
+		}
+		Arrays.sort(lastUsed, 0, count);
+		long threshold = lastUsed[Math.min(excess, count) - 1];
+
+		for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+			if (excess == 0) {
+				break;
+			}
+			if (e.getValue().lastUsed <= threshold && entries.remove(e.getKey(), e.getValue())) {
+				excess--;
+			}
+		}
+	}
+
+	/*-------------------*
+	 * Inner class Entry *
+	 *-------------------*/
+
+	private static class Entry<V> {
+
+		private final V value;
+
+		/**
+		 * The value of the clock when the entry was last used.
+		 */
+		private volatile long lastUsed;
+
+		Entry(V value, long lastUsed) {
+			this.value = value;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
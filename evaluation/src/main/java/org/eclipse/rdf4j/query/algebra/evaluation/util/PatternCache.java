@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * A bounded cache of compiled regular expressions, for patterns that are not constant in a query and therefore can not
+ * be compiled once per query. The cache is shared by all queries, so lookups do not block, see
+ * {@link BoundedConcurrentCache}. When the cache is full, the least recently used patterns are evicted.
+ */
+public class PatternCache {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default maximum number of patterns in the cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private static final PatternCache INSTANCE = new PatternCache(DEFAULT_CAPACITY);
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final BoundedConcurrentCache<Key, Pattern> patterns;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param capacity The maximum number of patterns in the cache.
+	 */
+	public PatternCache(int capacity) {
+		patterns = new BoundedConcurrentCache<>(capacity);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the cache that is shared by all queries.
+	 */
+	public static PatternCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets the compiled form of a regular expression, compiling it if it is not in the cache.
+	 *
+	 * @param regex The regular expression.
+	 * @param flags The match flags, see {@link Pattern#compile(String, int)}.
+	 * @throws java.util.regex.PatternSyntaxException If the regular expression is invalid.
+	 */
+	public Pattern getPattern(String regex, int flags) {
+		Key key = new Key(regex, flags);
+
+		Pattern pattern = patterns.get(key);
+		if (pattern == null) {
+			pattern = Pattern.compile(regex, flags);
+			patterns.put(key, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Gets the number of patterns in the cache.
+	 */
+	public int size() {
+		return patterns.size();
+	}
+
+	/**
+	 * Removes all patterns from the cache. The hit and miss counts are not reset.
+	 */
+	public void clear() {
+		patterns.clear();
+	}
+
+	/**
+	 * Gets the number of times a pattern was found in the cache.
+	 */
+	public long getHitCount() {
+		return patterns.getHitCount();
+	}
+
+	/**
+	 * Gets the number of times a pattern was not found in the cache and had to be compiled.
+	 */
+	public long getMissCount() {
+		return patterns.getMissCount();
+	}
+
+	/**
+	 * Gets the fraction of lookups that found the pattern in the cache, or <tt>0</tt> if there have been no lookups.
+	 */
+	public double getHitRate() {
+		return patterns.getHitRate();
+	}
+
+	/*-----------------*
+	 * Inner class Key *
+	 *-----------------*/
+
+	private static class Key {
+
+		private final String regex;
+
+		private final int flags;
+
+		Key(String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return flags == other.flags && regex.equals(other.regex);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * regex.hashCode() + flags;
+		}
+	}
+}
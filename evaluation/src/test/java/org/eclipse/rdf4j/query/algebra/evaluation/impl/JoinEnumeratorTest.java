@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link JoinEnumerator}.
+ */
+public class JoinEnumeratorTest {
+
+	@Test
+	public void testAllRelationsJoined() {
+		Random random = new Random(42);
+		for (int test = 0; test < 100; test++) {
+			int relationCount = 2 + random.nextInt(JoinEnumerator.MAX_RELATIONS - 1);
+			double[] cardinalities = new double[relationCount];
+			List<Map<String, Double>> distinctValueCounts = new ArrayList<>();
+			for (int i = 0; i < relationCount; i++) {
+				cardinalities[i] = 1 + random.nextInt(10000);
+				Map<String, Double> counts = new HashMap<>();
+				for (int j = random.nextInt(3); j >= 0; j--) {
+					counts.put("v" + random.nextInt(relationCount + 1), cardinalities[i] / (1 + random.nextInt(5)));
+				}
+				distinctValueCounts.add(counts);
+			}
+
+			JoinEnumerator.Plan plan = new JoinEnumerator(cardinalities, distinctValueCounts).enumerate();
+			assertEquals((1 << relationCount) - 1, getRelations(plan));
+		}
+	}
+
+	@Test
+	public void testSelectiveJoinFirst() {
+		// a chain a(x) - b(x, y) - c(y, z) - d(z), where only the join of c and d is selective
+		double[] cardinalities = { 1000, 1000, 1000, 10 };
+		List<Map<String, Double>> distinctValueCounts = new ArrayList<>();
+		distinctValueCounts.add(counts("x", 10));
+		distinctValueCounts.add(counts("x", 10, "y", 1000));
+		distinctValueCounts.add(counts("y", 1000, "z", 1000));
+		distinctValueCounts.add(counts("z", 10));
+
+		JoinEnumerator.Plan plan = new JoinEnumerator(cardinalities, distinctValueCounts).enumerate();
+
+		assertEquals("(((3 2) 1) 0)", toString(plan));
+		// the joins have 10, 10 and 1000 results, and the relations 3010
+		assertEquals(4030, plan.getCost(), 0.001);
+	}
+
+	@Test
+	public void testDisconnectedComponents() {
+		double[] cardinalities = { 100, 5, 10 };
+		List<Map<String, Double>> distinctValueCounts = new ArrayList<>();
+		distinctValueCounts.add(counts("x", 100));
+		distinctValueCounts.add(counts("y", 5));
+		distinctValueCounts.add(counts("x", 10));
+
+		JoinEnumerator.Plan plan = new JoinEnumerator(cardinalities, distinctValueCounts).enumerate();
+
+		// the cartesian product is done last, with the smaller component on the left
+		assertTrue(plan.isJoin());
+		assertFalse(plan.getLeft().isJoin());
+		assertEquals(1, plan.getLeft().getRelation());
+		assertEquals("(1 (2 0))", toString(plan));
+		assertEquals(50, plan.getCardinality(), 0.001);
+	}
+
+	@Test
+	public void testSubsetCardinalities() {
+		// a star on s, where the distinct values suggest that all pairs of relations are equally selective, but only
+		// few subjects of relation 0 also occur in relation 2
+		double[] cardinalities = { 1000, 1000, 1000 };
+		List<Map<String, Double>> distinctValueCounts = new ArrayList<>();
+		distinctValueCounts.add(counts("s", 1000));
+		distinctValueCounts.add(counts("s", 1000));
+		distinctValueCounts.add(counts("s", 1000));
+
+		JoinEnumerator.Plan plan = new JoinEnumerator(cardinalities, distinctValueCounts).enumerate();
+		assertEquals("(0 (1 2))", toString(plan));
+		assertEquals(1000, plan.getCardinality(), 0.001);
+
+		plan = new JoinEnumerator(cardinalities, distinctValueCounts, subset -> (subset & 0b101) == 0b101 ? 10 : 1000)
+				.enumerate();
+		assertEquals("((0 2) 1)", toString(plan));
+		// the joins have 10 and 10 results, and the relations 3000
+		assertEquals(10, plan.getCardinality(), 0.001);
+		assertEquals(3020, plan.getCost(), 0.001);
+	}
+
+	private static Map<String, Double> counts(Object... namesAndCounts) {
+		Map<String, Double> counts = new HashMap<>();
+		for (int i = 0; i < namesAndCounts.length; i += 2) {
+			counts.put((String) namesAndCounts[i], ((Number) namesAndCounts[i + 1]).doubleValue());
+		}
+		return counts;
+	}
+
+	private static int getRelations(JoinEnumerator.Plan plan) {
+		if (!plan.isJoin()) {
+			return 1 << plan.getRelation();
+		}
+		int left = getRelations(plan.getLeft());
+		int right = getRelations(plan.getRight());
+		assertEquals(0, left & right);
+		return left | right;
+	}
+
+	private static String toString(JoinEnumerator.Plan plan) {
+		if (plan.isJoin()) {
+			return "(" + toString(plan.getLeft()) + " " + toString(plan.getRight()) + ")";
+		}
+		return String.valueOf(plan.getRelation());
+	}
+}
@@ -121,6 +121,35 @@ public class QueryJoinOptimizerTest {
 				.isInstanceOf(Extension.class);
 	}
 
+	@Test
+	public void testEnumeratedJoinEstimates() throws Exception {
+		String query = "SELECT * WHERE { ?a <ex:p> ?b . ?b <ex:q> ?c . ?c <ex:r> ?d }";
+
+		ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null);
+		QueryJoinOptimizer opt = new QueryJoinOptimizer(new EvaluationStatistics() {
+
+			@Override
+			public boolean supportsJoinEstimation() {
+				return true;
+			}
+		});
+		QueryRoot optRoot = new QueryRoot(pq.getTupleExpr());
+		opt.optimize(optRoot, null, null);
+
+		JoinFinder joinFinder = new JoinFinder();
+		optRoot.visit(joinFinder);
+		assertThat(joinFinder.getJoin()).isInstanceOf(EstimatedJoin.class);
+
+		EstimatedJoin join = (EstimatedJoin) joinFinder.getJoin();
+		assertThat(join.getResultSizeEstimate()).isPositive();
+		assertThat(join.getCostEstimate()).isGreaterThan(join.getResultSizeEstimate());
+
+		// the estimates are part of the printed query plan, also of copies of the plan
+		String costEstimate = "costEstimate=" + Math.round(join.getCostEstimate());
+		assertThat(optRoot.toString()).contains(costEstimate);
+		assertThat(optRoot.clone().toString()).contains(costEstimate);
+	}
+
 	private TupleExpr findLeaf(TupleExpr expr) {
 		if (expr instanceof UnaryTupleOperator) {
 			return findLeaf(((UnaryTupleOperator) expr).getArg());
@@ -7,18 +7,45 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.query.algebra.evaluation.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.algebra.Group;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.GroupIterator;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
 import org.eclipse.rdf4j.query.parser.ParsedQuery;
 import org.eclipse.rdf4j.query.parser.QueryParserUtil;
 import org.junit.Before;
@@ -59,4 +86,285 @@ public class StrictEvaluationStrategyTest {
 		assertFalse(bs.hasBinding("y"));
 	}
 
+	@Test
+	public void testBatchEvaluation() throws Exception {
+		TripleSource tripleSource = createTripleSource();
+
+		String query = "SELECT ?x ?v WHERE { ?x <urn:p> ?v FILTER(?v >= 100 && ?v < 400) }";
+		ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null);
+
+		StrictEvaluationStrategy rowStrategy = new StrictEvaluationStrategy(tripleSource, null);
+		StrictEvaluationStrategy batchStrategy = new StrictEvaluationStrategy(tripleSource, null);
+		batchStrategy.setBatchEvaluation(true);
+
+		Set<BindingSet> expected = evaluate(rowStrategy, pq);
+		Set<BindingSet> actual = evaluate(batchStrategy, pq);
+
+		assertEquals(300, expected.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testParallelEvaluation() throws Exception {
+		TripleSource tripleSource = createTripleSource();
+
+		StrictEvaluationStrategy sequentialStrategy = new StrictEvaluationStrategy(tripleSource, null);
+		StrictEvaluationStrategy parallelStrategy = new StrictEvaluationStrategy(tripleSource, null);
+		parallelStrategy.setParallelism(4);
+
+		String[] queries = {
+				"SELECT ?x ?v WHERE { { ?x <urn:p> ?v } UNION { ?x <urn:q> ?v } UNION { ?v <urn:p> ?x } }",
+				"SELECT ?x ?v ?w WHERE { ?x <urn:p> ?v . ?x <urn:q> ?w }",
+				"SELECT ?x ?v WHERE { ?x <urn:p> ?v FILTER(?v >= 100 && ?v < 400) }",
+				// joins evaluated by the workers of a union, which return every solution twice
+				"SELECT ?x ?v ?w WHERE { { ?x <urn:p> ?v . ?x <urn:q> ?w } UNION { ?x <urn:q> ?w . ?x <urn:p> ?v } }" };
+
+		for (String query : queries) {
+			ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null);
+
+			// the solutions are compared as multisets, to detect lost and duplicated solutions
+			Map<BindingSet, Integer> expected = evaluateMultiset(sequentialStrategy, pq);
+			Map<BindingSet, Integer> actual = evaluateMultiset(parallelStrategy, pq);
+
+			assertFalse(expected.isEmpty());
+			assertEquals(query, expected, actual);
+		}
+	}
+
+	@Test
+	public void testGroupSpilling() throws Exception {
+		TripleSource tripleSource = createTripleSource();
+
+		StrictEvaluationStrategy inMemoryStrategy = new StrictEvaluationStrategy(tripleSource, null);
+		// keep at most 20 groups in memory, so that partitions are spilled to disk
+		StrictEvaluationStrategy spillingStrategy = new StrictEvaluationStrategy(tripleSource, null, null, 20);
+		spillingStrategy.setParallelism(4);
+
+		String query = "SELECT ?x (COUNT(*) AS ?c) (SUM(?v) AS ?s) (MIN(?v) AS ?min) (MAX(?v) AS ?max) (AVG(?v) AS ?a) "
+				+ "WHERE { { ?x <urn:p> ?v } UNION { ?x <urn:p> ?w BIND(?w + 1 AS ?v) } } GROUP BY ?x";
+		ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null);
+
+		Map<BindingSet, Integer> expected = evaluateMultiset(inMemoryStrategy, pq);
+		Map<BindingSet, Integer> actual = evaluateMultiset(spillingStrategy, pq);
+
+		assertEquals(500, expected.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testGroupSpillingPermits() throws Exception {
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(createTripleSource(), null);
+
+		String query = "SELECT ?x (COUNT(*) AS ?c) (SUM(?v) AS ?s) WHERE { ?x <urn:p> ?v } GROUP BY ?x";
+		ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null);
+		List<Group> groups = new ArrayList<>();
+		pq.getTupleExpr().visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+			@Override
+			public void meet(Group node) {
+				groups.add(node);
+			}
+		});
+		Group group = groups.get(0);
+
+		Map<BindingSet, Integer> expected = evaluateMultiset(
+				new GroupIterator(strategy, group, EmptyBindingSet.getInstance(), 0, null));
+		assertEquals(500, expected.size());
+
+		// without permits the spilled partitions are aggregated in the calling thread only
+		for (int available : new int[] { 0, 3 }) {
+			Semaphore permits = new Semaphore(available);
+			Map<BindingSet, Integer> actual = evaluateMultiset(
+					new GroupIterator(strategy, group, EmptyBindingSet.getInstance(), 20, permits));
+
+			assertEquals(expected, actual);
+			// the permits of the pool threads are released when they are done
+			assertEquals(available, permits.availablePermits());
+		}
+	}
+
+	@Test
+	public void testOrderWithLimit() throws Exception {
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(createTripleSource(), null);
+
+		String query = "SELECT ?x ?v WHERE { ?x <urn:p> ?v } ORDER BY DESC(?v) LIMIT 10";
+		List<BindingSet> result = evaluateList(strategy, QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null));
+
+		assertEquals(10, result.size());
+		for (int i = 0; i < result.size(); i++) {
+			assertEquals(499 - i, ((Literal) result.get(i).getValue("v")).intValue());
+		}
+	}
+
+	@Test
+	public void testExternalOrder() throws Exception {
+		// sort at most 50 solutions in memory, so that sorted runs are written to disk and merged
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(createTripleSource(), null, null, 50);
+
+		String query = "SELECT ?x ?v WHERE { ?x <urn:p> ?v } ORDER BY ?v";
+		List<BindingSet> result = evaluateList(strategy, QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null));
+
+		assertEquals(500, result.size());
+		for (int i = 0; i < result.size(); i++) {
+			assertEquals(i, ((Literal) result.get(i).getValue("v")).intValue());
+		}
+
+		query = "SELECT DISTINCT ?v WHERE { { ?x <urn:p> ?v } UNION { ?y <urn:p> ?v } } ORDER BY ?v LIMIT 100";
+		result = evaluateList(strategy, QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null));
+
+		assertEquals(100, result.size());
+		for (int i = 0; i < result.size(); i++) {
+			assertEquals(i, ((Literal) result.get(i).getValue("v")).intValue());
+		}
+	}
+
+	@Test
+	public void testJoinAlgorithmSelection() throws Exception {
+		// without statistics, joins are always evaluated as nested loops
+		assertEquals(JoinAlgorithm.NESTED_LOOP, chooseJoinAlgorithm(null, 1e7, 1e7, EmptyBindingSet.getInstance()));
+
+		// a small left argument is best joined by probing the right argument for each solution
+		assertEquals(JoinAlgorithm.NESTED_LOOP, chooseJoinAlgorithm(1.0, 1000.0));
+		// medium sized arguments are joined with a hash table of the smaller argument
+		assertEquals(JoinAlgorithm.HASH, chooseJoinAlgorithm(1e4, 1e4));
+		assertEquals(JoinAlgorithm.HASH, chooseJoinAlgorithm(1e7, StrictEvaluationStrategy.MAX_HASH_TABLE_SIZE));
+		// huge arguments are sorted externally and merged
+		assertEquals(JoinAlgorithm.MERGE, chooseJoinAlgorithm(1e7, 1e7));
+
+		// join attributes that are already bound can only be joined as a nested loop
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding("s", SimpleValueFactory.getInstance().createIRI("urn:s"));
+		assertEquals(JoinAlgorithm.NESTED_LOOP, chooseJoinAlgorithm(new EvaluationStatistics(), 1e7, 1e7, bindings));
+	}
+
+	@Test
+	public void testMergeJoinSpilling() throws Exception {
+		TripleSource tripleSource = createTripleSource();
+
+		StrictEvaluationStrategy nestedLoopStrategy = new StrictEvaluationStrategy(tripleSource, null);
+		// estimate all arguments to be huge, and sort at most 50 solutions in memory
+		StrictEvaluationStrategy mergeStrategy = new StrictEvaluationStrategy(tripleSource, null, null, 50);
+		mergeStrategy.setEvaluationStatistics(new EvaluationStatistics() {
+
+			@Override
+			public double getCardinality(TupleExpr expr) {
+				return 1e7;
+			}
+		});
+
+		// every solution of the join is returned twice
+		String query = "SELECT ?x ?v ?w WHERE { { ?x <urn:p> ?v } UNION { ?x <urn:p> ?v } ?x <urn:q> ?w }";
+		ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, query, null);
+
+		Map<BindingSet, Integer> expected = evaluateMultiset(nestedLoopStrategy, pq);
+		Map<BindingSet, Integer> actual = evaluateMultiset(mergeStrategy, pq);
+
+		assertEquals(500, expected.size());
+		assertEquals(Integer.valueOf(2), expected.values().iterator().next());
+		assertEquals(expected, actual);
+
+		List<Join> joins = new ArrayList<>();
+		pq.getTupleExpr().visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+			@Override
+			public void meet(Join node) {
+				joins.add(node);
+				super.meet(node);
+			}
+		});
+		assertEquals(1, joins.size());
+		assertEquals(JoinAlgorithm.MERGE, mergeStrategy.getJoinAlgorithm(joins.get(0)));
+	}
+
+	/**
+	 * Chooses the algorithm of a join of two statement patterns on the variable <tt>?s</tt>, of which the
+	 * cardinalities are estimated as specified.
+	 */
+	private JoinAlgorithm chooseJoinAlgorithm(double leftCardinality, double rightCardinality) {
+		return chooseJoinAlgorithm(new EvaluationStatistics(), leftCardinality, rightCardinality,
+				EmptyBindingSet.getInstance());
+	}
+
+	private JoinAlgorithm chooseJoinAlgorithm(EvaluationStatistics statistics, double leftCardinality,
+			double rightCardinality, BindingSet bindings) {
+		StatementPattern left = new StatementPattern(new Var("s"), new Var("p1"), new Var("o1"));
+		StatementPattern right = new StatementPattern(new Var("s"), new Var("p2"), new Var("o2"));
+
+		Map<TupleExpr, Double> cardinalities = new IdentityHashMap<>();
+		cardinalities.put(left, leftCardinality);
+		cardinalities.put(right, rightCardinality);
+
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(new EmptyTripleSource(), null);
+		if (statistics != null) {
+			strategy.setEvaluationStatistics(new EvaluationStatistics() {
+
+				@Override
+				public double getCardinality(TupleExpr expr) {
+					Double cardinality = cardinalities.get(expr);
+					return cardinality != null ? cardinality : statistics.getCardinality(expr);
+				}
+			});
+		}
+		return strategy.chooseJoinAlgorithm(new Join(left, right), bindings);
+	}
+
+	private TripleSource createTripleSource() {
+		final ValueFactory vf = SimpleValueFactory.getInstance();
+		final Model model = new LinkedHashModel();
+		IRI p = vf.createIRI("urn:p");
+		IRI q = vf.createIRI("urn:q");
+		for (int i = 0; i < 500; i++) {
+			model.add(vf.createIRI("urn:s" + i), p, vf.createLiteral(i));
+			model.add(vf.createIRI("urn:s" + i), q, vf.createLiteral("q" + i));
+		}
+
+		return new EmptyTripleSource(vf) {
+
+			@Override
+			public CloseableIteration<? extends Statement, QueryEvaluationException> getStatements(Resource subj,
+					IRI pred, Value obj, Resource... contexts) throws QueryEvaluationException {
+				return new CloseableIteratorIteration<>(model.filter(subj, pred, obj, contexts).iterator());
+			}
+		};
+	}
+
+	private List<BindingSet> evaluateList(EvaluationStrategy strategy, ParsedQuery pq) throws Exception {
+		List<BindingSet> result = new ArrayList<>();
+		try (CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(pq.getTupleExpr(),
+				EmptyBindingSet.getInstance());) {
+			while (iter.hasNext()) {
+				result.add(iter.next());
+			}
+		}
+		return result;
+	}
+
+	private Map<BindingSet, Integer> evaluateMultiset(EvaluationStrategy strategy, ParsedQuery pq) throws Exception {
+		return evaluateMultiset(strategy.evaluate(pq.getTupleExpr(), EmptyBindingSet.getInstance()));
+	}
+
+	private Map<BindingSet, Integer> evaluateMultiset(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+			throws Exception {
+		Map<BindingSet, Integer> result = new HashMap<>();
+		try {
+			while (iter.hasNext()) {
+				result.merge(iter.next(), 1, Integer::sum);
+			}
+		} finally {
+			iter.close();
+		}
+		return result;
+	}
+
+	private Set<BindingSet> evaluate(EvaluationStrategy strategy, ParsedQuery pq) throws Exception {
+		Set<BindingSet> result = new HashSet<>();
+		try (CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(pq.getTupleExpr(),
+				EmptyBindingSet.getInstance());) {
+			while (iter.hasNext()) {
+				result.add(iter.next());
+			}
+		}
+		return result;
+	}
+
 }
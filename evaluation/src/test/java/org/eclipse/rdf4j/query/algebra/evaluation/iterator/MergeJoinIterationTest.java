@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.ValueFactoryImpl;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.StrictEvaluationStrategy;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MergeJoinIteration}.
+ */
+public class MergeJoinIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final EvaluationStrategy evaluator = new StrictEvaluationStrategy(null, null);
+
+	@Test
+	public void testInnerJoin() throws QueryEvaluationException {
+		BindingSetAssignment left = new BindingSetAssignment();
+		left.setBindingSets(Arrays.<BindingSet>asList(bindings("a", "1", "i", "y"), bindings("a", "2", "i", "x"),
+				bindings("a", "3", "i", "z")));
+
+		BindingSetAssignment right = new BindingSetAssignment();
+		right.setBindingSets(Arrays.<BindingSet>asList(bindings("b", "4", "i", "x"), bindings("b", "5", "i", "w"),
+				bindings("b", "6", "i", "y")));
+
+		List<BindingSet> results = new ArrayList<>();
+		try (MergeJoinIteration iter = new MergeJoinIteration(evaluator, left, right,
+				EmptyBindingSet.getInstance());) {
+			while (iter.hasNext()) {
+				results.add(iter.next());
+			}
+		}
+
+		assertEquals(2, results.size());
+		assertEquals("x", results.get(0).getValue("i").stringValue());
+		assertEquals("2", results.get(0).getValue("a").stringValue());
+		assertEquals("4", results.get(0).getValue("b").stringValue());
+		assertEquals("y", results.get(1).getValue("i").stringValue());
+		assertEquals("1", results.get(1).getValue("a").stringValue());
+		assertEquals("6", results.get(1).getValue("b").stringValue());
+	}
+
+	@Test
+	public void testDuplicateKeys() throws QueryEvaluationException {
+		BindingSetAssignment left = new BindingSetAssignment();
+		left.setBindingSets(Arrays.<BindingSet>asList(bindings("a", "1", "i", "x"), bindings("a", "2", "i", "x"),
+				bindings("a", "3", "i", "y")));
+
+		BindingSetAssignment right = new BindingSetAssignment();
+		right.setBindingSets(Arrays.<BindingSet>asList(bindings("b", "4", "i", "x"), bindings("b", "5", "i", "x")));
+
+		Set<String> results = new HashSet<>();
+		try (MergeJoinIteration iter = new MergeJoinIteration(evaluator, left, right,
+				EmptyBindingSet.getInstance());) {
+			while (iter.hasNext()) {
+				BindingSet bs = iter.next();
+				results.add(bs.getValue("a").stringValue() + bs.getValue("b").stringValue());
+			}
+		}
+
+		assertEquals(new HashSet<>(Arrays.asList("14", "15", "24", "25")), results);
+	}
+
+	@Test
+	public void testNoMatches() throws QueryEvaluationException {
+		BindingSetAssignment left = new BindingSetAssignment();
+		left.setBindingSets(Arrays.<BindingSet>asList(bindings("a", "1", "i", "x")));
+
+		BindingSetAssignment right = new BindingSetAssignment();
+		right.setBindingSets(Arrays.<BindingSet>asList(bindings("b", "2", "i", "y")));
+
+		try (MergeJoinIteration iter = new MergeJoinIteration(evaluator, left, right,
+				EmptyBindingSet.getInstance());) {
+			assertFalse(iter.hasNext());
+		}
+	}
+
+	@Test
+	public void testSpilledRuns() throws QueryEvaluationException {
+		List<BindingSet> leftBindings = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			leftBindings.add(bindings("a", Integer.toString(i), "i", Integer.toString(i % 4)));
+		}
+		List<BindingSet> rightBindings = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			rightBindings.add(bindings("b", Integer.toString(i % 2), "i", Integer.toString(i % 3)));
+		}
+
+		// the right argument has duplicate solutions, which must all be joined
+		List<String> expected = new ArrayList<>();
+		for (BindingSet l : leftBindings) {
+			for (BindingSet r : rightBindings) {
+				if (l.getValue("i").equals(r.getValue("i"))) {
+					expected.add(l.getValue("a").stringValue() + "-" + r.getValue("b").stringValue());
+				}
+			}
+		}
+		Collections.sort(expected);
+
+		BindingSetAssignment left = new BindingSetAssignment();
+		left.setBindingSets(leftBindings);
+		BindingSetAssignment right = new BindingSetAssignment();
+		right.setBindingSets(rightBindings);
+
+		// sort at most 3 solutions in memory, so that sorted runs are written to disk and merged
+		List<String> results = new ArrayList<>();
+		try (MergeJoinIteration iter = new MergeJoinIteration(evaluator, left, right,
+				EmptyBindingSet.getInstance(), 3);) {
+			while (iter.hasNext()) {
+				BindingSet bs = iter.next();
+				results.add(bs.getValue("a").stringValue() + "-" + bs.getValue("b").stringValue());
+			}
+		}
+		Collections.sort(results);
+
+		assertEquals(expected, results);
+	}
+
+	private BindingSet bindings(String name1, String value1, String name2, String value2) {
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding(name1, vf.createLiteral(value1));
+		bindings.addBinding(name2, vf.createLiteral(value2));
+		return bindings;
+	}
+}
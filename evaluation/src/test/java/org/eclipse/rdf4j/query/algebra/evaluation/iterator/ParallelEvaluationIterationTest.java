@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.common.iteration.AbstractCloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.BooleanLiteral;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.SingletonSet;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.ValueConstant;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.StrictEvaluationStrategy;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.junit.Test;
+
+/**
+ * Tests the closing of {@link ParallelEvaluationIteration}s while their workers are running, and the release of the
+ * worker permits.
+ */
+public class ParallelEvaluationIterationTest {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	@Test
+	public void testCloseWaitsForWorkers() throws Exception {
+		BlockingIteration argIter = new BlockingIteration();
+		SingletonSet arg = new SingletonSet();
+		Filter filter = new Filter(arg, new ValueConstant(BooleanLiteral.TRUE));
+		Semaphore permits = new Semaphore(0);
+
+		final ParallelFilterIteration iter = new ParallelFilterIteration(createStrategy(arg, argIter), filter,
+				EmptyBindingSet.getInstance(), permits, 1);
+		Thread consumer = start(() -> iter.hasNext());
+		argIter.entered.await();
+
+		Thread closer = start(() -> iter.close());
+		closer.join(200);
+		// the worker is still reading the argument
+		assertTrue(closer.isAlive());
+		assertFalse(argIter.isClosed());
+
+		argIter.release.countDown();
+		closer.join();
+		consumer.join();
+		assertTrue(argIter.isClosed());
+		assertFalse("argument closed while a worker was reading it", argIter.closedWhileReading.get());
+		assertEquals(1, permits.availablePermits());
+	}
+
+	@Test
+	public void testBindJoinStopsEvaluatingAfterClose() throws Exception {
+		BindingSetAssignment left = new BindingSetAssignment();
+		List<BindingSet> leftBindings = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			QueryBindingSet bindings = new QueryBindingSet();
+			bindings.addBinding("a", vf.createLiteral(i));
+			leftBindings.add(bindings);
+		}
+		left.setBindingSets(leftBindings);
+		final SingletonSet right = new SingletonSet();
+
+		final AtomicInteger evaluations = new AtomicInteger();
+		final AtomicInteger activeEvaluations = new AtomicInteger();
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(null, null) {
+
+			@Override
+			public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr,
+					BindingSet bindings) throws QueryEvaluationException {
+				if (expr != right) {
+					return super.evaluate(expr, bindings);
+				}
+				activeEvaluations.incrementAndGet();
+				try {
+					evaluations.incrementAndGet();
+					Thread.sleep(1);
+					return new CloseableIteratorIteration<>(Collections.singletonList(bindings).iterator());
+				} catch (InterruptedException e) {
+					throw new QueryEvaluationException(e);
+				} finally {
+					activeEvaluations.decrementAndGet();
+				}
+			}
+		};
+		Semaphore permits = new Semaphore(0);
+
+		ParallelBindJoinIteration iter = new ParallelBindJoinIteration(strategy, new Join(left, right),
+				EmptyBindingSet.getInstance(), permits, 1);
+		assertTrue(iter.hasNext());
+		iter.next();
+		iter.close();
+
+		assertEquals(0, activeEvaluations.get());
+		int count = evaluations.get();
+		Thread.sleep(50);
+		assertEquals(count, evaluations.get());
+		assertTrue(count < 1000);
+		assertEquals(1, permits.availablePermits());
+	}
+
+	@Test
+	public void testConstructorFailureReleasesPermits() throws Exception {
+		SingletonSet arg = new SingletonSet();
+		StrictEvaluationStrategy strategy = new StrictEvaluationStrategy(null, null) {
+
+			@Override
+			public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr,
+					BindingSet bindings) throws QueryEvaluationException {
+				throw new QueryEvaluationException("argument can not be evaluated");
+			}
+		};
+		Semaphore permits = new Semaphore(3);
+		permits.acquire(2);
+
+		try {
+			new ParallelFilterIteration(strategy, new Filter(arg, new ValueConstant(BooleanLiteral.TRUE)),
+					EmptyBindingSet.getInstance(), permits, 2);
+			fail("argument can not be evaluated");
+		} catch (QueryEvaluationException e) {
+			// expected
+		}
+		assertEquals(3, permits.availablePermits());
+
+		permits.acquire(2);
+		try {
+			new ParallelBindJoinIteration(strategy, new Join(arg, new SingletonSet()), EmptyBindingSet.getInstance(),
+					permits, 2);
+			fail("argument can not be evaluated");
+		} catch (QueryEvaluationException e) {
+			// expected
+		}
+		assertEquals(3, permits.availablePermits());
+	}
+
+	private StrictEvaluationStrategy createStrategy(final TupleExpr arg,
+			final CloseableIteration<BindingSet, QueryEvaluationException> argIter) {
+		return new StrictEvaluationStrategy(null, null) {
+
+			@Override
+			public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr,
+					BindingSet bindings) throws QueryEvaluationException {
+				return expr == arg ? argIter : super.evaluate(expr, bindings);
+			}
+		};
+	}
+
+	private Thread start(final Runnable task) {
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * An empty iteration of which {@link #hasNext()} blocks until it is released, and which records whether it was
+	 * closed while a thread was in {@link #hasNext()}.
+	 */
+	private static class BlockingIteration extends AbstractCloseableIteration<BindingSet, QueryEvaluationException> {
+
+		final CountDownLatch entered = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AtomicBoolean reading = new AtomicBoolean();
+
+		final AtomicBoolean closedWhileReading = new AtomicBoolean();
+
+		@Override
+		public boolean hasNext() throws QueryEvaluationException {
+			reading.set(true);
+			try {
+				entered.countDown();
+				release.await();
+				return false;
+			} catch (InterruptedException e) {
+				throw new QueryEvaluationException(e);
+			} finally {
+				reading.set(false);
+			}
+		}
+
+		@Override
+		public BindingSet next() throws QueryEvaluationException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void remove() throws QueryEvaluationException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected void handleClose() throws QueryEvaluationException {
+			if (reading.get()) {
+				closedWhileReading.set(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BoundedConcurrentCache}.
+ */
+public class BoundedConcurrentCacheTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		BoundedConcurrentCache<Integer, String> cache = new BoundedConcurrentCache<>(100);
+		for (int i = 0; i < 100; i++) {
+			cache.put(i, "v" + i);
+		}
+		// use the first half, so that the second half is used least recently
+		for (int i = 0; i < 50; i++) {
+			assertEquals("v" + i, cache.get(i));
+		}
+
+		// a batch of a tenth of the capacity is evicted at once
+		cache.put(100, "v100");
+		assertEquals(90, cache.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals("v" + i, cache.get(i));
+		}
+		for (int i = 50; i < 61; i++) {
+			assertNull(cache.get(i));
+		}
+		for (int i = 61; i <= 100; i++) {
+			assertEquals("v" + i, cache.get(i));
+		}
+
+		assertEquals(140, cache.getHitCount());
+		assertEquals(11, cache.getMissCount());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final BoundedConcurrentCache<Integer, Integer> cache = new BoundedConcurrentCache<>(50);
+		final int lookups = 20000;
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < lookups; i++) {
+						// most lookups are for a small set of hot keys
+						int key = i % 4 == 0 ? (i * 31 + seed) % 500 : i % 20;
+						Integer value = cache.get(key);
+						if (value == null) {
+							cache.put(key, key);
+						} else {
+							assertEquals(key, value.intValue());
+						}
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		assertTrue(cache.size() <= 50);
+		assertEquals(4 * lookups, cache.getHitCount() + cache.getMissCount());
+		assertTrue(cache.getHitRate() > 0.5);
+	}
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.query.algebra.evaluation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PatternCache}.
+ */
+public class PatternCacheTest {
+
+	@Test
+	public void testHitAndMiss() {
+		PatternCache cache = new PatternCache(10);
+
+		Pattern p1 = cache.getPattern("a.*b", 0);
+		Pattern p2 = cache.getPattern("a.*b", 0);
+		Pattern p3 = cache.getPattern("a.*b", Pattern.CASE_INSENSITIVE);
+
+		assertSame(p1, p2);
+		assertNotSame(p1, p3);
+		assertEquals(Pattern.CASE_INSENSITIVE, p3.flags());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1.0 / 3, cache.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testEviction() {
+		PatternCache cache = new PatternCache(2);
+
+		Pattern a = cache.getPattern("a", 0);
+		cache.getPattern("b", 0);
+		// use a, so that b is the least recently used pattern
+		cache.getPattern("a", 0);
+		cache.getPattern("c", 0);
+
+		assertEquals(2, cache.size());
+		assertSame(a, cache.getPattern("a", 0));
+		assertEquals(2, cache.getHitCount());
+
+		cache.getPattern("b", 0);
+		assertEquals(4, cache.getMissCount());
+	}
+}
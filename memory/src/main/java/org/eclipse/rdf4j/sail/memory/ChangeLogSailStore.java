@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.eclipse.rdf4j.IsolationLevel;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.base.BackingSailSource;
+import org.eclipse.rdf4j.sail.base.SailDataset;
+import org.eclipse.rdf4j.sail.base.SailSink;
+import org.eclipse.rdf4j.sail.base.SailSource;
+import org.eclipse.rdf4j.sail.base.SailStore;
+
+/**
+ * A {@link SailStore} wrapper that records the changes that are flushed to the wrapped store in the format of
+ * MemoryStore's change log. On the next sync, the recorded changes can be appended to the change log instead of
+ * rewriting the complete data file.
+ */
+class ChangeLogSailStore implements SailStore {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The maximum number of bytes of changes to keep in memory. If more changes are made between two syncs, they are
+	 * discarded and the next sync writes a complete data file.
+	 */
+	private static final int MAX_PENDING_CHANGES = 64 * 1024 * 1024;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final SailStore delegate;
+
+	private final SailSource explicit;
+
+	private final SailSource inferred;
+
+	/**
+	 * The changes that have been flushed since the last call to {@link #takeChanges()}.
+	 */
+	private final ByteArrayOutputStream pendingChanges = new ByteArrayOutputStream();
+
+	/**
+	 * Flag indicating that changes have been discarded because there were too many.
+	 */
+	private boolean overflow = false;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ChangeLogSailStore(SailStore delegate) {
+		this.delegate = delegate;
+		this.explicit = new ChangeLogSailSource(delegate.getExplicitSailSource(), true);
+		this.inferred = new ChangeLogSailSource(delegate.getInferredSailSource(), false);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public ValueFactory getValueFactory() {
+		return delegate.getValueFactory();
+	}
+
+	@Override
+	public EvaluationStatistics getEvaluationStatistics() {
+		return delegate.getEvaluationStatistics();
+	}
+
+	@Override
+	public SailSource getExplicitSailSource() {
+		return explicit;
+	}
+
+	@Override
+	public SailSource getInferredSailSource() {
+		return inferred;
+	}
+
+	@Override
+	public void close() throws SailException {
+		delegate.close();
+	}
+
+	/**
+	 * Gets the changes that have been flushed since the last call to this method, and forgets about them.
+	 *
+	 * @return The changes, or <tt>null</tt> if changes have been discarded because there were too many.
+	 */
+	public synchronized byte[] takeChanges() {
+		byte[] changes = overflow ? null : pendingChanges.toByteArray();
+		pendingChanges.reset();
+		overflow = false;
+		return changes;
+	}
+
+	private synchronized void addChanges(byte[] changes) {
+		if (overflow) {
+			return;
+		}
+
+		if (pendingChanges.size() + changes.length > MAX_PENDING_CHANGES) {
+			pendingChanges.reset();
+			overflow = true;
+		} else {
+			pendingChanges.write(changes, 0, changes.length);
+		}
+	}
+
+	/*---------------------------------*
+	 * Inner class ChangeLogSailSource *
+	 *---------------------------------*/
+
+	private final class ChangeLogSailSource extends BackingSailSource {
+
+		private final SailSource delegate;
+
+		private final boolean explicit;
+
+		public ChangeLogSailSource(SailSource delegate, boolean explicit) {
+			this.delegate = delegate;
+			this.explicit = explicit;
+		}
+
+		@Override
+		public SailSink sink(IsolationLevel level) throws SailException {
+			return new ChangeLogSailSink(delegate.sink(level), explicit);
+		}
+
+		@Override
+		public SailDataset dataset(IsolationLevel level) throws SailException {
+			return delegate.dataset(level);
+		}
+	}
+
+	/*-------------------------------*
+	 * Inner class ChangeLogSailSink *
+	 *-------------------------------*/
+
+	private final class ChangeLogSailSink implements SailSink {
+
+		private final SailSink delegate;
+
+		private final boolean explicit;
+
+		private final FileIO fileIO;
+
+		private final ByteArrayOutputStream changes = new ByteArrayOutputStream();
+
+		private final DataOutputStream changesOut = new DataOutputStream(changes);
+
+		public ChangeLogSailSink(SailSink delegate, boolean explicit) {
+			this.delegate = delegate;
+			this.explicit = explicit;
+			this.fileIO = new FileIO(getValueFactory());
+		}
+
+		@Override
+		public void prepare() throws SailException {
+			delegate.prepare();
+		}
+
+		@Override
+		public void flush() throws SailException {
+			delegate.flush();
+
+			if (changes.size() > 0) {
+				try {
+					changesOut.writeByte(FileIO.FLUSH_MARKER);
+				} catch (IOException e) {
+					throw new SailException(e);
+				}
+				addChanges(changes.toByteArray());
+				changes.reset();
+			}
+		}
+
+		@Override
+		public void close() throws SailException {
+			// changes that have not been flushed are discarded
+			changes.reset();
+			delegate.close();
+		}
+
+		@Override
+		public void setNamespace(String prefix, String name) throws SailException {
+			delegate.setNamespace(prefix, name);
+			try {
+				fileIO.writeNamespaceChange(FileIO.SET_NAMESPACE_MARKER, explicit, prefix, name, changesOut);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+
+		@Override
+		public void removeNamespace(String prefix) throws SailException {
+			delegate.removeNamespace(prefix);
+			try {
+				fileIO.writeNamespaceChange(FileIO.REMOVE_NAMESPACE_MARKER, explicit, prefix, null, changesOut);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+
+		@Override
+		public void clearNamespaces() throws SailException {
+			delegate.clearNamespaces();
+			try {
+				fileIO.writeNamespaceChange(FileIO.CLEAR_NAMESPACES_MARKER, explicit, null, null, changesOut);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+
+		@Override
+		public void clear(Resource... contexts) throws SailException {
+			delegate.clear(contexts);
+			try {
+				fileIO.writeClearChange(explicit, contexts, changesOut);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+
+		@Override
+		public void observe(Resource subj, IRI pred, Value obj, Resource... contexts) throws SailException {
+			delegate.observe(subj, pred, obj, contexts);
+		}
+
+		@Override
+		public void approve(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
+			delegate.approve(subj, pred, obj, ctx);
+			try {
+				fileIO.writeStatementChange(FileIO.APPROVE_MARKER, explicit, subj, pred, obj, ctx, changesOut);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+
+		@Override
+		public void deprecate(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
+			delegate.deprecate(subj, pred, obj, ctx);
+			try {
+				fileIO.writeStatementChange(FileIO.DEPRECATE_MARKER, explicit, subj, pred, obj, ctx, changesOut);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+
+		@Override
+		public void approveAll(Collection<? extends Statement> statements) throws SailException {
+			delegate.approveAll(statements);
+			writeStatementChanges(FileIO.APPROVE_MARKER, statements);
+		}
+
+		@Override
+		public void deprecateAll(Collection<? extends Statement> statements) throws SailException {
+			delegate.deprecateAll(statements);
+			writeStatementChanges(FileIO.DEPRECATE_MARKER, statements);
+		}
+
+		private void writeStatementChanges(int marker, Collection<? extends Statement> statements)
+				throws SailException {
+			try {
+				for (Statement st : statements) {
+					fileIO.writeStatementChange(marker, explicit, st.getSubject(), st.getPredicate(), st.getObject(),
+							st.getContext(), changesOut);
+				}
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+	}
+}
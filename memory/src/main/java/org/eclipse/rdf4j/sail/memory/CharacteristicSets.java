@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.sail.memory.model.MemIRI;
+
+/**
+ * Keeps track of the characteristic sets of the subjects in a {@link MemorySailStore}, i.e. of the distinct sets of
+ * predicates that subjects have, together with the number of subjects and the number of statements per predicate for
+ * each set. The characteristic sets give accurate cardinality estimates for star-shaped joins on a shared subject,
+ * which the sizes of the statement lists of the individual patterns do not.
+ * <p>
+ * The characteristic sets are updated incrementally when a transaction is flushed, from the predicates of the changed
+ * subjects before and after the transaction. Readers do not need any locking.
+ */
+class CharacteristicSets {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The maximum number of characteristic sets that are tracked. Subjects with other predicate sets are only counted
+	 * in {@link #getSubjectCount()}, and estimates are extrapolated to them.
+	 */
+	static final int MAX_CHARACTERISTIC_SETS = 10000;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Map<Set<MemIRI>, CharacteristicSet> characteristicSets = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of subjects that have at least one statement.
+	 */
+	private volatile long subjectCount;
+
+	/**
+	 * The number of subjects that are included in {@link #characteristicSets}.
+	 */
+	private volatile long trackedSubjectCount;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public long getSubjectCount() {
+		return subjectCount;
+	}
+
+	public int getCharacteristicSetCount() {
+		return characteristicSets.size();
+	}
+
+	/**
+	 * Estimates the number of results of a star-shaped join of statement patterns with the specified predicates and a
+	 * shared, unbound subject. Predicates may occur more than once.
+	 *
+	 * @return The estimated cardinality, or a negative value if none of the subjects are tracked.
+	 */
+	public double getStarCardinality(Collection<MemIRI> predicates) {
+		long trackedSubjectCount = this.trackedSubjectCount;
+		long subjectCount = this.subjectCount;
+		if (trackedSubjectCount == 0L && subjectCount > 0L) {
+			return -1;
+		}
+
+		Set<MemIRI> querySet = new HashSet<>(predicates);
+
+		double cardinality = 0.0;
+		for (CharacteristicSet characteristicSet : characteristicSets.values()) {
+			if (characteristicSet.predicates.containsAll(querySet)) {
+				double setCardinality = characteristicSet.subjectCount;
+				for (MemIRI predicate : predicates) {
+					// average number of statements per subject for the predicate
+					setCardinality *= (double) characteristicSet.getStatementCount(predicate)
+							/ characteristicSet.subjectCount;
+				}
+				cardinality += setCardinality;
+			}
+		}
+
+		if (trackedSubjectCount > 0L && trackedSubjectCount < subjectCount) {
+			// extrapolate to the subjects of characteristic sets that are not tracked
+			cardinality *= (double) subjectCount / trackedSubjectCount;
+		}
+
+		return cardinality;
+	}
+
+	/**
+	 * Estimates the number of distinct subjects that have at least one statement with the specified predicate.
+	 *
+	 * @return The estimated number of subjects, or a negative value if none of the subjects are tracked.
+	 */
+	public double getSubjectCount(MemIRI predicate) {
+		long trackedSubjectCount = this.trackedSubjectCount;
+		long subjectCount = this.subjectCount;
+		if (trackedSubjectCount == 0L && subjectCount > 0L) {
+			return -1;
+		}
+
+		double predicateSubjectCount = 0.0;
+		for (CharacteristicSet characteristicSet : characteristicSets.values()) {
+			if (characteristicSet.predicates.contains(predicate)) {
+				predicateSubjectCount += characteristicSet.subjectCount;
+			}
+		}
+
+		if (trackedSubjectCount > 0L && trackedSubjectCount < subjectCount) {
+			// extrapolate to the subjects of characteristic sets that are not tracked
+			predicateSubjectCount *= (double) subjectCount / trackedSubjectCount;
+		}
+
+		return predicateSubjectCount;
+	}
+
+	/**
+	 * Moves a subject from the characteristic set of its old predicates to that of its new predicates.
+	 *
+	 * @param oldCounts The number of statements per predicate of the subject before the change.
+	 * @param newCounts The number of statements per predicate of the subject after the change.
+	 */
+	public synchronized void update(Map<MemIRI, Integer> oldCounts, Map<MemIRI, Integer> newCounts) {
+		if (oldCounts.equals(newCounts)) {
+			return;
+		}
+
+		if (oldCounts.isEmpty()) {
+			subjectCount++;
+		} else {
+			removeSubject(oldCounts);
+		}
+
+		if (newCounts.isEmpty()) {
+			subjectCount--;
+		} else {
+			addSubject(newCounts);
+		}
+	}
+
+	public synchronized void clear() {
+		characteristicSets.clear();
+		subjectCount = 0L;
+		trackedSubjectCount = 0L;
+	}
+
+	private void addSubject(Map<MemIRI, Integer> counts) {
+		Set<MemIRI> key = counts.keySet();
+		CharacteristicSet old = characteristicSets.get(key);
+
+		if (old == null) {
+			if (characteristicSets.size() >= MAX_CHARACTERISTIC_SETS) {
+				return;
+			}
+			Map<MemIRI, Long> statementCounts = new HashMap<>();
+			for (Map.Entry<MemIRI, Integer> entry : counts.entrySet()) {
+				statementCounts.put(entry.getKey(), entry.getValue().longValue());
+			}
+			put(new CharacteristicSet(statementCounts, 1L));
+		} else {
+			Map<MemIRI, Long> statementCounts = new HashMap<>(old.statementCounts);
+			for (Map.Entry<MemIRI, Integer> entry : counts.entrySet()) {
+				statementCounts.put(entry.getKey(), statementCounts.get(entry.getKey()) + entry.getValue());
+			}
+			put(new CharacteristicSet(statementCounts, old.subjectCount + 1L));
+		}
+		trackedSubjectCount++;
+	}
+
+	private void removeSubject(Map<MemIRI, Integer> counts) {
+		CharacteristicSet old = characteristicSets.get(counts.keySet());
+
+		if (old == null) {
+			// not tracked
+			return;
+		}
+
+		if (old.subjectCount <= 1L) {
+			characteristicSets.remove(old.predicates);
+		} else {
+			Map<MemIRI, Long> statementCounts = new HashMap<>(old.statementCounts);
+			for (Map.Entry<MemIRI, Integer> entry : counts.entrySet()) {
+				statementCounts.put(entry.getKey(), statementCounts.get(entry.getKey()) - entry.getValue());
+			}
+			put(new CharacteristicSet(statementCounts, old.subjectCount - 1L));
+		}
+		trackedSubjectCount--;
+	}
+
+	private void put(CharacteristicSet characteristicSet) {
+		characteristicSets.put(characteristicSet.predicates, characteristicSet);
+	}
+
+	/*-------------------------------*
+	 * Inner class CharacteristicSet *
+	 *-------------------------------*/
+
+	/**
+	 * An immutable characteristic set with the number of subjects that have exactly these predicates, and the total
+	 * number of statements of these subjects per predicate.
+	 */
+	private static class CharacteristicSet {
+
+		final Set<MemIRI> predicates;
+
+		final Map<MemIRI, Long> statementCounts;
+
+		final long subjectCount;
+
+		CharacteristicSet(Map<MemIRI, Long> statementCounts, long subjectCount) {
+			this.statementCounts = statementCounts;
+			this.predicates = Collections.unmodifiableSet(statementCounts.keySet());
+			this.subjectCount = subjectCount;
+		}
+
+		long getStatementCount(MemIRI predicate) {
+			Long count = statementCounts.get(predicate);
+			return count == null ? 0L : count;
+		}
+	}
+}
@@ -7,24 +7,39 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail.memory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
+import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.common.io.IOUtil;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.model.BNode;
@@ -39,13 +54,17 @@ import org.eclipse.rdf4j.model.util.Literals;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.base.SailDataset;
 import org.eclipse.rdf4j.sail.base.SailSink;
-import org.eclipse.rdf4j.sail.memory.model.MemIRI;
-import org.eclipse.rdf4j.sail.memory.model.MemResource;
-import org.eclipse.rdf4j.sail.memory.model.MemValue;
+import org.eclipse.rdf4j.sail.base.SailStore;
 
 /**
  * Functionality to read and write MemoryStore to/from a file.
- * 
+ * <p>
+ * Since version 3, the data file consists of a sequence of blocks that each start with a record type marker, the number
+ * of records in the block and the length of the block in bytes. Values are written once, in value blocks that make up
+ * a dictionary, and statements are written as blocks of value IDs. This allows the value blocks to be decoded in
+ * parallel when the file is read. The header of the data file contains a random file ID, which is referenced by the
+ * change log that records the changes made after the data file was written.
+ *
  * @author Arjohn Kampman
  */
 class FileIO {
@@ -57,11 +76,28 @@ class FileIO {
 	/** Magic number for Binary Memory Store Files */
 	private static final byte[] MAGIC_NUMBER = new byte[] { 'B', 'M', 'S', 'F' };
 
+	/** Magic number for Binary Memory Store Log files */
+	private static final byte[] LOG_MAGIC_NUMBER = new byte[] { 'B', 'M', 'S', 'L' };
+
 	/** The version number of the current format. */
 	// Version 1: initial version
 	// Version 2: don't use read/writeUTF() to remove 64k limit on strings,
 	// removed dummy "up-to-date status" boolean for namespace records
-	private static final int BMSF_VERSION = 2;
+	// Version 3: uncompressed blocks with a value dictionary and statements
+	// encoded as value IDs, file ID in header
+	private static final int BMSF_VERSION = 3;
+
+	/** The version number of the current change log format. */
+	private static final int LOG_VERSION = 1;
+
+	/** The approximate maximum size of a value block in bytes. */
+	private static final int VALUE_BLOCK_SIZE = 1024 * 1024;
+
+	/** The maximum number of statements in a statement block. */
+	private static final int STATEMENT_BLOCK_SIZE = 64 * 1024;
+
+	/** The size of the buffer that is used for writing data files. */
+	private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
 
 	/* RECORD TYPES */
 	public static final int NAMESPACE_MARKER = 1;
@@ -84,8 +120,31 @@ class FileIO {
 
 	public static final int DATATYPE_LITERAL_MARKER = 10;
 
+	public static final int VALUE_BLOCK_MARKER = 11;
+
+	public static final int EXPL_STATEMENT_BLOCK_MARKER = 12;
+
+	public static final int INF_STATEMENT_BLOCK_MARKER = 13;
+
 	public static final int EOF_MARKER = 127;
 
+	/* CHANGE LOG RECORD TYPES */
+	public static final int NULL_MARKER = 0;
+
+	public static final int SET_NAMESPACE_MARKER = 20;
+
+	public static final int REMOVE_NAMESPACE_MARKER = 21;
+
+	public static final int CLEAR_NAMESPACES_MARKER = 22;
+
+	public static final int APPROVE_MARKER = 23;
+
+	public static final int DEPRECATE_MARKER = 24;
+
+	public static final int CLEAR_MARKER = 25;
+
+	public static final int FLUSH_MARKER = 26;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -110,9 +169,16 @@ class FileIO {
 	 * Methods *
 	 *---------*/
 
-	public synchronized void write(SailDataset explicit, SailDataset inferred, File syncFile, File dataFile)
+	/**
+	 * Writes the supplied datasets to a new data file.
+	 *
+	 * @return The file ID of the new data file.
+	 */
+	public synchronized long write(SailDataset explicit, SailDataset inferred, File syncFile, File dataFile)
 			throws IOException, SailException {
-		write(explicit, inferred, syncFile);
+		long fileID = createFileID();
+
+		write(explicit, inferred, syncFile, fileID);
 
 		// prefer atomic renameTo operations
 		boolean renamed = syncFile.renameTo(dataFile);
@@ -130,30 +196,45 @@ class FileIO {
 			String name = dataFile.getName();
 			throw new IOException("Could not rename " + path + " to " + name);
 		}
+
+		return fileID;
 	}
 
-	private void write(SailDataset explicit, SailDataset inferred, File dataFile) throws IOException, SailException {
+	private void write(SailDataset explicit, SailDataset inferred, File dataFile, long fileID)
+			throws IOException, SailException {
+		try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);) {
+			DataOutputStream dataOut = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE));
 
-		try (OutputStream out = new FileOutputStream(dataFile);) {
 			// Write header
-			out.write(MAGIC_NUMBER);
-			out.write(BMSF_VERSION);
-			out.flush();
-			// The rest of the data is GZIP-compressed
-			try (DataOutputStream dataOut = new DataOutputStream(new GZIPOutputStream(out));) {
+			dataOut.write(MAGIC_NUMBER);
+			dataOut.writeByte(BMSF_VERSION);
+			dataOut.writeLong(fileID);
 
-				writeNamespaces(explicit, dataOut);
+			writeNamespaces(explicit, dataOut);
 
-				writeStatements(explicit, inferred, dataOut);
+			BlockWriter blockWriter = new BlockWriter(dataOut);
+			blockWriter.writeStatements(explicit.getStatements(null, null, null), EXPL_STATEMENT_BLOCK_MARKER);
+			blockWriter.writeStatements(inferred.getStatements(null, null, null), INF_STATEMENT_BLOCK_MARKER);
 
-				dataOut.writeByte(EOF_MARKER);
-			}
+			dataOut.writeByte(EOF_MARKER);
+			dataOut.flush();
+
+			// the data file must be on disk before the change log refers to it
+			channel.force(false);
 		}
 	}
 
-	public synchronized void read(File dataFile, SailSink explicit, SailSink inferred)
+	/**
+	 * Reads the contents of a data file into the supplied sinks.
+	 *
+	 * @return The file ID of the data file, or <tt>0</tt> if the data file was written in an older format that did not
+	 *         have file IDs.
+	 */
+	public synchronized long read(File dataFile, SailSink explicit, SailSink inferred)
 			throws IOException, SailException {
-		try (InputStream in = new FileInputStream(dataFile);) {
+		try (FileInputStream in = new FileInputStream(dataFile);) {
 			byte[] magicNumber = IOUtil.readBytes(in, MAGIC_NUMBER.length);
 			if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
 				throw new IOException("File is not a binary MemoryStore file");
@@ -164,6 +245,10 @@ class FileIO {
 				throw new IOException("Incompatible format version: " + formatVersion);
 			}
 
+			if (formatVersion >= 3) {
+				return readBlocks(in.getChannel(), explicit, inferred);
+			}
+
 			// The rest of the data is GZIP-compressed
 			try (DataInputStream dataIn = new DataInputStream(new GZIPInputStream(in));) {
 				int recordTypeMarker;
@@ -189,77 +274,423 @@ class FileIO {
 					}
 				}
 			}
+			return 0L;
 		}
 	}
 
-	private void writeNamespaces(SailDataset store, DataOutputStream dataOut) throws IOException, SailException {
-		try (CloseableIteration<? extends Namespace, SailException> iter = store.getNamespaces();) {
-			while (iter.hasNext()) {
-				Namespace ns = iter.next();
-				dataOut.writeByte(NAMESPACE_MARKER);
-				writeString(ns.getPrefix(), dataOut);
-				writeString(ns.getName(), dataOut);
+	/**
+	 * Reads the blocks of a version 3 data file, starting at the current position of the channel. The value blocks are
+	 * decoded in parallel, after which the statement blocks are added to the sinks in file order while the next
+	 * statement block is being read.
+	 */
+	private long readBlocks(FileChannel channel, SailSink explicit, SailSink inferred)
+			throws IOException, SailException {
+		long position = channel.position();
+		ByteBuffer header = ByteBuffer.allocate(9);
+
+		readFully(channel, header, position, 8);
+		long fileID = header.getLong(0);
+		position += 8;
+
+		// Index the blocks
+		List<Block> valueBlocks = new ArrayList<>();
+		List<Block> statementBlocks = new ArrayList<>();
+		int valueCount = 0;
+		while (true) {
+			readFully(channel, header, position, 1);
+			int blockTypeMarker = header.get(0);
+			if (blockTypeMarker == EOF_MARKER) {
+				break;
+			}
+
+			readFully(channel, header, position + 1, 8);
+			int recordCount = header.getInt(0);
+			int length = header.getInt(4);
+			position += 9;
+			Block block = new Block(blockTypeMarker, recordCount, position, length);
+			position += length;
+
+			switch (blockTypeMarker) {
+			case NAMESPACE_MARKER:
+				DataInputStream dataIn = toDataInput(readBlock(channel, block));
+				for (int i = 0; i < recordCount; i++) {
+					readNamespace(dataIn, explicit);
+				}
+				break;
+			case VALUE_BLOCK_MARKER:
+				block.firstValueID = valueCount;
+				valueCount += recordCount;
+				valueBlocks.add(block);
+				break;
+			case EXPL_STATEMENT_BLOCK_MARKER:
+			case INF_STATEMENT_BLOCK_MARKER:
+				statementBlocks.add(block);
+				break;
+			default:
+				throw new IOException("Invalid block type marker: " + blockTypeMarker);
+			}
+		}
+
+		int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, r -> {
+			Thread thread = new Thread(r, "MemoryStore restore");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final Value[] values = new Value[valueCount];
+			List<Future<Void>> valueTasks = new ArrayList<>(valueBlocks.size());
+			for (final Block block : valueBlocks) {
+				valueTasks.add(executor.submit(() -> {
+					readValueBlock(channel, block, values);
+					return null;
+				}));
+			}
+			for (Future<Void> valueTask : valueTasks) {
+				getResult(valueTask);
+			}
+
+			Future<int[]> nextBlock = null;
+			for (int i = 0; i < statementBlocks.size(); i++) {
+				Block block = statementBlocks.get(i);
+				int[] ids = nextBlock == null ? readStatementBlock(channel, block) : getResult(nextBlock);
+				if (i + 1 < statementBlocks.size()) {
+					final Block next = statementBlocks.get(i + 1);
+					nextBlock = executor.submit(() -> readStatementBlock(channel, next));
+				}
+
+				SailSink sink = block.type == EXPL_STATEMENT_BLOCK_MARKER ? explicit : inferred;
+				for (int j = 0; j < ids.length; j += 4) {
+					Resource context = ids[j + 3] < 0 ? null : (Resource) values[ids[j + 3]];
+					sink.approve((Resource) values[ids[j]], (IRI) values[ids[j + 1]], values[ids[j + 2]], context);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return fileID;
+	}
+
+	private void readValueBlock(FileChannel channel, Block block, Value[] values) throws IOException {
+		// FileIO's string decoder is not thread-safe, decode each block with
+		// a separate instance
+		FileIO blockReader = new FileIO(vf);
+		blockReader.formatVersion = formatVersion;
+
+		DataInputStream dataIn = toDataInput(readBlock(channel, block));
+		for (int i = 0; i < block.recordCount; i++) {
+			values[block.firstValueID + i] = blockReader.readValue(dataIn);
+		}
+	}
+
+	private int[] readStatementBlock(FileChannel channel, Block block) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(readBlock(channel, block));
+		int[] ids = new int[block.recordCount * 4];
+		buffer.asIntBuffer().get(ids);
+		return ids;
+	}
+
+	private byte[] readBlock(FileChannel channel, Block block) throws IOException {
+		byte[] bytes = new byte[block.length];
+		readFully(channel, ByteBuffer.wrap(bytes), block.position, block.length);
+		return bytes;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+			throws IOException {
+		buffer.clear();
+		buffer.limit(length);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException("Unexpected end of data file at position " + (position + buffer.position()));
 			}
 		}
 	}
 
-	private void readNamespace(DataInputStream dataIn, SailSink store) throws IOException, SailException {
-		String prefix = readString(dataIn);
-		String name = readString(dataIn);
+	private static DataInputStream toDataInput(byte[] bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
 
-		if (formatVersion <= 1) {
-			// the up-to-date status is no longer relevant
-			dataIn.readBoolean();
+	private static <T> T getResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading data file", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
 		}
+	}
 
-		store.setNamespace(prefix, name);
+	/**
+	 * Appends a record with changes to the change log of a data file.
+	 *
+	 * @param logFile    The change log file. If it does not exist yet, it is created.
+	 * @param dataFileID The file ID of the data file that the changes apply to.
+	 * @param changes    The changes, as recorded by {@link ChangeLogSailStore}.
+	 */
+	public synchronized void appendChanges(File logFile, long dataFileID, byte[] changes) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(changes);
+
+		try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);) {
+			ByteBuffer buffer = ByteBuffer.allocate(LOG_MAGIC_NUMBER.length + 9 + 8 + changes.length);
+			if (channel.size() == 0L) {
+				buffer.put(LOG_MAGIC_NUMBER);
+				buffer.put((byte) LOG_VERSION);
+				buffer.putLong(dataFileID);
+			}
+			buffer.putInt(changes.length);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(changes);
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
 	}
 
-	private void writeStatements(final SailDataset explicit, SailDataset inferred, DataOutputStream dataOut)
+	/**
+	 * Replays the changes in a change log on the supplied store. Each group of changes that was flushed together is
+	 * applied through separate sinks. An incomplete record at the end of the log, as left behind by a crash while
+	 * appending to it, is ignored.
+	 *
+	 * @return The length of the valid part of the change log, or <tt>-1</tt> if the change log does not apply to the
+	 *         data file with the specified ID.
+	 */
+	public synchronized long readChanges(File logFile, long dataFileID, SailStore store)
 			throws IOException, SailException {
-		// write explicit only statements
-		writeStatement(explicit.getStatements(null, null, null), EXPL_TRIPLE_MARKER, EXPL_QUAD_MARKER, dataOut);
-		// write inferred only statements
-		writeStatement(inferred.getStatements(null, null, null), INF_TRIPLE_MARKER, INF_QUAD_MARKER, dataOut);
+		formatVersion = BMSF_VERSION;
+		long logLength = logFile.length();
+
+		try (InputStream in = new FileInputStream(logFile);) {
+			DataInputStream logIn = new DataInputStream(new BufferedInputStream(in, WRITE_BUFFER_SIZE));
+
+			byte[] magicNumber = IOUtil.readBytes(logIn, LOG_MAGIC_NUMBER.length);
+			if (!Arrays.equals(magicNumber, LOG_MAGIC_NUMBER)) {
+				throw new IOException("File is not a MemoryStore change log");
+			}
+
+			int logVersion = logIn.read();
+			if (logVersion != LOG_VERSION) {
+				throw new IOException("Incompatible change log version: " + logVersion);
+			}
+
+			if (logIn.readLong() != dataFileID) {
+				return -1L;
+			}
+
+			long validLength = LOG_MAGIC_NUMBER.length + 9;
+			CRC32 crc = new CRC32();
+			while (true) {
+				byte[] changes;
+				try {
+					int length = logIn.readInt();
+					int checksum = logIn.readInt();
+					if (length < 0 || validLength + 8 + length > logLength) {
+						return validLength;
+					}
+					changes = new byte[length];
+					logIn.readFully(changes);
+
+					crc.reset();
+					crc.update(changes);
+					if ((int) crc.getValue() != checksum) {
+						return validLength;
+					}
+				} catch (EOFException e) {
+					return validLength;
+				}
+
+				replayChanges(toDataInput(changes), store);
+				validLength += 8 + changes.length;
+			}
+		}
 	}
 
-	public void writeStatement(CloseableIteration<? extends Statement, SailException> stIter, int tripleMarker,
-			int quadMarker, DataOutputStream dataOut) throws IOException, SailException {
+	private void replayChanges(DataInputStream dataIn, SailStore store) throws IOException, SailException {
+		SailSink explicit = null;
+		SailSink inferred = null;
 		try {
-			while (stIter.hasNext()) {
-				Statement st = stIter.next();
-				Resource context = st.getContext();
-				if (context == null) {
-					dataOut.writeByte(tripleMarker);
+			int changeTypeMarker;
+			while ((changeTypeMarker = dataIn.read()) != -1) {
+				if (changeTypeMarker == FLUSH_MARKER) {
+					flushSink(explicit);
+					flushSink(inferred);
+					explicit = inferred = null;
+					continue;
+				}
+
+				SailSink sink;
+				if (dataIn.readBoolean()) {
+					if (explicit == null) {
+						explicit = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+					}
+					sink = explicit;
 				} else {
-					dataOut.writeByte(quadMarker);
+					if (inferred == null) {
+						inferred = store.getInferredSailSource().sink(IsolationLevels.NONE);
+					}
+					sink = inferred;
 				}
-				writeValue(st.getSubject(), dataOut);
-				writeValue(st.getPredicate(), dataOut);
-				writeValue(st.getObject(), dataOut);
-				if (context != null) {
-					writeValue(context, dataOut);
+
+				switch (changeTypeMarker) {
+				case SET_NAMESPACE_MARKER:
+					sink.setNamespace(readString(dataIn), readString(dataIn));
+					break;
+				case REMOVE_NAMESPACE_MARKER:
+					sink.removeNamespace(readString(dataIn));
+					break;
+				case CLEAR_NAMESPACES_MARKER:
+					sink.clearNamespaces();
+					break;
+				case APPROVE_MARKER:
+					sink.approve((Resource) readValue(dataIn), (IRI) readValue(dataIn), readValue(dataIn),
+							(Resource) readNullableValue(dataIn));
+					break;
+				case DEPRECATE_MARKER:
+					sink.deprecate((Resource) readValue(dataIn), (IRI) readValue(dataIn), readValue(dataIn),
+							(Resource) readNullableValue(dataIn));
+					break;
+				case CLEAR_MARKER:
+					Resource[] contexts = new Resource[dataIn.readInt()];
+					for (int i = 0; i < contexts.length; i++) {
+						contexts[i] = (Resource) readNullableValue(dataIn);
+					}
+					sink.clear(contexts);
+					break;
+				default:
+					throw new IOException("Invalid change type marker: " + changeTypeMarker);
 				}
 			}
+
+			// changes that were not followed by a flush marker are incomplete
 		} finally {
-			stIter.close();
+			if (explicit != null) {
+				explicit.close();
+			}
+			if (inferred != null) {
+				inferred.close();
+			}
+		}
+	}
+
+	private void flushSink(SailSink sink) throws SailException {
+		if (sink != null) {
+			try {
+				sink.prepare();
+				sink.flush();
+			} finally {
+				sink.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes a statement change to a change log record.
+	 *
+	 * @param changeTypeMarker Either {@link #APPROVE_MARKER} or {@link #DEPRECATE_MARKER}.
+	 */
+	void writeStatementChange(int changeTypeMarker, boolean explicit, Resource subj, IRI pred, Value obj,
+			Resource ctx, DataOutputStream dataOut) throws IOException {
+		dataOut.writeByte(changeTypeMarker);
+		dataOut.writeBoolean(explicit);
+		writeValue(subj, dataOut);
+		writeValue(pred, dataOut);
+		writeValue(obj, dataOut);
+		writeNullableValue(ctx, dataOut);
+	}
+
+	void writeClearChange(boolean explicit, Resource[] contexts, DataOutputStream dataOut) throws IOException {
+		dataOut.writeByte(CLEAR_MARKER);
+		dataOut.writeBoolean(explicit);
+		dataOut.writeInt(contexts.length);
+		for (Resource context : contexts) {
+			writeNullableValue(context, dataOut);
+		}
+	}
+
+	/**
+	 * Writes a namespace change to a change log record.
+	 *
+	 * @param changeTypeMarker One of {@link #SET_NAMESPACE_MARKER}, {@link #REMOVE_NAMESPACE_MARKER} and
+	 *                         {@link #CLEAR_NAMESPACES_MARKER}.
+	 * @param prefix           The prefix, or <tt>null</tt> for {@link #CLEAR_NAMESPACES_MARKER}.
+	 * @param name             The namespace name, only used for {@link #SET_NAMESPACE_MARKER}.
+	 */
+	void writeNamespaceChange(int changeTypeMarker, boolean explicit, String prefix, String name,
+			DataOutputStream dataOut) throws IOException {
+		dataOut.writeByte(changeTypeMarker);
+		dataOut.writeBoolean(explicit);
+		if (changeTypeMarker != CLEAR_NAMESPACES_MARKER) {
+			writeString(prefix, dataOut);
+		}
+		if (changeTypeMarker == SET_NAMESPACE_MARKER) {
+			writeString(name, dataOut);
+		}
+	}
+
+	private void writeNamespaces(SailDataset store, DataOutputStream dataOut) throws IOException, SailException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream blockOut = new DataOutputStream(bytes);
+		int count = 0;
+
+		try (CloseableIteration<? extends Namespace, SailException> iter = store.getNamespaces();) {
+			while (iter.hasNext()) {
+				Namespace ns = iter.next();
+				writeString(ns.getPrefix(), blockOut);
+				writeString(ns.getName(), blockOut);
+				count++;
+			}
+		}
+
+		if (count > 0) {
+			dataOut.writeByte(NAMESPACE_MARKER);
+			dataOut.writeInt(count);
+			dataOut.writeInt(bytes.size());
+			bytes.writeTo(dataOut);
 		}
 	}
 
+	private void readNamespace(DataInputStream dataIn, SailSink store) throws IOException, SailException {
+		String prefix = readString(dataIn);
+		String name = readString(dataIn);
+
+		if (formatVersion <= 1) {
+			// the up-to-date status is no longer relevant
+			dataIn.readBoolean();
+		}
+
+		store.setNamespace(prefix, name);
+	}
+
 	private void readStatement(boolean hasContext, boolean isExplicit, DataInputStream dataIn, SailSink explicit,
 			SailSink inferred) throws IOException, ClassCastException, SailException {
-		MemResource memSubj = (MemResource) readValue(dataIn);
-		MemIRI memPred = (MemIRI) readValue(dataIn);
-		MemValue memObj = (MemValue) readValue(dataIn);
-		MemResource memContext = null;
+		Resource subj = (Resource) readValue(dataIn);
+		IRI pred = (IRI) readValue(dataIn);
+		Value obj = readValue(dataIn);
+		Resource context = null;
 		if (hasContext) {
-			memContext = (MemResource) readValue(dataIn);
+			context = (Resource) readValue(dataIn);
 		}
 
 		if (isExplicit) {
-			explicit.approve(memSubj, memPred, memObj, memContext);
+			explicit.approve(subj, pred, obj, context);
 		} else {
-			inferred.approve(memSubj, memPred, memObj, memContext);
+			inferred.approve(subj, pred, obj, context);
 		}
 	}
 
@@ -290,9 +721,24 @@ class FileIO {
 		}
 	}
 
+	private void writeNullableValue(Value value, DataOutputStream dataOut) throws IOException {
+		if (value == null) {
+			dataOut.writeByte(NULL_MARKER);
+		} else {
+			writeValue(value, dataOut);
+		}
+	}
+
 	private Value readValue(DataInputStream dataIn) throws IOException, ClassCastException {
+		return readValue(dataIn.readByte(), dataIn);
+	}
+
+	private Value readNullableValue(DataInputStream dataIn) throws IOException, ClassCastException {
 		int valueTypeMarker = dataIn.readByte();
+		return valueTypeMarker == NULL_MARKER ? null : readValue(valueTypeMarker, dataIn);
+	}
 
+	private Value readValue(int valueTypeMarker, DataInputStream dataIn) throws IOException, ClassCastException {
 		if (valueTypeMarker == URI_MARKER) {
 			String uriString = readString(dataIn);
 			return vf.createIRI(uriString);
@@ -354,4 +800,136 @@ class FileIO {
 
 		return charBuf.toString();
 	}
+
+	private static long createFileID() {
+		long fileID;
+		do {
+			fileID = ThreadLocalRandom.current().nextLong();
+		} while (fileID == 0L);
+		return fileID;
+	}
+
+	/*-------------------*
+	 * Inner class Block *
+	 *-------------------*/
+
+	/**
+	 * The location of a block in a version 3 data file.
+	 */
+	private static class Block {
+
+		final int type;
+
+		final int recordCount;
+
+		final long position;
+
+		final int length;
+
+		/**
+		 * The ID of the first value in a value block.
+		 */
+		int firstValueID;
+
+		Block(int type, int recordCount, long position, int length) {
+			this.type = type;
+			this.recordCount = recordCount;
+			this.position = position;
+			this.length = length;
+		}
+	}
+
+	/*-------------------------*
+	 * Inner class BlockWriter *
+	 *-------------------------*/
+
+	/**
+	 * Writes statements as blocks of value IDs, preceded by value blocks with the values that have not been written
+	 * before.
+	 */
+	private class BlockWriter {
+
+		private final DataOutputStream dataOut;
+
+		private final Map<Value, Integer> valueIDs = new HashMap<>();
+
+		private final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream(
+				VALUE_BLOCK_SIZE + 1024);
+
+		private final DataOutputStream valueOut = new DataOutputStream(valueBytes);
+
+		private int pendingValueCount;
+
+		private final int[] statementIDs = new int[STATEMENT_BLOCK_SIZE * 4];
+
+		private int pendingStatementCount;
+
+		public BlockWriter(DataOutputStream dataOut) {
+			this.dataOut = dataOut;
+		}
+
+		public void writeStatements(CloseableIteration<? extends Statement, SailException> stIter,
+				int blockTypeMarker) throws IOException, SailException {
+			try {
+				while (stIter.hasNext()) {
+					Statement st = stIter.next();
+					int offset = pendingStatementCount * 4;
+					statementIDs[offset] = getID(st.getSubject());
+					statementIDs[offset + 1] = getID(st.getPredicate());
+					statementIDs[offset + 2] = getID(st.getObject());
+					statementIDs[offset + 3] = st.getContext() == null ? -1 : getID(st.getContext());
+
+					if (++pendingStatementCount == STATEMENT_BLOCK_SIZE) {
+						flushStatements(blockTypeMarker);
+					}
+				}
+				flushStatements(blockTypeMarker);
+			} finally {
+				stIter.close();
+			}
+		}
+
+		private int getID(Value value) throws IOException {
+			Integer id = valueIDs.get(value);
+
+			if (id == null) {
+				id = valueIDs.size();
+				valueIDs.put(value, id);
+
+				writeValue(value, valueOut);
+				pendingValueCount++;
+				if (valueBytes.size() >= VALUE_BLOCK_SIZE) {
+					flushValues();
+				}
+			}
+
+			return id;
+		}
+
+		private void flushValues() throws IOException {
+			if (pendingValueCount > 0) {
+				dataOut.writeByte(VALUE_BLOCK_MARKER);
+				dataOut.writeInt(pendingValueCount);
+				dataOut.writeInt(valueBytes.size());
+				valueBytes.writeTo(dataOut);
+				valueBytes.reset();
+				pendingValueCount = 0;
+			}
+		}
+
+		private void flushStatements(int blockTypeMarker) throws IOException {
+			if (pendingStatementCount > 0) {
+				// the statements' values must precede the statements
+				flushValues();
+
+				dataOut.writeByte(blockTypeMarker);
+				dataOut.writeInt(pendingStatementCount);
+				dataOut.writeInt(pendingStatementCount * 16);
+				for (int i = 0; i < pendingStatementCount * 4; i++) {
+					dataOut.writeInt(statementIDs[i]);
+				}
+				pendingStatementCount = 0;
+			}
+		}
+	}
 }
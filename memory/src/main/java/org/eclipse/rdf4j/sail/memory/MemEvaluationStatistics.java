@@ -14,7 +14,9 @@ import java.util.List;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.algebra.Join;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.Var;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.eclipse.rdf4j.sail.memory.model.MemIRI;
@@ -33,8 +35,11 @@ class MemEvaluationStatistics extends EvaluationStatistics {
 
 	private final MemValueFactory valueFactory;
 
-	MemEvaluationStatistics(MemValueFactory valueFactory) {
+	private final CharacteristicSets characteristicSets;
+
+	MemEvaluationStatistics(MemValueFactory valueFactory, CharacteristicSets characteristicSets) {
 		this.valueFactory = valueFactory;
+		this.characteristicSets = characteristicSets;
 	}
 
 	@Override
@@ -42,6 +47,47 @@ class MemEvaluationStatistics extends EvaluationStatistics {
 		return new MemCardinalityCalculator();
 	}
 
+	@Override
+	public boolean supportsJoinEstimation() {
+		return true;
+	}
+
+	/**
+	 * Estimates the distinct subjects of statement patterns with an unbound subject and object from the
+	 * {@link CharacteristicSets}, i.e. from the number of subjects that have the predicate of the pattern. The values
+	 * of other bindings are assumed to be distinct; for patterns with a bound subject or object, the size of the
+	 * statement list that the pattern is evaluated on already limits the cardinality.
+	 */
+	@Override
+	public double getDistinctValueCount(TupleExpr expr, String bindingName) {
+		double cardinality = getCardinality(expr);
+		if (expr instanceof StatementPattern) {
+			StatementPattern sp = (StatementPattern) expr;
+			Var subjVar = sp.getSubjectVar();
+			if (bindingName.equals(subjVar.getName()) && !subjVar.hasValue() && !sp.getObjectVar().hasValue()
+					&& sp.getContextVar() == null) {
+				Value pred = sp.getPredicateVar().getValue();
+				double subjectCount;
+				if (pred instanceof IRI) {
+					MemIRI memPred = valueFactory.getMemURI((IRI) pred);
+					if (memPred == null) {
+						// non-existent predicate
+						return 0.0;
+					}
+					subjectCount = characteristicSets.getSubjectCount(memPred);
+				} else if (pred == null) {
+					subjectCount = characteristicSets.getSubjectCount();
+				} else {
+					subjectCount = -1;
+				}
+				if (subjectCount >= 0) {
+					return Math.min(cardinality, subjectCount);
+				}
+			}
+		}
+		return cardinality;
+	}
+
 	protected class MemCardinalityCalculator extends CardinalityCalculator {
 
 		@Override
@@ -119,6 +165,46 @@ class MemEvaluationStatistics extends EvaluationStatistics {
 			return cardinality;
 		}
 
+		@Override
+		public void meet(Join node) {
+			List<StatementPattern> patterns = new ArrayList<>();
+			if (collectStarPatterns(node, patterns)) {
+				double starCardinality = getStarCardinality(patterns);
+				if (starCardinality >= 0) {
+					cardinality = starCardinality;
+					return;
+				}
+			}
+			super.meet(node);
+		}
+
+		/**
+		 * Collects the statement patterns of a join that consists solely of statement patterns that share the same
+		 * unbound subject, have a bound predicate and do not restrict the context.
+		 * 
+		 * @return <tt>true</tt> if the join is such a star-shaped join.
+		 */
+		private boolean collectStarPatterns(TupleExpr expr, List<StatementPattern> patterns) {
+			if (expr instanceof Join) {
+				Join join = (Join) expr;
+				return collectStarPatterns(join.getLeftArg(), patterns)
+						&& collectStarPatterns(join.getRightArg(), patterns);
+			} else if (expr instanceof StatementPattern) {
+				StatementPattern sp = (StatementPattern) expr;
+				Var subjVar = sp.getSubjectVar();
+				if (subjVar.hasValue() || !(getConstantValue(sp.getPredicateVar()) instanceof IRI)
+						|| sp.getContextVar() != null) {
+					return false;
+				}
+				if (!patterns.isEmpty() && !patterns.get(0).getSubjectVar().getName().equals(subjVar.getName())) {
+					return false;
+				}
+				patterns.add(sp);
+				return true;
+			}
+			return false;
+		}
+
 		protected Value getConstantValue(Var var) {
 			if (var != null) {
 				return var.getValue();
@@ -127,4 +213,40 @@ class MemEvaluationStatistics extends EvaluationStatistics {
 			return null;
 		}
 	}
-} // end inner class MemCardinalityCalculator
+
+	/**
+	 * Estimates the cardinality of a star-shaped join from the characteristic sets of the subjects. Patterns with a
+	 * bound object are accounted for by the fraction of the statements of their predicate that have that object.
+	 * 
+	 * @return The estimated cardinality, or a negative value if no estimate could be made.
+	 */
+	@Override
+	public double getStarCardinality(List<StatementPattern> patterns) {
+		List<MemIRI> predicates = new ArrayList<>(patterns.size());
+		double selectivity = 1.0;
+		for (StatementPattern sp : patterns) {
+			MemIRI memPred = valueFactory.getMemURI((IRI) sp.getPredicateVar().getValue());
+			if (memPred == null) {
+				// non-existent predicate
+				return 0.0;
+			}
+			predicates.add(memPred);
+
+			Value obj = sp.getObjectVar().getValue();
+			if (obj != null) {
+				MemValue memObj = valueFactory.getMemValue(obj);
+				if (memObj == null) {
+					// non-existent object
+					return 0.0;
+				}
+				int predicateCount = memPred.getPredicateStatementCount();
+				if (predicateCount > 0) {
+					selectivity *= Math.min(1.0, (double) memObj.getObjectStatementCount() / predicateCount);
+				}
+			}
+		}
+
+		double starCardinality = characteristicSets.getStarCardinality(predicates);
+		return starCardinality < 0 ? starCardinality : starCardinality * selectivity;
+	}
+}
@@ -8,17 +8,32 @@
 package org.eclipse.rdf4j.sail.memory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.rdf4j.IsolationLevel;
 import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.common.concurrent.locks.Lock;
+import org.eclipse.rdf4j.common.concurrent.locks.LockStatistics;
 import org.eclipse.rdf4j.common.concurrent.locks.LockingIteration;
 import org.eclipse.rdf4j.common.concurrent.locks.ReadPrefReadWriteLockManager;
 import org.eclipse.rdf4j.common.concurrent.locks.ReadWriteLockManager;
+import org.eclipse.rdf4j.common.concurrent.locks.StripedReadWriteLockManager;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
 import org.eclipse.rdf4j.common.iteration.EmptyIteration;
@@ -45,8 +60,6 @@ import org.eclipse.rdf4j.sail.memory.model.MemStatementIterator;
 import org.eclipse.rdf4j.sail.memory.model.MemStatementList;
 import org.eclipse.rdf4j.sail.memory.model.MemValue;
 import org.eclipse.rdf4j.sail.memory.model.MemValueFactory;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of {@link SailStore} that keeps committed statements in a {@link MemStatementList}.
@@ -55,7 +68,28 @@ import org.slf4j.LoggerFactory;
  */
 class MemorySailStore implements SailStore {
 
-	private final Logger logger = LoggerFactory.getLogger(MemorySailStore.class);
+	/**
+	 * The maximum number of deprecated statements that is processed in one cleanup task, after which the task is
+	 * resubmitted so that other stores sharing the {@link #CLEANUP_EXECUTOR} get their turn.
+	 */
+	private static final int CLEANUP_BATCH_SIZE = 1024;
+
+	/**
+	 * Executor that purges deprecated statements in the background, shared by all stores. Its thread terminates when
+	 * there is no work.
+	 */
+	private static final ExecutorService CLEANUP_EXECUTOR;
+
+	static {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable, "MemoryStore snapshot cleanup");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		CLEANUP_EXECUTOR = executor;
+	}
 
 	/**
 	 * Factory/cache for MemValue objects.
@@ -78,28 +112,77 @@ class MemorySailStore implements SailStore {
 	private final MemNamespaceStore namespaceStore = new MemNamespaceStore();
 
 	/**
-	 * Lock manager used to give the snapshot cleanup thread exclusive access to the statement list.
+	 * Lock manager used to give {@link #close()} exclusive access to the statement list.
 	 */
 	private final ReadWriteLockManager statementListLockManager;
 
+	/**
+	 * The snapshots that can still be read by open datasets, iterations and serializable sinks, with the number of
+	 * readers of each. Statements that are visible in any of these snapshots must not be purged. Readers are registered
+	 * without a global lock; a counter is set to <tt>-1</tt> before it is removed, so that it is not reused.
+	 */
+	private final ConcurrentHashMap<Integer, AtomicInteger> activeSnapshots = new ConcurrentHashMap<>();
+
 	/**
 	 * Lock manager used to prevent concurrent writes.
 	 */
 	private final ReentrantLock txnLockManager = new ReentrantLock();
 
 	/**
-	 * Cleanup thread that removes deprecated statements when no other threads are accessing this list. Seee
-	 * {@link #scheduleSnapshotCleanup()}.
+	 * Statements that have been deprecated by committed transactions, in the order of their till snapshot, and that
+	 * have not been purged from the statement lists of their components yet. See {@link #cleanSnapshots()}.
 	 */
-	private volatile Thread snapshotCleanupThread;
+	private final ConcurrentLinkedQueue<MemStatement> deprecatedStatements = new ConcurrentLinkedQueue<>();
 
 	/**
-	 * Lock object used to synchronize concurrent access to {@link #snapshotCleanupThread}.
+	 * The number of statements that have been purged from the statement lists of their components, but not yet from
+	 * the main statement list, which is only compacted once a significant part of it is deprecated.
 	 */
-	private final Object snapshotCleanupThreadLockObject = new Object();
+	private int purgedStatementCount;
+
+	/**
+	 * Flag indicating whether a cleanup task has been submitted to the {@link #CLEANUP_EXECUTOR} and has not completed
+	 * yet.
+	 */
+	private final AtomicBoolean cleanupScheduled = new AtomicBoolean();
+
+	/**
+	 * Lock object used to synchronize concurrent calls to {@link #cleanSnapshots()}.
+	 */
+	private final Object cleanupLockObject = new Object();
+
+	/**
+	 * The characteristic sets of the subjects, used to estimate the cardinality of star-shaped joins.
+	 */
+	private final CharacteristicSets characteristicSets = new CharacteristicSets();
 
 	public MemorySailStore(boolean debug) {
-		statementListLockManager = new ReadPrefReadWriteLockManager(debug);
+		this(debug, false);
+	}
+
+	/**
+	 * @param stripedLocks Flag indicating whether readers of the statement lists are counted with a
+	 *                     {@link StripedReadWriteLockManager} instead of a {@link ReadPrefReadWriteLockManager}, which
+	 *                     scales better with many concurrent readers. Both prefer readers.
+	 */
+	public MemorySailStore(boolean debug, boolean stripedLocks) {
+		if (stripedLocks) {
+			statementListLockManager = new StripedReadWriteLockManager(debug, false);
+		} else {
+			statementListLockManager = new ReadPrefReadWriteLockManager(debug);
+		}
+	}
+
+	/**
+	 * Gets the contention counters of the lock on the statement lists.
+	 * 
+	 * @return The counters, or <tt>null</tt> if the lock manager does not count contention.
+	 */
+	public LockStatistics getLockStatistics() {
+		if (statementListLockManager instanceof StripedReadWriteLockManager) {
+			return ((StripedReadWriteLockManager) statementListLockManager).getStatistics();
+		}
+		return null;
 	}
 
 	@Override
@@ -112,8 +195,13 @@ class MemorySailStore implements SailStore {
 		try {
 			Lock stLock = statementListLockManager.getWriteLock();
 			try {
-				valueFactory.clear();
-				statements.clear();
+				// wait for a running cleanup to finish, later cleanups find no statements to purge
+				synchronized (cleanupLockObject) {
+					deprecatedStatements.clear();
+					characteristicSets.clear();
+					valueFactory.clear();
+					statements.clear();
+				}
 			} finally {
 				stLock.release();
 			}
@@ -124,7 +212,7 @@ class MemorySailStore implements SailStore {
 
 	@Override
 	public EvaluationStatistics getEvaluationStatistics() {
-		return new MemEvaluationStatistics(valueFactory);
+		return new MemEvaluationStatistics(valueFactory, characteristicSets);
 	}
 
 	@Override
@@ -146,6 +234,86 @@ class MemorySailStore implements SailStore {
 		}
 	}
 
+	/**
+	 * Acquires a read lock on the statements and registers a reader of the current snapshot, so that the statements
+	 * that are visible in it are not purged until the returned lock is released.
+	 */
+	private SnapshotLock openSnapshotLock() throws SailException {
+		Lock stLock = openStatementsReadLock();
+		while (true) {
+			int snapshot = currentSnapshot;
+			AtomicInteger readers = registerReader(snapshot);
+			if (readers != null) {
+				if (snapshot == currentSnapshot) {
+					return new SnapshotLock(snapshot, readers, stLock);
+				}
+				// a transaction has been committed before the reader was registered, so a cleanup may already have
+				// purged statements that are visible in the snapshot
+				releaseReader(snapshot, readers);
+			}
+		}
+	}
+
+	/**
+	 * Increments the number of readers of a snapshot.
+	 * 
+	 * @return The counter of the readers of the snapshot, or <tt>null</tt> if the counter was being removed and the
+	 *         registration must be retried.
+	 */
+	private AtomicInteger registerReader(int snapshot) {
+		AtomicInteger readers = activeSnapshots.get(snapshot);
+		if (readers == null) {
+			readers = activeSnapshots.computeIfAbsent(snapshot, s -> new AtomicInteger());
+		}
+
+		int count;
+		do {
+			count = readers.get();
+			if (count < 0) {
+				activeSnapshots.remove(snapshot, readers);
+				return null;
+			}
+		} while (!readers.compareAndSet(count, count + 1));
+
+		return readers;
+	}
+
+	private void releaseReader(int snapshot, AtomicInteger readers) {
+		// the counter of the current snapshot is kept for the next readers, it is removed on commit
+		if (readers.decrementAndGet() == 0 && snapshot != currentSnapshot) {
+			removeReaders(snapshot, readers);
+		}
+	}
+
+	/**
+	 * Removes the counter of the readers of a snapshot that is no longer current, if it has no readers.
+	 */
+	private void removeReaders(int snapshot, AtomicInteger readers) {
+		if (readers.compareAndSet(0, -1)) {
+			activeSnapshots.remove(snapshot, readers);
+
+			if (!deprecatedStatements.isEmpty()) {
+				// statements that were kept for this snapshot may now be purged
+				scheduleSnapshotCleanup();
+			}
+		}
+	}
+
+	/**
+	 * Gets the oldest snapshot that can still be read. Statements that are not visible in this snapshot are not
+	 * visible in any later snapshot either and can be purged. The current snapshot is read before the registered
+	 * readers, so that a reader that registers in the meantime reads a snapshot that is not older than the result.
+	 */
+	private int getOldestActiveSnapshot() {
+		int snapshot = currentSnapshot;
+		for (Map.Entry<Integer, AtomicInteger> entry : activeSnapshots.entrySet()) {
+			if (entry.getValue().get() > 0) {
+				snapshot = Math.min(snapshot, entry.getKey());
+			}
+		}
+		return snapshot;
+	}
+
 	/**
 	 * Creates a StatementIterator that contains the statements matching the specified pattern of subject, predicate,
 	 * object, context. Inferred statements are excluded when <tt>explicitOnly</tt> is set to <tt>true</tt> . Statements
@@ -232,102 +400,126 @@ class MemorySailStore implements SailStore {
 	}
 
 	/**
-	 * Removes statements from old snapshots from the main statement list and resets the snapshot to 1 for the rest of
-	 * the statements.
+	 * Purges a batch of deprecated statements that are no longer visible in any active snapshot. The statements are
+	 * removed from the statement lists of their components, which are compacted copy-on-write, so that readers are
+	 * never blocked. The main statement list is only compacted once a significant part of it has been purged from the
+	 * component lists, as each compaction copies the entire list.
 	 * 
-	 * @throws InterruptedException
+	 * @return <tt>true</tt> if more deprecated statements can be purged.
 	 */
-	protected void cleanSnapshots() throws InterruptedException {
-		// System.out.println("cleanSnapshots() starting...");
-		// long startTime = System.currentTimeMillis();
-
-		// Sets used to keep track of which lists have already been processed
-		HashSet<MemValue> processedSubjects = new HashSet<>();
-		HashSet<MemValue> processedPredicates = new HashSet<>();
-		HashSet<MemValue> processedObjects = new HashSet<>();
-		HashSet<MemValue> processedContexts = new HashSet<>();
-
-		int lastStmtPos;
-		Lock stReadLock = statementListLockManager.getReadLock();
-		try {
-			lastStmtPos = statements.size() - 1;
-		} finally {
-			stReadLock.release();
-		}
+	protected boolean cleanSnapshots() {
+		synchronized (cleanupLockObject) {
+			int snapshot = getOldestActiveSnapshot();
+
+			// Sets used to keep track of which lists need to be cleaned
+			HashSet<MemResource> subjects = new HashSet<>();
+			HashSet<MemIRI> predicates = new HashSet<>();
+			HashSet<MemValue> objects = new HashSet<>();
+			HashSet<MemResource> contexts = new HashSet<>();
+
+			int count = 0;
+			for (; count < CLEANUP_BATCH_SIZE; count++) {
+				MemStatement st = deprecatedStatements.peek();
+				if (st == null || st.getTillSnapshot() > snapshot) {
+					// the remaining statements are still visible to some reader
+					break;
+				}
+				deprecatedStatements.poll();
 
-		/*
-		 * The order of the statement list won't change from lastStmtPos down while we don't have the write lock (it
-		 * might shrink or grow) as (1) new statements are always appended last, (2) we are the only process that
-		 * removes statements, (3) this list is cleared on close.
-		 */
+				subjects.add(st.getSubject());
+				predicates.add(st.getPredicate());
+				objects.add(st.getObject());
+				if (st.getContext() != null) {
+					contexts.add(st.getContext());
+				}
+			}
 
-		int nextSnapshot = currentSnapshot;
-		for (int i = lastStmtPos; i >= 0; i--) {
-			// As we are running in the background, yield the write lock frequently to other writers.
-			Lock stWriteLock = statementListLockManager.getWriteLock();
-			try {
-				// guard against shrinkage, e.g. clear() on close()
-				lastStmtPos = statements.size() - 1;
-				i = Math.min(i, lastStmtPos);
-				if (i >= 0) {
-					MemStatement st = statements.get(i);
-
-					if (st.getTillSnapshot() <= nextSnapshot) {
-						MemResource subj = st.getSubject();
-						if (processedSubjects.add(subj)) {
-							subj.cleanSnapshotsFromSubjectStatements(nextSnapshot);
-						}
+			for (MemResource subj : subjects) {
+				subj.cleanSnapshotsFromSubjectStatements(snapshot);
+			}
+			for (MemIRI pred : predicates) {
+				pred.cleanSnapshotsFromPredicateStatements(snapshot);
+			}
+			for (MemValue obj : objects) {
+				obj.cleanSnapshotsFromObjectStatements(snapshot);
+			}
+			for (MemResource context : contexts) {
+				context.cleanSnapshotsFromContextStatements(snapshot);
+			}
 
-						MemIRI pred = st.getPredicate();
-						if (processedPredicates.add(pred)) {
-							pred.cleanSnapshotsFromPredicateStatements(nextSnapshot);
-						}
+			purgedStatementCount += count;
+			if (purgedStatementCount > 0 && purgedStatementCount >= statements.size() / 8) {
+				statements.cleanSnapshots(snapshot);
+				purgedStatementCount = 0;
+			}
 
-						MemValue obj = st.getObject();
-						if (processedObjects.add(obj)) {
-							obj.cleanSnapshotsFromObjectStatements(nextSnapshot);
-						}
+			return isCleanupReady();
+		}
+	}
 
-						MemResource context = st.getContext();
-						if (context != null && processedContexts.add(context)) {
-							context.cleanSnapshotsFromContextStatements(nextSnapshot);
-						}
+	private boolean isCleanupReady() {
+		MemStatement st = deprecatedStatements.peek();
+		return st != null && st.getTillSnapshot() <= getOldestActiveSnapshot();
+	}
 
-						// stale statement
-						statements.remove(i);
-					}
+	protected void scheduleSnapshotCleanup() {
+		if (cleanupScheduled.compareAndSet(false, true)) {
+			CLEANUP_EXECUTOR.execute(() -> {
+				try {
+					cleanSnapshots();
+				} finally {
+					cleanupScheduled.set(false);
 				}
-			} finally {
-				stWriteLock.release();
-			}
-		}
 
-		// long endTime = System.currentTimeMillis();
-		// System.out.println("cleanSnapshots() took " + (endTime - startTime) +
-		// " ms");
+				// resubmit to process the next batch, or any statements deprecated while the task was running
+				if (isCleanupReady()) {
+					scheduleSnapshotCleanup();
+				}
+			});
+		}
 	}
 
-	protected void scheduleSnapshotCleanup() {
-		synchronized (snapshotCleanupThreadLockObject) {
-			Thread toCheckSnapshotCleanupThread = snapshotCleanupThread;
-			if (toCheckSnapshotCleanupThread == null || !toCheckSnapshotCleanupThread.isAlive()) {
-				Runnable runnable = new Runnable() {
+	/*--------------------------*
+	 * Inner class SnapshotLock *
+	 *--------------------------*/
 
-					@Override
-					public void run() {
-						try {
-							cleanSnapshots();
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-							logger.warn("snapshot cleanup interrupted");
-						}
-					}
-				};
+	/**
+	 * A read lock on the statements that also registers a reader of a snapshot.
+	 */
+	private final class SnapshotLock implements Lock {
+
+		private final int snapshot;
+
+		private final AtomicInteger readers;
+
+		private final Lock stLock;
+
+		private volatile boolean active = true;
+
+		SnapshotLock(int snapshot, AtomicInteger readers, Lock stLock) {
+			this.snapshot = snapshot;
+			this.readers = readers;
+			this.stLock = stLock;
+		}
 
-				toCheckSnapshotCleanupThread = snapshotCleanupThread = new Thread(runnable,
-						"MemoryStore snapshot cleanup");
-				toCheckSnapshotCleanupThread.setDaemon(true);
-				toCheckSnapshotCleanupThread.start();
+		int getSnapshot() {
+			return snapshot;
+		}
+
+		@Override
+		public boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public synchronized void release() {
+			if (active) {
+				active = false;
+				try {
+					releaseReader(snapshot, readers);
+				} finally {
+					stLock.release();
+				}
 			}
 		}
 	}
@@ -348,7 +540,7 @@ class MemorySailStore implements SailStore {
 		@Override
 		public MemorySailDataset dataset(IsolationLevel level) throws SailException {
 			if (level.isCompatibleWith(IsolationLevels.SNAPSHOT_READ)) {
-				return new MemorySailDataset(explicit, currentSnapshot);
+				return new MemorySailDataset(explicit, openSnapshotLock());
 			} else {
 				return new MemorySailDataset(explicit);
 			}
@@ -369,16 +561,28 @@ class MemorySailStore implements SailStore {
 
 		private volatile boolean txnLock;
 
-		private boolean requireCleanup;
+		/**
+		 * The statements that have been deprecated by this sink.
+		 */
+		private final List<MemStatement> deprecated = new ArrayList<>();
+
+		/**
+		 * The number of statements per predicate of the subjects that have been modified by this sink, as they were
+		 * before the first modification. Used to update the {@link CharacteristicSets} on flush.
+		 */
+		private final Map<MemResource, Map<MemIRI, Integer>> modifiedSubjects = new HashMap<>();
 
 		public MemorySailSink(boolean explicit, boolean serializable) throws SailException {
 			this.explicit = explicit;
 			if (serializable) {
-				this.serializable = currentSnapshot;
+				// keep the statements that may have been observed until prepare()
+				SnapshotLock snapshotLock = openSnapshotLock();
+				this.serializable = snapshotLock.getSnapshot();
+				txnStLock = snapshotLock;
 			} else {
 				this.serializable = Integer.MAX_VALUE;
+				txnStLock = openStatementsReadLock();
 			}
-			txnStLock = openStatementsReadLock();
 		}
 
 		@Override
@@ -431,15 +635,29 @@ class MemorySailStore implements SailStore {
 		@Override
 		public synchronized void flush() throws SailException {
 			if (txnLock) {
-				currentSnapshot = Math.max(currentSnapshot, nextSnapshot);
-				if (requireCleanup) {
+				int previousSnapshot = currentSnapshot;
+				currentSnapshot = Math.max(previousSnapshot, nextSnapshot);
+				if (currentSnapshot != previousSnapshot) {
+					AtomicInteger readers = activeSnapshots.get(previousSnapshot);
+					if (readers != null && readers.get() == 0) {
+						removeReaders(previousSnapshot, readers);
+					}
+				}
+				if (!deprecated.isEmpty()) {
+					deprecatedStatements.addAll(deprecated);
+					deprecated.clear();
 					scheduleSnapshotCleanup();
 				}
+				for (Map.Entry<MemResource, Map<MemIRI, Integer>> entry : modifiedSubjects.entrySet()) {
+					characteristicSets.update(entry.getValue(), getPredicateCounts(entry.getKey()));
+				}
+				modifiedSubjects.clear();
 			}
 		}
 
 		@Override
 		public void close() {
+			modifiedSubjects.clear();
 			try {
 				boolean toCloseTxnLock = txnLock;
 				txnLock = false;
@@ -493,12 +711,10 @@ class MemorySailStore implements SailStore {
 		@Override
 		public synchronized void clear(Resource... contexts) throws SailException {
 			acquireExclusiveTransactionLock();
-			requireCleanup = true;
 			try (CloseableIteration<MemStatement, SailException> iter = createStatementIterator(null, null, null,
 					explicit, nextSnapshot, contexts);) {
 				while (iter.hasNext()) {
-					MemStatement st = iter.next();
-					st.setTillSnapshot(nextSnapshot);
+					deprecateStatement(iter.next());
 				}
 			}
 		}
@@ -512,16 +728,42 @@ class MemorySailStore implements SailStore {
 		@Override
 		public synchronized void deprecate(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
 			acquireExclusiveTransactionLock();
-			requireCleanup = true;
 			try (CloseableIteration<MemStatement, SailException> iter = createStatementIterator(subj, pred, obj,
 					explicit, nextSnapshot, ctx);) {
 				while (iter.hasNext()) {
-					MemStatement st = iter.next();
-					st.setTillSnapshot(nextSnapshot);
+					deprecateStatement(iter.next());
 				}
 			}
 		}
 
+		/**
+		 * Adds the statements while holding the transaction lock and the monitor of this sink only once.
+		 */
+		@Override
+		public synchronized void approveAll(Collection<? extends Statement> statements) throws SailException {
+			acquireExclusiveTransactionLock();
+			for (Statement st : statements) {
+				addStatement(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext(), explicit);
+			}
+		}
+
+		/**
+		 * Removes the statements while holding the transaction lock and the monitor of this sink only once.
+		 */
+		@Override
+		public synchronized void deprecateAll(Collection<? extends Statement> statements) throws SailException {
+			acquireExclusiveTransactionLock();
+			for (Statement st : statements) {
+				deprecate(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			}
+		}
+
+		private void deprecateStatement(MemStatement st) {
+			subjectModified(st.getSubject());
+			st.setTillSnapshot(nextSnapshot);
+			deprecated.add(st);
+		}
+
 		private void acquireExclusiveTransactionLock() throws SailException {
 			if (!txnLock) {
 				txnLockManager.lock();
@@ -538,6 +780,8 @@ class MemorySailStore implements SailStore {
 			MemValue memObj = valueFactory.getOrCreateMemValue(obj);
 			MemResource memContext = (context == null) ? null : valueFactory.getOrCreateMemResource(context);
 
+			subjectModified(memSubj);
+
 			if (memSubj.hasStatements() && memPred.hasStatements() && memObj.hasStatements()
 					&& (memContext == null || memContext.hasStatements())) {
 				// All values are used in at least one statement. Possibly, the
@@ -552,7 +796,7 @@ class MemorySailStore implements SailStore {
 
 						if (!st.isExplicit() && explicit) {
 							// Implicit statement is now added explicitly
-							st.setTillSnapshot(nextSnapshot);
+							deprecateStatement(st);
 						} else if (!st.isInSnapshot(nextSnapshot)) {
 							st.setSinceSnapshot(nextSnapshot);
 						} else {
@@ -569,6 +813,36 @@ class MemorySailStore implements SailStore {
 			st.addToComponentLists();
 			return st;
 		}
+
+		/**
+		 * Records the statements per predicate of the supplied subject, unless the subject has already been modified
+		 * by this sink.
+		 */
+		private void subjectModified(MemResource subj) {
+			if (!modifiedSubjects.containsKey(subj)) {
+				Map<MemIRI, Integer> counts;
+				if (subj.hasStatements()) {
+					counts = getPredicateCounts(subj);
+				} else {
+					counts = Collections.emptyMap();
+				}
+				modifiedSubjects.put(subj, counts);
+			}
+		}
+
+		/**
+		 * Counts the statements per predicate of the supplied subject in this sink's snapshot.
+		 */
+		private Map<MemIRI, Integer> getPredicateCounts(MemResource subj) {
+			Map<MemIRI, Integer> counts = new HashMap<>();
+			try (CloseableIteration<MemStatement, SailException> iter = createStatementIterator(subj, null, null,
+					null, nextSnapshot);) {
+				while (iter.hasNext()) {
+					counts.merge(iter.next().getPredicate(), 1, Integer::sum);
+				}
+			}
+			return counts;
+		}
 	}
 
 	/**
@@ -588,10 +862,10 @@ class MemorySailStore implements SailStore {
 			this.lock = null;
 		}
 
-		public MemorySailDataset(boolean explicit, int snapshot) throws SailException {
+		public MemorySailDataset(boolean explicit, SnapshotLock lock) throws SailException {
 			this.explicit = explicit;
-			this.snapshot = snapshot;
-			this.lock = openStatementsReadLock();
+			this.snapshot = lock.getSnapshot();
+			this.lock = lock;
 		}
 
 		@Override
@@ -630,29 +904,23 @@ class MemorySailStore implements SailStore {
 
 		@Override
 		public CloseableIteration<? extends Resource, SailException> getContextIDs() throws SailException {
-			// Note: we can't do this in a streaming fashion due to concurrency
-			// issues; iterating over the set of IRIs or bnodes while another
-			// thread
-			// adds statements with new resources would result in
-			// ConcurrentModificationException's (issue SES-544).
-
-			// Create a list of all resources that are used as contexts
+			// Create a list of all resources that are used as contexts. The
+			// value factory's sets can be iterated while other threads create
+			// new values, but the result is collected while the lock is held.
 			ArrayList<MemResource> contextIDs = new ArrayList<>(32);
 
-			Lock stLock = openStatementsReadLock();
+			Lock stLock = openReadLock();
 			try {
-				synchronized (valueFactory) {
-					int snapshot = getCurrentSnapshot();
-					for (MemResource memResource : valueFactory.getMemURIs()) {
-						if (isContextResource(memResource, snapshot)) {
-							contextIDs.add(memResource);
-						}
+				int snapshot = getSnapshot(stLock);
+				for (MemResource memResource : valueFactory.getMemURIs()) {
+					if (isContextResource(memResource, snapshot)) {
+						contextIDs.add(memResource);
 					}
+				}
 
-					for (MemResource memResource : valueFactory.getMemBNodes()) {
-						if (isContextResource(memResource, snapshot)) {
-							contextIDs.add(memResource);
-						}
+				for (MemResource memResource : valueFactory.getMemBNodes()) {
+					if (isContextResource(memResource, snapshot)) {
+						contextIDs.add(memResource);
 					}
 				}
 			} finally {
@@ -668,9 +936,9 @@ class MemorySailStore implements SailStore {
 			CloseableIteration<? extends Statement, SailException> stIter1 = null;
 			CloseableIteration<? extends Statement, SailException> stIter2 = null;
 			boolean allGood = false;
-			Lock stLock = openStatementsReadLock();
+			Lock stLock = openReadLock();
 			try {
-				stIter1 = createStatementIterator(subj, pred, obj, explicit, getCurrentSnapshot(), contexts);
+				stIter1 = createStatementIterator(subj, pred, obj, explicit, getSnapshot(stLock), contexts);
 				stIter2 = new LockingIteration<Statement, SailException>(stLock, stIter1);
 				allGood = true;
 				return stIter2;
@@ -693,11 +961,24 @@ class MemorySailStore implements SailStore {
 			}
 		}
 
-		private int getCurrentSnapshot() {
+		/**
+		 * Acquires a read lock for an operation on this dataset. If this dataset does not read a fixed snapshot, the
+		 * current snapshot is registered until the lock is released.
+		 */
+		private Lock openReadLock() throws SailException {
+			if (snapshot >= 0) {
+				// the snapshot is registered by this dataset's lock
+				return openStatementsReadLock();
+			} else {
+				return openSnapshotLock();
+			}
+		}
+
+		private int getSnapshot(Lock lock) {
 			if (snapshot >= 0) {
 				return snapshot;
 			} else {
-				return currentSnapshot;
+				return ((SnapshotLock) lock).getSnapshot();
 			}
 		}
 
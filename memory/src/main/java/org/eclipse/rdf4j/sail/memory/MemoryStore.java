@@ -9,11 +9,16 @@ package org.eclipse.rdf4j.sail.memory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.function.Supplier;
 
 import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.common.concurrent.locks.Lock;
+import org.eclipse.rdf4j.common.concurrent.locks.LockStatistics;
+import org.eclipse.rdf4j.common.concurrent.locks.StripedReadWriteLockManager;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategyFactory;
@@ -24,6 +29,7 @@ import org.eclipse.rdf4j.repository.sparql.federation.SPARQLServiceResolver;
 import org.eclipse.rdf4j.sail.NotifyingSailConnection;
 import org.eclipse.rdf4j.sail.SailChangedEvent;
 import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.base.QueryPlanCache;
 import org.eclipse.rdf4j.sail.base.SailDataset;
 import org.eclipse.rdf4j.sail.base.SailSink;
 import org.eclipse.rdf4j.sail.base.SailStore;
@@ -53,6 +59,14 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 
 	protected static final String SYNC_FILE_NAME = "memorystore.sync";
 
+	protected static final String LOG_FILE_NAME = "memorystore.log";
+
+	/**
+	 * The data file is rewritten completely instead of appending to the change log once the change log has grown to
+	 * this fraction of the data file's size.
+	 */
+	private static final double LOG_COMPACTION_RATIO = 0.5;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -62,8 +76,40 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 	 */
 	private SailStore store;
 
+	/**
+	 * The store wrapper that records changes for the change log, null if this is a volatile RDF store.
+	 */
+	private volatile ChangeLogSailStore changeLogStore;
+
 	private volatile boolean persist = false;
 
+	/**
+	 * Flag indicating whether statements are kept in packed, sorted indexes instead of as objects.
+	 * 
+	 * @see #setPackedIndexes
+	 */
+	private volatile boolean packedIndexes = false;
+
+	/**
+	 * Flag indicating whether readers of the statements are counted with a {@link StripedReadWriteLockManager}.
+	 * 
+	 * @see #setStripedLocks
+	 */
+	private volatile boolean stripedLocks = false;
+
+	/**
+	 * The contention counters of the statement lock, <tt>null</tt> if striped locks are not used.
+	 */
+	private volatile Supplier<LockStatistics> lockStatistics;
+
+	/**
+	 * The maximum number of optimized query plans that are cached, see {@link QueryPlanCache}. Plans are not cached if
+	 * this is <tt>0</tt>.
+	 */
+	private volatile int queryPlanCacheSize = 0;
+
+	private volatile QueryPlanCache queryPlanCache;
+
 	/**
 	 * The file used for data persistence, null if this is a volatile RDF store.
 	 */
@@ -74,6 +120,17 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 	 */
 	private volatile File syncFile;
 
+	/**
+	 * The file used for logging changes since the data file was written, null if this is a volatile RDF store.
+	 */
+	private volatile File logFile;
+
+	/**
+	 * The file ID of the current data file, <tt>0</tt> if it is unknown or if the data file was written in an older
+	 * format. Changes can only be appended to the change log if the file ID is known.
+	 */
+	private volatile long dataFileID;
+
 	/**
 	 * The directory lock, null if this is read-only or a volatile RDF store.
 	 */
@@ -160,6 +217,65 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 		return persist;
 	}
 
+	/**
+	 * Sets whether this store keeps its statements in packed indexes. When enabled, values are interned to integer IDs
+	 * and statements are kept in sorted <tt>int[]</tt> permutation indexes, which reduces the memory use per statement
+	 * considerably and speeds up scans of large stores. The default object-based store is better suited to small
+	 * stores with frequent small updates, as the packed indexes are updated in batches on commit.
+	 * <p>
+	 * The default value for this parameter is <tt>false</tt>.
+	 * 
+	 * @param packedIndexes <tt>true</tt> to use packed indexes.
+	 */
+	public void setPackedIndexes(boolean packedIndexes) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been initialized");
+		}
+
+		this.packedIndexes = packedIndexes;
+	}
+
+	/**
+	 * @return Whether this store keeps its statements in packed indexes.
+	 * @see #setPackedIndexes
+	 */
+	public boolean getPackedIndexes() {
+		return packedIndexes;
+	}
+
+	/**
+	 * Sets whether the lock that protects the statements from concurrent changes counts its readers in striped
+	 * counters, see {@link StripedReadWriteLockManager}. This avoids contention between many short concurrent queries,
+	 * and provides contention counters through {@link #getLockStatistics()}. Like the default lock, the striped lock
+	 * prefers readers.
+	 * <p>
+	 * The default value for this parameter is <tt>false</tt>.
+	 */
+	public void setStripedLocks(boolean stripedLocks) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been initialized");
+		}
+
+		this.stripedLocks = stripedLocks;
+	}
+
+	/**
+	 * @see #setStripedLocks
+	 */
+	public boolean getStripedLocks() {
+		return stripedLocks;
+	}
+
+	/**
+	 * Gets the contention counters of the lock that protects the statements.
+	 * 
+	 * @return The counters, or <tt>null</tt> if striped locks are not used or the store has not been initialized.
+	 */
+	public LockStatistics getLockStatistics() {
+		Supplier<LockStatistics> lockStatistics = this.lockStatistics;
+		return lockStatistics != null ? lockStatistics.get() : null;
+	}
+
 	/**
 	 * Sets the time (in milliseconds) to wait after a transaction was commited before writing the changed data to file.
 	 * Setting this variable to 0 will force a file sync immediately after each commit. A negative value will deactivate
@@ -190,6 +306,34 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 		return syncDelay;
 	}
 
+	/**
+	 * Sets the maximum number of optimized query plans that are cached and shared by the connections of this store,
+	 * must be called before initialization. Repeated evaluations of the same query with the same bindings then skip
+	 * query optimization. Defaults to <tt>0</tt>, which disables the cache.
+	 * 
+	 * @see QueryPlanCache#DEFAULT_CAPACITY
+	 */
+	public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been initialized");
+		}
+
+		this.queryPlanCacheSize = queryPlanCacheSize;
+	}
+
+	public int getQueryPlanCacheSize() {
+		return queryPlanCacheSize;
+	}
+
+	/**
+	 * Gets the cache of optimized query plans, with its hit and miss counters.
+	 * 
+	 * @return The cache, or <tt>null</tt> if query plans are not cached or the store has not been initialized.
+	 */
+	public QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+
 	/**
 	 * @return Returns the {@link EvaluationStrategy}.
 	 */
@@ -244,13 +388,24 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 	protected void initializeInternal() throws SailException {
 		logger.debug("Initializing MemoryStore...");
 
-		this.store = new MemorySailStore(debugEnabled());
+		if (packedIndexes) {
+			PackedMemorySailStore packedStore = new PackedMemorySailStore(debugEnabled(), stripedLocks);
+			this.store = packedStore;
+			this.lockStatistics = stripedLocks ? packedStore::getLockStatistics : null;
+		} else {
+			MemorySailStore memoryStore = new MemorySailStore(debugEnabled(), stripedLocks);
+			this.store = memoryStore;
+			this.lockStatistics = stripedLocks ? memoryStore::getLockStatistics : null;
+		}
+		this.queryPlanCache = queryPlanCacheSize > 0 ? new QueryPlanCache(queryPlanCacheSize) : null;
 
 		if (persist) {
 			File dataDir = getDataDir();
 			DirectoryLockManager locker = new DirectoryLockManager(dataDir);
 			dataFile = new File(dataDir, DATA_FILE_NAME);
 			syncFile = new File(dataDir, SYNC_FILE_NAME);
+			logFile = new File(dataDir, LOG_FILE_NAME);
+			dataFileID = 0L;
 
 			if (dataFile.exists()) {
 				logger.debug("Reading data from {}...", dataFile);
@@ -273,7 +428,7 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 					SailSink explicit = store.getExplicitSailSource().sink(IsolationLevels.NONE);
 					SailSink inferred = store.getInferredSailSource().sink(IsolationLevels.NONE);
 					try {
-						new FileIO(store.getValueFactory()).read(dataFile, explicit, inferred);
+						dataFileID = new FileIO(store.getValueFactory()).read(dataFile, explicit, inferred);
 						logger.debug("Data file read successfully");
 					} catch (IOException e) {
 						logger.error("Failed to read data file", e);
@@ -286,6 +441,7 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 						inferred.flush();
 						inferred.close();
 					}
+					readChangeLog();
 				}
 			} else {
 				// file specified that does not exist yet, create it
@@ -305,12 +461,13 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 					SailDataset explicit = store.getExplicitSailSource().dataset(IsolationLevels.SNAPSHOT);
 					SailDataset inferred = store.getInferredSailSource().dataset(IsolationLevels.SNAPSHOT);
 					try {
-						new FileIO(store.getValueFactory()).write(explicit, inferred, syncFile, dataFile);
+						dataFileID = new FileIO(store.getValueFactory()).write(explicit, inferred, syncFile, dataFile);
 					} finally {
 						explicit.close();
 						inferred.close();
 
 					}
+					deleteChangeLog();
 					logger.debug("Data file initialized");
 				} catch (IOException e) {
 					logger.debug("Failed to initialize data file", e);
@@ -320,6 +477,11 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 					throw new SailException("Failed to initialize data file " + dataFile, e);
 				}
 			}
+
+			// record changes from here on, so that they can be appended to
+			// the change log
+			changeLogStore = new ChangeLogSailStore(store);
+			store = changeLogStore;
 		}
 
 		contentsChanged = false;
@@ -334,8 +496,10 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 			sync();
 
 			store.close();
+			changeLogStore = null;
 			dataFile = null;
 			syncFile = null;
+			logFile = null;
 		} finally {
 			if (dirLock != null) {
 				dirLock.release();
@@ -436,7 +600,8 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 
 	/**
 	 * Synchronizes the contents of this repository with the data that is stored on disk. Data will only be written when
-	 * the contents of the repository and data in the file are out of sync.
+	 * the contents of the repository and data in the file are out of sync. Changes are appended to the change log
+	 * unless the change log has grown too large, in which case the complete data file is rewritten.
 	 */
 	public void sync() throws SailException {
 		// syncSemaphore prevents concurrent file synchronizations
@@ -444,25 +609,101 @@ public class MemoryStore extends AbstractNotifyingSail implements FederatedServi
 			if (persist && contentsChanged) {
 				logger.debug("syncing data to file...");
 				try {
-					IsolationLevels level = IsolationLevels.SNAPSHOT;
-					SailDataset explicit = store.getExplicitSailSource().dataset(level);
-					SailDataset inferred = store.getInferredSailSource().dataset(level);
-					try {
-						new FileIO(store.getValueFactory()).write(explicit, inferred, syncFile, dataFile);
-					} finally {
-						explicit.close();
-						inferred.close();
+					// take the changes before opening any datasets: changes
+					// that are flushed in the meantime will be included in
+					// the next sync
+					byte[] changes = changeLogStore.takeChanges();
+
+					if (changes != null && dataFileID != 0L
+							&& logFile.length() < dataFile.length() * LOG_COMPACTION_RATIO) {
+						if (changes.length > 0) {
+							appendChanges(changes);
+						}
+						logger.debug("Changes appended to log file");
+					} else {
+						writeDataFile();
+						logger.debug("Data synced to file");
 					}
 					contentsChanged = false;
-					logger.debug("Data synced to file");
 				} catch (IOException e) {
 					logger.error("Failed to sync to file", e);
 					throw new SailException(e);
+				} finally {
+					if (contentsChanged) {
+						// the changes that were taken are not in the change
+						// log, so the next sync has to write a complete data
+						// file
+						dataFileID = 0L;
+					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Appends changes to the change log of the current data file.
+	 */
+	void appendChanges(byte[] changes) throws IOException {
+		new FileIO(store.getValueFactory()).appendChanges(logFile, dataFileID, changes);
+	}
+
+	/**
+	 * Writes the complete contents of this repository to a new data file, which makes the change log obsolete.
+	 */
+	private void writeDataFile() throws IOException, SailException {
+		IsolationLevels level = IsolationLevels.SNAPSHOT;
+		SailDataset explicit = store.getExplicitSailSource().dataset(level);
+		SailDataset inferred = store.getInferredSailSource().dataset(level);
+		try {
+			dataFileID = new FileIO(store.getValueFactory()).write(explicit, inferred, syncFile, dataFile);
+		} finally {
+			explicit.close();
+			inferred.close();
+		}
+		// a change log that is left behind is ignored as it refers to the
+		// previous data file
+		deleteChangeLog();
+	}
+
+	/**
+	 * Replays the change log of the data file that has just been read, if any. An incomplete record at the end of the
+	 * change log is truncated so that new changes can be appended.
+	 */
+	private void readChangeLog() throws SailException {
+		if (!logFile.exists()) {
+			return;
+		}
+
+		if (dataFileID == 0L) {
+			logger.warn("Ignoring change log of data file in an older format: {}", logFile);
+			return;
+		}
+
+		logger.debug("Reading changes from {}...", logFile);
+		try {
+			long validLength = new FileIO(store.getValueFactory()).readChanges(logFile, dataFileID, store);
+			if (validLength < 0L) {
+				logger.warn("Ignoring change log that does not belong to data file: {}", logFile);
+				deleteChangeLog();
+			} else if (validLength < logFile.length() && dirLock != null) {
+				logger.warn("Truncating incomplete change log: {}", logFile);
+				try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE);) {
+					channel.truncate(validLength);
+				}
+			}
+			logger.debug("Change log read successfully");
+		} catch (IOException e) {
+			logger.error("Failed to read change log", e);
+			throw new SailException(e);
+		}
+	}
+
+	private void deleteChangeLog() throws IOException {
+		if (dirLock != null && logFile.exists() && !logFile.delete()) {
+			throw new IOException("Could not delete change log " + logFile);
+		}
+	}
+
 	SailStore getSailStore() {
 		return store;
 	}
@@ -13,6 +13,7 @@ import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.SailReadOnlyException;
+import org.eclipse.rdf4j.sail.base.QueryPlanCache;
 import org.eclipse.rdf4j.sail.base.SailSourceConnection;
 import org.eclipse.rdf4j.sail.helpers.DefaultSailChangedEvent;
 
@@ -46,6 +47,11 @@ public class MemoryStoreConnection extends SailSourceConnection {
 	 * Methods *
 	 *---------*/
 
+	@Override
+	protected QueryPlanCache getQueryPlanCache() {
+		return sail.getQueryPlanCache();
+	}
+
 	@Override
 	protected void startTransactionInternal() throws SailException {
 		if (!sail.isWritable()) {
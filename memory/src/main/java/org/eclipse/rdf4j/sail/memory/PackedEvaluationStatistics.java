@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+
+/**
+ * Uses the sorted indexes of a {@link PackedMemorySailStore} to give cost estimates based on the number of statements
+ * that match the leading constants of a statement pattern.
+ */
+class PackedEvaluationStatistics extends EvaluationStatistics {
+
+	private final PackedMemorySailStore store;
+
+	PackedEvaluationStatistics(PackedMemorySailStore store) {
+		this.store = store;
+	}
+
+	@Override
+	protected CardinalityCalculator createCardinalityCalculator() {
+		return new PackedCardinalityCalculator();
+	}
+
+	protected class PackedCardinalityCalculator extends CardinalityCalculator {
+
+		@Override
+		public double getCardinality(StatementPattern sp) {
+			Value subj = getConstantValue(sp.getSubjectVar());
+			if (!(subj instanceof Resource)) {
+				// can happen when a previous optimizer has inlined a comparison
+				// operator. See SES-970 / SES-998
+				subj = null;
+			}
+			Value pred = getConstantValue(sp.getPredicateVar());
+			if (!(pred instanceof IRI)) {
+				pred = null;
+			}
+			Value obj = getConstantValue(sp.getObjectVar());
+			Value context = getConstantValue(sp.getContextVar());
+			if (!(context instanceof Resource)) {
+				context = null;
+			}
+
+			return store.getCardinality((Resource) subj, (IRI) pred, obj, (Resource) context);
+		}
+
+		protected Value getConstantValue(Var var) {
+			if (var != null) {
+				return var.getValue();
+			}
+
+			return null;
+		}
+	}
+}
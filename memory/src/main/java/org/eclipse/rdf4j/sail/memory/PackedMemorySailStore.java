@@ -0,0 +1,1254 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.rdf4j.IsolationLevel;
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.common.concurrent.locks.Lock;
+import org.eclipse.rdf4j.common.concurrent.locks.LockStatistics;
+import org.eclipse.rdf4j.common.concurrent.locks.LockingIteration;
+import org.eclipse.rdf4j.common.concurrent.locks.ReadPrefReadWriteLockManager;
+import org.eclipse.rdf4j.common.concurrent.locks.ReadWriteLockManager;
+import org.eclipse.rdf4j.common.concurrent.locks.StripedReadWriteLockManager;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.eclipse.rdf4j.sail.SailConflictException;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.base.BackingSailSource;
+import org.eclipse.rdf4j.sail.base.SailDataset;
+import org.eclipse.rdf4j.sail.base.SailSink;
+import org.eclipse.rdf4j.sail.base.SailSource;
+import org.eclipse.rdf4j.sail.base.SailStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of {@link SailStore} that keeps committed statements in primitive arrays. Values are interned to
+ * int IDs and each statement is stored as four consecutive IDs (subject, predicate, object and context) in a single
+ * <tt>int[]</tt>, along with the snapshots in which it is visible. Statements are looked up through the sorted
+ * permutation indexes <tt>spoc</tt>, <tt>posc</tt>, <tt>ospc</tt> and <tt>cspo</tt> (see
+ * {@link PackedStatementIndex}), so that each statement costs about 40 bytes, compared to well over 100 bytes for the
+ * object graph of {@link MemorySailStore}.
+ * <p>
+ * Like {@link MemorySailStore}, this store uses snapshot numbers for isolation: statements that are added or removed in
+ * a transaction are marked with the transaction's snapshot, which only becomes visible to readers once the transaction
+ * has been flushed. Statements added in a transaction are added to the indexes when the transaction is flushed.
+ * Removed statements are purged, and the statement positions renumbered, in the background once they make up a
+ * significant part of the store.
+ */
+class PackedMemorySailStore implements SailStore {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	static final int SUBJ_IDX = 0;
+
+	static final int PRED_IDX = 1;
+
+	static final int OBJ_IDX = 2;
+
+	static final int CONTEXT_IDX = 3;
+
+	/**
+	 * The value ID of the null context.
+	 */
+	static final int NULL_CONTEXT_ID = 0;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * The maximum number of statements, limited by the size of the <tt>int[]</tt> that holds four IDs per statement.
+	 */
+	private static final int MAX_CAPACITY = (Integer.MAX_VALUE - 8) / 4;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Logger logger = LoggerFactory.getLogger(PackedMemorySailStore.class);
+
+	private final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+	/**
+	 * Maps values to their IDs.
+	 */
+	private final ConcurrentHashMap<Value, Integer> valueIDs = new ConcurrentHashMap<>();
+
+	/**
+	 * Maps value IDs to their values, <tt>null</tt> for the null context and for unused IDs.
+	 */
+	private volatile Value[] values = new Value[INITIAL_CAPACITY];
+
+	/**
+	 * The number of value IDs that have been handed out, including the null context's ID.
+	 */
+	private int valueCount = 1;
+
+	/**
+	 * IDs of values that have been purged and that can be reused.
+	 */
+	private int[] freeValueIDs = new int[0];
+
+	private int freeValueIDCount = 0;
+
+	/**
+	 * The statement data, replaced as a whole when it needs to grow.
+	 */
+	private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+
+	/**
+	 * The number of statements in {@link #columns}, including statements that are no longer visible.
+	 */
+	private volatile int size = 0;
+
+	/**
+	 * The number of statements that are no longer visible in the current or any later snapshot.
+	 */
+	private volatile int deprecatedCount = 0;
+
+	private final PackedStatementIndex[] indexes = { new PackedStatementIndex("spoc"),
+			new PackedStatementIndex("posc"), new PackedStatementIndex("ospc"), new PackedStatementIndex("cspo") };
+
+	private final PackedStatementIndex contextIndex = indexes[3];
+
+	/**
+	 * Identifies the current snapshot.
+	 */
+	private volatile int currentSnapshot;
+
+	/**
+	 * Statements that have been added by the active transaction and that have not been added to the indexes yet.
+	 */
+	private final PendingStatements pending = new PendingStatements();
+
+	/**
+	 * Positions of the statements that have been removed by the active transaction and that have not been flushed yet.
+	 */
+	private int[] deprecated = new int[16];
+
+	private int deprecatedPendingCount = 0;
+
+	/**
+	 * Store for namespace prefix info.
+	 */
+	private final MemNamespaceStore namespaceStore = new MemNamespaceStore();
+
+	/**
+	 * Lock manager used to give the snapshot cleanup thread exclusive access to the statements.
+	 */
+	private final ReadWriteLockManager statementListLockManager;
+
+	/**
+	 * Lock manager used to prevent concurrent writes.
+	 */
+	private final ReentrantLock txnLockManager = new ReentrantLock();
+
+	/**
+	 * Cleanup thread that purges deprecated statements when no other threads are accessing the statements. See
+	 * {@link #scheduleSnapshotCleanup()}.
+	 */
+	private volatile Thread snapshotCleanupThread;
+
+	/**
+	 * Lock object used to synchronize concurrent access to {@link #snapshotCleanupThread}.
+	 */
+	private final Object snapshotCleanupThreadLockObject = new Object();
+
+	public PackedMemorySailStore(boolean debug) {
+		this(debug, false);
+	}
+
+	/**
+	 * @param stripedLocks Flag indicating whether readers of the statement lists are counted with a
+	 *                     {@link StripedReadWriteLockManager} instead of a {@link ReadPrefReadWriteLockManager}, which
+	 *                     scales better with many concurrent readers. Both prefer readers.
+	 */
+	public PackedMemorySailStore(boolean debug, boolean stripedLocks) {
+		if (stripedLocks) {
+			statementListLockManager = new StripedReadWriteLockManager(debug, false);
+		} else {
+			statementListLockManager = new ReadPrefReadWriteLockManager(debug);
+		}
+	}
+
+	/**
+	 * Gets the contention counters of the lock on the statement lists.
+	 * 
+	 * @return The counters, or <tt>null</tt> if the lock manager does not count contention.
+	 */
+	public LockStatistics getLockStatistics() {
+		if (statementListLockManager instanceof StripedReadWriteLockManager) {
+			return ((StripedReadWriteLockManager) statementListLockManager).getStatistics();
+		}
+		return null;
+	}
+
+	@Override
+	public ValueFactory getValueFactory() {
+		return valueFactory;
+	}
+
+	@Override
+	public void close() {
+		try {
+			Lock stLock = statementListLockManager.getWriteLock();
+			try {
+				valueIDs.clear();
+				values = new Value[INITIAL_CAPACITY];
+				valueCount = 1;
+				freeValueIDCount = 0;
+				columns = new Columns(INITIAL_CAPACITY);
+				size = 0;
+				deprecatedCount = 0;
+				for (PackedStatementIndex index : indexes) {
+					index.clear();
+				}
+			} finally {
+				stLock.release();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public EvaluationStatistics getEvaluationStatistics() {
+		return new PackedEvaluationStatistics(this);
+	}
+
+	@Override
+	public SailSource getExplicitSailSource() {
+		return new PackedSailSource(true);
+	}
+
+	@Override
+	public SailSource getInferredSailSource() {
+		return new PackedSailSource(false);
+	}
+
+	private Lock openStatementsReadLock() throws SailException {
+		try {
+			return statementListLockManager.getReadLock();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Gets the ID of the specified value.
+	 *
+	 * @return The value's ID, {@link #NULL_CONTEXT_ID} if the value is <tt>null</tt>, or <tt>-1</tt> if the value is
+	 *         not used in this store.
+	 */
+	private int getValueID(Value value) {
+		if (value == null) {
+			return NULL_CONTEXT_ID;
+		}
+		Integer id = valueIDs.get(value);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Gets the ID of the specified value, assigning a new ID if the value is not yet used in this store. Must only be
+	 * called while holding the transaction lock.
+	 */
+	private int getOrCreateValueID(Value value) throws SailException {
+		int id = getValueID(value);
+		if (id >= 0) {
+			return id;
+		}
+
+		if (freeValueIDCount > 0) {
+			id = freeValueIDs[--freeValueIDCount];
+		} else {
+			if (valueCount == Integer.MAX_VALUE) {
+				throw new SailException("Maximum number of values exceeded");
+			}
+			id = valueCount++;
+		}
+
+		Value[] values = this.values;
+		if (id >= values.length) {
+			values = Arrays.copyOf(values, (int) Math.min(Integer.MAX_VALUE - 8, values.length * 2L));
+		}
+		values[id] = value;
+		this.values = values;
+		valueIDs.put(value, id);
+		return id;
+	}
+
+	Value getValue(int id) {
+		return values[id];
+	}
+
+	private boolean isLive(Columns columns, int pos, int snapshot) {
+		int till = columns.tillSnapshots[pos];
+		return till > snapshot && till > columns.sinceSnapshots[pos];
+	}
+
+	/**
+	 * Estimates the number of statements that match the specified pattern by counting the matching positions in the
+	 * best matching index, including statements that are no longer visible.
+	 */
+	double getCardinality(Resource subj, IRI pred, Value obj, Resource context) throws SailException {
+		int[] pattern = { -1, -1, -1, -1 };
+		Value[] patternValues = { subj, pred, obj, context };
+		for (int i = 0; i < 4; i++) {
+			if (patternValues[i] != null) {
+				pattern[i] = getValueID(patternValues[i]);
+				if (pattern[i] < 0) {
+					// non-existent value
+					return 0.0;
+				}
+			}
+		}
+
+		Lock stLock = openStatementsReadLock();
+		try {
+			PackedStatementIndex index = selectIndex(pattern);
+			int prefixLength = index.getPatternScore(pattern);
+			if (prefixLength == 0) {
+				return size - deprecatedCount;
+			}
+
+			int[][] runs = index.getRuns();
+			int[] quads = columns.quads;
+			long count = 0;
+			for (int[] run : runs) {
+				count += index.upperBound(quads, run, pattern, prefixLength)
+						- index.lowerBound(quads, run, pattern, prefixLength);
+			}
+			return count;
+		} finally {
+			stLock.release();
+		}
+	}
+
+	private PackedStatementIndex selectIndex(int[] pattern) {
+		PackedStatementIndex bestIndex = indexes[0];
+		int bestScore = bestIndex.getPatternScore(pattern);
+		for (int i = 1; i < indexes.length; i++) {
+			int score = indexes[i].getPatternScore(pattern);
+			if (score > bestScore) {
+				bestIndex = indexes[i];
+				bestScore = score;
+			}
+		}
+		return bestIndex;
+	}
+
+	/**
+	 * Creates a cursor over the positions of the statements matching the specified pattern of subject, predicate,
+	 * object, context. Inferred statements are excluded when <tt>explicit</tt> is set to <tt>true</tt>, explicit
+	 * statements when it is set to <tt>false</tt>. Only statements in the specified snapshot are included, or all
+	 * statements if the snapshot is negative.
+	 *
+	 * @param includePending Whether to include statements that have been added by the active transaction, but that have
+	 *                       not been added to the indexes yet. Must only be set by the holder of the transaction lock.
+	 */
+	private StatementCursor createStatementCursor(Resource subj, IRI pred, Value obj, Boolean explicit, int snapshot,
+			boolean includePending, Resource... contexts) {
+		int[] pattern = { -1, -1, -1, -1 };
+
+		// Perform look-ups for the IDs of the specified values
+		if (subj != null && (pattern[SUBJ_IDX] = getValueID(subj)) < 0) {
+			// non-existent subject
+			return StatementCursor.EMPTY;
+		}
+		if (pred != null && (pattern[PRED_IDX] = getValueID(pred)) < 0) {
+			// non-existent predicate
+			return StatementCursor.EMPTY;
+		}
+		if (obj != null && (pattern[OBJ_IDX] = getValueID(obj)) < 0) {
+			// non-existent object
+			return StatementCursor.EMPTY;
+		}
+
+		int[] contextIDs = null;
+		if (contexts.length == 1) {
+			if ((pattern[CONTEXT_IDX] = getValueID(contexts[0])) < 0) {
+				// non-existent context
+				return StatementCursor.EMPTY;
+			}
+		} else if (contexts.length > 1) {
+			Set<Integer> contextSet = new LinkedHashSet<>(2 * contexts.length);
+			for (Resource context : contexts) {
+				int contextID = getValueID(context);
+				if (contextID >= 0) {
+					contextSet.add(contextID);
+				}
+			}
+
+			if (contextSet.isEmpty()) {
+				// no known contexts specified
+				return StatementCursor.EMPTY;
+			}
+
+			contextIDs = new int[contextSet.size()];
+			int i = 0;
+			for (Integer contextID : contextSet) {
+				contextIDs[i++] = contextID;
+			}
+		}
+
+		PackedStatementIndex index = selectIndex(pattern);
+		int prefixLength = index.getPatternScore(pattern);
+
+		// read the runs before the columns, which are guaranteed to contain all positions in the runs
+		int[][] runs = index.getRuns();
+		Columns columns = this.columns;
+
+		int[] ranges = new int[runs.length * 2];
+		for (int i = 0; i < runs.length; i++) {
+			if (prefixLength == 0) {
+				ranges[2 * i + 1] = runs[i].length;
+			} else {
+				ranges[2 * i] = index.lowerBound(columns.quads, runs[i], pattern, prefixLength);
+				ranges[2 * i + 1] = index.upperBound(columns.quads, runs[i], pattern, prefixLength);
+			}
+		}
+
+		int[] extra = null;
+		int extraCount = 0;
+		if (includePending) {
+			if (contextIDs == null && pattern[SUBJ_IDX] >= 0 && pattern[PRED_IDX] >= 0 && pattern[OBJ_IDX] >= 0
+					&& pattern[CONTEXT_IDX] >= 0) {
+				extra = pending.find(columns.quads, pattern);
+			} else {
+				extra = pending.positions;
+			}
+			extraCount = extra == pending.positions ? pending.count : extra.length;
+		}
+
+		return new StatementCursor(columns, runs, ranges, extra, extraCount, pattern, contextIDs, explicit, snapshot);
+	}
+
+	private Statement createStatement(Columns columns, int pos) {
+		int offset = pos << 2;
+		Resource subj = (Resource) getValue(columns.quads[offset + SUBJ_IDX]);
+		IRI pred = (IRI) getValue(columns.quads[offset + PRED_IDX]);
+		Value obj = getValue(columns.quads[offset + OBJ_IDX]);
+		int contextID = columns.quads[offset + CONTEXT_IDX];
+		if (contextID == NULL_CONTEXT_ID) {
+			return valueFactory.createStatement(subj, pred, obj);
+		}
+		return valueFactory.createStatement(subj, pred, obj, (Resource) getValue(contextID));
+	}
+
+	/**
+	 * Purges statements that are no longer visible in the current or any later snapshot, as well as values that are no
+	 * longer used. The remaining statements are renumbered, so this requires exclusive access to the statements.
+	 *
+	 * @throws InterruptedException
+	 */
+	protected void cleanSnapshots() throws InterruptedException {
+		Lock stWriteLock = statementListLockManager.getWriteLock();
+		try {
+			Columns columns = this.columns;
+			int size = this.size;
+			int snapshot = currentSnapshot;
+
+			// determine the new position of all live statements
+			int[] newPositions = new int[size];
+			int newSize = 0;
+			for (int pos = 0; pos < size; pos++) {
+				newPositions[pos] = isLive(columns, pos, snapshot) ? newSize++ : -1;
+			}
+			if (newSize == size) {
+				return;
+			}
+
+			Columns newColumns = new Columns(Math.max(INITIAL_CAPACITY, newSize + (newSize >> 1)));
+			BitSet usedValueIDs = new BitSet(valueCount);
+			for (int pos = 0; pos < size; pos++) {
+				int newPos = newPositions[pos];
+				if (newPos >= 0) {
+					System.arraycopy(columns.quads, pos << 2, newColumns.quads, newPos << 2, 4);
+					newColumns.sinceSnapshots[newPos] = columns.sinceSnapshots[pos];
+					newColumns.tillSnapshots[newPos] = columns.tillSnapshots[pos];
+					newColumns.explicit[newPos] = columns.explicit[pos];
+					for (int i = 0; i < 4; i++) {
+						usedValueIDs.set(columns.quads[(pos << 2) + i]);
+					}
+				}
+			}
+
+			// renumbering preserves the relative order of the statements, so the indexes remain sorted
+			for (PackedStatementIndex index : indexes) {
+				int[] run = index.getMergedRun(columns.quads);
+				int[] newRun = new int[newSize];
+				int count = 0;
+				for (int pos : run) {
+					if (newPositions[pos] >= 0) {
+						newRun[count++] = newPositions[pos];
+					}
+				}
+				index.setRun(count == newSize ? newRun : Arrays.copyOf(newRun, count));
+			}
+
+			this.columns = newColumns;
+			this.size = newSize;
+			this.deprecatedCount = 0;
+
+			// release values that are no longer used
+			Value[] values = this.values;
+			for (int id = usedValueIDs.nextClearBit(NULL_CONTEXT_ID + 1); id < valueCount; id = usedValueIDs
+					.nextClearBit(id + 1)) {
+				if (values[id] != null) {
+					valueIDs.remove(values[id]);
+					values[id] = null;
+					if (freeValueIDCount == freeValueIDs.length) {
+						freeValueIDs = Arrays.copyOf(freeValueIDs, Math.max(16, freeValueIDCount * 2));
+					}
+					freeValueIDs[freeValueIDCount++] = id;
+				}
+			}
+
+			logger.debug("Purged {} deprecated statements", size - newSize);
+		} finally {
+			stWriteLock.release();
+		}
+	}
+
+	protected void scheduleSnapshotCleanup() {
+		synchronized (snapshotCleanupThreadLockObject) {
+			Thread toCheckSnapshotCleanupThread = snapshotCleanupThread;
+			if (toCheckSnapshotCleanupThread == null || !toCheckSnapshotCleanupThread.isAlive()) {
+				Runnable runnable = new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							cleanSnapshots();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							logger.warn("snapshot cleanup interrupted");
+						}
+					}
+				};
+
+				toCheckSnapshotCleanupThread = snapshotCleanupThread = new Thread(runnable,
+						"MemoryStore snapshot cleanup");
+				toCheckSnapshotCleanupThread.setDaemon(true);
+				toCheckSnapshotCleanupThread.start();
+			}
+		}
+	}
+
+	/*---------------------*
+	 * Inner class Columns *
+	 *---------------------*/
+
+	/**
+	 * The statement data, stored column-wise except for the value IDs, which are stored together as they are compared
+	 * together.
+	 */
+	private static final class Columns {
+
+		final int capacity;
+
+		final int[] quads;
+
+		final int[] sinceSnapshots;
+
+		final int[] tillSnapshots;
+
+		final boolean[] explicit;
+
+		Columns(int capacity) {
+			this.capacity = capacity;
+			this.quads = new int[capacity * 4];
+			this.sinceSnapshots = new int[capacity];
+			this.tillSnapshots = new int[capacity];
+			this.explicit = new boolean[capacity];
+		}
+
+		private Columns(int capacity, Columns other) {
+			this.capacity = capacity;
+			this.quads = Arrays.copyOf(other.quads, capacity * 4);
+			this.sinceSnapshots = Arrays.copyOf(other.sinceSnapshots, capacity);
+			this.tillSnapshots = Arrays.copyOf(other.tillSnapshots, capacity);
+			this.explicit = Arrays.copyOf(other.explicit, capacity);
+		}
+
+		Columns grow() throws SailException {
+			if (capacity == MAX_CAPACITY) {
+				throw new SailException("Maximum number of statements exceeded");
+			}
+			return new Columns((int) Math.min(MAX_CAPACITY, capacity + (capacity >> 1) + 1L), this);
+		}
+	}
+
+	/*-------------------------------*
+	 * Inner class PendingStatements *
+	 *-------------------------------*/
+
+	/**
+	 * The positions of statements that have not been added to the indexes yet, along with an open-addressing hash table
+	 * to find them by their value IDs.
+	 */
+	private static final class PendingStatements {
+
+		int[] positions = new int[16];
+
+		int count = 0;
+
+		/**
+		 * Hash table containing positions plus one, <tt>0</tt> for empty slots.
+		 */
+		private int[] table = new int[32];
+
+		void add(int[] quads, int pos) {
+			if (count == positions.length) {
+				positions = Arrays.copyOf(positions, count * 2);
+			}
+			positions[count++] = pos;
+
+			if (count * 2 > table.length) {
+				table = new int[table.length * 2];
+				for (int i = 0; i < count; i++) {
+					insert(quads, positions[i]);
+				}
+			} else {
+				insert(quads, pos);
+			}
+		}
+
+		private void insert(int[] quads, int pos) {
+			int mask = table.length - 1;
+			int slot = hash(quads, pos << 2) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = pos + 1;
+		}
+
+		/**
+		 * Finds the positions of all pending statements with the value IDs of the fully bound pattern.
+		 */
+		int[] find(int[] quads, int[] pattern) {
+			int[] result = new int[0];
+			int mask = table.length - 1;
+			int slot = hash(pattern, 0) & mask;
+			for (; table[slot] != 0; slot = (slot + 1) & mask) {
+				int pos = table[slot] - 1;
+				int offset = pos << 2;
+				if (quads[offset] == pattern[0] && quads[offset + 1] == pattern[1] && quads[offset + 2] == pattern[2]
+						&& quads[offset + 3] == pattern[3]) {
+					result = Arrays.copyOf(result, result.length + 1);
+					result[result.length - 1] = pos;
+				}
+			}
+			return result;
+		}
+
+		void clear() {
+			if (count > 16) {
+				positions = new int[16];
+				table = new int[32];
+			} else {
+				Arrays.fill(table, 0);
+			}
+			count = 0;
+		}
+
+		private static int hash(int[] ids, int offset) {
+			int hash = ids[offset];
+			hash = 31 * hash + ids[offset + 1];
+			hash = 31 * hash + ids[offset + 2];
+			hash = 31 * hash + ids[offset + 3];
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+	/*-----------------------------*
+	 * Inner class StatementCursor *
+	 *-----------------------------*/
+
+	/**
+	 * Iterates over the positions of the statements that match a pattern, first in the matching ranges of an index's
+	 * runs and then in an optional array of additional positions.
+	 */
+	private static final class StatementCursor {
+
+		static final StatementCursor EMPTY = new StatementCursor(null, new int[0][], new int[0], null, 0, null, null,
+				null, -1);
+
+		private final Columns columns;
+
+		private final int[][] runs;
+
+		private final int[] ranges;
+
+		private final int[] extra;
+
+		private final int extraCount;
+
+		private final int[] pattern;
+
+		private final int[] contextIDs;
+
+		private final Boolean explicit;
+
+		private final int snapshot;
+
+		private int runIdx = 0;
+
+		private int idx;
+
+		private int extraIdx = 0;
+
+		StatementCursor(Columns columns, int[][] runs, int[] ranges, int[] extra, int extraCount, int[] pattern,
+				int[] contextIDs, Boolean explicit, int snapshot) {
+			this.columns = columns;
+			this.runs = runs;
+			this.ranges = ranges;
+			this.extra = extra;
+			this.extraCount = extraCount;
+			this.pattern = pattern;
+			this.contextIDs = contextIDs;
+			this.explicit = explicit;
+			this.snapshot = snapshot;
+			this.idx = ranges.length > 0 ? ranges[0] : 0;
+		}
+
+		Columns getColumns() {
+			return columns;
+		}
+
+		/**
+		 * Gets the position of the next matching statement, or <tt>-1</tt> if there are no more matching statements.
+		 */
+		int next() {
+			while (runIdx < runs.length) {
+				int[] run = runs[runIdx];
+				int end = ranges[2 * runIdx + 1];
+				while (idx < end) {
+					int pos = run[idx++];
+					if (matches(pos)) {
+						return pos;
+					}
+				}
+				runIdx++;
+				if (runIdx < runs.length) {
+					idx = ranges[2 * runIdx];
+				}
+			}
+
+			while (extraIdx < extraCount) {
+				int pos = extra[extraIdx++];
+				if (matches(pos)) {
+					return pos;
+				}
+			}
+
+			return -1;
+		}
+
+		private boolean matches(int pos) {
+			if (snapshot >= 0 && (snapshot < columns.sinceSnapshots[pos] || snapshot >= columns.tillSnapshots[pos])) {
+				return false;
+			}
+			if (explicit != null && explicit.booleanValue() != columns.explicit[pos]) {
+				return false;
+			}
+
+			int offset = pos << 2;
+			for (int i = 0; i < 4; i++) {
+				if (pattern[i] >= 0 && pattern[i] != columns.quads[offset + i]) {
+					return false;
+				}
+			}
+
+			if (contextIDs != null) {
+				int contextID = columns.quads[offset + CONTEXT_IDX];
+				for (int id : contextIDs) {
+					if (id == contextID) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			return true;
+		}
+	}
+
+	/*--------------------------------*
+	 * Inner class StatementIteration *
+	 *--------------------------------*/
+
+	private final class StatementIteration extends LookAheadIteration<Statement, SailException> {
+
+		private final StatementCursor cursor;
+
+		StatementIteration(StatementCursor cursor) {
+			this.cursor = cursor;
+		}
+
+		@Override
+		protected Statement getNextElement() {
+			int pos = cursor.next();
+			return pos < 0 ? null : createStatement(cursor.getColumns(), pos);
+		}
+	}
+
+	private final class PackedSailSource extends BackingSailSource {
+
+		private final boolean explicit;
+
+		public PackedSailSource(boolean explicit) {
+			this.explicit = explicit;
+		}
+
+		@Override
+		public SailSink sink(IsolationLevel level) throws SailException {
+			return new PackedSailSink(explicit, level.isCompatibleWith(IsolationLevels.SERIALIZABLE));
+		}
+
+		@Override
+		public PackedSailDataset dataset(IsolationLevel level) throws SailException {
+			if (level.isCompatibleWith(IsolationLevels.SNAPSHOT_READ)) {
+				return new PackedSailDataset(explicit, currentSnapshot);
+			} else {
+				return new PackedSailDataset(explicit);
+			}
+		}
+	}
+
+	private final class PackedSailSink implements SailSink {
+
+		private final boolean explicit;
+
+		private final int serializable;
+
+		private final Lock txnStLock;
+
+		private volatile int nextSnapshot;
+
+		private volatile Set<StatementPattern> observations;
+
+		private volatile boolean txnLock;
+
+		public PackedSailSink(boolean explicit, boolean serializable) throws SailException {
+			this.explicit = explicit;
+			if (serializable) {
+				this.serializable = currentSnapshot;
+			} else {
+				this.serializable = Integer.MAX_VALUE;
+			}
+			txnStLock = openStatementsReadLock();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			if (explicit) {
+				sb.append("explicit ");
+			} else {
+				sb.append("inferred ");
+			}
+			if (txnLock) {
+				sb.append("snapshot ").append(nextSnapshot);
+			} else {
+				sb.append(super.toString());
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public synchronized void prepare() throws SailException {
+			acquireExclusiveTransactionLock();
+			if (observations != null) {
+				for (StatementPattern p : observations) {
+					Resource subj = (Resource) p.getSubjectVar().getValue();
+					IRI pred = (IRI) p.getPredicateVar().getValue();
+					Value obj = p.getObjectVar().getValue();
+					Var ctxVar = p.getContextVar();
+					Resource[] contexts;
+					if (ctxVar == null) {
+						contexts = new Resource[0];
+					} else {
+						contexts = new Resource[] { (Resource) ctxVar.getValue() };
+					}
+					StatementCursor cursor = createStatementCursor(subj, pred, obj, null, -1, false, contexts);
+					Columns columns = cursor.getColumns();
+					for (int pos = cursor.next(); pos >= 0; pos = cursor.next()) {
+						int since = columns.sinceSnapshots[pos];
+						int till = columns.tillSnapshots[pos];
+						if (serializable < since && since < nextSnapshot
+								|| serializable < till && till < nextSnapshot) {
+							throw new SailConflictException("Observed State has Changed");
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws SailException {
+			if (txnLock) {
+				// add the new statements to the indexes before making them visible
+				int[] quads = columns.quads;
+				for (PackedStatementIndex index : indexes) {
+					index.addStatements(quads, pending.positions, pending.count);
+				}
+				pending.clear();
+				deprecatedPendingCount = 0;
+
+				currentSnapshot = Math.max(currentSnapshot, nextSnapshot);
+
+				if (deprecatedCount > 0 && deprecatedCount >= size / 4) {
+					scheduleSnapshotCleanup();
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				boolean toCloseTxnLock = txnLock;
+				txnLock = false;
+				if (toCloseTxnLock) {
+					try {
+						if (txnLockManager.getHoldCount() == 1) {
+							// the transaction ends without having been flushed
+							rollbackPending();
+						}
+					} finally {
+						txnLockManager.unlock();
+					}
+				}
+			} finally {
+				if (txnStLock != null) {
+					txnStLock.release();
+				}
+			}
+		}
+
+		@Override
+		public synchronized void setNamespace(String prefix, String name) throws SailException {
+			acquireExclusiveTransactionLock();
+			namespaceStore.setNamespace(prefix, name);
+		}
+
+		@Override
+		public synchronized void removeNamespace(String prefix) throws SailException {
+			acquireExclusiveTransactionLock();
+			namespaceStore.removeNamespace(prefix);
+		}
+
+		@Override
+		public synchronized void clearNamespaces() throws SailException {
+			acquireExclusiveTransactionLock();
+			namespaceStore.clear();
+		}
+
+		@Override
+		public synchronized void observe(Resource subj, IRI pred, Value obj, Resource... contexts)
+				throws SailException {
+			if (observations == null) {
+				observations = new HashSet<>();
+			}
+			if (contexts == null) {
+				observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj),
+						new Var("g", null)));
+			} else if (contexts.length == 0) {
+				observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj)));
+			} else {
+				for (Resource ctx : contexts) {
+					observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj),
+							new Var("g", ctx)));
+				}
+			}
+		}
+
+		@Override
+		public synchronized void clear(Resource... contexts) throws SailException {
+			acquireExclusiveTransactionLock();
+			StatementCursor cursor = createStatementCursor(null, null, null, explicit, nextSnapshot, true, contexts);
+			for (int pos = cursor.next(); pos >= 0; pos = cursor.next()) {
+				deprecateStatement(pos);
+			}
+		}
+
+		@Override
+		public synchronized void approve(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
+			acquireExclusiveTransactionLock();
+			addStatement(subj, pred, obj, ctx, explicit);
+		}
+
+		@Override
+		public synchronized void deprecate(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
+			acquireExclusiveTransactionLock();
+			StatementCursor cursor = createStatementCursor(subj, pred, obj, explicit, nextSnapshot, true, ctx);
+			for (int pos = cursor.next(); pos >= 0; pos = cursor.next()) {
+				deprecateStatement(pos);
+			}
+		}
+
+		/**
+		 * Adds the statements while holding the transaction lock and the monitor of this sink only once.
+		 */
+		@Override
+		public synchronized void approveAll(Collection<? extends Statement> statements) throws SailException {
+			acquireExclusiveTransactionLock();
+			for (Statement st : statements) {
+				addStatement(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext(), explicit);
+			}
+		}
+
+		/**
+		 * Removes the statements while holding the transaction lock and the monitor of this sink only once.
+		 */
+		@Override
+		public synchronized void deprecateAll(Collection<? extends Statement> statements) throws SailException {
+			acquireExclusiveTransactionLock();
+			for (Statement st : statements) {
+				deprecate(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			}
+		}
+
+		private void acquireExclusiveTransactionLock() throws SailException {
+			if (!txnLock) {
+				txnLockManager.lock();
+				nextSnapshot = currentSnapshot + 1;
+				txnLock = true;
+			}
+		}
+
+		private void addStatement(Resource subj, IRI pred, Value obj, Resource context, boolean explicit)
+				throws SailException {
+			// Possibly, the statement is already present. Check this.
+			StatementCursor cursor = createStatementCursor(subj, pred, obj, null, Integer.MAX_VALUE - 1, true,
+					context);
+			int existing = cursor.next();
+			if (existing >= 0) {
+				if (!cursor.getColumns().explicit[existing] && explicit) {
+					// Implicit statement is now added explicitly
+					deprecateStatement(existing);
+				} else {
+					// statement already exists
+					return;
+				}
+			}
+
+			// completely new statement
+			int s = getOrCreateValueID(subj);
+			int p = getOrCreateValueID(pred);
+			int o = getOrCreateValueID(obj);
+			int c = getOrCreateValueID(context);
+
+			Columns columns = PackedMemorySailStore.this.columns;
+			int pos = size;
+			if (pos == columns.capacity) {
+				columns = columns.grow();
+				PackedMemorySailStore.this.columns = columns;
+			}
+
+			int offset = pos << 2;
+			columns.quads[offset + SUBJ_IDX] = s;
+			columns.quads[offset + PRED_IDX] = p;
+			columns.quads[offset + OBJ_IDX] = o;
+			columns.quads[offset + CONTEXT_IDX] = c;
+			columns.sinceSnapshots[pos] = nextSnapshot;
+			columns.tillSnapshots[pos] = Integer.MAX_VALUE;
+			columns.explicit[pos] = explicit;
+			size = pos + 1;
+
+			pending.add(columns.quads, pos);
+		}
+
+		private void deprecateStatement(int pos) {
+			columns.tillSnapshots[pos] = nextSnapshot;
+			deprecatedCount++;
+			if (deprecatedPendingCount == deprecated.length) {
+				deprecated = Arrays.copyOf(deprecated, deprecatedPendingCount * 2);
+			}
+			deprecated[deprecatedPendingCount++] = pos;
+		}
+
+		/**
+		 * Reverts the changes of a transaction that has not been flushed, which would otherwise become visible with the
+		 * next transaction, which reuses the same snapshot.
+		 */
+		private void rollbackPending() {
+			Columns columns = PackedMemorySailStore.this.columns;
+			for (int i = 0; i < deprecatedPendingCount; i++) {
+				columns.tillSnapshots[deprecated[i]] = Integer.MAX_VALUE;
+				deprecatedCount--;
+			}
+			deprecatedPendingCount = 0;
+
+			for (int i = 0; i < pending.count; i++) {
+				int pos = pending.positions[i];
+				columns.tillSnapshots[pos] = columns.sinceSnapshots[pos];
+				deprecatedCount++;
+			}
+			pending.clear();
+		}
+	}
+
+	private final class PackedSailDataset implements SailDataset {
+
+		private final boolean explicit;
+
+		private final int snapshot;
+
+		private final Lock lock;
+
+		public PackedSailDataset(boolean explicit) throws SailException {
+			this.explicit = explicit;
+			this.snapshot = -1;
+			this.lock = null;
+		}
+
+		public PackedSailDataset(boolean explicit, int snapshot) throws SailException {
+			this.explicit = explicit;
+			this.snapshot = snapshot;
+			this.lock = openStatementsReadLock();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			if (explicit) {
+				sb.append("explicit ");
+			} else {
+				sb.append("inferred ");
+			}
+			if (snapshot >= 0) {
+				sb.append("snapshot ").append(snapshot);
+			} else {
+				sb.append(super.toString());
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public void close() {
+			if (lock != null) {
+				// serializable read or higher isolation
+				lock.release();
+			}
+		}
+
+		@Override
+		public String getNamespace(String prefix) throws SailException {
+			return namespaceStore.getNamespace(prefix);
+		}
+
+		@Override
+		public CloseableIteration<? extends Namespace, SailException> getNamespaces() {
+			return new CloseableIteratorIteration<Namespace, SailException>(namespaceStore.iterator());
+		}
+
+		@Override
+		public CloseableIteration<? extends Resource, SailException> getContextIDs() throws SailException {
+			List<Resource> contextIDs = new ArrayList<>(32);
+
+			Lock stLock = openStatementsReadLock();
+			try {
+				int snapshot = getCurrentSnapshot();
+				int[][] runs = contextIndex.getRuns();
+				Columns columns = PackedMemorySailStore.this.columns;
+
+				BitSet found = new BitSet();
+				int[] pattern = { -1, -1, -1, -1 };
+				for (int[] run : runs) {
+					int idx = 0;
+					while (idx < run.length) {
+						int pos = run[idx];
+						int contextID = columns.quads[(pos << 2) + CONTEXT_IDX];
+						if (contextID != NULL_CONTEXT_ID && !found.get(contextID)
+								&& snapshot >= columns.sinceSnapshots[pos] && snapshot < columns.tillSnapshots[pos]) {
+							found.set(contextID);
+							contextIDs.add((Resource) getValue(contextID));
+						}
+
+						if (contextID == NULL_CONTEXT_ID || found.get(contextID)) {
+							// skip the remaining statements in this context
+							pattern[CONTEXT_IDX] = contextID;
+							idx = contextIndex.upperBound(columns.quads, run, pattern, 1);
+						} else {
+							idx++;
+						}
+					}
+				}
+			} finally {
+				stLock.release();
+			}
+
+			return new CloseableIteratorIteration<>(contextIDs.iterator());
+		}
+
+		@Override
+		public CloseableIteration<? extends Statement, SailException> getStatements(Resource subj, IRI pred, Value obj,
+				Resource... contexts) throws SailException {
+			CloseableIteration<? extends Statement, SailException> stIter1 = null;
+			CloseableIteration<? extends Statement, SailException> stIter2 = null;
+			boolean allGood = false;
+			Lock stLock = openStatementsReadLock();
+			try {
+				stIter1 = new StatementIteration(
+						createStatementCursor(subj, pred, obj, explicit, getCurrentSnapshot(), false, contexts));
+				stIter2 = new LockingIteration<Statement, SailException>(stLock, stIter1);
+				allGood = true;
+				return stIter2;
+			} finally {
+				if (!allGood) {
+					try {
+						stLock.release();
+					} finally {
+						try {
+							if (stIter2 != null) {
+								stIter2.close();
+							}
+						} finally {
+							if (stIter1 != null) {
+								stIter1.close();
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private int getCurrentSnapshot() {
+			if (snapshot >= 0) {
+				return snapshot;
+			} else {
+				return currentSnapshot;
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import java.util.Arrays;
+
+/**
+ * A permutation index over the statements of a {@link PackedMemorySailStore}. The index consists of one or more sorted
+ * runs of statement positions. Each run is sorted on the statements' value IDs in the order given by the index's field
+ * sequence, e.g. <tt>posc</tt>. Committed statements are added as a new run, which is merged with its predecessors once
+ * these are not significantly larger, so that the number of runs stays logarithmic in the number of statements.
+ * <p>
+ * Runs are never modified once published. Readers can therefore search the runs returned by {@link #getRuns()} without
+ * any locking, while a writer adds new runs.
+ */
+class PackedStatementIndex {
+
+	/**
+	 * Runs are merged when the previous run is less than this factor larger than the last run.
+	 */
+	private static final int MERGE_FACTOR = 4;
+
+	/**
+	 * The statement fields (see {@link PackedMemorySailStore#SUBJ_IDX} and friends) in the order that the runs are
+	 * sorted on.
+	 */
+	private final int[] fieldSeq;
+
+	private volatile int[][] runs = new int[0][];
+
+	public PackedStatementIndex(String fieldSeq) {
+		this.fieldSeq = new int[4];
+		for (int i = 0; i < 4; i++) {
+			switch (fieldSeq.charAt(i)) {
+			case 's':
+				this.fieldSeq[i] = PackedMemorySailStore.SUBJ_IDX;
+				break;
+			case 'p':
+				this.fieldSeq[i] = PackedMemorySailStore.PRED_IDX;
+				break;
+			case 'o':
+				this.fieldSeq[i] = PackedMemorySailStore.OBJ_IDX;
+				break;
+			case 'c':
+				this.fieldSeq[i] = PackedMemorySailStore.CONTEXT_IDX;
+				break;
+			default:
+				throw new IllegalArgumentException("Illegal field name in field sequence: " + fieldSeq);
+			}
+		}
+	}
+
+	/**
+	 * Gets the currently published runs of this index.
+	 */
+	public int[][] getRuns() {
+		return runs;
+	}
+
+	/**
+	 * Determines the number of leading fields of this index that are bound in the supplied pattern. The larger the
+	 * result, the fewer statements need to be checked when the index is used to evaluate the pattern.
+	 *
+	 * @param pattern The value IDs of the pattern's fields, <tt>-1</tt> for unbound fields.
+	 */
+	public int getPatternScore(int[] pattern) {
+		int score = 0;
+		while (score < 4 && pattern[fieldSeq[score]] >= 0) {
+			score++;
+		}
+		return score;
+	}
+
+	/**
+	 * Sorts the specified positions and adds them to this index as a new run, merging existing runs where needed.
+	 *
+	 * @param quads     The value IDs of all statements, four per statement.
+	 * @param positions The positions of the statements to add. The array is not modified.
+	 * @param count     The number of positions to add.
+	 */
+	public void addStatements(int[] quads, int[] positions, int count) {
+		if (count == 0) {
+			return;
+		}
+
+		int[] run = Arrays.copyOf(positions, count);
+		sort(quads, run);
+
+		int[][] newRuns = Arrays.copyOf(runs, runs.length + 1);
+		newRuns[newRuns.length - 1] = run;
+
+		int runCount = newRuns.length;
+		while (runCount > 1 && newRuns[runCount - 2].length < MERGE_FACTOR * newRuns[runCount - 1].length) {
+			newRuns[runCount - 2] = merge(quads, newRuns[runCount - 2], newRuns[runCount - 1]);
+			runCount--;
+		}
+
+		runs = Arrays.copyOf(newRuns, runCount);
+	}
+
+	/**
+	 * Replaces the contents of this index with a single run.
+	 *
+	 * @param run Statement positions that are already sorted in the order of this index.
+	 */
+	public void setRun(int[] run) {
+		runs = run.length == 0 ? new int[0][] : new int[][] { run };
+	}
+
+	/**
+	 * Gets all statement positions in this index as a single sorted run.
+	 */
+	public int[] getMergedRun(int[] quads) {
+		int[] merged = new int[0];
+		for (int[] run : runs) {
+			merged = merge(quads, merged, run);
+		}
+		return merged;
+	}
+
+	public void clear() {
+		runs = new int[0][];
+	}
+
+	/**
+	 * Finds the first index in the supplied run for which the statement's fields are not smaller than the pattern's
+	 * fields.
+	 *
+	 * @param prefixLength The number of leading fields of this index to compare.
+	 */
+	public int lowerBound(int[] quads, int[] run, int[] pattern, int prefixLength) {
+		int low = 0;
+		int high = run.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (comparePattern(quads, run[mid], pattern, prefixLength) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first index in the supplied run for which the statement's fields are larger than the pattern's fields.
+	 *
+	 * @param prefixLength The number of leading fields of this index to compare.
+	 */
+	public int upperBound(int[] quads, int[] run, int[] pattern, int prefixLength) {
+		int low = 0;
+		int high = run.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (comparePattern(quads, run[mid], pattern, prefixLength) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private int comparePattern(int[] quads, int pos, int[] pattern, int prefixLength) {
+		int offset = pos << 2;
+		for (int i = 0; i < prefixLength; i++) {
+			int field = fieldSeq[i];
+			int diff = Integer.compare(quads[offset + field], pattern[field]);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return 0;
+	}
+
+	private int compare(int[] quads, int pos1, int pos2) {
+		int offset1 = pos1 << 2;
+		int offset2 = pos2 << 2;
+		for (int field : fieldSeq) {
+			int diff = Integer.compare(quads[offset1 + field], quads[offset2 + field]);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return Integer.compare(pos1, pos2);
+	}
+
+	private int[] merge(int[] quads, int[] run1, int[] run2) {
+		int[] result = new int[run1.length + run2.length];
+		int i = 0, j = 0, k = 0;
+		while (i < run1.length && j < run2.length) {
+			if (compare(quads, run1[i], run2[j]) <= 0) {
+				result[k++] = run1[i++];
+			} else {
+				result[k++] = run2[j++];
+			}
+		}
+		System.arraycopy(run1, i, result, k, run1.length - i);
+		System.arraycopy(run2, j, result, k + run1.length - i, run2.length - j);
+		return result;
+	}
+
+	/**
+	 * Sorts the supplied positions using a bottom-up merge sort, which, unlike sorting boxed integers, does not create
+	 * any garbage besides a single buffer.
+	 */
+	private void sort(int[] quads, int[] positions) {
+		int length = positions.length;
+		int[] src = positions;
+		int[] dst = new int[length];
+
+		for (int width = 1; width < length; width <<= 1) {
+			for (int low = 0; low < length; low += width << 1) {
+				int mid = Math.min(low + width, length);
+				int high = Math.min(low + (width << 1), length);
+				int i = low, j = mid, k = low;
+				while (i < mid && j < high) {
+					if (compare(quads, src[i], src[j]) <= 0) {
+						dst[k++] = src[i++];
+					} else {
+						dst[k++] = src[j++];
+					}
+				}
+				System.arraycopy(src, i, dst, k, mid - i);
+				System.arraycopy(src, j, dst, k + mid - i, high - j);
+			}
+			int[] tmp = src;
+			src = dst;
+			dst = tmp;
+		}
+
+		if (src != positions) {
+			System.arraycopy(src, 0, positions, 0, length);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(4);
+		for (int field : fieldSeq) {
+			sb.append("spoc".charAt(field));
+		}
+		return sb.toString();
+	}
+}
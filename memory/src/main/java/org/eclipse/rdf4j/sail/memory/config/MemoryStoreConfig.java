@@ -8,6 +8,7 @@
 package org.eclipse.rdf4j.sail.memory.config;
 
 import static org.eclipse.rdf4j.sail.memory.config.MemoryStoreSchema.NAMESPACE;
+import static org.eclipse.rdf4j.sail.memory.config.MemoryStoreSchema.PACKED_INDEXES;
 import static org.eclipse.rdf4j.sail.memory.config.MemoryStoreSchema.PERSIST;
 import static org.eclipse.rdf4j.sail.memory.config.MemoryStoreSchema.SYNC_DELAY;
 
@@ -29,6 +30,8 @@ public class MemoryStoreConfig extends BaseSailConfig {
 
 	private long syncDelay = 0L;
 
+	private boolean packedIndexes = false;
+
 	public MemoryStoreConfig() {
 		super(MemoryStoreFactory.SAIL_TYPE);
 	}
@@ -59,6 +62,14 @@ public class MemoryStoreConfig extends BaseSailConfig {
 		this.syncDelay = syncDelay;
 	}
 
+	public boolean getPackedIndexes() {
+		return packedIndexes;
+	}
+
+	public void setPackedIndexes(boolean packedIndexes) {
+		this.packedIndexes = packedIndexes;
+	}
+
 	@Override
 	public Resource export(Model graph) {
 		Resource implNode = super.export(graph);
@@ -72,6 +83,10 @@ public class MemoryStoreConfig extends BaseSailConfig {
 			graph.add(implNode, SYNC_DELAY, SimpleValueFactory.getInstance().createLiteral(syncDelay));
 		}
 
+		if (packedIndexes) {
+			graph.add(implNode, PACKED_INDEXES, BooleanLiteral.TRUE);
+		}
+
 		return implNode;
 	}
 
@@ -98,6 +113,15 @@ public class MemoryStoreConfig extends BaseSailConfig {
 							"Long integer value required for " + SYNC_DELAY + " property, found " + syncDelayValue);
 				}
 			});
+
+			Models.objectLiteral(graph.filter(implNode, PACKED_INDEXES, null)).ifPresent(packedIndexesValue -> {
+				try {
+					setPackedIndexes((packedIndexesValue).booleanValue());
+				} catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for " + PACKED_INDEXES
+							+ " property, found " + packedIndexesValue);
+				}
+			});
 		} catch (ModelException e) {
 			throw new SailConfigException(e.getMessage(), e);
 		}
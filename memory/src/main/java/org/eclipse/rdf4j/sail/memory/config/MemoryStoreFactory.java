@@ -54,6 +54,7 @@ public class MemoryStoreFactory implements SailFactory {
 
 			memoryStore.setPersist(memConfig.getPersist());
 			memoryStore.setSyncDelay(memConfig.getSyncDelay());
+			memoryStore.setPackedIndexes(memConfig.getPackedIndexes());
 
 			if (memConfig.getIterationCacheSyncThreshold() > 0) {
 				memoryStore.setIterationCacheSyncThreshold(memConfig.getIterationCacheSyncThreshold());
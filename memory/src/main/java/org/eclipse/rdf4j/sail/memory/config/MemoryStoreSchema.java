@@ -29,9 +29,13 @@ public class MemoryStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/memory#syncDelay</tt> */
 	public final static IRI SYNC_DELAY;
 
+	/** <tt>http://www.openrdf.org/config/sail/memory#packedIndexes</tt> */
+	public final static IRI PACKED_INDEXES;
+
 	static {
 		ValueFactory factory = SimpleValueFactory.getInstance();
 		PERSIST = factory.createIRI(NAMESPACE, "persist");
 		SYNC_DELAY = factory.createIRI(NAMESPACE, "syncDelay");
+		PACKED_INDEXES = factory.createIRI(NAMESPACE, "packedIndexes");
 	}
 }
@@ -88,7 +88,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void addSubjectStatement(MemStatement st) {
+	public synchronized void addSubjectStatement(MemStatement st) {
 		if (subjectStatements == null) {
 			subjectStatements = new MemStatementList(4);
 		}
@@ -97,7 +97,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void removeSubjectStatement(MemStatement st) {
+	public synchronized void removeSubjectStatement(MemStatement st) {
 		subjectStatements.remove(st);
 
 		if (subjectStatements.isEmpty()) {
@@ -106,7 +106,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void cleanSnapshotsFromSubjectStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromSubjectStatements(int currentSnapshot) {
 		if (subjectStatements != null) {
 			subjectStatements.cleanSnapshots(currentSnapshot);
 
@@ -135,7 +135,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void addObjectStatement(MemStatement st) {
+	public synchronized void addObjectStatement(MemStatement st) {
 		if (objectStatements == null) {
 			objectStatements = new MemStatementList(4);
 		}
@@ -144,7 +144,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void removeObjectStatement(MemStatement st) {
+	public synchronized void removeObjectStatement(MemStatement st) {
 		objectStatements.remove(st);
 
 		if (objectStatements.isEmpty()) {
@@ -153,7 +153,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void cleanSnapshotsFromObjectStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromObjectStatements(int currentSnapshot) {
 		if (objectStatements != null) {
 			objectStatements.cleanSnapshots(currentSnapshot);
 
@@ -182,7 +182,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void addContextStatement(MemStatement st) {
+	public synchronized void addContextStatement(MemStatement st) {
 		if (contextStatements == null) {
 			contextStatements = new MemStatementList(4);
 		}
@@ -191,7 +191,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void removeContextStatement(MemStatement st) {
+	public synchronized void removeContextStatement(MemStatement st) {
 		contextStatements.remove(st);
 
 		if (contextStatements.isEmpty()) {
@@ -200,7 +200,7 @@ public class MemBNode extends SimpleBNode implements MemResource {
 	}
 
 	@Override
-	public void cleanSnapshotsFromContextStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromContextStatements(int currentSnapshot) {
 		if (contextStatements != null) {
 			contextStatements.cleanSnapshots(currentSnapshot);
 
@@ -160,7 +160,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void addSubjectStatement(MemStatement st) {
+	public synchronized void addSubjectStatement(MemStatement st) {
 		if (subjectStatements == null) {
 			subjectStatements = new MemStatementList(4);
 		}
@@ -169,7 +169,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void removeSubjectStatement(MemStatement st) {
+	public synchronized void removeSubjectStatement(MemStatement st) {
 		subjectStatements.remove(st);
 
 		if (subjectStatements.isEmpty()) {
@@ -178,7 +178,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void cleanSnapshotsFromSubjectStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromSubjectStatements(int currentSnapshot) {
 		if (subjectStatements != null) {
 			subjectStatements.cleanSnapshots(currentSnapshot);
 
@@ -217,7 +217,7 @@ public class MemIRI implements IRI, MemResource {
 	/**
 	 * Adds a statement to this MemURI's list of statements for which it is the predicate.
 	 */
-	public void addPredicateStatement(MemStatement st) {
+	public synchronized void addPredicateStatement(MemStatement st) {
 		if (predicateStatements == null) {
 			predicateStatements = new MemStatementList(4);
 		}
@@ -228,7 +228,7 @@ public class MemIRI implements IRI, MemResource {
 	/**
 	 * Removes a statement from this MemURI's list of statements for which it is the predicate.
 	 */
-	public void removePredicateStatement(MemStatement st) {
+	public synchronized void removePredicateStatement(MemStatement st) {
 		predicateStatements.remove(st);
 
 		if (predicateStatements.isEmpty()) {
@@ -242,7 +242,7 @@ public class MemIRI implements IRI, MemResource {
 	 * 
 	 * @param currentSnapshot The current snapshot version.
 	 */
-	public void cleanSnapshotsFromPredicateStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromPredicateStatements(int currentSnapshot) {
 		if (predicateStatements != null) {
 			predicateStatements.cleanSnapshots(currentSnapshot);
 
@@ -271,7 +271,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void addObjectStatement(MemStatement st) {
+	public synchronized void addObjectStatement(MemStatement st) {
 		if (objectStatements == null) {
 			objectStatements = new MemStatementList(4);
 		}
@@ -279,7 +279,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void removeObjectStatement(MemStatement st) {
+	public synchronized void removeObjectStatement(MemStatement st) {
 		objectStatements.remove(st);
 		if (objectStatements.isEmpty()) {
 			objectStatements = null;
@@ -287,7 +287,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void cleanSnapshotsFromObjectStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromObjectStatements(int currentSnapshot) {
 		if (objectStatements != null) {
 			objectStatements.cleanSnapshots(currentSnapshot);
 
@@ -316,7 +316,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void addContextStatement(MemStatement st) {
+	public synchronized void addContextStatement(MemStatement st) {
 		if (contextStatements == null) {
 			contextStatements = new MemStatementList(4);
 		}
@@ -325,7 +325,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void removeContextStatement(MemStatement st) {
+	public synchronized void removeContextStatement(MemStatement st) {
 		contextStatements.remove(st);
 
 		if (contextStatements.isEmpty()) {
@@ -334,7 +334,7 @@ public class MemIRI implements IRI, MemResource {
 	}
 
 	@Override
-	public void cleanSnapshotsFromContextStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromContextStatements(int currentSnapshot) {
 		if (contextStatements != null) {
 			contextStatements.cleanSnapshots(currentSnapshot);
 
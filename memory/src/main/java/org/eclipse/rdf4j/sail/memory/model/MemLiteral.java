@@ -106,7 +106,7 @@ public class MemLiteral extends SimpleLiteral implements MemValue {
 	}
 
 	@Override
-	public void addObjectStatement(MemStatement st) {
+	public synchronized void addObjectStatement(MemStatement st) {
 		if (objectStatements == null) {
 			objectStatements = new MemStatementList(1);
 		}
@@ -115,7 +115,7 @@ public class MemLiteral extends SimpleLiteral implements MemValue {
 	}
 
 	@Override
-	public void removeObjectStatement(MemStatement st) {
+	public synchronized void removeObjectStatement(MemStatement st) {
 		objectStatements.remove(st);
 
 		if (objectStatements.isEmpty()) {
@@ -124,7 +124,7 @@ public class MemLiteral extends SimpleLiteral implements MemValue {
 	}
 
 	@Override
-	public void cleanSnapshotsFromObjectStatements(int currentSnapshot) {
+	public synchronized void cleanSnapshotsFromObjectStatements(int currentSnapshot) {
 		if (objectStatements != null) {
 			objectStatements.cleanSnapshots(currentSnapshot);
 
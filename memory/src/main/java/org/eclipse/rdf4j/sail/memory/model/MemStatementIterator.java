@@ -22,9 +22,15 @@ public class MemStatementIterator<X extends Exception> extends LookAheadIteratio
 	 *-----------*/
 
 	/**
-	 * The lists of statements over which to iterate.
+	 * The statements over which to iterate, i.e. the backing array of the statement list at the time this iterator was
+	 * created.
 	 */
-	private final MemStatementList statementList;
+	private final MemStatement[] statements;
+
+	/**
+	 * The number of statements in {@link #statements}.
+	 */
+	private final int size;
 
 	/**
 	 * The subject of statements to return, or null if any subject is OK.
@@ -79,7 +85,10 @@ public class MemStatementIterator<X extends Exception> extends LookAheadIteratio
 	 */
 	public MemStatementIterator(MemStatementList statementList, MemResource subject, MemIRI predicate, MemValue object,
 			Boolean explicit, int snapshot, MemResource... contexts) {
-		this.statementList = statementList;
+		synchronized (statementList) {
+			this.statements = statementList.getBackingArray();
+			this.size = statementList.size();
+		}
 		this.subject = subject;
 		this.predicate = predicate;
 		this.object = object;
@@ -104,8 +113,8 @@ public class MemStatementIterator<X extends Exception> extends LookAheadIteratio
 	protected MemStatement getNextElement() {
 		statementIdx++;
 
-		for (; statementIdx < statementList.size(); statementIdx++) {
-			MemStatement st = statementList.get(statementIdx);
+		for (; statementIdx < size; statementIdx++) {
+			MemStatement st = statements[statementIdx];
 
 			if (isInSnapshot(st) && (subject == null || subject == st.getSubject())
 					&& (predicate == null || predicate == st.getPredicate())
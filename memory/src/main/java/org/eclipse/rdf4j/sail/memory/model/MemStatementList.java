@@ -12,6 +12,10 @@ import java.util.Arrays;
 /**
  * A dedicated data structure for storing MemStatement objects, offering operations optimized for their use in the
  * memory Sail.
+ * <p>
+ * Statements are only ever appended to the backing array in place. {@link #cleanSnapshots(int)} and {@link #clear()}
+ * replace the backing array instead, so that {@link MemStatementIterator}s, which iterate over the array that was
+ * current when they were created, are not affected by concurrent cleanups. All modifications synchronize on the list.
  */
 public class MemStatementList {
 
@@ -23,6 +27,11 @@ public class MemStatementList {
 
 	private volatile int size;
 
+	/**
+	 * The number of modifications other than appends, used to detect concurrent modifications during a cleanup.
+	 */
+	private int modCount;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -63,7 +72,7 @@ public class MemStatementList {
 		return statements[index];
 	}
 
-	public void add(MemStatement st) {
+	public synchronized void add(MemStatement st) {
 		if (size == statements.length) {
 			// Grow array
 			growArray((size == 0) ? 1 : 2 * size);
@@ -73,7 +82,7 @@ public class MemStatementList {
 		++size;
 	}
 
-	public void addAll(MemStatementList other) {
+	public synchronized void addAll(MemStatementList other) {
 		if (size + other.size >= statements.length) {
 			// Grow array
 			growArray(size + other.size);
@@ -83,10 +92,16 @@ public class MemStatementList {
 		size += other.size;
 	}
 
-	public void remove(int index) {
+	/**
+	 * Removes the statement at the specified index by moving the last statement in its place. Unlike
+	 * {@link #cleanSnapshots(int)}, this modifies the backing array in place, so it must not be called while other
+	 * threads iterate over this list.
+	 */
+	public synchronized void remove(int index) {
 		assert index >= 0 : "index < 0";
 		assert index < size : "index >= size";
 
+		modCount++;
 		if (index == size - 1) {
 			// Last statement in array
 			statements[index] = null;
@@ -100,7 +115,7 @@ public class MemStatementList {
 		}
 	}
 
-	public void remove(MemStatement st) {
+	public synchronized void remove(MemStatement st) {
 		for (int i = 0; i < size; ++i) {
 			if (statements[i] == st) {
 				remove(i);
@@ -109,34 +124,73 @@ public class MemStatementList {
 		}
 	}
 
-	public void clear() {
-		Arrays.fill(statements, 0, size, null);
+	public synchronized void clear() {
+		statements = new MemStatement[4];
 		size = 0;
+		modCount++;
 	}
 
-	public void cleanSnapshots(int currentSnapshot) {
-		int i = size - 1;
-
-		// remove all deprecated statements from the end of the list
-		for (; i >= 0; i--) {
-			if (statements[i].getTillSnapshot() <= currentSnapshot) {
-				--size;
-				statements[i] = null;
-			} else {
-				i--;
-				break;
+	/**
+	 * Removes all statements that are not visible in the specified snapshot or any later snapshot. The remaining
+	 * statements keep their order and are copied to a new backing array, outside of the list's lock. Statements that
+	 * are added in the meantime are appended to the new array before it replaces the current one.
+	 *
+	 * @param currentSnapshot The oldest snapshot that can still be read.
+	 * @return The number of statements that have been removed.
+	 */
+	public int cleanSnapshots(int currentSnapshot) {
+		MemStatement[] oldStatements;
+		int oldSize;
+		int oldModCount;
+		synchronized (this) {
+			oldStatements = statements;
+			oldSize = size;
+			oldModCount = modCount;
+		}
+
+		int removed = 0;
+		for (int i = 0; i < oldSize; i++) {
+			if (oldStatements[i].getTillSnapshot() <= currentSnapshot) {
+				removed++;
+			}
+		}
+		if (removed == 0) {
+			return 0;
+		}
+
+		MemStatement[] newStatements = new MemStatement[Math.max(4, oldSize - removed + (oldSize - removed) / 4)];
+		int newSize = 0;
+		for (int i = 0; i < oldSize; i++) {
+			if (oldStatements[i].getTillSnapshot() > currentSnapshot) {
+				newStatements[newSize++] = oldStatements[i];
 			}
 		}
 
-		// remove all deprecated statements that are not at the end of the list
-		for (; i >= 0; i--) {
-			if (statements[i].getTillSnapshot() <= currentSnapshot) {
-				// replace statement with last statement in the list
-				--size;
-				statements[i] = statements[size];
-				statements[size] = null;
+		synchronized (this) {
+			if (modCount != oldModCount) {
+				// the list has been cleared or modified in place in the meantime
+				return 0;
+			}
+
+			int added = size - oldSize;
+			if (newSize + added > newStatements.length) {
+				newStatements = Arrays.copyOf(newStatements, newSize + added + (newSize + added) / 4);
 			}
+			System.arraycopy(statements, oldSize, newStatements, newSize, added);
+			statements = newStatements;
+			size = newSize + added;
+			modCount++;
 		}
+
+		return removed;
+	}
+
+	/**
+	 * Gets the backing array of this list. Its first {@link #size()} elements are only consistent with the array if both
+	 * are read while synchronizing on this list.
+	 */
+	MemStatement[] getBackingArray() {
+		return statements;
 	}
 
 	private void growArray(int newSize) {
@@ -27,6 +27,9 @@ import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 /**
  * A factory for MemValue objects that keeps track of created objects to prevent the creation of duplicate objects,
  * minimizing memory usage as a result.
+ * <p>
+ * The factory is thread-safe without locking: lookups of existing values never block, and when several threads create
+ * the same value concurrently, all of them get the instance that was registered first.
  * 
  * @author Arjohn Kampman
  * @author David Huynh
@@ -110,7 +113,7 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * See getMemValue() for description.
 	 */
-	public synchronized MemIRI getMemURI(IRI uri) {
+	public MemIRI getMemURI(IRI uri) {
 		if (isOwnMemValue(uri)) {
 			return (MemIRI) uri;
 		} else {
@@ -121,7 +124,7 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * See getMemValue() for description.
 	 */
-	public synchronized MemBNode getMemBNode(BNode bnode) {
+	public MemBNode getMemBNode(BNode bnode) {
 		if (isOwnMemValue(bnode)) {
 			return (MemBNode) bnode;
 		} else {
@@ -132,7 +135,7 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * See getMemValue() for description.
 	 */
-	public synchronized MemLiteral getMemLiteral(Literal literal) {
+	public MemLiteral getMemLiteral(Literal literal) {
 		if (isOwnMemValue(literal)) {
 			return (MemLiteral) literal;
 		} else {
@@ -151,8 +154,8 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * Gets all URIs that are managed by this value factory.
 	 * <p>
-	 * <b>Warning:</b> This method is not synchronized. To iterate over the returned set in a thread-safe way, this
-	 * method should only be called while synchronizing on this object.
+	 * The returned set is backed by the factory. Its iterators are weakly consistent and can be used while other threads
+	 * create new values.
 	 * 
 	 * @return An unmodifiable Set of MemURI objects.
 	 */
@@ -163,8 +166,8 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * Gets all bnodes that are managed by this value factory.
 	 * <p>
-	 * <b>Warning:</b> This method is not synchronized. To iterate over the returned set in a thread-safe way, this
-	 * method should only be called while synchronizing on this object.
+	 * The returned set is backed by the factory. Its iterators are weakly consistent and can be used while other threads
+	 * create new values.
 	 * 
 	 * @return An unmodifiable Set of MemBNode objects.
 	 */
@@ -175,8 +178,8 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * Gets all literals that are managed by this value factory.
 	 * <p>
-	 * <b>Warning:</b> This method is not synchronized. To iterate over the returned set in a thread-safe way, this
-	 * method should only be called while synchronizing on this object.
+	 * The returned set is backed by the factory. Its iterators are weakly consistent and can be used while other threads
+	 * create new values.
 	 * 
 	 * @return An unmodifiable Set of MemURI objects.
 	 */
@@ -218,27 +221,17 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * See {@link #getOrCreateMemValue(Value)} for description.
 	 */
-	public synchronized MemIRI getOrCreateMemURI(IRI uri) {
+	public MemIRI getOrCreateMemURI(IRI uri) {
 		MemIRI memURI = getMemURI(uri);
 
 		if (memURI == null) {
 			// Namespace strings are relatively large objects and are shared
 			// between uris
-			String namespace = uri.getNamespace();
-			String sharedNamespace = namespaceRegistry.get(namespace);
+			String namespace = namespaceRegistry.getOrAdd(uri.getNamespace());
 
-			if (sharedNamespace == null) {
-				// New namespace, add it to the registry
-				namespaceRegistry.add(namespace);
-			} else {
-				// Use the shared namespace
-				namespace = sharedNamespace;
-			}
-
-			// Create a MemURI and add it to the registry
-			memURI = new MemIRI(this, namespace, uri.getLocalName());
-			boolean wasNew = uriRegistry.add(memURI);
-			assert wasNew : "Created a duplicate MemURI for URI " + uri;
+			// Create a MemURI and add it to the registry, unless another thread
+			// has just done the same
+			memURI = uriRegistry.getOrAdd(new MemIRI(this, namespace, uri.getLocalName()));
 		}
 
 		return memURI;
@@ -247,13 +240,11 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * See {@link #getOrCreateMemValue(Value)} for description.
 	 */
-	public synchronized MemBNode getOrCreateMemBNode(BNode bnode) {
+	public MemBNode getOrCreateMemBNode(BNode bnode) {
 		MemBNode memBNode = getMemBNode(bnode);
 
 		if (memBNode == null) {
-			memBNode = new MemBNode(this, bnode.getID());
-			boolean wasNew = bnodeRegistry.add(memBNode);
-			assert wasNew : "Created a duplicate MemBNode for bnode " + bnode;
+			memBNode = bnodeRegistry.getOrAdd(new MemBNode(this, bnode.getID()));
 		}
 
 		return memBNode;
@@ -262,7 +253,7 @@ public class MemValueFactory extends AbstractValueFactory {
 	/**
 	 * See {@link #getOrCreateMemValue(Value)} for description.
 	 */
-	public synchronized MemLiteral getOrCreateMemLiteral(Literal literal) {
+	public MemLiteral getOrCreateMemLiteral(Literal literal) {
 		MemLiteral memLiteral = getMemLiteral(literal);
 
 		if (memLiteral == null) {
@@ -294,20 +285,19 @@ public class MemValueFactory extends AbstractValueFactory {
 				}
 			}
 
-			boolean wasNew = literalRegistry.add(memLiteral);
-			assert wasNew : "Created a duplicate MemLiteral for literal " + literal;
+			memLiteral = literalRegistry.getOrAdd(memLiteral);
 		}
 
 		return memLiteral;
 	}
 
 	@Override
-	public synchronized IRI createIRI(String uri) {
+	public IRI createIRI(String uri) {
 		return getOrCreateMemURI(super.createIRI(uri));
 	}
 
 	@Override
-	public synchronized IRI createIRI(String namespace, String localName) {
+	public IRI createIRI(String namespace, String localName) {
 		IRI tempURI = null;
 
 		// Reuse supplied namespace and local name strings if possible
@@ -325,59 +315,51 @@ public class MemValueFactory extends AbstractValueFactory {
 	}
 
 	@Override
-	public synchronized BNode createBNode(String nodeID) {
+	public BNode createBNode(String nodeID) {
 		return getOrCreateMemBNode(super.createBNode(nodeID));
 	}
 
 	@Override
-	public synchronized Literal createLiteral(String value) {
+	public Literal createLiteral(String value) {
 		return getOrCreateMemLiteral(super.createLiteral(value));
 	}
 
 	@Override
-	public synchronized Literal createLiteral(String value, String language) {
+	public Literal createLiteral(String value, String language) {
 		return getOrCreateMemLiteral(super.createLiteral(value, language));
 	}
 
 	@Override
-	public synchronized Literal createLiteral(String value, IRI datatype) {
+	public Literal createLiteral(String value, IRI datatype) {
 		return getOrCreateMemLiteral(super.createLiteral(value, datatype));
 	}
 
 	@Override
-	public synchronized Literal createLiteral(boolean value) {
+	public Literal createLiteral(boolean value) {
 		MemLiteral newLiteral = new BooleanMemLiteral(this, value);
 		return getSharedLiteral(newLiteral);
 	}
 
 	@Override
-	protected synchronized Literal createIntegerLiteral(Number n, IRI datatype) {
+	protected Literal createIntegerLiteral(Number n, IRI datatype) {
 		MemLiteral newLiteral = new IntegerMemLiteral(this, BigInteger.valueOf(n.longValue()), datatype);
 		return getSharedLiteral(newLiteral);
 	}
 
 	@Override
-	protected synchronized Literal createFPLiteral(Number n, IRI datatype) {
+	protected Literal createFPLiteral(Number n, IRI datatype) {
 		MemLiteral newLiteral = new NumericMemLiteral(this, n, datatype);
 		return getSharedLiteral(newLiteral);
 	}
 
 	@Override
-	public synchronized Literal createLiteral(XMLGregorianCalendar calendar) {
+	public Literal createLiteral(XMLGregorianCalendar calendar) {
 		MemLiteral newLiteral = new CalendarMemLiteral(this, calendar);
 		return getSharedLiteral(newLiteral);
 	}
 
 	private Literal getSharedLiteral(MemLiteral newLiteral) {
-		MemLiteral sharedLiteral = literalRegistry.get(newLiteral);
-
-		if (sharedLiteral == null) {
-			boolean wasNew = literalRegistry.add(newLiteral);
-			assert wasNew : "Created a duplicate MemLiteral for literal " + newLiteral;
-			sharedLiteral = newLiteral;
-		}
-
-		return sharedLiteral;
+		return literalRegistry.getOrAdd(newLiteral);
 	}
 
 }
@@ -7,18 +7,23 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail.memory.model;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An object registry that uses weak references to keep track of the stored objects. The registry can be used to
  * retrieve stored objects using another, equivalent object. As such, it can be used to prevent the use of duplicates in
  * another data structure, reducing memory usage. The objects that are being stored should properly implement the
  * {@link Object#equals} and {@link Object#hashCode} methods.
+ * <p>
+ * The registry is thread-safe. Lookups do not block and concurrent additions only contend when they hit the same bin
+ * of the underlying {@link ConcurrentHashMap}. Iterators are weakly consistent: they never throw
+ * {@link java.util.ConcurrentModificationException} and may or may not reflect modifications made after their creation.
  */
 public class WeakObjectRegistry<E> extends AbstractSet<E> {
 
@@ -27,9 +32,15 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 	 *-----------*/
 
 	/**
-	 * The hash map that is used to store the objects.
+	 * The hash map that is used to store the objects. Keys and values are the same weak reference objects; lookups use a
+	 * {@link LookupKey} that is equal to any weak reference to an equal object.
 	 */
-	private final Map<E, WeakReference<E>> objectMap = new WeakHashMap<>();
+	private final ConcurrentHashMap<Object, WeakKey<E>> objectMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Queue of weak references whose objects have been garbage collected and that should be removed from the map.
+	 */
+	private final ReferenceQueue<E> queue = new ReferenceQueue<>();
 
 	/*--------------*
 	 * Constructors *
@@ -44,7 +55,7 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 
 	/**
 	 * Constructs a new WeakObjectRegistry containing the elements in the specified collection.
-	 * 
+	 *
 	 * @param c The collection whose elements are to be placed into this object registry.
 	 * @throws NullPointerException If the specified collection is null.
 	 */
@@ -59,12 +70,16 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 
 	/**
 	 * Retrieves the stored object that is equal to the supplied <tt>key</tt> object.
-	 * 
+	 *
 	 * @param key The object that should be used as the search key for the operation.
 	 * @return A stored object that is equal to the supplied key, or <tt>null</tt> if no such object was found.
 	 */
 	public E get(Object key) {
-		WeakReference<E> weakRef = objectMap.get(key);
+		if (key == null) {
+			return null;
+		}
+
+		WeakKey<E> weakRef = objectMap.get(new LookupKey(key));
 
 		if (weakRef != null) {
 			return weakRef.get();
@@ -73,13 +88,82 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 		return null;
 	}
 
+	/**
+	 * Retrieves the stored object that is equal to the supplied object, adding the supplied object to the registry if
+	 * no such object exists yet. When several threads concurrently call this method with equal objects, all of them
+	 * will get the same object.
+	 *
+	 * @param object The object to look up or add.
+	 * @return The stored object that is equal to the supplied object, which is the supplied object itself if it has been
+	 *         added.
+	 */
+	public E getOrAdd(E object) {
+		expungeStaleEntries();
+
+		WeakKey<E> ref = new WeakKey<>(object, queue);
+
+		while (true) {
+			WeakKey<E> existingRef = objectMap.putIfAbsent(ref, ref);
+
+			if (existingRef == null) {
+				return object;
+			}
+
+			E existing = existingRef.get();
+			if (existing != null) {
+				return existing;
+			}
+
+			// The existing object has been garbage collected, but its entry has
+			// not been removed yet
+			objectMap.remove(existingRef, existingRef);
+		}
+	}
+
 	@Override
 	public Iterator<E> iterator() {
-		return objectMap.keySet().iterator();
+		expungeStaleEntries();
+
+		final Iterator<WeakKey<E>> refIter = objectMap.values().iterator();
+
+		return new Iterator<E>() {
+
+			private E next;
+
+			private E last;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && refIter.hasNext()) {
+					next = refIter.next().get();
+				}
+				return next != null;
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = null;
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				WeakObjectRegistry.this.remove(last);
+				last = null;
+			}
+		};
 	}
 
 	@Override
 	public int size() {
+		expungeStaleEntries();
 		return objectMap.size();
 	}
 
@@ -90,28 +174,109 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 
 	@Override
 	public boolean add(E object) {
-		WeakReference<E> ref = new WeakReference<>(object);
-
-		ref = objectMap.put(object, ref);
-
-		if (ref != null && ref.get() != null) {
-			// A duplicate was added which replaced the existing object. Undo this
-			// operation.
-			objectMap.put(ref.get(), ref);
-			return false;
-		}
-
-		return true;
+		return getOrAdd(object) == object;
 	}
 
 	@Override
 	public boolean remove(Object o) {
-		WeakReference<E> ref = objectMap.remove(o);
+		if (o == null) {
+			return false;
+		}
+
+		WeakKey<E> ref = objectMap.remove(new LookupKey(o));
 		return ref != null && ref.get() != null;
 	}
 
 	@Override
 	public void clear() {
 		objectMap.clear();
+		expungeStaleEntries();
+	}
+
+	/**
+	 * Removes the entries of garbage collected objects from the map.
+	 */
+	private void expungeStaleEntries() {
+		Object ref;
+		while ((ref = queue.poll()) != null) {
+			// removal by identity, a cleared reference is only equal to itself
+			objectMap.remove(ref, ref);
+		}
+	}
+
+	/*---------------------*
+	 * Inner class WeakKey *
+	 *---------------------*/
+
+	/**
+	 * A weak reference to a stored object that caches the object's hash code, so that the reference can still be found
+	 * in the map once the object has been garbage collected. Two references are equal if they are the same reference or
+	 * if they refer to equal objects.
+	 */
+	private static class WeakKey<E> extends WeakReference<E> {
+
+		private final int hash;
+
+		public WeakKey(E referent, ReferenceQueue<? super E> queue) {
+			super(referent, queue);
+			this.hash = referent.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+
+			Object otherReferent;
+			if (other instanceof WeakKey) {
+				otherReferent = ((WeakKey<?>) other).get();
+			} else if (other instanceof LookupKey) {
+				otherReferent = ((LookupKey) other).object;
+			} else {
+				return false;
+			}
+
+			Object referent = get();
+			return referent != null && otherReferent != null && hash == other.hashCode()
+					&& referent.equals(otherReferent);
+		}
+	}
+
+	/*-----------------------*
+	 * Inner class LookupKey *
+	 *-----------------------*/
+
+	/**
+	 * A short-lived search key that is equal to any {@link WeakKey} that refers to an equal object.
+	 */
+	private static class LookupKey {
+
+		private final Object object;
+
+		private final int hash;
+
+		public LookupKey(Object object) {
+			this.object = object;
+			this.hash = object.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other instanceof WeakKey) {
+				return other.equals(this);
+			}
+			return other instanceof LookupKey && object.equals(((LookupKey) other).object);
+		}
 	}
 }
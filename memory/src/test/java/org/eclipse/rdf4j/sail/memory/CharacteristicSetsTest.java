@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.rdf4j.sail.memory.model.MemIRI;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CharacteristicSets}.
+ */
+public class CharacteristicSetsTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private final MemIRI name = new MemIRI(this, EX_NS, "name");
+
+	private final MemIRI email = new MemIRI(this, EX_NS, "email");
+
+	private final MemIRI knows = new MemIRI(this, EX_NS, "knows");
+
+	private final Map<MemIRI, Integer> none = Collections.emptyMap();
+
+	@Test
+	public void testStarCardinality() {
+		CharacteristicSets sets = new CharacteristicSets();
+
+		// ten subjects with a name and two emails, five with a name only
+		for (int i = 0; i < 10; i++) {
+			sets.update(none, counts(name, 1, email, 2));
+		}
+		for (int i = 0; i < 5; i++) {
+			sets.update(none, counts(name, 1));
+		}
+
+		assertEquals(15, sets.getSubjectCount());
+		assertEquals(2, sets.getCharacteristicSetCount());
+		assertEquals(15.0, sets.getStarCardinality(Arrays.asList(name)), 0.001);
+		assertEquals(20.0, sets.getStarCardinality(Arrays.asList(name, email)), 0.001);
+		assertEquals(40.0, sets.getStarCardinality(Arrays.asList(email, email)), 0.001);
+		assertEquals(0.0, sets.getStarCardinality(Arrays.asList(name, knows)), 0.001);
+
+		assertEquals(15.0, sets.getSubjectCount(name), 0.001);
+		assertEquals(10.0, sets.getSubjectCount(email), 0.001);
+		assertEquals(0.0, sets.getSubjectCount(knows), 0.001);
+	}
+
+	@Test
+	public void testUpdate() {
+		CharacteristicSets sets = new CharacteristicSets();
+
+		sets.update(none, counts(name, 1));
+		sets.update(none, counts(name, 1));
+
+		// one subject gets an email, the other loses all statements
+		sets.update(counts(name, 1), counts(name, 1, email, 1));
+		sets.update(counts(name, 1), none);
+
+		assertEquals(1, sets.getSubjectCount());
+		assertEquals(1, sets.getCharacteristicSetCount());
+		assertEquals(1.0, sets.getStarCardinality(Arrays.asList(name, email)), 0.001);
+
+		sets.clear();
+		assertEquals(0, sets.getSubjectCount());
+		assertEquals(0.0, sets.getStarCardinality(Arrays.asList(name)), 0.001);
+	}
+
+	private Map<MemIRI, Integer> counts(Object... predicateCounts) {
+		Map<MemIRI, Integer> counts = new HashMap<>();
+		for (int i = 0; i < predicateCounts.length; i += 2) {
+			counts.put((MemIRI) predicateCounts[i], (Integer) predicateCounts[i + 1]);
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.algebra.Copy;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.sail.NotifyingSailConnection;
+import org.eclipse.rdf4j.sail.SailConnection;
+import org.eclipse.rdf4j.sail.SailConnectionListener;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.UpdateContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SailConnection#copyContext(UpdateContext, Resource, Resource)} and
+ * {@link SailConnection#moveContext(UpdateContext, Resource, Resource)} on a {@link MemoryStore}.
+ */
+public class CopyContextTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private MemoryStore sail;
+
+	private IRI graph1, graph2, knows;
+
+	@Before
+	public void setUp() throws Exception {
+		sail = new MemoryStore();
+		sail.initialize();
+		ValueFactory vf = sail.getValueFactory();
+
+		graph1 = vf.createIRI(EX_NS + "graph1");
+		graph2 = vf.createIRI(EX_NS + "graph2");
+		knows = vf.createIRI(EX_NS + "knows");
+
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			for (int i = 0; i < 100; i++) {
+				con.addStatement(vf.createIRI(EX_NS + i), knows, vf.createIRI(EX_NS + (i + 1)), graph1);
+			}
+			con.addStatement(vf.createIRI(EX_NS + 0), knows, vf.createIRI(EX_NS + 1), graph2);
+			con.addStatement(vf.createIRI(EX_NS + "a"), knows, vf.createIRI(EX_NS + "b"));
+			con.commit();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sail.shutDown();
+	}
+
+	@Test
+	public void testCopyContext() throws Exception {
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			UpdateContext uc = new UpdateContext(new Copy(), null, new EmptyBindingSet(), false);
+			con.startUpdate(uc);
+			assertTrue(con.copyContext(uc, graph1, graph2));
+			// the changes of the operation are not visible before it has ended
+			assertEquals(1, count(con, graph2));
+			con.endUpdate(uc);
+			con.commit();
+
+			assertEquals(100, count(con, graph1));
+			assertEquals(100, count(con, graph2));
+			assertEquals(1, count(con, (Resource) null));
+		}
+	}
+
+	@Test
+	public void testCopyDefaultGraph() throws Exception {
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			UpdateContext uc = new UpdateContext(new Copy(), null, new EmptyBindingSet(), false);
+			con.startUpdate(uc);
+			assertTrue(con.copyContext(uc, null, graph2));
+			con.endUpdate(uc);
+			con.commit();
+
+			assertEquals(2, count(con, graph2));
+			assertEquals(1, count(con, (Resource) null));
+		}
+	}
+
+	@Test
+	public void testMoveContext() throws Exception {
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			UpdateContext uc = new UpdateContext(new Copy(), null, new EmptyBindingSet(), false);
+			con.startUpdate(uc);
+			assertTrue(con.moveContext(uc, graph1, null));
+			con.endUpdate(uc);
+			con.commit();
+
+			assertEquals(0, count(con, graph1));
+			assertEquals(1, count(con, graph2));
+			assertEquals(101, count(con, (Resource) null));
+		}
+	}
+
+	@Test
+	public void testListenersNotSupported() throws Exception {
+		try (NotifyingSailConnection con = sail.getConnection()) {
+			con.addConnectionListener(new SailConnectionListener() {
+
+				@Override
+				public void statementAdded(Statement st) {
+				}
+
+				@Override
+				public void statementRemoved(Statement st) {
+				}
+			});
+			con.begin();
+			UpdateContext uc = new UpdateContext(new Copy(), null, new EmptyBindingSet(), false);
+			con.startUpdate(uc);
+			assertFalse(con.copyContext(uc, graph1, graph2));
+			con.endUpdate(uc);
+			con.commit();
+
+			assertEquals(1, count(con, graph2));
+		}
+	}
+
+	private int count(SailConnection con, Resource context) throws SailException {
+		int count = 0;
+		try (CloseableIteration<? extends Statement, SailException> iter = con.getStatements(null, null, null, false,
+				context)) {
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+		}
+		return count;
+	}
+}
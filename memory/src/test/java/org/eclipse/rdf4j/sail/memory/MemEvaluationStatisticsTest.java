@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.QueryRoot;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EstimatedJoin;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.QueryJoinOptimizer;
+import org.eclipse.rdf4j.sail.SailConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the estimates of {@link MemEvaluationStatistics} and the join orders that the {@link QueryJoinOptimizer}
+ * enumerates with them.
+ */
+public class MemEvaluationStatisticsTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private static final int PERSON_COUNT = 1000;
+
+	private MemoryStore sail;
+
+	private ValueFactory vf;
+
+	private IRI person, name, knows, email;
+
+	private int constantCount;
+
+	@Before
+	public void setUp() throws Exception {
+		sail = new MemoryStore();
+		sail.initialize();
+		vf = sail.getValueFactory();
+
+		person = vf.createIRI(EX_NS, "Person");
+		name = vf.createIRI(EX_NS, "name");
+		knows = vf.createIRI(EX_NS, "knows");
+		email = vf.createIRI(EX_NS, "email");
+
+		// every person has a name and knows two other persons, one person has an email address
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			for (int i = 0; i < PERSON_COUNT; i++) {
+				con.addStatement(person(i), RDF.TYPE, person);
+				con.addStatement(person(i), name, vf.createLiteral("person " + i));
+				con.addStatement(person(i), knows, person((i + 1) % PERSON_COUNT));
+				con.addStatement(person(i), knows, person((i + 2) % PERSON_COUNT));
+			}
+			con.addStatement(person(0), email, vf.createLiteral("person0@example.org"));
+			con.commit();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sail.shutDown();
+	}
+
+	@Test
+	public void testDistinctValueCount() throws Exception {
+		EvaluationStatistics statistics = getStatistics();
+
+		StatementPattern knowsPattern = pattern("p", knows, "f");
+		assertEquals(2 * PERSON_COUNT, statistics.getCardinality(knowsPattern), 0.001);
+		assertEquals(PERSON_COUNT, statistics.getDistinctValueCount(knowsPattern, "p"), 0.001);
+		// objects are assumed to be distinct
+		assertEquals(2 * PERSON_COUNT, statistics.getDistinctValueCount(knowsPattern, "f"), 0.001);
+
+		assertEquals(0.0, statistics.getDistinctValueCount(pattern("p", vf.createIRI(EX_NS, "unknown"), "o"), "p"),
+				0.001);
+	}
+
+	@Test
+	public void testJoinEstimate() throws Exception {
+		// ?p knows ?f . ?p name ?n . ?p a Person
+		TupleExpr query = join(pattern("p", knows, "f"), pattern("p", name, "n"), pattern("p", RDF.TYPE, person));
+
+		EstimatedJoin join = (EstimatedJoin) optimize(query);
+		// each person knows two persons and has one name, rather than min(2000, 1000) results
+		assertEquals(2 * PERSON_COUNT, join.getResultSizeEstimate(), 0.001);
+		assertEquals(2 * PERSON_COUNT, count(query));
+	}
+
+	@Test
+	public void testJoinOrder() throws Exception {
+		// ?p knows ?f . ?f name ?n . ?p a Person . ?p email "person0@example.org"
+		StatementPattern emailPattern = pattern("p", email, vf.createLiteral("person0@example.org"));
+		TupleExpr query = join(pattern("p", knows, "f"), pattern("f", name, "n"), pattern("p", RDF.TYPE, person),
+				emailPattern);
+
+		TupleExpr optimized = optimize(query);
+		assertTrue(optimized instanceof EstimatedJoin);
+
+		// the most selective pattern is evaluated first, as by the greedy ordering, and each following pattern
+		// shares a variable with the patterns before it
+		List<StatementPattern> evaluationOrder = getEvaluationOrder(optimized, new ArrayList<>());
+		assertEquals(4, evaluationOrder.size());
+		assertEquals(emailPattern, evaluationOrder.get(0));
+
+		Set<String> boundNames = new HashSet<>(evaluationOrder.get(0).getBindingNames());
+		for (StatementPattern sp : evaluationOrder.subList(1, evaluationOrder.size())) {
+			Set<String> names = new HashSet<>(sp.getBindingNames());
+			names.retainAll(boundNames);
+			assertFalse("cartesian product with " + sp, names.isEmpty());
+			boundNames.addAll(sp.getBindingNames());
+		}
+
+		assertEquals(2, count(query));
+	}
+
+	@Test
+	public void testStarJoinOrder() throws Exception {
+		IRI a = vf.createIRI(EX_NS, "a");
+		IRI b = vf.createIRI(EX_NS, "b");
+		IRI c = vf.createIRI(EX_NS, "c");
+
+		// 1000 subjects have both a and b, 1000 subjects have c, and only 10 of them also have a and b
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			for (int i = 0; i < 1000; i++) {
+				con.addStatement(vf.createIRI(EX_NS, "x" + i), a, vf.createLiteral(i));
+				con.addStatement(vf.createIRI(EX_NS, "x" + i), b, vf.createLiteral(i));
+				con.addStatement(vf.createIRI(EX_NS, "x" + (990 + i)), c, vf.createLiteral(i));
+			}
+			con.commit();
+		}
+
+		// ?s a ?x . ?s b ?y . ?s c ?z
+		StatementPattern cPattern = pattern("s", c, "z");
+		TupleExpr query = join(pattern("s", a, "x"), pattern("s", b, "y"), cPattern);
+
+		EstimatedJoin join = (EstimatedJoin) optimize(query);
+		assertEquals(10, join.getResultSizeEstimate(), 0.001);
+
+		// the pattern with c is part of the first join, which has 10 rather than 1000 results
+		List<StatementPattern> evaluationOrder = getEvaluationOrder(join, new ArrayList<>());
+		assertTrue(evaluationOrder.subList(0, 2).contains(cPattern));
+		assertEquals(10, ((EstimatedJoin) join.getLeftArg()).getResultSizeEstimate(), 0.001);
+
+		assertEquals(10, count(query));
+	}
+
+	private EvaluationStatistics getStatistics() {
+		return sail.getSailStore().getEvaluationStatistics();
+	}
+
+	private TupleExpr optimize(TupleExpr query) {
+		QueryRoot root = new QueryRoot(query.clone());
+		new QueryJoinOptimizer(getStatistics()).optimize(root, null, null);
+		return root.getArg();
+	}
+
+	private int count(TupleExpr query) throws Exception {
+		try (SailConnection con = sail.getConnection()) {
+			int count = 0;
+			try (CloseableIteration<? extends BindingSet, QueryEvaluationException> iter = con.evaluate(query, null,
+					new QueryBindingSet(), false)) {
+				while (iter.hasNext()) {
+					iter.next();
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	private List<StatementPattern> getEvaluationOrder(TupleExpr expr, List<StatementPattern> order) {
+		if (expr instanceof Join) {
+			getEvaluationOrder(((Join) expr).getLeftArg(), order);
+			getEvaluationOrder(((Join) expr).getRightArg(), order);
+		} else {
+			order.add((StatementPattern) expr);
+		}
+		return order;
+	}
+
+	private TupleExpr join(TupleExpr... args) {
+		TupleExpr join = args[0];
+		for (int i = 1; i < args.length; i++) {
+			join = new Join(join, args[i]);
+		}
+		return join;
+	}
+
+	private StatementPattern pattern(String subj, IRI pred, String obj) {
+		return new StatementPattern(new Var(subj), constant(pred), new Var(obj));
+	}
+
+	private StatementPattern pattern(String subj, IRI pred, Value obj) {
+		return new StatementPattern(new Var(subj), constant(pred), constant(obj));
+	}
+
+	private Var constant(Value value) {
+		return new Var("c" + constantCount++, value);
+	}
+
+	private IRI person(int i) {
+		return vf.createIRI(EX_NS, "person" + i);
+	}
+}
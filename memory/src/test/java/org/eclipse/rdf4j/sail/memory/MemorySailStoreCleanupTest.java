@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.base.SailDataset;
+import org.eclipse.rdf4j.sail.base.SailSink;
+import org.eclipse.rdf4j.sail.base.SailSource;
+import org.eclipse.rdf4j.sail.memory.model.MemIRI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the purging of deprecated statements by {@link MemorySailStore#cleanSnapshots()}.
+ */
+public class MemorySailStoreCleanupTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private MemorySailStore store;
+
+	private ValueFactory vf;
+
+	private SailSource explicit;
+
+	private MemIRI knows;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new MemorySailStore(false);
+		vf = store.getValueFactory();
+		explicit = store.getExplicitSailSource();
+		knows = (MemIRI) vf.createIRI(EX_NS + "knows");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.close();
+	}
+
+	@Test
+	public void testSnapshotReaderDuringPurge() throws Exception {
+		addStatements(100);
+
+		try (SailDataset before = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			removeStatements(100);
+			purge();
+
+			// the statements are still visible in the snapshot of the dataset
+			assertEquals(100, knows.getPredicateStatementList().size());
+			assertEquals(100, count(before));
+			try (SailDataset after = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+				assertEquals(0, count(after));
+			}
+		}
+
+		purge();
+		assertEquals(0, knows.getPredicateStatementList().size());
+	}
+
+	@Test
+	public void testReadCommittedIterationDuringPurge() throws Exception {
+		addStatements(100);
+
+		try (SailDataset dataset = explicit.dataset(IsolationLevels.READ_COMMITTED)) {
+			int count = 0;
+			try (CloseableIteration<? extends Statement, SailException> iter = dataset.getStatements(null, knows,
+					null)) {
+				for (; count < 50; count++) {
+					iter.next();
+				}
+
+				removeStatements(100);
+				purge();
+
+				// the iteration keeps reading the snapshot it was created in
+				assertEquals(100, knows.getPredicateStatementList().size());
+				while (iter.hasNext()) {
+					iter.next();
+					count++;
+				}
+			}
+			assertEquals(100, count);
+
+			// a new iteration reads the current snapshot
+			assertEquals(0, count(dataset));
+		}
+
+		purge();
+		assertEquals(0, knows.getPredicateStatementList().size());
+	}
+
+	@Test
+	public void testCloseDuringCleanup() throws Exception {
+		addStatements(10000);
+		removeStatements(10000);
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread cleaner = new Thread(() -> {
+			try {
+				purge();
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		cleaner.start();
+		store.close();
+		cleaner.join();
+
+		assertNull(failure.get());
+		assertFalse(store.cleanSnapshots());
+	}
+
+	private void addStatements(int count) throws SailException {
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			for (int i = 0; i < count; i++) {
+				sink.approve(subject(i), knows, vf.createIRI(EX_NS + "o" + i), null);
+			}
+			sink.flush();
+		}
+	}
+
+	private void removeStatements(int count) throws SailException {
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			for (int i = 0; i < count; i++) {
+				sink.deprecate(subject(i), knows, vf.createIRI(EX_NS + "o" + i), null);
+			}
+			sink.flush();
+		}
+	}
+
+	private IRI subject(int i) {
+		return vf.createIRI(EX_NS + "s" + i);
+	}
+
+	/**
+	 * Purges all statements that can be purged, concurrently with the background cleanup.
+	 */
+	private void purge() {
+		while (store.cleanSnapshots()) {
+			// next batch
+		}
+	}
+
+	private int count(SailDataset dataset) throws SailException {
+		int count = 0;
+		try (CloseableIteration<? extends Statement, SailException> iter = dataset.getStatements(null, knows, null)) {
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+		}
+		return count;
+	}
+}
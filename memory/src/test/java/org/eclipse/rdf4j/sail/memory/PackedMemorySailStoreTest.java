@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.base.SailDataset;
+import org.eclipse.rdf4j.sail.base.SailSink;
+import org.eclipse.rdf4j.sail.base.SailSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PackedMemorySailStore}.
+ */
+public class PackedMemorySailStoreTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private PackedMemorySailStore store;
+
+	private ValueFactory vf;
+
+	private SailSource explicit;
+
+	private SailSource inferred;
+
+	private IRI alice, bob, knows, name, graph1, graph2;
+
+	private Value aliceName;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new PackedMemorySailStore(false);
+		vf = store.getValueFactory();
+		explicit = store.getExplicitSailSource();
+		inferred = store.getInferredSailSource();
+
+		alice = vf.createIRI(EX_NS + "alice");
+		bob = vf.createIRI(EX_NS + "bob");
+		knows = vf.createIRI(EX_NS + "knows");
+		name = vf.createIRI(EX_NS + "name");
+		graph1 = vf.createIRI(EX_NS + "graph1");
+		graph2 = vf.createIRI(EX_NS + "graph2");
+		aliceName = vf.createLiteral("Alice");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.close();
+	}
+
+	@Test
+	public void testGetStatements() throws Exception {
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, knows, bob, null);
+			sink.approve(alice, knows, bob, graph1);
+			sink.approve(bob, knows, alice, graph2);
+			sink.approve(alice, name, aliceName, graph1);
+			// duplicate
+			sink.approve(alice, knows, bob, null);
+			sink.flush();
+		}
+
+		try (SailDataset dataset = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			assertEquals(4, count(dataset, null, null, null));
+			assertEquals(3, count(dataset, alice, null, null));
+			assertEquals(3, count(dataset, null, knows, null));
+			assertEquals(2, count(dataset, null, null, bob));
+			assertEquals(2, count(dataset, alice, knows, bob));
+			assertEquals(1, count(dataset, alice, knows, bob, (Resource) null));
+			assertEquals(2, count(dataset, null, null, null, graph1));
+			assertEquals(3, count(dataset, null, null, null, graph1, graph2));
+			assertEquals(2, count(dataset, null, null, null, graph2, null));
+			assertEquals(1, count(dataset, null, null, aliceName));
+			assertEquals(0, count(dataset, bob, name, null));
+			assertEquals(0, count(dataset, vf.createIRI(EX_NS + "unknown"), null, null));
+
+			Set<Resource> contextIDs = new HashSet<>();
+			try (CloseableIteration<? extends Resource, SailException> iter = dataset.getContextIDs()) {
+				while (iter.hasNext()) {
+					contextIDs.add(iter.next());
+				}
+			}
+			assertEquals(2, contextIDs.size());
+			assertTrue(contextIDs.contains(graph1));
+			assertTrue(contextIDs.contains(graph2));
+		}
+	}
+
+	@Test
+	public void testSnapshotIsolation() throws Exception {
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, knows, bob, null);
+			sink.flush();
+		}
+
+		try (SailDataset before = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+				sink.deprecate(alice, knows, bob, null);
+				sink.approve(bob, knows, alice, null);
+
+				// not yet flushed
+				try (SailDataset during = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+					assertEquals(1, count(during, alice, null, null));
+					assertEquals(0, count(during, bob, null, null));
+				}
+				sink.flush();
+			}
+
+			assertEquals(1, count(before, alice, null, null));
+			assertEquals(0, count(before, bob, null, null));
+		}
+
+		try (SailDataset after = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			assertEquals(0, count(after, alice, null, null));
+			assertEquals(1, count(after, bob, null, null));
+		}
+	}
+
+	@Test
+	public void testUnflushedChangesDiscarded() throws Exception {
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, knows, bob, null);
+			sink.flush();
+		}
+
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.deprecate(alice, knows, bob, null);
+			sink.approve(bob, knows, alice, null);
+		}
+
+		// the next transaction reuses the snapshot of the discarded one
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, name, aliceName, null);
+			sink.flush();
+		}
+
+		try (SailDataset dataset = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			assertEquals(2, count(dataset, alice, null, null));
+			assertEquals(0, count(dataset, bob, null, null));
+		}
+	}
+
+	@Test
+	public void testExplicitAndInferred() throws Exception {
+		try (SailSink sink = inferred.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, knows, bob, null);
+			sink.flush();
+		}
+
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, knows, bob, null);
+			sink.flush();
+		}
+
+		try (SailDataset dataset = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			assertEquals(1, count(dataset, alice, knows, bob));
+		}
+		try (SailDataset dataset = inferred.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			// the statement has become explicit
+			assertEquals(0, count(dataset, alice, knows, bob));
+		}
+
+		try (SailSink sink = inferred.sink(IsolationLevels.SNAPSHOT_READ)) {
+			// already present as explicit statement
+			sink.approve(alice, knows, bob, null);
+			sink.flush();
+		}
+		try (SailDataset dataset = inferred.dataset(IsolationLevels.SNAPSHOT_READ)) {
+			assertEquals(0, count(dataset, alice, knows, bob));
+		}
+	}
+
+	@Test
+	public void testRandomUpdates() throws Exception {
+		Random random = new Random(42);
+		IRI[] resources = new IRI[20];
+		for (int i = 0; i < resources.length; i++) {
+			resources[i] = vf.createIRI(EX_NS + "r" + i);
+		}
+
+		Set<String> expected = new HashSet<>();
+		for (int txn = 0; txn < 50; txn++) {
+			try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+				for (int i = 0; i < 100; i++) {
+					IRI subj = resources[random.nextInt(resources.length)];
+					IRI pred = resources[random.nextInt(3)];
+					IRI obj = resources[random.nextInt(resources.length)];
+					IRI context = random.nextBoolean() ? null : resources[random.nextInt(3)];
+					if (random.nextInt(3) == 0) {
+						sink.deprecate(subj, pred, null, context);
+						expected.removeIf(key -> key.startsWith(subj + " " + pred + " ")
+								&& key.endsWith(" " + context));
+					} else {
+						sink.approve(subj, pred, obj, context);
+						expected.add(subj + " " + pred + " " + obj + " " + context);
+					}
+				}
+				sink.flush();
+			}
+
+			if (txn % 10 == 9) {
+				store.cleanSnapshots();
+			}
+
+			try (SailDataset dataset = explicit.dataset(IsolationLevels.SNAPSHOT_READ)) {
+				Set<String> actual = new HashSet<>();
+				try (CloseableIteration<? extends Statement, SailException> iter = dataset.getStatements(null, null,
+						null)) {
+					while (iter.hasNext()) {
+						Statement st = iter.next();
+						actual.add(st.getSubject() + " " + st.getPredicate() + " " + st.getObject() + " "
+								+ st.getContext());
+					}
+				}
+				assertEquals("statements differ after transaction " + txn, expected, actual);
+
+				IRI subj = resources[random.nextInt(resources.length)];
+				long expectedCount = expected.stream().filter(key -> key.startsWith(subj + " ")).count();
+				assertEquals(expectedCount, count(dataset, subj, null, null));
+			}
+		}
+	}
+
+	@Test
+	public void testCardinality() throws Exception {
+		try (SailSink sink = explicit.sink(IsolationLevels.SNAPSHOT_READ)) {
+			sink.approve(alice, knows, bob, null);
+			sink.approve(bob, knows, alice, null);
+			sink.approve(alice, name, aliceName, graph1);
+			sink.flush();
+		}
+
+		assertEquals(3.0, store.getCardinality(null, null, null, null), 0.0);
+		assertEquals(2.0, store.getCardinality(null, knows, null, null), 0.0);
+		assertEquals(1.0, store.getCardinality(alice, knows, null, null), 0.0);
+		assertEquals(1.0, store.getCardinality(null, null, null, graph1), 0.0);
+		assertEquals(0.0, store.getCardinality(graph2, null, null, null), 0.0);
+	}
+
+	private static int count(SailDataset dataset, Resource subj, IRI pred, Value obj, Resource... contexts)
+			throws SailException {
+		int count = 0;
+		try (CloseableIteration<? extends Statement, SailException> iter = dataset.getStatements(subj, pred, obj,
+				contexts)) {
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.sail.SailConnection;
+import org.eclipse.rdf4j.sail.base.QueryPlanCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link QueryPlanCache} of a {@link MemoryStore}.
+ */
+public class QueryPlanCacheTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private MemoryStore sail;
+
+	private ValueFactory vf;
+
+	private IRI alice, bob, carol, knows, likes;
+
+	@Before
+	public void setUp() throws Exception {
+		sail = new MemoryStore();
+		sail.setQueryPlanCacheSize(QueryPlanCache.DEFAULT_CAPACITY);
+		sail.initialize();
+		vf = sail.getValueFactory();
+
+		alice = vf.createIRI(EX_NS + "alice");
+		bob = vf.createIRI(EX_NS + "bob");
+		carol = vf.createIRI(EX_NS + "carol");
+		knows = vf.createIRI(EX_NS + "knows");
+		likes = vf.createIRI(EX_NS + "likes");
+
+		try (SailConnection con = sail.getConnection()) {
+			con.begin();
+			con.addStatement(alice, knows, bob);
+			con.addStatement(bob, knows, carol);
+			con.commit();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sail.shutDown();
+	}
+
+	@Test
+	public void testCachedPlan() throws Exception {
+		QueryPlanCache planCache = sail.getQueryPlanCache();
+
+		try (SailConnection con = sail.getConnection()) {
+			assertEquals(1, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(1, evaluate(con, createQuery(), new QueryBindingSet()));
+
+			assertEquals(1, planCache.getMissCount());
+			assertEquals(1, planCache.getHitCount());
+			assertEquals(1, planCache.size());
+
+			// bound values are part of the plan
+			QueryBindingSet bindings = new QueryBindingSet();
+			bindings.addBinding("x", bob);
+			assertEquals(0, evaluate(con, createQuery(), bindings));
+			assertEquals(2, planCache.getMissCount());
+			assertEquals(2, planCache.size());
+		}
+	}
+
+	@Test
+	public void testCardinalityDrift() throws Exception {
+		QueryPlanCache planCache = sail.getQueryPlanCache();
+
+		try (SailConnection con = sail.getConnection()) {
+			assertEquals(1, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(1, planCache.size());
+
+			// statements that do not match the patterns of the plan keep it
+			con.begin();
+			con.addStatement(carol, likes, alice);
+			con.commit();
+			assertEquals(1, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(1, planCache.getHitCount());
+			assertEquals(1, planCache.getMissCount());
+
+			// the cardinality of the patterns grows from 2 to 3, so the query is optimized again
+			con.begin();
+			con.addStatement(carol, knows, alice);
+			con.commit();
+			assertEquals(3, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(1, planCache.getHitCount());
+			assertEquals(2, planCache.getMissCount());
+			assertEquals(1, planCache.size());
+
+			assertEquals(3, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(2, planCache.getHitCount());
+		}
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		QueryPlanCache planCache = sail.getQueryPlanCache();
+
+		try (SailConnection con = sail.getConnection()) {
+			assertEquals(1, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(1, planCache.size());
+
+			// recalculated statistics discard all plans
+			planCache.invalidate();
+			assertEquals(0, planCache.size());
+
+			assertEquals(1, evaluate(con, createQuery(), new QueryBindingSet()));
+			assertEquals(2, planCache.getMissCount());
+			assertEquals(1, planCache.size());
+		}
+	}
+
+	/**
+	 * Creates the query ?x knows ?y . ?y knows ?z
+	 */
+	private TupleExpr createQuery() {
+		return new Join(new StatementPattern(new Var("x"), new Var("p1", knows), new Var("y")),
+				new StatementPattern(new Var("y"), new Var("p2", knows), new Var("z")));
+	}
+
+	private int evaluate(SailConnection con, TupleExpr query, BindingSet bindings) throws Exception {
+		try (CloseableIteration<? extends BindingSet, QueryEvaluationException> iter = con.evaluate(query, null,
+				bindings, false)) {
+			return Iterations.asList(iter).size();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for class {@link MemStatementList}.
+ */
+public class MemStatementListTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private final MemIRI subj = new MemIRI(this, EX_NS, "s");
+
+	private final MemIRI pred = new MemIRI(this, EX_NS, "p");
+
+	@Test
+	public void testCleanSnapshots() throws Exception {
+		MemStatementList list = new MemStatementList();
+		List<MemStatement> remaining = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			MemStatement st = createStatement(i);
+			if (i % 3 == 0) {
+				st.setTillSnapshot(2);
+			} else {
+				remaining.add(st);
+			}
+			list.add(st);
+		}
+
+		assertEquals(34, list.cleanSnapshots(2));
+		assertStatements(remaining, list);
+
+		// nothing left to clean
+		assertEquals(0, list.cleanSnapshots(2));
+		assertStatements(remaining, list);
+	}
+
+	@Test
+	public void testAddDuringCleanSnapshots() throws Exception {
+		MemStatementList list = new MemStatementList();
+		List<MemStatement> statements = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			statements.add(createStatement(i));
+		}
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread writer = new Thread(() -> {
+			try {
+				for (int i = 0; i < statements.size(); i++) {
+					list.add(statements.get(i));
+					// deprecate an earlier statement, like a committed removal
+					if (i >= 10 && i % 2 == 0) {
+						statements.get(i - 10).setTillSnapshot(2);
+					}
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		writer.start();
+		while (writer.isAlive()) {
+			list.cleanSnapshots(2);
+		}
+		writer.join();
+		list.cleanSnapshots(2);
+
+		assertNull(failure.get());
+		List<MemStatement> remaining = new ArrayList<>();
+		for (MemStatement st : statements) {
+			if (st.getTillSnapshot() > 2) {
+				remaining.add(st);
+			}
+		}
+		assertStatements(remaining, list);
+	}
+
+	@Test
+	public void testIterationDuringCleanSnapshots() throws Exception {
+		MemStatementList list = new MemStatementList();
+		for (int i = 0; i < 100; i++) {
+			list.add(createStatement(i));
+		}
+
+		try (MemStatementIterator<Exception> iter = new MemStatementIterator<>(list, null, null, null, null, 1)) {
+			for (int i = 0; i < 50; i++) {
+				iter.next();
+			}
+
+			// statements that are deprecated after the snapshot of the iteration are purged
+			for (int i = 0; i < 100; i++) {
+				list.get(i).setTillSnapshot(2);
+			}
+			assertEquals(100, list.cleanSnapshots(2));
+			assertEquals(0, list.size());
+
+			// the iteration is not affected
+			int count = 50;
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+			assertEquals(100, count);
+		}
+	}
+
+	private MemStatement createStatement(int i) {
+		return new MemStatement(subj, pred, new MemIRI(this, EX_NS, "o" + i), null, 1);
+	}
+
+	/**
+	 * Verifies that the list contains exactly the expected statements, in the same order.
+	 */
+	private void assertStatements(List<MemStatement> expected, MemStatementList list) {
+		assertEquals(expected.size(), list.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), list.get(i));
+		}
+	}
+}
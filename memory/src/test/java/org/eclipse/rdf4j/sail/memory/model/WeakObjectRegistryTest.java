@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.memory.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for class {@link WeakObjectRegistry}.
+ */
+public class WeakObjectRegistryTest {
+
+	@Test
+	public void testGetAndAdd() throws Exception {
+		WeakObjectRegistry<String> registry = new WeakObjectRegistry<>();
+		String foo = new String("foo");
+
+		assertNull(registry.get("foo"));
+		assertTrue(registry.add(foo));
+		assertFalse(registry.add(new String("foo")));
+		assertSame(foo, registry.get(new String("foo")));
+		assertSame(foo, registry.getOrAdd(new String("foo")));
+		assertTrue(registry.contains("foo"));
+		assertEquals(1, registry.size());
+
+		Set<String> contents = new HashSet<>(registry);
+		assertEquals(1, contents.size());
+		assertTrue(contents.contains("foo"));
+
+		assertTrue(registry.remove("foo"));
+		assertNull(registry.get("foo"));
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void testConcurrentGetOrAdd() throws Exception {
+		final WeakObjectRegistry<String> registry = new WeakObjectRegistry<>();
+		final int threadCount = 8;
+		final int valueCount = 1000;
+		final AtomicReferenceArray<String> firstResults = new AtomicReferenceArray<>(valueCount);
+		final CountDownLatch start = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < valueCount; i++) {
+						String value = registry.getOrAdd(new String("value" + i));
+						if (!firstResults.compareAndSet(i, null, value) && firstResults.get(i) != value) {
+							throw new AssertionError("Duplicate instance registered for value" + i);
+						}
+					}
+				} catch (Throwable e) {
+					synchronized (failure) {
+						failure[0] = e;
+					}
+				}
+			});
+			threads[t].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw new AssertionError(failure[0]);
+			}
+		}
+		assertEquals(valueCount, registry.size());
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+/**
+ * A snapshot of the counters of a {@link ConcurrentCache}.
+ */
+public class CacheStatistics {
+
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long evictionCount;
+
+	private final int size;
+
+	private final long weightedSize;
+
+	private final long capacity;
+
+	public CacheStatistics(long hitCount, long missCount, long evictionCount, int size, long weightedSize,
+			long capacity) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+		this.weightedSize = weightedSize;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the number of lookups that found a cached entry.
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Gets the number of lookups that did not find a cached entry.
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Gets the ratio of lookups that found a cached entry, or <tt>1.0</tt> if no lookups have been done.
+	 */
+	public double getHitRate() {
+		long requestCount = hitCount + missCount;
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	/**
+	 * Gets the number of entries that were removed from the cache to keep it within its capacity.
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Gets the number of entries in the cache.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the total weight of the entries in the cache, in the unit of the cache's capacity (either entries or
+	 * bytes).
+	 */
+	public long getWeightedSize() {
+		return weightedSize;
+	}
+
+	/**
+	 * Gets the capacity of the cache.
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d, misses=%d, hitRate=%.3f, evictions=%d, size=%d, weightedSize=%d/%d", hitCount,
+				missCount, getHitRate(), evictionCount, size, weightedSize, capacity);
+	}
+}
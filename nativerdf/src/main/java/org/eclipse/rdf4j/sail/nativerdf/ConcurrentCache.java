@@ -7,45 +7,204 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail.nativerdf;
 
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntBiFunction;
 
 /**
- * Limited-size concurrent cache. The actual cleanup to keep the size limited is done once per
- * <code>CLEANUP_INTERVAL</code> invocations of the protected method <code>cleanUp</code>. <code>cleanUp</code> method
- * is called every time by <code>put</code> The maximum size is maintained approximately. Cleanup is not done if size is
- * less than <code>capacity + CLEANUP_INTERVAL / 2</code>.
+ * Limited-size concurrent cache. The capacity of the cache is either expressed as a number of entries or, if the cache
+ * is created with a weigher, as a total weight (typically an estimate of the memory used by the entries, in bytes).
+ * <p>
+ * Entries are evicted using a W-TinyLFU-style policy: new entries enter a small LRU admission window; entries that
+ * drop out of the window only replace an entry of the main space if they have been accessed more often recently, as
+ * estimated by a {@link FrequencySketch}. The main space is a segmented LRU consisting of a probation segment and a
+ * protected segment for entries that have been accessed at least twice. This keeps frequently used entries in the
+ * cache when large numbers of entries are accessed only once, e.g. by scans.
+ * <p>
+ * Lookups never block: cache hits are recorded in a lossy ring buffer that is applied to the eviction policy in
+ * batches. Insertions update the policy directly, while holding the policy lock, and evict entries as needed.
+ * Subclasses that modify {@link #cache} directly must report these changes using {@link #recordInsertion},
+ * {@link #recordRemoval}, {@link #recordHit} and {@link #recordMiss}, and must not do so from within a
+ * {@link ConcurrentHashMap} compute function.
  *
  * @author Oleg Mirzov
  */
 public class ConcurrentCache<K, V> {
 
-	private static final int CLEANUP_INTERVAL = 1024;
-
 	private static final float LOAD_FACTOR = 0.75f;
 
-	private final int capacity;
+	/**
+	 * The fraction of the capacity that is used for the admission window.
+	 */
+	private static final float WINDOW_FRACTION = 0.01f;
+
+	/**
+	 * The fraction of the main space that is used for the protected segment.
+	 */
+	private static final float PROTECTED_FRACTION = 0.8f;
+
+	/**
+	 * The size of the buffer in which cache hits are recorded, must be a power of two.
+	 */
+	private static final int READ_BUFFER_SIZE = 128;
+
+	/**
+	 * The number of recorded cache hits after which an attempt is made to apply them to the policy, must be a power of
+	 * two.
+	 */
+	private static final int READ_BUFFER_DRAIN_INTERVAL = 32;
+
+	private static final int WINDOW = 0;
+
+	private static final int PROBATION = 1;
+
+	private static final int PROTECTED = 2;
 
-	private volatile int cleanupTick = 0;
+	/*-----------*
+	 * Variables *
+	 *-----------*/
 
 	protected final ConcurrentHashMap<K, V> cache;
 
+	/**
+	 * The function that determines the weight of entries, or <tt>null</tt> if each entry has a weight of 1.
+	 */
+	private final ToIntBiFunction<? super K, ? super V> weigher;
+
+	private volatile long capacity;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	private final AtomicReferenceArray<Object> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+	private final AtomicLong readBufferWriteCount = new AtomicLong();
+
+	/**
+	 * Guards all of the variables below.
+	 */
+	private final ReentrantLock policyLock = new ReentrantLock();
+
+	private long readBufferReadCount;
+
+	private final HashMap<Object, PolicyEntry<K>> policyEntries = new HashMap<>();
+
+	private final PolicyQueue<K>[] segments;
+
+	private final FrequencySketch sketch;
+
+	private long windowCapacity;
+
+	private long protectedCapacity;
+
+	/**
+	 * The total weight of the entries in the policy, volatile so that it can be checked without holding the policy
+	 * lock.
+	 */
+	private volatile long weightedSize;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a cache that holds up to <tt>capacity</tt> entries.
+	 */
 	public ConcurrentCache(int capacity) {
-		this.capacity = capacity;
-		this.cache = new ConcurrentHashMap<>((int) (capacity / LOAD_FACTOR), LOAD_FACTOR);
+		this(capacity, null);
+	}
+
+	/**
+	 * Creates a cache that holds entries up to a total weight of <tt>capacity</tt>.
+	 *
+	 * @param capacity The maximum total weight of the cached entries.
+	 * @param weigher  The function that determines the weight of an entry when it is inserted, or <tt>null</tt> if
+	 *                 each entry has a weight of 1.
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentCache(long capacity, ToIntBiFunction<? super K, ? super V> weigher) {
+		this.weigher = weigher;
+		int initialSize = weigher == null ? (int) Math.min(capacity, 1 << 16) : 16;
+		this.cache = new ConcurrentHashMap<>((int) (initialSize / LOAD_FACTOR), LOAD_FACTOR);
+		this.segments = new PolicyQueue[] { new PolicyQueue<>(WINDOW), new PolicyQueue<>(PROBATION),
+				new PolicyQueue<>(PROTECTED) };
+		this.sketch = new FrequencySketch(initialSize);
+		setCapacityInternal(capacity);
 	}
 
+	/*---------*
+	 * Methods *
+	 *---------*/
+
 	public V get(Object key) {
-		return cache.get(key);
+		V value = cache.get(key);
+		if (value != null) {
+			recordHit(key);
+		} else {
+			recordMiss();
+		}
+		return value;
 	}
 
 	public V put(K key, V value) {
-		cleanUp();
-		return cache.put(key, value);
+		V previous = cache.put(key, value);
+		recordInsertion(key, value);
+		return previous;
 	}
 
 	public void clear() {
-		cache.clear();
+		policyLock.lock();
+		try {
+			cache.clear();
+			policyEntries.clear();
+			for (PolicyQueue<K> segment : segments) {
+				segment.clear();
+			}
+			weightedSize = 0;
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Changes the capacity of this cache, evicting entries if the cache is too large for its new capacity.
+	 */
+	public void setCapacity(long capacity) {
+		policyLock.lock();
+		try {
+			setCapacityInternal(capacity);
+			if (weigher == null) {
+				sketch.ensureCapacity(capacity);
+			}
+			evict();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void setCapacityInternal(long capacity) {
+		this.capacity = capacity;
+		windowCapacity = Math.max(1, (long) (capacity * WINDOW_FRACTION));
+		protectedCapacity = (long) ((capacity - windowCapacity) * PROTECTED_FRACTION);
+	}
+
+	/**
+	 * Gets a snapshot of the hit, miss and eviction counters of this cache, as well as its current size.
+	 */
+	public CacheStatistics getStatistics() {
+		return new CacheStatistics(hitCount.sum(), missCount.sum(), evictionCount.sum(), cache.size(), weightedSize,
+				capacity);
 	}
 
 	/**
@@ -57,32 +216,290 @@ public class ConcurrentCache<K, V> {
 		return true;
 	}
 
+	/**
+	 * Evicts entries if the cache exceeds its capacity, unless another thread is currently updating the eviction
+	 * policy. Subclasses that veto the removal of entries in {@link #onEntryRemoval} should call this method when such
+	 * entries become removable.
+	 */
 	protected void cleanUp() {
-		// This is not thread-safe, but the worst that can happen is that we may (rarely) get slightly longer
-		// cleanup intervals or run cleanUp twice
-		cleanupTick++;
-		if (cleanupTick <= CLEANUP_INTERVAL)
+		if (weightedSize > capacity && policyLock.tryLock()) {
+			try {
+				drainReadBuffer();
+				evict();
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Records a lookup that found the entry with the specified key.
+	 */
+	protected void recordHit(Object key) {
+		hitCount.increment();
+
+		long index = readBufferWriteCount.getAndIncrement();
+		readBuffer.lazySet((int) index & (READ_BUFFER_SIZE - 1), key);
+
+		if ((index & (READ_BUFFER_DRAIN_INTERVAL - 1)) == 0 && policyLock.tryLock()) {
+			try {
+				drainReadBuffer();
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Records a lookup that did not find an entry.
+	 */
+	protected void recordMiss() {
+		missCount.increment();
+	}
+
+	/**
+	 * Records that the specified entry has been added to {@link #cache}, evicting other entries as needed.
+	 */
+	protected void recordInsertion(K key, V value) {
+		int weight = weigher == null ? 1 : weigher.applyAsInt(key, value);
+
+		policyLock.lock();
+		try {
+			drainReadBuffer();
+			sketch.increment(key);
+
+			PolicyEntry<K> entry = policyEntries.get(key);
+			if (entry == null) {
+				entry = new PolicyEntry<>(key, weight);
+				policyEntries.put(key, entry);
+				segments[WINDOW].add(entry);
+				if (weigher != null) {
+					sketch.ensureCapacity(policyEntries.size());
+				}
+			} else {
+				// The key was replaced or re-inserted after having been removed
+				PolicyQueue<K> segment = segments[entry.segment];
+				segment.remove(entry);
+				weightedSize -= entry.weight;
+				entry.weight = weight;
+				segment.add(entry);
+			}
+			weightedSize += weight;
+
+			evict();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * Records that the entry with the specified key has been removed from {@link #cache}.
+	 */
+	protected void recordRemoval(K key) {
+		policyLock.lock();
+		try {
+			PolicyEntry<K> entry = policyEntries.get(key);
+			if (entry != null && !cache.containsKey(key)) {
+				removePolicyEntry(entry);
+			}
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void drainReadBuffer() {
+		long writeCount = readBufferWriteCount.get();
+		for (long i = Math.max(readBufferReadCount, writeCount - READ_BUFFER_SIZE); i < writeCount; i++) {
+			Object key = readBuffer.getAndSet((int) i & (READ_BUFFER_SIZE - 1), null);
+			if (key != null) {
+				onAccess(key);
+			}
+		}
+		readBufferReadCount = writeCount;
+	}
+
+	private void onAccess(Object key) {
+		sketch.increment(key);
+
+		PolicyEntry<K> entry = policyEntries.get(key);
+		if (entry == null) {
 			return;
+		}
+
+		switch (entry.segment) {
+		case WINDOW:
+		case PROTECTED:
+			segments[entry.segment].moveToTail(entry);
+			break;
+		case PROBATION:
+			segments[PROBATION].remove(entry);
+			segments[PROTECTED].add(entry);
+
+			// Demote the least recently used protected entries if the protected segment has become too large
+			PolicyQueue<K> protectedSegment = segments[PROTECTED];
+			while (protectedSegment.weight > protectedCapacity && protectedSegment.head != entry) {
+				PolicyEntry<K> demoted = protectedSegment.head;
+				protectedSegment.remove(demoted);
+				segments[PROBATION].add(demoted);
+			}
+			break;
+		}
+	}
+
+	private void evict() {
+		// Entries that drop out of the admission window become candidates for the main space
+		PolicyQueue<K> window = segments[WINDOW];
+		while (window.weight > windowCapacity && window.head != null) {
+			PolicyEntry<K> candidate = window.head;
+			window.remove(candidate);
+			segments[PROBATION].add(candidate);
+		}
+
+		// Entries that can not be removed are skipped, so try each entry at most once
+		for (int attempts = policyEntries.size(); weightedSize > capacity && attempts > 0; attempts--) {
+			PolicyEntry<K> victim = selectVictim();
+			if (!evictEntry(victim)) {
+				// Entries that are in use are likely to be used again, move them out of the way
+				segments[victim.segment].remove(victim);
+				segments[PROTECTED].add(victim);
+			}
+		}
+	}
+
+	/**
+	 * Selects the entry to evict. The least recently used entry of the probation segment is compared with the most
+	 * recent addition to that segment, and the one that is less likely to be used again is selected.
+	 */
+	private PolicyEntry<K> selectVictim() {
+		PolicyQueue<K> probation = segments[PROBATION];
+		PolicyEntry<K> victim = probation.head;
+		if (victim == null) {
+			return segments[PROTECTED].head != null ? segments[PROTECTED].head : segments[WINDOW].head;
+		}
+
+		PolicyEntry<K> candidate = probation.tail;
+		if (candidate != victim && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+			return candidate;
+		}
+		return victim;
+	}
+
+	/**
+	 * Removes the specified entry from the cache, unless its removal is vetoed by {@link #onEntryRemoval}.
+	 *
+	 * @return <tt>true</tt> if the entry is no longer in the cache.
+	 */
+	private boolean evictEntry(PolicyEntry<K> entry) {
+		boolean[] result = new boolean[2]; // removed, retained
+		cache.computeIfPresent(entry.key, (k, v) -> {
+			if (onEntryRemoval(k)) {
+				result[0] = true;
+				return null;
+			}
+			result[1] = true;
+			return v;
+		});
+
+		if (result[1]) {
+			return false;
+		}
+		if (result[0]) {
+			evictionCount.increment();
+		}
+		if (cache.containsKey(entry.key)) {
+			// The key was inserted again concurrently
+			segments[entry.segment].moveToTail(entry);
+		} else {
+			removePolicyEntry(entry);
+		}
+		return true;
+	}
+
+	private void removePolicyEntry(PolicyEntry<K> entry) {
+		segments[entry.segment].remove(entry);
+		policyEntries.remove(entry.key);
+		weightedSize -= entry.weight;
+	}
+
+	/*---------------*
+	 * Inner classes *
+	 *---------------*/
+
+	private static final class PolicyEntry<K> {
 
-		cleanupTick %= CLEANUP_INTERVAL;
+		final K key;
 
-		synchronized (cache) {
+		int weight;
 
-			final int size = cache.size();
-			if (size < capacity + CLEANUP_INTERVAL / 2)
-				return;
+		int segment;
 
-			Iterator<K> iter = cache.keySet().iterator();
+		PolicyEntry<K> prev;
 
-			float removeEachTh = (float) size / (size - capacity);
+		PolicyEntry<K> next;
 
-			for (int i = 0; iter.hasNext(); i++) {
+		PolicyEntry(K key, int weight) {
+			this.key = key;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * A doubly linked list of policy entries, ordered from least recently used (head) to most recently used (tail).
+	 */
+	private static final class PolicyQueue<K> {
 
-				K key = iter.next();
+		final int segment;
+
+		PolicyEntry<K> head;
+
+		PolicyEntry<K> tail;
+
+		long weight;
+
+		PolicyQueue(int segment) {
+			this.segment = segment;
+		}
 
-				if (i % removeEachTh < 1)
-					cache.computeIfPresent(key, (k, v) -> onEntryRemoval(k) ? null : v);
+		void add(PolicyEntry<K> entry) {
+			entry.segment = segment;
+			entry.prev = tail;
+			entry.next = null;
+			if (tail == null) {
+				head = entry;
+			} else {
+				tail.next = entry;
 			}
+			tail = entry;
+			weight += entry.weight;
+		}
+
+		void remove(PolicyEntry<K> entry) {
+			if (entry.prev == null) {
+				head = entry.next;
+			} else {
+				entry.prev.next = entry.next;
+			}
+			if (entry.next == null) {
+				tail = entry.prev;
+			} else {
+				entry.next.prev = entry.prev;
+			}
+			entry.prev = null;
+			entry.next = null;
+			weight -= entry.weight;
+		}
+
+		void moveToTail(PolicyEntry<K> entry) {
+			if (entry != tail) {
+				remove(entry);
+				add(entry);
+			}
+		}
+
+		void clear() {
+			head = null;
+			tail = null;
+			weight = 0;
 		}
 	}
 }
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+/**
+ * A compact, approximate frequency counter for cache keys: a count-min sketch with four 4-bit counters per key. The
+ * counters of all keys are halved once the number of recorded accesses reaches ten times the sketch's capacity, so
+ * that the estimated frequencies reflect recent history rather than all-time popularity.
+ * <p>
+ * This class is not thread-safe; {@link ConcurrentCache} only accesses it while holding its policy lock.
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L,
+			0xb492b66fbe98f273L,
+			0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	/**
+	 * Mask that clears the most significant bit of each counter after shifting all counters right by one bit.
+	 */
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	/**
+	 * Mask that selects the least significant bit of each counter.
+	 */
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	/**
+	 * Sixteen 4-bit counters per element.
+	 */
+	private long[] table;
+
+	private int tableMask;
+
+	private int sampleSize;
+
+	private int additions;
+
+	public FrequencySketch(long capacity) {
+		ensureCapacity(capacity);
+	}
+
+	/**
+	 * Makes sure that the sketch can accurately estimate the frequencies of at least the specified number of keys.
+	 * Growing the sketch discards all frequencies recorded so far.
+	 */
+	public void ensureCapacity(long capacity) {
+		int maximum = (int) Math.min(Math.max(capacity, 16), 1 << 30);
+		if (table != null && table.length >= maximum) {
+			return;
+		}
+
+		table = new long[Integer.highestOneBit(maximum - 1) << 1];
+		tableMask = table.length - 1;
+		sampleSize = 10 * maximum;
+		additions = 0;
+	}
+
+	/**
+	 * Gets the estimated number of times that the specified key was accessed recently, capped at <tt>15</tt>.
+	 */
+	public int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records an access to the specified key.
+	 */
+	public void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Halves all counters, ageing the recorded frequencies.
+	 */
+	private void reset() {
+		int oddCounters = 0;
+		for (int i = 0; i < table.length; i++) {
+			oddCounters += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions = (additions >>> 1) - (oddCounters >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
@@ -8,18 +8,27 @@
 package org.eclipse.rdf4j.sail.nativerdf;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.algebra.Join;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.Var;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.eclipse.rdf4j.sail.nativerdf.TripleStatistics.PredicateStatistics;
 import org.eclipse.rdf4j.sail.nativerdf.model.NativeValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Estimates cardinalities using the {@link TripleStatistics} of the triple store when they are valid, falling back to
+ * estimates from the triple indexes otherwise. The statistics give the cardinality of statement patterns with a bound
+ * predicate in constant time, and of star-shaped joins through the characteristic sets of the subjects.
+ * 
  * @author Arjohn Kampman
  * @author Enrico Minack
  */
@@ -41,6 +50,43 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 		return new NativeCardinalityCalculator();
 	}
 
+	@Override
+	public boolean supportsJoinEstimation() {
+		return true;
+	}
+
+	/**
+	 * Estimates the distinct subjects and objects of statement patterns with a bound predicate from the
+	 * {@link TripleStatistics} of the predicate, when they are valid.
+	 */
+	@Override
+	public double getDistinctValueCount(TupleExpr expr, String bindingName) {
+		double cardinality = getCardinality(expr);
+		if (expr instanceof StatementPattern) {
+			StatementPattern sp = (StatementPattern) expr;
+			Value pred = sp.getPredicateVar().getValue();
+			if (pred instanceof IRI && sp.getContextVar() == null) {
+				try {
+					TripleStatistics statistics = tripleStore.getStatistics();
+					int predID = valueStore.getID(pred);
+					if (statistics.isValid() && predID != NativeValue.UNKNOWN_ID) {
+						PredicateStatistics predStatistics = statistics.getPredicateStatistics(predID);
+						if (predStatistics == null) {
+							return 0;
+						} else if (bindingName.equals(sp.getSubjectVar().getName())) {
+							return Math.min(cardinality, predStatistics.getSubjectCount());
+						} else if (bindingName.equals(sp.getObjectVar().getName())) {
+							return Math.min(cardinality, predStatistics.getObjectCount());
+						}
+					}
+				} catch (IOException e) {
+					log.error("Failed to estimate distinct values, falling back to generic implementation", e);
+				}
+			}
+		}
+		return cardinality;
+	}
+
 	protected class NativeCardinalityCalculator extends CardinalityCalculator {
 
 		@Override
@@ -72,11 +118,95 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 			}
 		}
 
+		@Override
+		public void meet(Join node) {
+			List<StatementPattern> patterns = new ArrayList<>();
+			if (collectStarPatterns(node, patterns)) {
+				double starCardinality = getStarCardinality(patterns);
+				if (starCardinality >= 0) {
+					cardinality = starCardinality;
+					return;
+				}
+			}
+			super.meet(node);
+		}
+
+		/**
+		 * Collects the statement patterns of a join that consists solely of statement patterns that share the same
+		 * unbound subject, have a bound predicate and do not restrict the context.
+		 * 
+		 * @return <tt>true</tt> if the join is such a star-shaped join.
+		 */
+		private boolean collectStarPatterns(TupleExpr expr, List<StatementPattern> patterns) {
+			if (expr instanceof Join) {
+				Join join = (Join) expr;
+				return collectStarPatterns(join.getLeftArg(), patterns)
+						&& collectStarPatterns(join.getRightArg(), patterns);
+			} else if (expr instanceof StatementPattern) {
+				StatementPattern sp = (StatementPattern) expr;
+				Var subjVar = sp.getSubjectVar();
+				if (subjVar.hasValue() || !(getConstantValue(sp.getPredicateVar()) instanceof IRI)
+						|| sp.getContextVar() != null) {
+					return false;
+				}
+				if (!patterns.isEmpty() && !patterns.get(0).getSubjectVar().getName().equals(subjVar.getName())) {
+					return false;
+				}
+				patterns.add(sp);
+				return true;
+			}
+			return false;
+		}
+
 		protected Value getConstantValue(Var var) {
 			return (var != null) ? var.getValue() : null;
 		}
 	}
 
+	/**
+	 * Estimates the cardinality of a star-shaped join from the characteristic sets of the subjects. Patterns with a
+	 * bound object are accounted for by the fraction of the objects of their predicate that they select.
+	 * 
+	 * @return The estimated cardinality, or a negative value if no estimate could be made.
+	 */
+	@Override
+	public double getStarCardinality(List<StatementPattern> patterns) {
+		try {
+			return estimateStarCardinality(patterns);
+		} catch (IOException e) {
+			log.error("Failed to estimate join cardinality, falling back to generic implementation", e);
+			return -1;
+		}
+	}
+
+	private double estimateStarCardinality(List<StatementPattern> patterns) throws IOException {
+		TripleStatistics statistics = tripleStore.getStatistics();
+		if (!statistics.isValid()) {
+			return -1;
+		}
+
+		int[] predIDs = new int[patterns.size()];
+		double selectivity = 1.0;
+		for (int i = 0; i < predIDs.length; i++) {
+			StatementPattern sp = patterns.get(i);
+			predIDs[i] = valueStore.getID(sp.getPredicateVar().getValue());
+			if (predIDs[i] == NativeValue.UNKNOWN_ID) {
+				return 0;
+			}
+
+			Var objVar = sp.getObjectVar();
+			if (objVar.hasValue()) {
+				PredicateStatistics predStatistics = statistics.getPredicateStatistics(predIDs[i]);
+				if (predStatistics == null || valueStore.getID(objVar.getValue()) == NativeValue.UNKNOWN_ID) {
+					return 0;
+				}
+				selectivity /= Math.max(1L, predStatistics.getObjectCount());
+			}
+		}
+
+		return statistics.getStarCardinality(predIDs) * selectivity;
+	}
+
 	private double cardinality(Resource subj, IRI pred, Value obj, Resource context) throws IOException {
 		int subjID = NativeValue.UNKNOWN_ID;
 		if (subj != null) {
@@ -110,6 +240,32 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 			}
 		}
 
+		TripleStatistics statistics = tripleStore.getStatistics();
+		if (statistics.isValid() && contextID == NativeValue.UNKNOWN_ID) {
+			if (predID != NativeValue.UNKNOWN_ID) {
+				PredicateStatistics predStatistics = statistics.getPredicateStatistics(predID);
+				if (predStatistics == null) {
+					return 0;
+				}
+
+				double tripleCount = predStatistics.getTripleCount();
+				if (subjID == NativeValue.UNKNOWN_ID && objID == NativeValue.UNKNOWN_ID) {
+					return tripleCount;
+				} else if (objID == NativeValue.UNKNOWN_ID) {
+					// average number of triples per subject
+					return tripleCount / Math.max(1L, predStatistics.getSubjectCount());
+				} else if (subjID == NativeValue.UNKNOWN_ID) {
+					// average number of triples per object
+					return tripleCount / Math.max(1L, predStatistics.getObjectCount());
+				}
+			} else if (subjID == NativeValue.UNKNOWN_ID && objID == NativeValue.UNKNOWN_ID) {
+				return statistics.getTripleCount();
+			} else if (objID == NativeValue.UNKNOWN_ID) {
+				// average number of triples per subject
+				return (double) statistics.getTripleCount() / Math.max(1L, statistics.getSubjectCount());
+			}
+		}
+
 		return tripleStore.cardinality(subjID, predID, objID, contextID);
 	}
 }
@@ -10,16 +10,23 @@ package org.eclipse.rdf4j.sail.nativerdf;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.rdf4j.IsolationLevel;
 import org.eclipse.rdf4j.OpenRDFUtil;
+import org.eclipse.rdf4j.common.concurrent.locks.LockStatistics;
+import org.eclipse.rdf4j.common.io.ByteArrayUtil;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
 import org.eclipse.rdf4j.common.iteration.EmptyIteration;
@@ -38,6 +45,7 @@ import org.eclipse.rdf4j.sail.base.SailDataset;
 import org.eclipse.rdf4j.sail.base.SailSink;
 import org.eclipse.rdf4j.sail.base.SailSource;
 import org.eclipse.rdf4j.sail.base.SailStore;
+import org.eclipse.rdf4j.sail.nativerdf.btree.BTree;
 import org.eclipse.rdf4j.sail.nativerdf.btree.RecordIterator;
 import org.eclipse.rdf4j.sail.nativerdf.model.NativeValue;
 import org.slf4j.Logger;
@@ -50,6 +58,11 @@ import org.slf4j.LoggerFactory;
  */
 class NativeSailStore implements SailStore {
 
+	/**
+	 * The number of statements for which the values are resolved together when statements are added.
+	 */
+	private static final int VALUE_BATCH_SIZE = 1024;
+
 	final Logger logger = LoggerFactory.getLogger(NativeSailStore.class);
 
 	final TripleStore tripleStore;
@@ -85,12 +98,87 @@ class NativeSailStore implements SailStore {
 	 */
 	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
 			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize) throws IOException, SailException {
+		this(dataDir, tripleIndexes, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize,
+				namespaceIDCacheSize, false);
+	}
+
+	/**
+	 * Creates a new {@link NativeSailStore}.
+	 */
+	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
+			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize, boolean memoryMappedIndexes)
+			throws IOException, SailException {
+		this(dataDir, tripleIndexes, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize,
+				namespaceIDCacheSize, memoryMappedIndexes, false);
+	}
+
+	/**
+	 * Creates a new {@link NativeSailStore}.
+	 */
+	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
+			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize, boolean memoryMappedIndexes,
+			boolean compressedIndexes) throws IOException, SailException {
+		this(dataDir, tripleIndexes, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize,
+				namespaceIDCacheSize, memoryMappedIndexes, compressedIndexes, -1, BTree.DEFAULT_NODE_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link NativeSailStore}.
+	 * 
+	 * @param valueCacheBytes The maximum amount of memory used by each of the value cache and the value-ID cache, in
+	 *                        bytes, or a negative value to bound these caches by <tt>valueCacheSize</tt> and
+	 *                        <tt>valueIDCacheSize</tt>.
+	 * @param indexCacheBytes The maximum amount of memory used to cache the B-tree nodes of each index, in bytes.
+	 */
+	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
+			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize, boolean memoryMappedIndexes,
+			boolean compressedIndexes, long valueCacheBytes, long indexCacheBytes) throws IOException, SailException {
+		this(dataDir, tripleIndexes, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize,
+				namespaceIDCacheSize, memoryMappedIndexes, compressedIndexes, valueCacheBytes, indexCacheBytes, false);
+	}
+
+	/**
+	 * Creates a new {@link NativeSailStore}.
+	 * 
+	 * @param valueCacheBytes    The maximum amount of memory used by each of the value cache and the value-ID cache,
+	 *                           in bytes, or a negative value to bound these caches by <tt>valueCacheSize</tt> and
+	 *                           <tt>valueIDCacheSize</tt>.
+	 * @param indexCacheBytes    The maximum amount of memory used to cache the B-tree nodes of each index, in bytes.
+	 * @param memoryMappedValues Flag indicating whether the value store should read its files through memory
+	 *                           mappings.
+	 */
+	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
+			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize, boolean memoryMappedIndexes,
+			boolean compressedIndexes, long valueCacheBytes, long indexCacheBytes, boolean memoryMappedValues)
+			throws IOException, SailException {
+		this(dataDir, tripleIndexes, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize,
+				namespaceIDCacheSize, memoryMappedIndexes, compressedIndexes, valueCacheBytes, indexCacheBytes,
+				memoryMappedValues, false);
+	}
+
+	/**
+	 * Creates a new {@link NativeSailStore}.
+	 * 
+	 * @param valueCacheBytes    The maximum amount of memory used by each of the value cache and the value-ID cache,
+	 *                           in bytes, or a negative value to bound these caches by <tt>valueCacheSize</tt> and
+	 *                           <tt>valueIDCacheSize</tt>.
+	 * @param indexCacheBytes    The maximum amount of memory used to cache the B-tree nodes of each index, in bytes.
+	 * @param memoryMappedValues Flag indicating whether the value store should read its files through memory
+	 *                           mappings.
+	 * @param stripedLocks       Flag indicating whether the value store counts its readers in striped counters, see
+	 *                           {@link ValueStore#ValueStore(File, boolean, int, int, int, int, long, boolean, boolean)}.
+	 */
+	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
+			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize, boolean memoryMappedIndexes,
+			boolean compressedIndexes, long valueCacheBytes, long indexCacheBytes, boolean memoryMappedValues,
+			boolean stripedLocks) throws IOException, SailException {
 		boolean initialized = false;
 		try {
 			namespaceStore = new NamespaceStore(dataDir);
 			valueStore = new ValueStore(dataDir, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize,
-					namespaceIDCacheSize);
-			tripleStore = new TripleStore(dataDir, tripleIndexes, forceSync);
+					namespaceIDCacheSize, valueCacheBytes, memoryMappedValues, stripedLocks);
+			tripleStore = new TripleStore(dataDir, tripleIndexes, forceSync, memoryMappedIndexes, compressedIndexes);
+			tripleStore.setIndexCacheSize(indexCacheBytes);
 			contextStore = new ContextStore(this, dataDir);
 			initialized = true;
 		} finally {
@@ -105,6 +193,24 @@ class NativeSailStore implements SailStore {
 		return valueStore;
 	}
 
+	/**
+	 * Gets the hit, miss and eviction counters of the value caches and of the B-tree node caches, by cache name.
+	 */
+	public Map<String, CacheStatistics> getCacheStatistics() {
+		Map<String, CacheStatistics> statistics = new LinkedHashMap<>(valueStore.getCacheStatistics());
+		statistics.putAll(tripleStore.getCacheStatistics());
+		return statistics;
+	}
+
+	/**
+	 * Gets the contention counters of the lock of the value store.
+	 * 
+	 * @return The counters, or <tt>null</tt> if the value store does not use striped locks.
+	 */
+	public LockStatistics getLockStatistics() {
+		return valueStore.getLockStatistics();
+	}
+
 	@Override
 	public void close() throws SailException {
 		try {
@@ -305,6 +411,148 @@ class NativeSailStore implements SailStore {
 		return tripleStore.cardinality(subjID, predID, objID, contextID);
 	}
 
+	/**
+	 * Recalculates the statistics that are used for estimating the cardinality of statement patterns.
+	 * 
+	 * @throws SailException If the statistics could not be calculated.
+	 * @see TripleStore#updateStatistics()
+	 */
+	void updateStatistics() throws SailException {
+		sinkStoreAccessLock.lock();
+		try {
+			tripleStore.updateStatistics();
+		} catch (IOException e) {
+			throw new SailException(e);
+		} finally {
+			sinkStoreAccessLock.unlock();
+		}
+	}
+
+	/**
+	 * Loads the supplied statements as explicit statements directly into the triple indexes, bypassing the
+	 * transaction mechanism.
+	 * 
+	 * @param statements The statements to load.
+	 * @return The number of statements that were not yet present in the store.
+	 * @throws SailException If a transaction is active or if the statements could not be loaded.
+	 * @see TripleStore#bulkLoad(RecordIterator)
+	 */
+	long bulkLoad(Iterator<? extends Statement> statements) throws SailException {
+		sinkStoreAccessLock.lock();
+		try {
+			if (storeTxnStarted.get()) {
+				throw new SailException("Bulk load can not be performed while a transaction is active");
+			}
+
+			RecordIterator records = new RecordIterator() {
+
+				private final List<Value> values = new ArrayList<>(4 * VALUE_BATCH_SIZE);
+
+				private final byte[][] batch = new byte[VALUE_BATCH_SIZE][];
+
+				private int batchSize = 0;
+
+				private int position = 0;
+
+				@Override
+				public byte[] next() throws IOException {
+					if (position == batchSize) {
+						readBatch();
+						if (batchSize == 0) {
+							return null;
+						}
+					}
+					return batch[position++];
+				}
+
+				/**
+				 * Reads the next batch of statements, resolving the IDs of their values together.
+				 */
+				private void readBatch() throws IOException {
+					values.clear();
+					batchSize = 0;
+					position = 0;
+					while (batchSize < VALUE_BATCH_SIZE && statements.hasNext()) {
+						Statement st = statements.next();
+						values.add(st.getSubject());
+						values.add(st.getPredicate());
+						values.add(st.getObject());
+						values.add(st.getContext());
+						batchSize++;
+					}
+
+					int[] ids = storeValues(values);
+					for (int i = 0; i < batchSize; i++) {
+						byte[] data = new byte[TripleStore.RECORD_LENGTH];
+						ByteArrayUtil.putInt(ids[4 * i], data, TripleStore.SUBJ_IDX);
+						ByteArrayUtil.putInt(ids[4 * i + 1], data, TripleStore.PRED_IDX);
+						ByteArrayUtil.putInt(ids[4 * i + 2], data, TripleStore.OBJ_IDX);
+						ByteArrayUtil.putInt(ids[4 * i + 3], data, TripleStore.CONTEXT_IDX);
+						data[TripleStore.FLAG_IDX] = TripleStore.EXPLICIT_FLAG;
+						batch[i] = data;
+					}
+				}
+
+				@Override
+				public void set(byte[] record) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+
+			Map<Integer, Long> addedPerContext = tripleStore.bulkLoad(records);
+			valueStore.sync();
+
+			long addedCount = 0;
+			for (Entry<Integer, Long> entry : addedPerContext.entrySet()) {
+				Integer contextId = entry.getKey();
+				if (contextId > 0) {
+					Resource context = (Resource) valueStore.getValue(contextId);
+					contextStore.incrementBy(context, entry.getValue());
+				}
+				addedCount += entry.getValue();
+			}
+			contextStore.sync();
+
+			return addedCount;
+		} catch (IOException e) {
+			throw new SailException(e);
+		} catch (RuntimeException e) {
+			logger.error("Encountered an unexpected problem while trying to bulk load statements", e);
+			throw e;
+		} finally {
+			sinkStoreAccessLock.unlock();
+		}
+	}
+
+	/**
+	 * Stores the supplied values using {@link ValueStore#storeValues(java.util.Collection)}. The list may contain
+	 * <tt>null</tt> values, such as the contexts of statements in the default graph, for which <tt>0</tt> is returned.
+	 * 
+	 * @return For each of the values, in the same order, the ID that has been assigned to the value.
+	 */
+	private int[] storeValues(List<Value> values) throws IOException {
+		List<Value> nonNullValues = new ArrayList<>(values.size());
+		for (Value value : values) {
+			if (value != null) {
+				nonNullValues.add(value);
+			}
+		}
+
+		int[] storedIDs = valueStore.storeValues(nonNullValues);
+
+		int[] ids = new int[values.size()];
+		for (int i = 0, j = 0; i < ids.length; i++) {
+			if (values.get(i) != null) {
+				ids[i] = storedIDs[j++];
+			}
+		}
+		return ids;
+	}
+
 	private final class NativeSailSource extends BackingSailSource {
 
 		private final boolean explicit;
@@ -334,13 +582,19 @@ class NativeSailStore implements SailStore {
 
 		private final boolean explicit;
 
+		/**
+		 * The subjects, predicates, objects and contexts of the approved statements that have not yet been added to
+		 * the triple store. Statements are added in batches so that the IDs of their values can be resolved together.
+		 */
+		private final List<Value> pendingValues = new ArrayList<>();
+
 		public NativeSailSink(boolean explicit) throws SailException {
 			this.explicit = explicit;
 		}
 
 		@Override
-		public void close() {
-			// no-op
+		public void close() throws SailException {
+			addPendingStatements();
 		}
 
 		@Override
@@ -350,6 +604,7 @@ class NativeSailStore implements SailStore {
 
 		@Override
 		public synchronized void flush() throws SailException {
+			addPendingStatements();
 			sinkStoreAccessLock.lock();
 			try {
 				try {
@@ -382,6 +637,7 @@ class NativeSailStore implements SailStore {
 
 		@Override
 		public void setNamespace(String prefix, String name) throws SailException {
+			addPendingStatements();
 			sinkStoreAccessLock.lock();
 			try {
 				startTriplestoreTransaction();
@@ -393,6 +649,7 @@ class NativeSailStore implements SailStore {
 
 		@Override
 		public void removeNamespace(String prefix) throws SailException {
+			addPendingStatements();
 			sinkStoreAccessLock.lock();
 			try {
 				startTriplestoreTransaction();
@@ -404,6 +661,7 @@ class NativeSailStore implements SailStore {
 
 		@Override
 		public void clearNamespaces() throws SailException {
+			addPendingStatements();
 			sinkStoreAccessLock.lock();
 			try {
 				startTriplestoreTransaction();
@@ -420,19 +678,50 @@ class NativeSailStore implements SailStore {
 
 		@Override
 		public void clear(Resource... contexts) throws SailException {
+			addPendingStatements();
 			removeStatements(null, null, null, explicit, contexts);
 		}
 
 		@Override
 		public void approve(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
-			addStatement(subj, pred, obj, explicit, ctx);
+			pendingValues.add(subj);
+			pendingValues.add(pred);
+			pendingValues.add(obj);
+			pendingValues.add(ctx);
+
+			if (pendingValues.size() >= 4 * VALUE_BATCH_SIZE) {
+				addPendingStatements();
+			}
 		}
 
 		@Override
 		public void deprecate(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException {
+			addPendingStatements();
 			removeStatements(subj, pred, obj, explicit, ctx);
 		}
 
+		/**
+		 * Removes the statements in batches. The IDs of the values of a batch are looked up together and the triples
+		 * are removed from one index at a time.
+		 */
+		@Override
+		public void deprecateAll(Collection<? extends Statement> statements) throws SailException {
+			addPendingStatements();
+
+			Iterator<? extends Statement> iter = statements.iterator();
+			while (iter.hasNext()) {
+				List<Value> values = new ArrayList<>();
+				for (int i = 0; i < VALUE_BATCH_SIZE && iter.hasNext(); i++) {
+					Statement st = iter.next();
+					values.add(st.getSubject());
+					values.add(st.getPredicate());
+					values.add(st.getObject());
+					values.add(st.getContext());
+				}
+				removeStatements(values);
+			}
+		}
+
 		/**
 		 * Starts a transaction on the triplestore, if necessary.
 		 * 
@@ -450,43 +739,79 @@ class NativeSailStore implements SailStore {
 			}
 		}
 
-		private boolean addStatement(Resource subj, IRI pred, Value obj, boolean explicit, Resource... contexts)
-				throws SailException {
-			OpenRDFUtil.verifyContextNotNull(contexts);
-			boolean result = false;
+		/**
+		 * Adds the approved statements that have not yet been added to the triple store.
+		 */
+		private void addPendingStatements() throws SailException {
+			if (pendingValues.isEmpty()) {
+				return;
+			}
+
 			sinkStoreAccessLock.lock();
 			try {
 				startTriplestoreTransaction();
-				int subjID = valueStore.storeValue(subj);
-				int predID = valueStore.storeValue(pred);
-				int objID = valueStore.storeValue(obj);
+				int[] ids = storeValues(pendingValues);
 
-				if (contexts.length == 0) {
-					contexts = new Resource[] { null };
+				boolean[] wasNew = tripleStore.storeTriples(ids, explicit);
+				for (int i = 0; i < wasNew.length; i++) {
+					if (wasNew[i] && ids[4 * i + 3] != 0) {
+						contextStore.increment((Resource) pendingValues.get(4 * i + 3));
+					}
 				}
+			} catch (IOException e) {
+				throw new SailException(e);
+			} catch (RuntimeException e) {
+				logger.error("Encountered an unexpected problem while trying to add statements", e);
+				throw e;
+			} finally {
+				pendingValues.clear();
+				sinkStoreAccessLock.unlock();
+			}
+		}
 
-				for (Resource context : contexts) {
-					int contextID = 0;
-					if (context != null) {
-						contextID = valueStore.storeValue(context);
+		/**
+		 * Removes the statements with the supplied subjects, predicates, objects and contexts, four values per
+		 * statement. Statements with values that are not in the value store are ignored.
+		 */
+		private void removeStatements(List<Value> values) throws SailException {
+			sinkStoreAccessLock.lock();
+			try {
+				startTriplestoreTransaction();
+
+				Value[] nonNullValues = values.stream().filter(Objects::nonNull).toArray(Value[]::new);
+				int[] storedIDs = valueStore.getIDs(nonNullValues);
+
+				int[] quads = new int[values.size()];
+				int quadCount = 0;
+				for (int i = 0, j = 0; i < values.size(); i += 4) {
+					boolean known = true;
+					for (int k = 0; k < 4; k++) {
+						int id = values.get(i + k) == null ? 0 : storedIDs[j++];
+						known &= id != NativeValue.UNKNOWN_ID;
+						quads[4 * quadCount + k] = id;
 					}
+					if (known) {
+						quadCount++;
+					}
+				}
 
-					boolean wasNew = tripleStore.storeTriple(subjID, predID, objID, contextID, explicit);
-					if (wasNew && context != null) {
-						contextStore.increment(context);
+				Map<Integer, Long> result = tripleStore.removeTriplesByContext(Arrays.copyOf(quads, 4 * quadCount),
+						explicit);
+				for (Entry<Integer, Long> entry : result.entrySet()) {
+					Integer entryContextId = entry.getKey();
+					if (entryContextId > 0) {
+						Resource modifiedContext = (Resource) valueStore.getValue(entryContextId);
+						contextStore.decrementBy(modifiedContext, entry.getValue());
 					}
-					result |= wasNew;
 				}
 			} catch (IOException e) {
 				throw new SailException(e);
 			} catch (RuntimeException e) {
-				logger.error("Encountered an unexpected problem while trying to add a statement", e);
+				logger.error("Encountered an unexpected problem while trying to remove statements", e);
 				throw e;
 			} finally {
 				sinkStoreAccessLock.unlock();
 			}
-
-			return result;
 		}
 
 		private long removeStatements(Resource subj, IRI pred, Value obj, boolean explicit, Resource... contexts)
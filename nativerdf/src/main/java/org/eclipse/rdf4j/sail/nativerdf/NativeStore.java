@@ -9,6 +9,9 @@ package org.eclipse.rdf4j.sail.nativerdf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
@@ -16,9 +19,12 @@ import org.eclipse.rdf4j.IsolationLevel;
 import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.common.concurrent.locks.Lock;
 import org.eclipse.rdf4j.common.concurrent.locks.LockManager;
+import org.eclipse.rdf4j.common.concurrent.locks.LockStatistics;
+import org.eclipse.rdf4j.common.concurrent.locks.StripedReadWriteLockManager;
 import org.eclipse.rdf4j.common.io.MavenUtil;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.ModelFactory;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategyFactory;
@@ -28,11 +34,13 @@ import org.eclipse.rdf4j.query.algebra.evaluation.impl.StrictEvaluationStrategyF
 import org.eclipse.rdf4j.repository.sparql.federation.SPARQLServiceResolver;
 import org.eclipse.rdf4j.sail.NotifyingSailConnection;
 import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.base.QueryPlanCache;
 import org.eclipse.rdf4j.sail.base.SailSource;
 import org.eclipse.rdf4j.sail.base.SailStore;
 import org.eclipse.rdf4j.sail.base.SnapshotSailStore;
 import org.eclipse.rdf4j.sail.helpers.AbstractNotifyingSail;
 import org.eclipse.rdf4j.sail.helpers.DirectoryLockManager;
+import org.eclipse.rdf4j.sail.nativerdf.btree.BTree;
 
 /**
  * A SAIL implementation using B-Tree indexing on disk for storing and querying its data.
@@ -71,8 +79,55 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 
 	private volatile int namespaceIDCacheSize = ValueStore.NAMESPACE_ID_CACHE_SIZE;
 
+	/**
+	 * Flag indicating whether index lookups should read B-tree nodes from memory-mapped files without taking the
+	 * shared index lock. By default, this feature is disabled.
+	 */
+	private volatile boolean memoryMappedIndexes = false;
+
+	/**
+	 * Flag indicating whether the value store should read its files through memory mappings. By default, this feature
+	 * is disabled.
+	 */
+	private volatile boolean memoryMappedValues = false;
+
+	/**
+	 * Flag indicating whether index files should store B-tree nodes in the compressed node format. By default, this
+	 * feature is disabled.
+	 */
+	private volatile boolean compressedIndexes = false;
+
+	/**
+	 * The maximum amount of memory used by each of the value cache and the value-ID cache, in bytes. A negative value
+	 * indicates that these caches are bounded by {@link #valueCacheSize} and {@link #valueIDCacheSize} instead.
+	 */
+	private volatile long valueCacheBytes = -1;
+
+	/**
+	 * The maximum amount of memory used to cache the B-tree nodes of each index, in bytes.
+	 */
+	private volatile long indexCacheBytes = BTree.DEFAULT_NODE_CACHE_SIZE;
+
+	/**
+	 * Flag indicating whether the value store counts its readers with a {@link StripedReadWriteLockManager}.
+	 */
+	private volatile boolean stripedLocks = false;
+
+	/**
+	 * The maximum number of optimized query plans that are cached, see {@link QueryPlanCache}. Plans are not cached if
+	 * this is <tt>0</tt>.
+	 */
+	private volatile int queryPlanCacheSize = 0;
+
+	private volatile QueryPlanCache queryPlanCache;
+
 	private SailStore store;
 
+	/**
+	 * The store that {@link #store} is backed by, used for operations that bypass transaction isolation.
+	 */
+	private NativeSailStore nativeSailStore;
+
 	/**
 	 * Data directory lock.
 	 */
@@ -175,6 +230,163 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 		this.namespaceIDCacheSize = namespaceIDCacheSize;
 	}
 
+	/**
+	 * Specifies whether index lookups should read B-tree nodes from memory-mapped files, must be called before
+	 * initialization. Lookups then traverse the mapped pages optimistically and only fall back to the shared index lock
+	 * when a concurrent update is detected, which lets read throughput scale with the number of cores. Index files are
+	 * never shrunk while this feature is enabled. By default, this feature is disabled.
+	 */
+	public void setMemoryMappedIndexes(boolean memoryMappedIndexes) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.memoryMappedIndexes = memoryMappedIndexes;
+	}
+
+	public boolean getMemoryMappedIndexes() {
+		return memoryMappedIndexes;
+	}
+
+	/**
+	 * Specifies whether the value store should read its data, ID and hash files through memory mappings, must be called
+	 * before initialization. This avoids a file read and a buffer allocation for each value lookup, which is most of
+	 * the cost of resolving values on fast storage. By default, this feature is disabled.
+	 */
+	public void setMemoryMappedValues(boolean memoryMappedValues) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.memoryMappedValues = memoryMappedValues;
+	}
+
+	public boolean getMemoryMappedValues() {
+		return memoryMappedValues;
+	}
+
+	/**
+	 * Specifies whether index files should store B-tree nodes in the compressed node format, must be called before
+	 * initialization. Compressed nodes hold several times as many triples, which results in smaller index files and
+	 * fewer node reads per lookup or range scan at the cost of encoding and decoding the nodes. Existing indexes are
+	 * converted to the specified format when the store is initialized. By default, this feature is disabled.
+	 */
+	public void setCompressedIndexes(boolean compressedIndexes) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.compressedIndexes = compressedIndexes;
+	}
+
+	public boolean getCompressedIndexes() {
+		return compressedIndexes;
+	}
+
+	/**
+	 * Sets the maximum amount of memory, in bytes, that is used by each of the value cache and the value-ID cache,
+	 * must be called before initialization. When set, the caches are bounded by this amount of memory rather than by
+	 * the configured value cache sizes. By default, the value cache sizes are used.
+	 */
+	public void setValueCacheBytes(long valueCacheBytes) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.valueCacheBytes = valueCacheBytes;
+	}
+
+	public long getValueCacheBytes() {
+		return valueCacheBytes;
+	}
+
+	/**
+	 * Sets the maximum amount of memory, in bytes, that is used to cache the B-tree nodes of each index, must be called
+	 * before initialization. Defaults to {@link BTree#DEFAULT_NODE_CACHE_SIZE}.
+	 */
+	public void setIndexCacheBytes(long indexCacheBytes) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.indexCacheBytes = indexCacheBytes;
+	}
+
+	public long getIndexCacheBytes() {
+		return indexCacheBytes;
+	}
+
+	/**
+	 * Sets whether the lock that prevents the removal of values during queries counts its readers in striped counters,
+	 * see {@link StripedReadWriteLockManager}, must be called before initialization. This avoids contention between
+	 * many short concurrent queries, and provides contention counters through {@link #getLockStatistics()}. Like the
+	 * default lock, the striped lock lets a waiting writer go first. Defaults to <tt>false</tt>.
+	 */
+	public void setStripedLocks(boolean stripedLocks) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.stripedLocks = stripedLocks;
+	}
+
+	public boolean getStripedLocks() {
+		return stripedLocks;
+	}
+
+	/**
+	 * Gets the contention counters of the lock of the value store.
+	 * 
+	 * @return The counters, or <tt>null</tt> if striped locks are not used or the store has not been initialized.
+	 */
+	public LockStatistics getLockStatistics() {
+		NativeSailStore nativeSailStore = this.nativeSailStore;
+		if (nativeSailStore == null) {
+			return null;
+		}
+		return nativeSailStore.getLockStatistics();
+	}
+
+	/**
+	 * Sets the maximum number of optimized query plans that are cached and shared by the connections of this store,
+	 * must be called before initialization. Repeated evaluations of the same query with the same bindings then skip
+	 * query optimization. Defaults to <tt>0</tt>, which disables the cache.
+	 * 
+	 * @see QueryPlanCache#DEFAULT_CAPACITY
+	 */
+	public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+		if (isInitialized()) {
+			throw new IllegalStateException("sail has already been intialized");
+		}
+
+		this.queryPlanCacheSize = queryPlanCacheSize;
+	}
+
+	public int getQueryPlanCacheSize() {
+		return queryPlanCacheSize;
+	}
+
+	/**
+	 * Gets the cache of optimized query plans, with its hit and miss counters.
+	 * 
+	 * @return The cache, or <tt>null</tt> if query plans are not cached or the store has not been initialized.
+	 */
+	public QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+
+	/**
+	 * Gets the hit, miss and eviction counters of the value caches and of the B-tree node caches of this store, by
+	 * cache name. Returns an empty map if the store has not been initialized.
+	 */
+	public Map<String, CacheStatistics> getCacheStatistics() {
+		NativeSailStore nativeSailStore = this.nativeSailStore;
+		if (nativeSailStore == null) {
+			return Collections.emptyMap();
+		}
+		return nativeSailStore.getCacheStatistics();
+	}
+
 	/**
 	 * @return Returns the {@link EvaluationStrategy}.
 	 */
@@ -257,7 +469,10 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 				FileUtils.writeStringToFile(versionFile, VERSION);
 			}
 			final NativeSailStore master = new NativeSailStore(dataDir, tripleIndexes, forceSync, valueCacheSize,
-					valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize);
+					valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize, memoryMappedIndexes, compressedIndexes,
+					valueCacheBytes, indexCacheBytes, memoryMappedValues, stripedLocks);
+			this.nativeSailStore = master;
+			this.queryPlanCache = queryPlanCacheSize > 0 ? new QueryPlanCache(queryPlanCacheSize) : null;
 			this.store = new SnapshotSailStore(master, new ModelFactory() {
 
 				@Override
@@ -339,6 +554,68 @@ public class NativeStore extends AbstractNotifyingSail implements FederatedServi
 		return store.getValueFactory();
 	}
 
+	/**
+	 * Loads the supplied statements into this store as explicit statements, bypassing the regular transaction
+	 * mechanism. Instead of updating the triple indexes one statement at a time, the statements are sorted externally
+	 * in the order of each index and the indexes are rebuilt bottom-up with densely packed nodes. This is
+	 * significantly faster than adding the statements through a connection and is intended for loading large datasets,
+	 * typically into an empty store.
+	 * <p>
+	 * As the index files are replaced while loading, a bulk load can only be performed when no connections to the store
+	 * are open. New connections can not be obtained and the store can not be shut down until the load has finished.
+	 * The load is not atomic: if it fails or is interrupted, the store may contain only part of the statements. Also,
+	 * no notifications are sent to {@link org.eclipse.rdf4j.sail.SailConnectionListener}s.
+	 * 
+	 * @param statements The statements to load, in arbitrary order.
+	 * @return The number of statements that were not yet present in the store.
+	 * @throws SailException If a connection to the store is open or if the statements could not be loaded.
+	 */
+	public long bulkLoad(Iterator<? extends Statement> statements) throws SailException {
+		// block getConnection() and shutDown() while the index files are swapped
+		initializationLock.writeLock().lock();
+		try {
+			if (!isInitialized()) {
+				throw new IllegalStateException("sail has not been initialized");
+			}
+
+			// an open connection could still read from, or write to, the index files that are replaced
+			if (hasActiveConnections()) {
+				throw new SailException("Bulk load can not be performed while connections to the store are open");
+			}
+
+			return nativeSailStore.bulkLoad(statements);
+		} finally {
+			initializationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Recalculates the statistics about the stored statements that are used to estimate the cardinality of statement
+	 * patterns and joins. The statistics are maintained incrementally when transactions are committed, so calling this
+	 * method is only needed when they are missing: after the store was not shut down properly, for stores that were
+	 * created before statistics were introduced, or for stores whose triple indexes do not support incremental updates
+	 * (this requires an index that starts with the subject and one that starts with the predicate and object). Until
+	 * then, cardinalities are estimated from the triple indexes.
+	 * <p>
+	 * The calculation reads all statements and blocks commits while it runs, but does not wait for active transactions
+	 * to complete.
+	 * 
+	 * @throws SailException If the statistics could not be calculated.
+	 */
+	public void updateStatistics() throws SailException {
+		if (!isInitialized()) {
+			throw new IllegalStateException("sail has not been initialized");
+		}
+
+		nativeSailStore.updateStatistics();
+
+		QueryPlanCache planCache = queryPlanCache;
+		if (planCache != null) {
+			// the join orders of the cached plans are based on the old statistics
+			planCache.invalidate();
+		}
+	}
+
 	/**
 	 * This call will block when {@link IsolationLevels#NONE} is provided when there are active transactions with a
 	 * higher isolation and block when a higher isolation is provided when there are active transactions with
@@ -15,6 +15,7 @@ import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.SailReadOnlyException;
+import org.eclipse.rdf4j.sail.base.QueryPlanCache;
 import org.eclipse.rdf4j.sail.base.SailSourceConnection;
 import org.eclipse.rdf4j.sail.helpers.DefaultSailChangedEvent;
 
@@ -54,6 +55,11 @@ public class NativeStoreConnection extends SailSourceConnection {
 	 * Methods *
 	 *---------*/
 
+	@Override
+	protected QueryPlanCache getQueryPlanCache() {
+		return nativeStore.getQueryPlanCache();
+	}
+
 	@Override
 	protected void startTransactionInternal() throws SailException {
 		if (!nativeStore.isWritable()) {
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.eclipse.rdf4j.sail.nativerdf.btree.RecordComparator;
+import org.eclipse.rdf4j.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Sorts an arbitrary number of fixed-length records using a bounded amount of memory. Records are buffered in memory
+ * until the buffer is full, at which point they are sorted and spilled to a temporary file as a sorted run. The sorted
+ * result is produced by a k-way merge of all runs. Duplicate records are not removed.
+ */
+class RecordSorter implements Closeable {
+
+	/**
+	 * The size of the I/O buffers used for writing and reading runs.
+	 */
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+
+	/*------------*
+	 * Attributes *
+	 *------------*/
+
+	private final File cacheDir;
+
+	private final int recordSize;
+
+	private final Comparator<byte[]> recordOrder;
+
+	private final byte[][] buffer;
+
+	private int bufferedCount = 0;
+
+	private final List<File> runFiles = new ArrayList<>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param cacheDir           The directory in which the temporary run files are created.
+	 * @param recordSize         The length of the records, in bytes.
+	 * @param comparator         The comparator that determines the sort order.
+	 * @param maxBufferedRecords The maximum number of records to keep in memory before spilling them to disk.
+	 */
+	public RecordSorter(File cacheDir, int recordSize, RecordComparator comparator, int maxBufferedRecords) {
+		this.cacheDir = cacheDir;
+		this.recordSize = recordSize;
+		this.recordOrder = (r1, r2) -> comparator.compareBTreeValues(r1, r2, 0, recordSize);
+		this.buffer = new byte[maxBufferedRecords][];
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Adds a record to the sorter. The supplied array is kept by the sorter and must not be modified afterwards.
+	 */
+	public void add(byte[] record) throws IOException {
+		buffer[bufferedCount++] = record;
+
+		if (bufferedCount == buffer.length) {
+			spill();
+		}
+	}
+
+	private void spill() throws IOException {
+		Arrays.sort(buffer, 0, bufferedCount, recordOrder);
+
+		File runFile = File.createTempFile("sortrun", ".dat", cacheDir);
+		runFiles.add(runFile);
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(runFile), IO_BUFFER_SIZE)) {
+			for (int i = 0; i < bufferedCount; i++) {
+				out.write(buffer[i]);
+				buffer[i] = null;
+			}
+		}
+
+		bufferedCount = 0;
+	}
+
+	/**
+	 * Gets all records that have been added to this sorter, in sorted order. No more records should be added once this
+	 * method has been called.
+	 */
+	public RecordIterator iterator() throws IOException {
+		Arrays.sort(buffer, 0, bufferedCount, recordOrder);
+
+		List<RecordIterator> runs = new ArrayList<>(runFiles.size() + 1);
+		try {
+			for (File runFile : runFiles) {
+				runs.add(new RunIterator(runFile));
+			}
+		} catch (IOException e) {
+			for (RecordIterator run : runs) {
+				run.close();
+			}
+			throw e;
+		}
+		if (bufferedCount > 0) {
+			runs.add(new BufferIterator());
+		}
+
+		return new MergeIterator(runs);
+	}
+
+	/**
+	 * Discards all buffered records and deletes any temporary files.
+	 */
+	@Override
+	public void close() throws IOException {
+		Arrays.fill(buffer, null);
+		bufferedCount = 0;
+
+		for (File runFile : runFiles) {
+			if (!runFile.delete() && runFile.exists()) {
+				throw new IOException("Unable to delete sorted run " + runFile);
+			}
+		}
+		runFiles.clear();
+	}
+
+	/*----------------------------*
+	 * Inner class BufferIterator *
+	 *----------------------------*/
+
+	private class BufferIterator implements RecordIterator {
+
+		private int position = 0;
+
+		@Override
+		public byte[] next() {
+			if (position < bufferedCount) {
+				return buffer[position++];
+			}
+
+			return null;
+		}
+
+		@Override
+		public void set(byte[] record) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/*-------------------------*
+	 * Inner class RunIterator *
+	 *-------------------------*/
+
+	private class RunIterator implements RecordIterator {
+
+		private final DataInputStream in;
+
+		public RunIterator(File runFile) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), IO_BUFFER_SIZE));
+		}
+
+		@Override
+		public byte[] next() throws IOException {
+			byte[] record = new byte[recordSize];
+			try {
+				in.readFully(record);
+				return record;
+			} catch (EOFException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public void set(byte[] record) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/*---------------------------*
+	 * Inner class MergeIterator *
+	 *---------------------------*/
+
+	/**
+	 * Merges a number of sorted runs by repeatedly taking the lowest head record from a priority queue.
+	 */
+	private class MergeIterator implements RecordIterator {
+
+		private final List<RecordIterator> runs;
+
+		private final PriorityQueue<RunHead> heads;
+
+		public MergeIterator(List<RecordIterator> runs) throws IOException {
+			this.runs = runs;
+			this.heads = new PriorityQueue<>(Math.max(1, runs.size()),
+					(h1, h2) -> recordOrder.compare(h1.record, h2.record));
+
+			for (RecordIterator run : runs) {
+				byte[] record = run.next();
+				if (record != null) {
+					heads.add(new RunHead(run, record));
+				}
+			}
+		}
+
+		@Override
+		public byte[] next() throws IOException {
+			RunHead head = heads.poll();
+
+			if (head == null) {
+				return null;
+			}
+
+			byte[] result = head.record;
+
+			head.record = head.run.next();
+			if (head.record != null) {
+				heads.add(head);
+			}
+
+			return result;
+		}
+
+		@Override
+		public void set(byte[] record) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			heads.clear();
+
+			IOException exception = null;
+			for (RecordIterator run : runs) {
+				try {
+					run.close();
+				} catch (IOException e) {
+					if (exception == null) {
+						exception = e;
+					}
+				}
+			}
+			if (exception != null) {
+				throw exception;
+			}
+		}
+	}
+
+	private static class RunHead {
+
+		final RecordIterator run;
+
+		byte[] record;
+
+		RunHead(RecordIterator run, byte[] record) {
+			this.run = run;
+			this.record = record;
+		}
+	}
+}
@@ -0,0 +1,576 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.common.io.IOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Statistics about the triples in a {@link TripleStore}, used for estimating the cardinality of statement patterns and
+ * star-shaped joins in constant time. The statistics consist of the total number of triples and subjects, the number
+ * of triples and of distinct subjects and objects per predicate, and a summary of the characteristic sets of the
+ * subjects: the sets of predicates that subjects have, with the number of subjects that have each set and the number of
+ * triples per predicate of these subjects. Contexts are not taken into account.
+ * <p>
+ * The statistics are updated incrementally by the triple store, per changed subject and per changed predicate-object
+ * pair. They are stored in a file when the triple store is closed. Once they are modified, the file is deleted, so
+ * that statistics that were not stored after a crash are treated as missing. Missing or otherwise unreliable statistics
+ * are <em>invalid</em> and should not be used until they have been recalculated.
+ * <p>
+ * Only one thread may update the statistics at a time. Reading threads may observe the effect of a partially applied
+ * update, which is acceptable for estimates.
+ */
+class TripleStatistics {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * Magic number "Native Statistics File" to detect whether the file is actually a statistics file. The first three
+	 * bytes of the file should be equal to this magic number.
+	 */
+	private static final byte[] MAGIC_NUMBER = new byte[] { 'n', 's', 'f' };
+
+	/**
+	 * File format version, stored as the fourth byte in statistics files.
+	 */
+	private static final byte FILE_FORMAT_VERSION = 1;
+
+	/**
+	 * The maximum number of characteristic sets that are tracked. Subjects with a set of predicates that is not tracked
+	 * are only included in the total number of subjects.
+	 */
+	static final int MAX_CHARACTERISTIC_SETS = 10000;
+
+	private static final int[] NO_PREDICATES = new int[0];
+
+	private static final long[] NO_COUNTS = new long[0];
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final File file;
+
+	private final Map<Integer, PredicateStatistics> predicates = new ConcurrentHashMap<>();
+
+	private final Map<PredicateSet, CharacteristicSet> characteristicSets = new ConcurrentHashMap<>();
+
+	private volatile long tripleCount;
+
+	private volatile long subjectCount;
+
+	/**
+	 * The number of subjects that are included in {@link #characteristicSets}.
+	 */
+	private volatile long trackedSubjectCount;
+
+	private volatile boolean valid;
+
+	/**
+	 * Flag indicating whether the contents of {@link #file} are equal to these statistics.
+	 */
+	private boolean stored;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates statistics that are stored in the specified file, reading the file if it exists. The statistics are
+	 * invalid if the file doesn't exist or can not be read.
+	 */
+	public TripleStatistics(File file) {
+		this.file = file;
+
+		if (file.exists()) {
+			try {
+				readFromFile();
+				valid = true;
+				stored = true;
+			} catch (IOException e) {
+				logger.warn("Unable to read triple statistics, statistics need to be recalculated", e);
+				clearContents();
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Checks whether these statistics reflect the triples in the store.
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	public long getTripleCount() {
+		return tripleCount;
+	}
+
+	public long getSubjectCount() {
+		return subjectCount;
+	}
+
+	/**
+	 * Gets the statistics of the specified predicate.
+	 *
+	 * @return The statistics, or <tt>null</tt> if no triples use the predicate.
+	 */
+	public PredicateStatistics getPredicateStatistics(int predID) {
+		return predicates.get(predID);
+	}
+
+	/**
+	 * Gets the number of tracked characteristic sets.
+	 */
+	public int getCharacteristicSetCount() {
+		return characteristicSets.size();
+	}
+
+	/**
+	 * Estimates the number of results of a star-shaped join of statement patterns that share the same, unbound,
+	 * subject, based on the characteristic sets of the subjects. The objects of the patterns are assumed to be unbound
+	 * and distinct.
+	 *
+	 * @param predIDs The predicates of the statement patterns, one per pattern.
+	 * @return The estimated number of results.
+	 */
+	public double getStarCardinality(int[] predIDs) {
+		int[] querySet = toSortedSet(predIDs);
+
+		double cardinality = 0.0;
+		for (CharacteristicSet characteristicSet : characteristicSets.values()) {
+			if (characteristicSet.containsAll(querySet)) {
+				double setCardinality = characteristicSet.subjectCount;
+				for (int predID : predIDs) {
+					// average number of triples per subject for the predicate
+					setCardinality *= (double) characteristicSet.getTripleCount(predID)
+							/ characteristicSet.subjectCount;
+				}
+				cardinality += setCardinality;
+			}
+		}
+
+		long trackedSubjectCount = this.trackedSubjectCount;
+		long subjectCount = this.subjectCount;
+		if (trackedSubjectCount > 0L && trackedSubjectCount < subjectCount) {
+			// extrapolate to the subjects of characteristic sets that are not tracked
+			cardinality *= (double) subjectCount / trackedSubjectCount;
+		}
+
+		return cardinality;
+	}
+
+	/**
+	 * Updates the statistics for a change in the triples of a subject.
+	 *
+	 * @param oldPredIDs The predicates of the subject before the change, sorted and without duplicates.
+	 * @param oldCounts  The number of triples of the subject per predicate in <tt>oldPredIDs</tt> before the change.
+	 * @param newPredIDs The predicates of the subject after the change, sorted and without duplicates.
+	 * @param newCounts  The number of triples of the subject per predicate in <tt>newPredIDs</tt> after the change.
+	 */
+	public void updateSubject(int[] oldPredIDs, long[] oldCounts, int[] newPredIDs, long[] newCounts) {
+		markModified();
+
+		if (Arrays.equals(oldPredIDs, newPredIDs) && Arrays.equals(oldCounts, newCounts)) {
+			return;
+		}
+
+		// Update the per-predicate triple and subject counts
+		int i = 0, j = 0;
+		while (i < oldPredIDs.length || j < newPredIDs.length) {
+			int predID;
+			long oldCount = 0L, newCount = 0L;
+			if (j == newPredIDs.length || i < oldPredIDs.length && oldPredIDs[i] < newPredIDs[j]) {
+				predID = oldPredIDs[i];
+				oldCount = oldCounts[i++];
+			} else if (i == oldPredIDs.length || newPredIDs[j] < oldPredIDs[i]) {
+				predID = newPredIDs[j];
+				newCount = newCounts[j++];
+			} else {
+				predID = oldPredIDs[i];
+				oldCount = oldCounts[i++];
+				newCount = newCounts[j++];
+			}
+
+			if (oldCount != newCount) {
+				long subjectDelta = (oldCount == 0L ? 1L : 0L) - (newCount == 0L ? 1L : 0L);
+				updatePredicate(predID, newCount - oldCount, subjectDelta, 0L);
+				tripleCount += newCount - oldCount;
+			}
+		}
+
+		if (oldPredIDs.length == 0) {
+			subjectCount++;
+		} else if (newPredIDs.length == 0) {
+			subjectCount--;
+		}
+
+		// Move the subject from its old characteristic set to its new one
+		if (oldPredIDs.length > 0) {
+			removeFromCharacteristicSet(oldPredIDs, oldCounts);
+		}
+		if (newPredIDs.length > 0) {
+			addToCharacteristicSet(newPredIDs, newCounts);
+		}
+	}
+
+	/**
+	 * Updates the statistics for a subject that had no triples before the change.
+	 *
+	 * @see #updateSubject(int[], long[], int[], long[])
+	 */
+	public void addSubject(int[] predIDs, long[] counts) {
+		updateSubject(NO_PREDICATES, NO_COUNTS, predIDs, counts);
+	}
+
+	/**
+	 * Updates the statistics for a change in the triples with a specific predicate and object.
+	 *
+	 * @param oldExists Flag indicating whether there was at least one triple with the predicate and object before the
+	 *                  change.
+	 * @param newExists Flag indicating whether there is at least one triple with the predicate and object after the
+	 *                  change.
+	 */
+	public void updateObject(int predID, boolean oldExists, boolean newExists) {
+		markModified();
+
+		if (oldExists != newExists) {
+			updatePredicate(predID, 0L, 0L, newExists ? 1L : -1L);
+		}
+	}
+
+	private void updatePredicate(int predID, long tripleDelta, long subjectDelta, long objectDelta) {
+		PredicateStatistics old = predicates.get(predID);
+		PredicateStatistics updated;
+		if (old == null) {
+			updated = new PredicateStatistics(tripleDelta, subjectDelta, objectDelta);
+		} else {
+			updated = new PredicateStatistics(old.tripleCount + tripleDelta, old.subjectCount + subjectDelta,
+					old.objectCount + objectDelta);
+		}
+
+		if (updated.tripleCount <= 0L && updated.subjectCount <= 0L && updated.objectCount <= 0L) {
+			predicates.remove(predID);
+		} else {
+			predicates.put(predID, updated);
+		}
+	}
+
+	private void addToCharacteristicSet(int[] predIDs, long[] counts) {
+		PredicateSet key = new PredicateSet(predIDs);
+		CharacteristicSet old = characteristicSets.get(key);
+		if (old == null) {
+			if (characteristicSets.size() >= MAX_CHARACTERISTIC_SETS) {
+				return;
+			}
+			characteristicSets.put(key, new CharacteristicSet(predIDs, 1L, counts.clone()));
+		} else {
+			long[] tripleCounts = old.tripleCounts.clone();
+			for (int i = 0; i < tripleCounts.length; i++) {
+				tripleCounts[i] += counts[i];
+			}
+			characteristicSets.put(key, new CharacteristicSet(predIDs, old.subjectCount + 1L, tripleCounts));
+		}
+		trackedSubjectCount++;
+	}
+
+	private void removeFromCharacteristicSet(int[] predIDs, long[] counts) {
+		PredicateSet key = new PredicateSet(predIDs);
+		CharacteristicSet old = characteristicSets.get(key);
+		if (old == null) {
+			// subject was not tracked
+			return;
+		}
+
+		if (old.subjectCount <= 1L) {
+			characteristicSets.remove(key);
+		} else {
+			long[] tripleCounts = old.tripleCounts.clone();
+			for (int i = 0; i < tripleCounts.length; i++) {
+				tripleCounts[i] = Math.max(0L, tripleCounts[i] - counts[i]);
+			}
+			characteristicSets.put(key, new CharacteristicSet(predIDs, old.subjectCount - 1L, tripleCounts));
+		}
+		trackedSubjectCount--;
+	}
+
+	/**
+	 * Discards all statistics and marks them as invalid. Updates are still applied to invalid statistics, so that the
+	 * statistics can be recalculated by adding all subjects and predicate-object pairs, followed by
+	 * {@link #markValid()}.
+	 */
+	public void invalidate() {
+		valid = false;
+		markModified();
+		clearContents();
+	}
+
+	/**
+	 * Marks these statistics as valid.
+	 */
+	public void markValid() {
+		valid = true;
+	}
+
+	/**
+	 * Discards all statistics, after which they are valid statistics for an empty store.
+	 */
+	public void reset() {
+		invalidate();
+		markValid();
+	}
+
+	/**
+	 * Writes these statistics to file if they are valid and have been modified.
+	 */
+	public void store() throws IOException {
+		if (valid && !stored) {
+			writeToFile();
+			stored = true;
+		}
+	}
+
+	private void markModified() {
+		if (stored) {
+			stored = false;
+			if (file.exists() && !file.delete()) {
+				logger.warn("Unable to delete statistics file {}", file);
+			}
+		}
+	}
+
+	private void clearContents() {
+		predicates.clear();
+		characteristicSets.clear();
+		tripleCount = 0L;
+		subjectCount = 0L;
+		trackedSubjectCount = 0L;
+	}
+
+	private void writeToFile() throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+			out.write(MAGIC_NUMBER);
+			out.writeByte(FILE_FORMAT_VERSION);
+
+			out.writeLong(tripleCount);
+			out.writeLong(subjectCount);
+
+			out.writeInt(predicates.size());
+			for (Map.Entry<Integer, PredicateStatistics> entry : predicates.entrySet()) {
+				PredicateStatistics statistics = entry.getValue();
+				out.writeInt(entry.getKey());
+				out.writeLong(statistics.tripleCount);
+				out.writeLong(statistics.subjectCount);
+				out.writeLong(statistics.objectCount);
+			}
+
+			out.writeInt(characteristicSets.size());
+			for (CharacteristicSet characteristicSet : characteristicSets.values()) {
+				out.writeLong(characteristicSet.subjectCount);
+				out.writeInt(characteristicSet.predIDs.length);
+				for (int i = 0; i < characteristicSet.predIDs.length; i++) {
+					out.writeInt(characteristicSet.predIDs[i]);
+					out.writeLong(characteristicSet.tripleCounts[i]);
+				}
+			}
+		}
+	}
+
+	private void readFromFile() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] magicNumber = IOUtil.readBytes(in, MAGIC_NUMBER.length);
+			if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
+				throw new IOException("File doesn't contain compatible statistics data");
+			}
+
+			byte version = in.readByte();
+			if (version > FILE_FORMAT_VERSION) {
+				throw new IOException("Unable to read statistics file; it uses a newer file format");
+			} else if (version != FILE_FORMAT_VERSION) {
+				throw new IOException("Unable to read statistics file; invalid file format version: " + version);
+			}
+
+			tripleCount = in.readLong();
+			subjectCount = in.readLong();
+
+			int predicateCount = in.readInt();
+			for (int i = 0; i < predicateCount; i++) {
+				int predID = in.readInt();
+				predicates.put(predID, new PredicateStatistics(in.readLong(), in.readLong(), in.readLong()));
+			}
+
+			int characteristicSetCount = in.readInt();
+			long trackedSubjectCount = 0L;
+			for (int i = 0; i < characteristicSetCount; i++) {
+				long subjectCount = in.readLong();
+				int[] predIDs = new int[in.readInt()];
+				long[] tripleCounts = new long[predIDs.length];
+				for (int j = 0; j < predIDs.length; j++) {
+					predIDs[j] = in.readInt();
+					tripleCounts[j] = in.readLong();
+				}
+				characteristicSets.put(new PredicateSet(predIDs),
+						new CharacteristicSet(predIDs, subjectCount, tripleCounts));
+				trackedSubjectCount += subjectCount;
+			}
+			this.trackedSubjectCount = trackedSubjectCount;
+		}
+	}
+
+	private static int[] toSortedSet(int[] values) {
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		int length = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (length == 0 || sorted[length - 1] != sorted[i]) {
+				sorted[length++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, length);
+	}
+
+	/*---------------------------------*
+	 * Inner class PredicateStatistics *
+	 *---------------------------------*/
+
+	/**
+	 * The statistics of a single predicate.
+	 */
+	static class PredicateStatistics {
+
+		private final long tripleCount;
+
+		private final long subjectCount;
+
+		private final long objectCount;
+
+		PredicateStatistics(long tripleCount, long subjectCount, long objectCount) {
+			this.tripleCount = tripleCount;
+			this.subjectCount = subjectCount;
+			this.objectCount = objectCount;
+		}
+
+		/**
+		 * Gets the number of triples with the predicate.
+		 */
+		public long getTripleCount() {
+			return tripleCount;
+		}
+
+		/**
+		 * Gets the number of distinct subjects of the triples with the predicate.
+		 */
+		public long getSubjectCount() {
+			return subjectCount;
+		}
+
+		/**
+		 * Gets the number of distinct objects of the triples with the predicate.
+		 */
+		public long getObjectCount() {
+			return objectCount;
+		}
+	}
+
+	/*--------------------------*
+	 * Inner class PredicateSet *
+	 *--------------------------*/
+
+	/**
+	 * Map key for a sorted set of predicate IDs.
+	 */
+	private static class PredicateSet {
+
+		private final int[] predIDs;
+
+		private final int hashCode;
+
+		PredicateSet(int[] predIDs) {
+			this.predIDs = predIDs;
+			this.hashCode = Arrays.hashCode(predIDs);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof PredicateSet && Arrays.equals(predIDs, ((PredicateSet) other).predIDs);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/*-------------------------------*
+	 * Inner class CharacteristicSet *
+	 *-------------------------------*/
+
+	/**
+	 * The subjects that have a specific set of predicates.
+	 */
+	private static class CharacteristicSet {
+
+		private final int[] predIDs;
+
+		private final long subjectCount;
+
+		/**
+		 * The total number of triples of the subjects per predicate, in the order of {@link #predIDs}.
+		 */
+		private final long[] tripleCounts;
+
+		CharacteristicSet(int[] predIDs, long subjectCount, long[] tripleCounts) {
+			this.predIDs = predIDs;
+			this.subjectCount = subjectCount;
+			this.tripleCounts = tripleCounts;
+		}
+
+		boolean containsAll(int[] sortedPredIDs) {
+			if (sortedPredIDs.length > predIDs.length) {
+				return false;
+			}
+			int i = 0;
+			for (int predID : sortedPredIDs) {
+				while (i < predIDs.length && predIDs[i] < predID) {
+					i++;
+				}
+				if (i == predIDs.length || predIDs[i] != predID) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		long getTripleCount(int predID) {
+			int i = Arrays.binarySearch(predIDs, predID);
+			return i >= 0 ? tripleCounts[i] : 0L;
+		}
+	}
+}
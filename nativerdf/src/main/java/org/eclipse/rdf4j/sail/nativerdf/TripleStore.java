@@ -18,16 +18,25 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import org.eclipse.rdf4j.common.io.ByteArrayUtil;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.nativerdf.TxnStatusFile.TxnStatus;
 import org.eclipse.rdf4j.sail.nativerdf.btree.BTree;
+import org.eclipse.rdf4j.sail.nativerdf.btree.CompressibleRecordComparator;
 import org.eclipse.rdf4j.sail.nativerdf.btree.RecordComparator;
 import org.eclipse.rdf4j.sail.nativerdf.btree.RecordIterator;
 import org.slf4j.Logger;
@@ -57,6 +66,11 @@ class TripleStore implements Closeable {
 	 */
 	private static final String PROPERTIES_FILE = "triples.prop";
 
+	/**
+	 * The file name for the statistics file.
+	 */
+	private static final String STATISTICS_FILE = "triples.stats";
+
 	/**
 	 * The key used to store the triple store version in the properties file.
 	 */
@@ -117,6 +131,22 @@ class TripleStore implements Closeable {
 	 */
 	static final byte TOGGLE_EXPLICIT_FLAG = (byte) 0x8; // 0000 1000
 
+	/**
+	 * The block size of the index files.
+	 */
+	private static final int INDEX_BLOCK_SIZE = 2048;
+
+	/**
+	 * The fraction of each index node that is filled by a bulk load. Bulk loaded indexes are packed (nearly) completely
+	 * for minimal size and maximal lookup performance.
+	 */
+	private static final float BULK_LOAD_FILL_FACTOR = 1.0f;
+
+	/**
+	 * The maximum number of triples that a bulk load sorts in memory before spilling them to a sorted run on disk.
+	 */
+	private static final int BULK_LOAD_SORT_BUFFER_SIZE = 1 << 19;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -140,10 +170,36 @@ class TripleStore implements Closeable {
 
 	private final boolean forceSync;
 
+	/**
+	 * Flag indicating whether index lookups should use memory-mapped, optimistic reads.
+	 */
+	private final boolean memoryMappedIndexes;
+
+	/**
+	 * Flag indicating whether index files should store their nodes in the compressed node format. Existing indexes
+	 * that use a different format are converted when the store is opened.
+	 */
+	private final boolean compressedIndexes;
+
+	/**
+	 * The maximum amount of memory used to cache the nodes of each index, in bytes.
+	 */
+	private volatile long indexCacheSize = BTree.DEFAULT_NODE_CACHE_SIZE;
+
 	private final TxnStatusFile txnStatusFile;
 
+	/**
+	 * Statistics about the stored triples, used for cardinality estimation. Updated on commit.
+	 */
+	private final TripleStatistics statistics;
+
 	private volatile RecordCache updatedTriplesCache;
 
+	/**
+	 * Executor that is used to commit or roll back the changes in all indexes concurrently. Created on first use.
+	 */
+	private ExecutorService indexUpdateExecutor;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -153,15 +209,29 @@ class TripleStore implements Closeable {
 	}
 
 	public TripleStore(File dir, String indexSpecStr, boolean forceSync) throws IOException, SailException {
+		this(dir, indexSpecStr, forceSync, false);
+	}
+
+	public TripleStore(File dir, String indexSpecStr, boolean forceSync, boolean memoryMappedIndexes)
+			throws IOException, SailException {
+		this(dir, indexSpecStr, forceSync, memoryMappedIndexes, false);
+	}
+
+	public TripleStore(File dir, String indexSpecStr, boolean forceSync, boolean memoryMappedIndexes,
+			boolean compressedIndexes) throws IOException, SailException {
 		this.dir = dir;
 		this.forceSync = forceSync;
+		this.memoryMappedIndexes = memoryMappedIndexes;
+		this.compressedIndexes = compressedIndexes;
 		this.txnStatusFile = new TxnStatusFile(dir);
+		this.statistics = new TripleStatistics(new File(dir, STATISTICS_FILE));
 
 		File propFile = new File(dir, PROPERTIES_FILE);
 
 		if (!propFile.exists()) {
 			// newly created native store
 			properties = new Properties();
+			statistics.reset();
 
 			Set<String> indexSpecs = parseIndexSpecList(indexSpecStr);
 
@@ -195,8 +265,11 @@ class TripleStore implements Closeable {
 			if (reqIndexSpecs.isEmpty()) {
 				// No indexes specified, use the existing ones
 				indexSpecStr = properties.getProperty(INDEXES_KEY);
-			} else if (!reqIndexSpecs.equals(indexSpecs)) {
-				// Set of indexes needs to be changed
+				reqIndexSpecs = indexSpecs;
+			}
+
+			if (!reqIndexSpecs.equals(indexSpecs) || !hasRequestedNodeFormat()) {
+				// Set of indexes or their node format needs to be changed
 				reindex(indexSpecs, reqIndexSpecs);
 			}
 		}
@@ -329,6 +402,18 @@ class TripleStore implements Closeable {
 		}
 	}
 
+	/**
+	 * Checks whether all indexes use the node format that has been requested for this triple store.
+	 */
+	private boolean hasRequestedNodeFormat() {
+		for (TripleIndex index : indexes) {
+			if (index.getBTree().isCompressed() != compressedIndexes) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private void reindex(Set<String> currentIndexSpecs, Set<String> newIndexSpecs) throws IOException, SailException {
 		Map<String, TripleIndex> currentIndexes = new HashMap<>();
 		for (TripleIndex index : indexes) {
@@ -400,6 +485,16 @@ class TripleStore implements Closeable {
 			throw new IOException(removedIndexExceptions.get(0));
 		}
 
+		// Convert the remaining indexes to the requested node format, if needed
+		for (TripleIndex index : currentIndexes.values()) {
+			if (index.getBTree().isCompressed() != compressedIndexes) {
+				logger.debug("Converting {} index to {} node format...", index,
+						compressedIndexes ? "compressed" : "uncompressed");
+				index.rebuild();
+				logger.debug("{} index converted", index);
+			}
+		}
+
 		// Update the indexes variable, using the specified index order
 		indexes.clear();
 		for (String fieldSeq : newIndexSpecs) {
@@ -411,10 +506,53 @@ class TripleStore implements Closeable {
 		return properties.getProperty(INDEXES_KEY);
 	}
 
+	/**
+	 * Sets the maximum amount of memory used to cache the nodes of each index, in bytes. Defaults to
+	 * {@link BTree#DEFAULT_NODE_CACHE_SIZE}.
+	 */
+	public void setIndexCacheSize(long indexCacheSize) {
+		this.indexCacheSize = indexCacheSize;
+		for (TripleIndex index : indexes) {
+			index.getBTree().setNodeCacheSize(indexCacheSize);
+		}
+	}
+
+	/**
+	 * Gets the hit, miss and eviction counters of the node caches of the indexes, by index name.
+	 */
+	public Map<String, CacheStatistics> getCacheStatistics() {
+		Map<String, CacheStatistics> statistics = new LinkedHashMap<>();
+		for (TripleIndex index : indexes) {
+			statistics.put("index-" + index, index.getBTree().getNodeCacheStatistics());
+		}
+		return statistics;
+	}
+
+	/**
+	 * Gets the statistics about the stored triples. The statistics should only be used if they are
+	 * {@link TripleStatistics#isValid() valid}.
+	 */
+	public TripleStatistics getStatistics() {
+		return statistics;
+	}
+
 	@Override
 	public void close() throws IOException {
+		synchronized (this) {
+			if (indexUpdateExecutor != null) {
+				indexUpdateExecutor.shutdown();
+				indexUpdateExecutor = null;
+			}
+		}
+
 		try {
 			List<Throwable> caughtExceptions = new ArrayList<>();
+			try {
+				statistics.store();
+			} catch (Throwable e) {
+				logger.warn("Failed to store triple statistics");
+				caughtExceptions.add(e);
+			}
 			for (TripleIndex index : indexes) {
 				try {
 					index.getBTree().close();
@@ -652,6 +790,7 @@ class TripleStore implements Closeable {
 		for (TripleIndex index : indexes) {
 			index.getBTree().clear();
 		}
+		statistics.reset();
 	}
 
 	public boolean storeTriple(int subj, int pred, int obj, int context) throws IOException {
@@ -659,11 +798,72 @@ class TripleStore implements Closeable {
 	}
 
 	public boolean storeTriple(int subj, int pred, int obj, int context, boolean explicit) throws IOException {
-		boolean stAdded = false;
-
 		byte[] data = getData(subj, pred, obj, context, 0);
 		byte[] storedData = indexes.get(0).getBTree().get(data);
 
+		boolean stAdded = setStoreFlags(data, storedData, explicit);
+
+		if (storedData == null || !Arrays.equals(data, storedData)) {
+			for (TripleIndex index : indexes) {
+				index.getBTree().insert(data);
+			}
+
+			updatedTriplesCache.storeRecord(data);
+		}
+
+		return stAdded;
+	}
+
+	/**
+	 * Stores a block of triples. Equivalent to calling {@link #storeTriple(int, int, int, int, boolean)} for each of
+	 * the triples, except that the triples are looked up in the order of the first index and the modified records are
+	 * inserted into one index at a time, in the order of that index.
+	 * 
+	 * @param quads    The subject, predicate, object and context IDs of the triples, four per triple.
+	 * @param explicit Flag indicating whether the triples are explicit or inferred.
+	 * @return For each of the triples, whether it was not yet present in the store. A triple that occurs more than once
+	 *         is only reported once.
+	 * @throws IOException
+	 */
+	public boolean[] storeTriples(int[] quads, boolean explicit) throws IOException {
+		boolean[] added = new boolean[quads.length / 4];
+		TripleIndex firstIndex = indexes.get(0);
+		BTree btree = firstIndex.getBTree();
+
+		byte[][] records = getData(quads);
+		List<byte[]> modified = new ArrayList<>(records.length);
+		byte[] previous = null;
+		for (int i : getSortOrder(records, firstIndex)) {
+			byte[] data = records[i];
+			if (previous != null && firstIndex.tripleComparator.compareBTreeValues(previous, data, 0,
+					RECORD_LENGTH) == 0) {
+				// duplicate triple
+				continue;
+			}
+			previous = data;
+
+			byte[] storedData = btree.get(data);
+			added[i] = setStoreFlags(data, storedData, explicit);
+			if (storedData == null || !Arrays.equals(data, storedData)) {
+				modified.add(data);
+			}
+		}
+
+		storeRecords(modified);
+		return added;
+	}
+
+	/**
+	 * Sets the flags of a triple that is stored in the current transaction.
+	 * 
+	 * @param data       The record of the triple, without any flags.
+	 * @param storedData The record of the triple that is already in the store, or <tt>null</tt> if there is none.
+	 * @param explicit   Flag indicating whether the triple is explicit or inferred.
+	 * @return <tt>true</tt> if the triple was not yet present in the store.
+	 */
+	private boolean setStoreFlags(byte[] data, byte[] storedData, boolean explicit) {
+		boolean stAdded = false;
+
 		if (storedData == null) {
 			// Statement does not yet exist
 			data[FLAG_IDX] |= ADDED_FLAG;
@@ -715,14 +915,6 @@ class TripleStore implements Closeable {
 			stAdded = wasRemoved;
 		}
 
-		if (storedData == null || !Arrays.equals(data, storedData)) {
-			for (TripleIndex index : indexes) {
-				index.getBTree().insert(data);
-			}
-
-			updatedTriplesCache.storeRecord(data);
-		}
-
 		return stAdded;
 	}
 
@@ -803,6 +995,85 @@ class TripleStore implements Closeable {
 		return removeTriples(iter);
 	}
 
+	/**
+	 * Removes a block of triples. Equivalent to calling {@link #removeTriplesByContext(int, int, int, int, boolean)}
+	 * for each of the triples, except that the triples are looked up in the order of the first index and the modified
+	 * records are written to one index at a time, in the order of that index.
+	 * 
+	 * @param quads    The subject, predicate, object and context IDs of the triples, four per triple. None of the IDs
+	 *                 may be a wildcard.
+	 * @param explicit Flag indicating whether explicit or inferred statements should be removed.
+	 * @return A mapping of each modified context to the number of statements removed in that context.
+	 * @throws IOException
+	 */
+	public Map<Integer, Long> removeTriplesByContext(int[] quads, boolean explicit) throws IOException {
+		final Map<Integer, Long> perContextCounts = new HashMap<>();
+		byte explicitFlag = explicit ? EXPLICIT_FLAG : 0;
+		TripleIndex firstIndex = indexes.get(0);
+		BTree btree = firstIndex.getBTree();
+
+		byte[][] records = getData(quads);
+		List<byte[]> removed = new ArrayList<>(records.length);
+		byte[] previous = null;
+		for (int i : getSortOrder(records, firstIndex)) {
+			byte[] key = records[i];
+			if (previous != null && firstIndex.tripleComparator.compareBTreeValues(previous, key, 0,
+					RECORD_LENGTH) == 0) {
+				// duplicate triple
+				continue;
+			}
+			previous = key;
+
+			byte[] data = btree.get(key);
+			if (data != null && (data[FLAG_IDX] & EXPLICIT_FLAG) == explicitFlag
+					&& (data[FLAG_IDX] & REMOVED_FLAG) == 0) {
+				data[FLAG_IDX] |= REMOVED_FLAG;
+				removed.add(data);
+				int context = ByteArrayUtil.getInt(data, CONTEXT_IDX);
+				perContextCounts.merge(context, 1L, (c, one) -> c + one);
+			}
+		}
+
+		storeRecords(removed);
+		return perContextCounts;
+	}
+
+	/**
+	 * Writes modified records to the cache of updated triples and to all indexes. The records are inserted into one
+	 * index at a time, in the order of that index, so that consecutive inserts touch the same nodes.
+	 */
+	private void storeRecords(List<byte[]> records) throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+
+		for (byte[] data : records) {
+			updatedTriplesCache.storeRecord(data);
+		}
+
+		for (TripleIndex index : indexes) {
+			TripleComparator comparator = index.tripleComparator;
+			records.sort((a, b) -> comparator.compareBTreeValues(a, b, 0, RECORD_LENGTH));
+
+			BTree btree = index.getBTree();
+			for (byte[] data : records) {
+				btree.insert(data);
+			}
+		}
+	}
+
+	/**
+	 * Gets the positions of the supplied records, sorted in the order of an index.
+	 */
+	private int[] getSortOrder(byte[][] records, TripleIndex index) {
+		TripleComparator comparator = index.tripleComparator;
+		return IntStream.range(0, records.length)
+				.boxed()
+				.sorted((a, b) -> comparator.compareBTreeValues(records[a], records[b], 0, RECORD_LENGTH))
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+
 	private Map<Integer, Long> removeTriples(RecordIterator iter) throws IOException {
 		final Map<Integer, Long> perContextCounts = new HashMap<>();
 
@@ -867,58 +1138,81 @@ class TripleStore implements Closeable {
 		// updatedTriplesCache will be null when recovering from a crashed commit
 		boolean validCache = updatedTriplesCache != null && updatedTriplesCache.isValid();
 
-		for (TripleIndex index : indexes) {
-			BTree btree = index.getBTree();
-
-			RecordIterator iter;
-			if (validCache) {
-				// Use the cached set of updated triples
-				iter = updatedTriplesCache.getRecords();
+		// Statistics are updated before the indexes, while the flags of the updated triples still
+		// reflect both the old and the new state
+		boolean recalculateStatistics = false;
+		if (statistics.isValid()) {
+			if (!canUpdateStatistics()) {
+				logger.debug("Triple indexes do not support incremental statistics updates, invalidating statistics");
+				statistics.invalidate();
+			} else if (validCache) {
+				updateStatistics(updatedTriplesCache);
 			} else {
-				// Cache is invalid; too much updates(?). Iterate over all triples
-				iter = btree.iterateAll();
-			}
-
-			try {
-				byte[] data;
-				while ((data = iter.next()) != null) {
-					byte flags = data[FLAG_IDX];
-					boolean wasAdded = (flags & ADDED_FLAG) != 0;
-					boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
-					boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
-
-					if (wasRemoved) {
-						btree.remove(data);
-					} else if (wasAdded || wasToggled) {
-						if (wasToggled) {
-							data[FLAG_IDX] ^= EXPLICIT_FLAG;
-						}
-						if (wasAdded) {
-							data[FLAG_IDX] ^= ADDED_FLAG;
-						}
-
-						if (validCache) {
-							// We're iterating the cache
-							btree.insert(data);
-						} else {
-							// We're iterating the BTree itself
-							iter.set(data);
-						}
-					}
-				}
-			} finally {
-				iter.close();
+				recalculateStatistics = true;
 			}
 		}
 
+		updateIndexes("Commit", index -> commit(index, validCache));
+
 		if (updatedTriplesCache != null) {
 			updatedTriplesCache.clear();
 		}
 
-		sync();
-
 		txnStatusFile.setTxnStatus(TxnStatus.NONE);
 		// checkAllCommitted();
+
+		if (recalculateStatistics) {
+			updateStatistics();
+		}
+	}
+
+	/**
+	 * Commits the changes of the current transaction in the specified index and syncs the index to disk.
+	 */
+	void commit(TripleIndex index, boolean validCache) throws IOException {
+		BTree btree = index.getBTree();
+
+		RecordIterator iter;
+		if (validCache) {
+			// Use the cached set of updated triples
+			iter = updatedTriplesCache.getRecords();
+		} else {
+			// Cache is invalid; too much updates(?). Iterate over all triples
+			iter = btree.iterateAll();
+		}
+
+		try {
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				byte flags = data[FLAG_IDX];
+				boolean wasAdded = (flags & ADDED_FLAG) != 0;
+				boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
+				boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
+
+				if (wasRemoved) {
+					btree.remove(data);
+				} else if (wasAdded || wasToggled) {
+					if (wasToggled) {
+						data[FLAG_IDX] ^= EXPLICIT_FLAG;
+					}
+					if (wasAdded) {
+						data[FLAG_IDX] ^= ADDED_FLAG;
+					}
+
+					if (validCache) {
+						// We're iterating the cache
+						btree.insert(data);
+					} else {
+						// We're iterating the BTree itself
+						iter.set(data);
+					}
+				}
+			}
+		} finally {
+			iter.close();
+		}
+
+		btree.sync();
 	}
 
 	private void checkAllCommitted() throws IOException {
@@ -945,56 +1239,500 @@ class TripleStore implements Closeable {
 		// updatedTriplesCache will be null when recovering from a crash
 		boolean validCache = updatedTriplesCache != null && updatedTriplesCache.isValid();
 
+		updateIndexes("Rollback", index -> rollback(index, validCache));
+
+		if (updatedTriplesCache != null) {
+			updatedTriplesCache.clear();
+		}
+
+		txnStatusFile.setTxnStatus(TxnStatus.NONE);
+	}
+
+	/**
+	 * Rolls back the changes of the current transaction in the specified index and syncs the index to disk.
+	 */
+	void rollback(TripleIndex index, boolean validCache) throws IOException {
 		byte txnFlagsMask = ~(ADDED_FLAG | REMOVED_FLAG | TOGGLE_EXPLICIT_FLAG);
 
-		for (TripleIndex index : indexes) {
-			BTree btree = index.getBTree();
+		BTree btree = index.getBTree();
 
-			RecordIterator iter;
-			if (validCache) {
-				// Use the cached set of updated triples
-				iter = updatedTriplesCache.getRecords();
-			} else {
-				// Cache is invalid; too much updates(?). Iterate over all triples
-				iter = btree.iterateAll();
+		RecordIterator iter;
+		if (validCache) {
+			// Use the cached set of updated triples
+			iter = updatedTriplesCache.getRecords();
+		} else {
+			// Cache is invalid; too much updates(?). Iterate over all triples
+			iter = btree.iterateAll();
+		}
+
+		try {
+			byte[] data = null;
+			while ((data = iter.next()) != null) {
+				byte flags = data[FLAG_IDX];
+				boolean wasAdded = (flags & ADDED_FLAG) != 0;
+				boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
+				boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
+
+				if (wasAdded) {
+					btree.remove(data);
+				} else {
+					if (wasRemoved || wasToggled) {
+						data[FLAG_IDX] &= txnFlagsMask;
+
+						if (validCache) {
+							// We're iterating the cache
+							btree.insert(data);
+						} else {
+							// We're iterating the BTree itself
+							iter.set(data);
+						}
+					}
+				}
 			}
+		} finally {
+			iter.close();
+		}
 
-			try {
-				byte[] data = null;
-				while ((data = iter.next()) != null) {
-					byte flags = data[FLAG_IDX];
-					boolean wasAdded = (flags & ADDED_FLAG) != 0;
-					boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
-					boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
+		btree.sync();
+	}
 
-					if (wasAdded) {
-						btree.remove(data);
-					} else {
-						if (wasRemoved || wasToggled) {
-							data[FLAG_IDX] &= txnFlagsMask;
-
-							if (validCache) {
-								// We're iterating the cache
-								btree.insert(data);
-							} else {
-								// We're iterating the BTree itself
-								iter.set(data);
-							}
+	/**
+	 * Applies an update to all indexes. The indexes are independent of each other, so when more than one index is
+	 * configured, the update is applied to the indexes concurrently. This method returns once the update has finished
+	 * on all indexes, also when it failed on some of them, so that no index is modified after the transaction status
+	 * has been updated by the caller. A failure in one index does not prevent the update of the other indexes; the
+	 * transaction status is left unchanged in that case, so that the update is completed upon recovery.
+	 * 
+	 * @param operation The name of the operation, used for logging.
+	 * @param update    The update to apply to each index.
+	 * @throws IOException If the update failed on any of the indexes.
+	 */
+	private void updateIndexes(String operation, IndexUpdate update) throws IOException {
+		ExecutorService executor = getIndexUpdateExecutor();
+
+		Throwable exception = null;
+
+		if (executor == null) {
+			for (TripleIndex index : indexes) {
+				try {
+					updateIndex(operation, update, index);
+				} catch (IOException | RuntimeException | Error e) {
+					exception = addException(exception, e);
+				}
+			}
+		} else {
+			List<Future<?>> futures = new ArrayList<>(indexes.size());
+			for (TripleIndex index : indexes) {
+				futures.add(executor.submit(() -> {
+					updateIndex(operation, update, index);
+					return null;
+				}));
+			}
+
+			boolean interrupted = false;
+			for (Future<?> future : futures) {
+				while (true) {
+					try {
+						future.get();
+						break;
+					} catch (InterruptedException e) {
+						// Keep waiting, the indexes must not be modified after the caller continues
+						interrupted = true;
+					} catch (ExecutionException e) {
+						exception = addException(exception, e.getCause());
+						break;
+					}
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (exception instanceof IOException) {
+			throw (IOException) exception;
+		} else if (exception instanceof RuntimeException) {
+			throw (RuntimeException) exception;
+		} else if (exception instanceof Error) {
+			throw (Error) exception;
+		} else if (exception != null) {
+			throw new IOException(exception);
+		}
+	}
+
+	private Throwable addException(Throwable exception, Throwable e) {
+		logger.error("Failed to update index", e);
+		if (exception == null) {
+			return e;
+		}
+		exception.addSuppressed(e);
+		return exception;
+	}
+
+	private void updateIndex(String operation, IndexUpdate update, TripleIndex index) throws IOException {
+		long startTime = System.nanoTime();
+
+		update.apply(index);
+
+		if (logger.isDebugEnabled()) {
+			long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			logger.debug("{} of {} index took {} ms", operation, index, duration);
+		}
+	}
+
+	/**
+	 * Gets the executor for concurrent index updates, creating it if necessary.
+	 * 
+	 * @return The executor, or <tt>null</tt> if index updates should be applied sequentially, in the calling thread.
+	 */
+	private synchronized ExecutorService getIndexUpdateExecutor() {
+		if (indexUpdateExecutor == null) {
+			// Index updates are mostly bound by I/O, so one thread per index is used regardless of the number of cores
+			int threadCount = indexes.size();
+			if (threadCount <= 1) {
+				return null;
+			}
+
+			AtomicInteger threadNumber = new AtomicInteger();
+			indexUpdateExecutor = Executors.newFixedThreadPool(threadCount, runnable -> {
+				Thread thread = new Thread(runnable,
+						"rdf4j-nativestore-index-update-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		return indexUpdateExecutor;
+	}
+
+	/**
+	 * Loads a (potentially very large) number of triples directly into the indexes, bypassing the transaction
+	 * mechanism. Rather than inserting the triples one by one, the supplied triples are sorted externally in the order
+	 * of each index, merged with the triples that are already stored, and written to freshly built, packed index files
+	 * that then replace the existing ones.
+	 * <p>
+	 * No transaction must be active while bulk loading and no other thread must access the triple store. The
+	 * replacement of the index files is not atomic: if the process is aborted while the files are being swapped, the
+	 * indexes may become inconsistent with each other.
+	 * 
+	 * @param triples An iterator over the triples to load, in arbitrary order and possibly containing duplicates. Only
+	 *                the {@link #EXPLICIT_FLAG} of the supplied records is taken into account. The iterator is not
+	 *                closed by this method.
+	 * @return The number of triples that were not yet present in the store, per context ID.
+	 * @throws IOException           If an I/O error occurred.
+	 * @throws IllegalStateException If a transaction is active.
+	 */
+	public Map<Integer, Long> bulkLoad(RecordIterator triples) throws IOException {
+		if (txnStatusFile.getTxnStatus() != TxnStatus.NONE) {
+			throw new IllegalStateException("Bulk load can not be performed while a transaction is active");
+		}
+
+		Map<Integer, Long> addedPerContext = new HashMap<>();
+		List<BTree> loadedBTrees = new ArrayList<>(indexes.size());
+
+		try {
+			// Sort the new triples in the order of the first index and merge them with the existing ones
+			TripleIndex firstIndex = indexes.get(0);
+			logger.debug("Bulk loading {} index...", firstIndex);
+
+			try (RecordSorter sorter = new RecordSorter(dir, RECORD_LENGTH, firstIndex.tripleComparator,
+					BULK_LOAD_SORT_BUFFER_SIZE)) {
+				byte[] data;
+				while ((data = triples.next()) != null) {
+					data[FLAG_IDX] &= EXPLICIT_FLAG;
+					sorter.add(data);
+				}
+
+				BTree loadedBTree = firstIndex.createBulkLoadBTree();
+				loadedBTrees.add(loadedBTree);
+
+				try (RecordIterator sortedIter = sorter.iterator();
+						RecordIterator existingIter = firstIndex.getBTree().iterateAll();
+						RecordIterator mergedIter = new BulkLoadMergeIterator(sortedIter, existingIter,
+								firstIndex.tripleComparator, addedPerContext)) {
+					loadedBTree.bulkLoad(mergedIter, BULK_LOAD_FILL_FACTOR);
+				}
+			}
+
+			// The first index now contains the complete set of triples, use it as source for the other indexes
+			for (TripleIndex index : indexes.subList(1, indexes.size())) {
+				logger.debug("Bulk loading {} index...", index);
+
+				try (RecordSorter sorter = new RecordSorter(dir, RECORD_LENGTH, index.tripleComparator,
+						BULK_LOAD_SORT_BUFFER_SIZE)) {
+					try (RecordIterator sourceIter = loadedBTrees.get(0).iterateAll()) {
+						byte[] data;
+						while ((data = sourceIter.next()) != null) {
+							sorter.add(data);
 						}
 					}
+
+					BTree loadedBTree = index.createBulkLoadBTree();
+					loadedBTrees.add(loadedBTree);
+
+					try (RecordIterator sortedIter = sorter.iterator()) {
+						loadedBTree.bulkLoad(sortedIter, BULK_LOAD_FILL_FACTOR);
+					}
 				}
-			} finally {
-				iter.close();
 			}
+
+			for (BTree loadedBTree : loadedBTrees) {
+				loadedBTree.sync();
+			}
+		} catch (IOException | RuntimeException e) {
+			for (BTree loadedBTree : loadedBTrees) {
+				try {
+					loadedBTree.delete();
+				} catch (IOException e2) {
+					logger.warn("Unable to delete bulk loaded index file " + loadedBTree.getFile(), e2);
+				}
+			}
+			throw e;
 		}
 
-		if (updatedTriplesCache != null) {
-			updatedTriplesCache.clear();
+		// All indexes have been built successfully, swap them in
+		for (int i = 0; i < indexes.size(); i++) {
+			indexes.get(i).replaceBTree(loadedBTrees.get(i));
 		}
 
-		sync();
+		updateStatistics();
 
-		txnStatusFile.setTxnStatus(TxnStatus.NONE);
+		logger.debug("Bulk load completed");
+
+		return addedPerContext;
+	}
+
+	/**
+	 * Checks whether the statistics can be updated incrementally, which requires an index that starts with the subject
+	 * for looking up the triples of changed subjects, and an index that starts with the predicate and object (in any
+	 * order) for looking up the triples of changed predicate-object pairs.
+	 */
+	private boolean canUpdateStatistics() {
+		return getBestIndex(0, -1, -1, -1).getPatternScore(0, -1, -1, -1) > 0
+				&& getBestIndex(-1, 0, 0, -1).getPatternScore(-1, 0, 0, -1) > 1;
+	}
+
+	/**
+	 * Updates the statistics for the changes in the supplied updated triples. Must be called before the changes are
+	 * committed to the indexes.
+	 */
+	private void updateStatistics(RecordCache updatedTriples) throws IOException {
+		long startTime = System.nanoTime();
+
+		Set<Integer> subjects = new HashSet<>();
+		Set<Long> predObjPairs = new HashSet<>();
+		try (RecordIterator iter = updatedTriples.getRecords()) {
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				int pred = ByteArrayUtil.getInt(data, PRED_IDX);
+				int obj = ByteArrayUtil.getInt(data, OBJ_IDX);
+				subjects.add(ByteArrayUtil.getInt(data, SUBJ_IDX));
+				predObjPairs.add((long) pred << 32 | obj & 0xffffffffL);
+			}
+		}
+
+		TripleIndex subjectIndex = getBestIndex(0, -1, -1, -1);
+		for (int subj : subjects) {
+			// Count the triples per predicate before and after the update
+			Map<Integer, long[]> predCounts = new HashMap<>();
+			try (RecordIterator iter = getTriplesUsingIndex(subj, -1, -1, -1, 0, 0, subjectIndex, true)) {
+				byte[] data;
+				while ((data = iter.next()) != null) {
+					long[] counts = predCounts.computeIfAbsent(ByteArrayUtil.getInt(data, PRED_IDX),
+							pred -> new long[2]);
+					if ((data[FLAG_IDX] & ADDED_FLAG) == 0) {
+						counts[0]++;
+					}
+					if ((data[FLAG_IDX] & REMOVED_FLAG) == 0) {
+						counts[1]++;
+					}
+				}
+			}
+
+			int[] preds = predCounts.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+			statistics.updateSubject(getNonZero(preds, predCounts, 0), getNonZeroCounts(preds, predCounts, 0),
+					getNonZero(preds, predCounts, 1), getNonZeroCounts(preds, predCounts, 1));
+		}
+
+		TripleIndex predObjIndex = getBestIndex(-1, 0, 0, -1);
+		for (long predObjPair : predObjPairs) {
+			int pred = (int) (predObjPair >>> 32);
+			int obj = (int) predObjPair;
+
+			boolean oldExists = false;
+			boolean newExists = false;
+			try (RecordIterator iter = getTriplesUsingIndex(-1, pred, obj, -1, 0, 0, predObjIndex, true)) {
+				byte[] data;
+				while ((!oldExists || !newExists) && (data = iter.next()) != null) {
+					oldExists |= (data[FLAG_IDX] & ADDED_FLAG) == 0;
+					newExists |= (data[FLAG_IDX] & REMOVED_FLAG) == 0;
+				}
+			}
+			statistics.updateObject(pred, oldExists, newExists);
+		}
+
+		if (logger.isDebugEnabled()) {
+			long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			logger.debug("Update of statistics for {} subjects took {} ms", subjects.size(), duration);
+		}
+	}
+
+	private static int[] getNonZero(int[] preds, Map<Integer, long[]> predCounts, int state) {
+		return Arrays.stream(preds).filter(pred -> predCounts.get(pred)[state] > 0L).toArray();
+	}
+
+	private static long[] getNonZeroCounts(int[] preds, Map<Integer, long[]> predCounts, int state) {
+		return Arrays.stream(preds)
+				.mapToLong(pred -> predCounts.get(pred)[state])
+				.filter(count -> count > 0L)
+				.toArray();
+	}
+
+	/**
+	 * Recalculates the statistics from the committed triples in the indexes and stores them. Triples that are part of
+	 * an active transaction are counted in their committed state, so that the statistics can be updated when the
+	 * transaction is committed.
+	 */
+	public void updateStatistics() throws IOException {
+		long startTime = System.nanoTime();
+
+		statistics.invalidate();
+
+		// Triples need to be grouped by subject, and by predicate and object
+		try (RecordIterator iter = getCommittedTriplesGroupedBy("s", "spoc")) {
+			int[] preds = new int[8];
+			long[] counts = new long[8];
+			int predCount = 0;
+			int lastSubj = 0;
+
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				int subj = ByteArrayUtil.getInt(data, SUBJ_IDX);
+				if (subj != lastSubj && predCount > 0) {
+					addSubjectStatistics(preds, counts, predCount);
+					predCount = 0;
+				}
+				lastSubj = subj;
+
+				int pred = ByteArrayUtil.getInt(data, PRED_IDX);
+				int i = 0;
+				while (i < predCount && preds[i] != pred) {
+					i++;
+				}
+				if (i == predCount) {
+					if (predCount == preds.length) {
+						preds = Arrays.copyOf(preds, 2 * predCount);
+						counts = Arrays.copyOf(counts, 2 * predCount);
+					}
+					preds[i] = pred;
+					counts[i] = 0L;
+					predCount++;
+				}
+				counts[i]++;
+			}
+
+			if (predCount > 0) {
+				addSubjectStatistics(preds, counts, predCount);
+			}
+		}
+
+		try (RecordIterator iter = getCommittedTriplesGroupedBy("po", "posc")) {
+			long lastPredObjPair = 0L;
+
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				int pred = ByteArrayUtil.getInt(data, PRED_IDX);
+				int obj = ByteArrayUtil.getInt(data, OBJ_IDX);
+				long predObjPair = (long) pred << 32 | obj & 0xffffffffL;
+				if (predObjPair != lastPredObjPair) {
+					statistics.updateObject(pred, false, true);
+					lastPredObjPair = predObjPair;
+				}
+			}
+		}
+
+		statistics.markValid();
+		statistics.store();
+
+		if (logger.isDebugEnabled()) {
+			long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			logger.debug("Calculation of statistics took {} ms", duration);
+		}
+	}
+
+	private void addSubjectStatistics(int[] preds, long[] counts, int predCount) {
+		// Sort the predicates, along with their counts
+		long[] sortKeys = new long[predCount];
+		for (int i = 0; i < predCount; i++) {
+			sortKeys[i] = (long) preds[i] << 32 | i;
+		}
+		Arrays.sort(sortKeys);
+
+		int[] sortedPreds = new int[predCount];
+		long[] sortedCounts = new long[predCount];
+		for (int i = 0; i < predCount; i++) {
+			sortedPreds[i] = (int) (sortKeys[i] >>> 32);
+			sortedCounts[i] = counts[(int) sortKeys[i]];
+		}
+
+		statistics.addSubject(sortedPreds, sortedCounts);
+	}
+
+	/**
+	 * Gets all triples in their committed state, such that the triples with equal values for the specified fields are
+	 * adjacent. An index that starts with these fields, in any order, is used if available. Otherwise, the triples are
+	 * sorted externally.
+	 * 
+	 * @param fields  The fields to group the triples by.
+	 * @param sortSeq The field sequence to sort the triples by if no suitable index exists.
+	 */
+	private RecordIterator getCommittedTriplesGroupedBy(String fields, String sortSeq) throws IOException {
+		for (TripleIndex index : indexes) {
+			String prefix = new String(index.getFieldSeq(), 0, fields.length());
+			if (prefix.chars().allMatch(field -> fields.indexOf(field) >= 0)) {
+				return getTriplesUsingIndex(-1, -1, -1, -1, 0, ADDED_FLAG, index, false);
+			}
+		}
+
+		logger.debug("No index to group triples by {}, sorting triples", fields);
+
+		RecordSorter sorter = new RecordSorter(dir, RECORD_LENGTH, new TripleComparator(sortSeq),
+				BULK_LOAD_SORT_BUFFER_SIZE);
+		try {
+			try (RecordIterator iter = getTriplesUsingIndex(-1, -1, -1, -1, 0, ADDED_FLAG, indexes.get(0), false)) {
+				byte[] data;
+				while ((data = iter.next()) != null) {
+					sorter.add(data);
+				}
+			}
+
+			RecordIterator sortedIter = sorter.iterator();
+			return new RecordIterator() {
+
+				@Override
+				public byte[] next() throws IOException {
+					return sortedIter.next();
+				}
+
+				@Override
+				public void set(byte[] record) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						sortedIter.close();
+					} finally {
+						sorter.close();
+					}
+				}
+			};
+		} catch (IOException | RuntimeException e) {
+			sorter.close();
+			throw e;
+		}
 	}
 
 	protected void sync() throws IOException {
@@ -1023,6 +1761,14 @@ class TripleStore implements Closeable {
 		return data;
 	}
 
+	private byte[][] getData(int[] quads) {
+		byte[][] records = new byte[quads.length / 4][];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = getData(quads[4 * i], quads[4 * i + 1], quads[4 * i + 2], quads[4 * i + 3], 0);
+		}
+		return records;
+	}
+
 	private byte[] getSearchKey(int subj, int pred, int obj, int context, int flags) {
 		return getData(subj, pred, obj, context, flags);
 	}
@@ -1085,25 +1831,170 @@ class TripleStore implements Closeable {
 		}
 	}
 
+	/**
+	 * An update of a single index, applied by {@link TripleStore#updateIndexes(String, IndexUpdate)}.
+	 */
+	@FunctionalInterface
+	private interface IndexUpdate {
+
+		void apply(TripleIndex index) throws IOException;
+	}
+
+	/*-----------------------------------*
+	 * Inner class BulkLoadMergeIterator *
+	 *-----------------------------------*/
+
+	/**
+	 * Merges sorted, bulk loaded triples with the (equally sorted) triples that are already stored in an index.
+	 * Duplicate triples are collapsed into one, which is explicit if any of the duplicates is explicit. Triples that
+	 * were not yet stored are counted per context.
+	 */
+	private static class BulkLoadMergeIterator implements RecordIterator {
+
+		private final RecordIterator addedIter;
+
+		private final RecordIterator existingIter;
+
+		private final RecordComparator comparator;
+
+		private final Map<Integer, Long> addedPerContext;
+
+		private byte[] nextAdded;
+
+		private byte[] nextExisting;
+
+		public BulkLoadMergeIterator(RecordIterator addedIter, RecordIterator existingIter,
+				RecordComparator comparator, Map<Integer, Long> addedPerContext) throws IOException {
+			this.addedIter = addedIter;
+			this.existingIter = existingIter;
+			this.comparator = comparator;
+			this.addedPerContext = addedPerContext;
+
+			nextAdded = addedIter.next();
+			nextExisting = existingIter.next();
+		}
+
+		@Override
+		public byte[] next() throws IOException {
+			byte[] result;
+
+			if (nextExisting == null || (nextAdded != null
+					&& comparator.compareBTreeValues(nextAdded, nextExisting, 0, RECORD_LENGTH) < 0)) {
+				if (nextAdded == null) {
+					return null;
+				}
+
+				// Triple is new
+				result = nextAdded;
+				nextAdded = addedIter.next();
+				addedPerContext.merge(ByteArrayUtil.getInt(result, CONTEXT_IDX), 1L, Long::sum);
+			} else {
+				result = nextExisting;
+				nextExisting = existingIter.next();
+			}
+
+			// Skip any duplicates of the triple in the bulk loaded data
+			while (nextAdded != null && comparator.compareBTreeValues(result, nextAdded, 0, RECORD_LENGTH) == 0) {
+				result[FLAG_IDX] |= nextAdded[FLAG_IDX];
+				nextAdded = addedIter.next();
+			}
+
+			return result;
+		}
+
+		@Override
+		public void set(byte[] value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			// the wrapped iterators are closed by their owner
+		}
+	}
+
 	/*-------------------------*
 	 * Inner class TripleIndex *
 	 *-------------------------*/
 
-	private class TripleIndex {
+	class TripleIndex {
 
 		private final TripleComparator tripleComparator;
 
-		private final BTree btree;
+		private volatile BTree btree;
 
 		public TripleIndex(String fieldSeq) throws IOException {
 			tripleComparator = new TripleComparator(fieldSeq);
-			btree = new BTree(dir, getFilenamePrefix(fieldSeq), 2048, RECORD_LENGTH, tripleComparator, forceSync);
+			btree = new BTree(dir, getFilenamePrefix(fieldSeq), INDEX_BLOCK_SIZE, RECORD_LENGTH, tripleComparator,
+					forceSync, memoryMappedIndexes, compressedIndexes);
+			btree.setNodeCacheSize(indexCacheSize);
 		}
 
 		private String getFilenamePrefix(String fieldSeq) {
 			return "triples-" + fieldSeq;
 		}
 
+		private String getBulkLoadFilenamePrefix(String fieldSeq) {
+			return getFilenamePrefix(fieldSeq) + "-bulk";
+		}
+
+		/**
+		 * Creates a new, empty BTree that can be bulk loaded in the background and then swapped in using
+		 * {@link #replaceBTree(BTree)}.
+		 */
+		public BTree createBulkLoadBTree() throws IOException {
+			String prefix = getBulkLoadFilenamePrefix(toString());
+
+			// Remove any files left behind by an aborted bulk load
+			new File(dir, prefix + ".dat").delete();
+			new File(dir, prefix + ".alloc").delete();
+
+			return new BTree(dir, prefix, INDEX_BLOCK_SIZE, RECORD_LENGTH, tripleComparator, forceSync, false,
+					compressedIndexes);
+		}
+
+		/**
+		 * Replaces the BTree of this index with one that has been created with {@link #createBulkLoadBTree()}. The
+		 * files of the current BTree are closed and deleted, so the caller must make sure that no other thread is
+		 * using this index.
+		 */
+		public void replaceBTree(BTree loadedBTree) throws IOException {
+			String fieldSeq = toString();
+			String prefix = getFilenamePrefix(fieldSeq);
+			String bulkLoadPrefix = getBulkLoadFilenamePrefix(fieldSeq);
+
+			loadedBTree.close();
+			btree.delete();
+
+			for (String extension : new String[] { ".dat", ".alloc" }) {
+				File source = new File(dir, bulkLoadPrefix + extension);
+				File target = new File(dir, prefix + extension);
+				if (source.exists() && !source.renameTo(target)) {
+					throw new IOException("Unable to rename " + source + " to " + target);
+				}
+			}
+
+			BTree newBTree = new BTree(dir, prefix, INDEX_BLOCK_SIZE, RECORD_LENGTH, tripleComparator, forceSync,
+					memoryMappedIndexes);
+			newBTree.setNodeCacheSize(indexCacheSize);
+			btree = newBTree;
+		}
+
+		/**
+		 * Rebuilds this index by bulk loading its contents into a new BTree, which stores its nodes in the node format
+		 * that has been requested for this triple store.
+		 */
+		public void rebuild() throws IOException {
+			BTree rebuiltBTree = createBulkLoadBTree();
+			try (RecordIterator iter = btree.iterateAll()) {
+				rebuiltBTree.bulkLoad(iter, BULK_LOAD_FILL_FACTOR);
+			} catch (IOException | RuntimeException e) {
+				rebuiltBTree.delete();
+				throw e;
+			}
+			replaceBTree(rebuiltBTree);
+		}
+
 		public char[] getFieldSeq() {
 			return tripleComparator.getFieldSeq();
 		}
@@ -1173,7 +2064,7 @@ class TripleStore implements Closeable {
 	 * A RecordComparator that can be used to create indexes with a configurable order of the subject, predicate, object
 	 * and context fields.
 	 */
-	private static class TripleComparator implements RecordComparator {
+	private static class TripleComparator implements CompressibleRecordComparator {
 
 		private final char[] fieldSeq;
 
@@ -1217,5 +2108,39 @@ class TripleStore implements Closeable {
 
 			return 0;
 		}
+
+		@Override
+		public int[] getKeyBytes(int valueSize) {
+			// Compared byte by byte, as unsigned values, in field sequence order
+			int[] keyBytes = new int[4 * fieldSeq.length];
+
+			for (int i = 0; i < fieldSeq.length; i++) {
+				int fieldIdx = 0;
+
+				switch (fieldSeq[i]) {
+				case 's':
+					fieldIdx = SUBJ_IDX;
+					break;
+				case 'p':
+					fieldIdx = PRED_IDX;
+					break;
+				case 'o':
+					fieldIdx = OBJ_IDX;
+					break;
+				case 'c':
+					fieldIdx = CONTEXT_IDX;
+					break;
+				default:
+					throw new IllegalArgumentException(
+							"invalid character '" + fieldSeq[i] + "' in field sequence: " + new String(fieldSeq));
+				}
+
+				for (int j = 0; j < 4; j++) {
+					keyBytes[4 * i + j] = fieldIdx + j;
+				}
+			}
+
+			return keyBytes;
+		}
 	}
 }
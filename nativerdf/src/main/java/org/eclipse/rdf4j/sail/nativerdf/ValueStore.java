@@ -10,10 +10,19 @@ package org.eclipse.rdf4j.sail.nativerdf;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.eclipse.rdf4j.common.concurrent.locks.Lock;
+import org.eclipse.rdf4j.common.concurrent.locks.LockStatistics;
 import org.eclipse.rdf4j.common.concurrent.locks.ReadWriteLockManager;
+import org.eclipse.rdf4j.common.concurrent.locks.StripedReadWriteLockManager;
 import org.eclipse.rdf4j.common.concurrent.locks.WritePrefReadWriteLockManager;
 import org.eclipse.rdf4j.common.io.ByteArrayUtil;
 import org.eclipse.rdf4j.model.BNode;
@@ -85,7 +94,7 @@ public class ValueStore extends AbstractValueFactory {
 	 * Lock manager used to prevent the removal of values over multiple method calls. Note that values can still be
 	 * added when read locks are active.
 	 */
-	private final ReadWriteLockManager lockManager = new WritePrefReadWriteLockManager();
+	private final ReadWriteLockManager lockManager;
 
 	/**
 	 * An object that indicates the revision of the value store, which is used to check if cached value IDs are still
@@ -94,12 +103,14 @@ public class ValueStore extends AbstractValueFactory {
 	private volatile ValueStoreRevision revision;
 
 	/**
-	 * A simple cache containing the [VALUE_CACHE_SIZE] most-recently used values stored by their ID.
+	 * A cache containing frequently and recently used values stored by their ID, limited to [VALUE_CACHE_SIZE] values
+	 * or to a configured amount of memory.
 	 */
 	private final ConcurrentCache<Integer, NativeValue> valueCache;
 
 	/**
-	 * A simple cache containing the [ID_CACHE_SIZE] most-recently used value-IDs stored by their value.
+	 * A cache containing frequently and recently used value-IDs stored by their value, limited to [ID_CACHE_SIZE]
+	 * values or to a configured amount of memory.
 	 */
 	private final ConcurrentCache<NativeValue, Integer> valueIDCache;
 
@@ -128,11 +139,64 @@ public class ValueStore extends AbstractValueFactory {
 
 	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize, int namespaceCacheSize,
 			int namespaceIDCacheSize) throws IOException {
+		this(dataDir, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize, -1);
+	}
+
+	/**
+	 * Creates a new ValueStore.
+	 * 
+	 * @param valueCacheBytes The maximum amount of memory, in bytes, that is used by each of the value cache and the
+	 *                        value-ID cache. If larger than zero, the caches are bounded by this amount of memory
+	 *                        instead of by <tt>valueCacheSize</tt> and <tt>valueIDCacheSize</tt>.
+	 */
+	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize, int namespaceCacheSize,
+			int namespaceIDCacheSize, long valueCacheBytes) throws IOException {
+		this(dataDir, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize,
+				valueCacheBytes, false);
+	}
+
+	/**
+	 * Creates a new ValueStore.
+	 * 
+	 * @param valueCacheBytes The maximum amount of memory, in bytes, that is used by each of the value cache and the
+	 *                        value-ID cache. If larger than zero, the caches are bounded by this amount of memory
+	 *                        instead of by <tt>valueCacheSize</tt> and <tt>valueIDCacheSize</tt>.
+	 * @param memoryMapped    Flag indicating whether values should be read from memory mappings of the value files
+	 *                        instead of through file reads.
+	 */
+	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize, int namespaceCacheSize,
+			int namespaceIDCacheSize, long valueCacheBytes, boolean memoryMapped) throws IOException {
+		this(dataDir, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize,
+				valueCacheBytes, memoryMapped, false);
+	}
+
+	/**
+	 * Creates a new ValueStore.
+	 * 
+	 * @param valueCacheBytes The maximum amount of memory, in bytes, that is used by each of the value cache and the
+	 *                        value-ID cache. If larger than zero, the caches are bounded by this amount of memory
+	 *                        instead of by <tt>valueCacheSize</tt> and <tt>valueIDCacheSize</tt>.
+	 * @param memoryMapped    Flag indicating whether values should be read from memory mappings of the value files
+	 *                        instead of through file reads.
+	 * @param stripedLocks    Flag indicating whether read locks are counted with a
+	 *                        {@link StripedReadWriteLockManager} instead of a {@link WritePrefReadWriteLockManager}.
+	 *                        Both let a waiting writer go first.
+	 */
+	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize, int namespaceCacheSize,
+			int namespaceIDCacheSize, long valueCacheBytes, boolean memoryMapped, boolean stripedLocks)
+			throws IOException {
 		super();
-		dataStore = new DataStore(dataDir, FILENAME_PREFIX, forceSync);
+		lockManager = stripedLocks ? new StripedReadWriteLockManager(false, true)
+				: new WritePrefReadWriteLockManager();
+		dataStore = new DataStore(dataDir, FILENAME_PREFIX, forceSync, memoryMapped);
 
-		valueCache = new ConcurrentCache<>(valueCacheSize);
-		valueIDCache = new ConcurrentCache<>(valueIDCacheSize);
+		if (valueCacheBytes > 0) {
+			valueCache = new ConcurrentCache<>(valueCacheBytes, (id, value) -> getMemorySize(value));
+			valueIDCache = new ConcurrentCache<>(valueCacheBytes, (value, id) -> getMemorySize(value));
+		} else {
+			valueCache = new ConcurrentCache<>(valueCacheSize);
+			valueIDCache = new ConcurrentCache<>(valueIDCacheSize);
+		}
 		namespaceCache = new ConcurrentCache<>(namespaceCacheSize);
 		namespaceIDCache = new ConcurrentCache<>(namespaceIDCacheSize);
 
@@ -155,6 +219,41 @@ public class ValueStore extends AbstractValueFactory {
 		return revision;
 	}
 
+	/**
+	 * Gets the contention counters of the lock that prevents the removal of values.
+	 * 
+	 * @return The counters, or <tt>null</tt> if the lock manager does not count contention.
+	 */
+	public LockStatistics getLockStatistics() {
+		if (lockManager instanceof StripedReadWriteLockManager) {
+			return ((StripedReadWriteLockManager) lockManager).getStatistics();
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the hit, miss and eviction counters of the caches of this value store, by cache name.
+	 */
+	public Map<String, CacheStatistics> getCacheStatistics() {
+		Map<String, CacheStatistics> statistics = new LinkedHashMap<>();
+		statistics.put("values", valueCache.getStatistics());
+		statistics.put("valueIDs", valueIDCache.getStatistics());
+		statistics.put("namespaces", namespaceCache.getStatistics());
+		statistics.put("namespaceIDs", namespaceIDCache.getStatistics());
+		return statistics;
+	}
+
+	/**
+	 * Gets a rough estimate of the amount of memory used by a cached value, in bytes.
+	 */
+	private static int getMemorySize(Value value) {
+		int size = 64 + 2 * value.stringValue().length();
+		if (value instanceof Literal) {
+			size += 2 * ((Literal) value).getLanguage().map(String::length).orElse(0);
+		}
+		return size;
+	}
+
 	/**
 	 * Gets a read lock on this value store that can be used to prevent values from being removed while the lock is
 	 * active.
@@ -315,6 +414,280 @@ public class ValueStore extends AbstractValueFactory {
 		return id;
 	}
 
+	/**
+	 * Gets the values for the specified IDs. Equivalent to calling {@link #getValue(int)} for each of the IDs, except
+	 * that the IDs that are not in the value cache are deduplicated and fetched from file in a single pass.
+	 * 
+	 * @param ids Value IDs.
+	 * @return For each of the IDs, in the same order, the value for the ID or <tt>null</tt> if no such value could be
+	 *         found.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public NativeValue[] getValues(int[] ids) throws IOException {
+		NativeValue[] values = new NativeValue[ids.length];
+
+		// Check value cache, collecting the distinct IDs of the values that are not cached
+		Map<Integer, Integer> fetchIndexes = new HashMap<>();
+		int[] fetchIndexPerID = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			Integer cacheID = ids[i];
+			values[i] = valueCache.get(cacheID);
+			if (values[i] == null) {
+				Integer fetchIndex = fetchIndexes.get(cacheID);
+				if (fetchIndex == null) {
+					fetchIndex = fetchIndexes.size();
+					fetchIndexes.put(cacheID, fetchIndex);
+				}
+				fetchIndexPerID[i] = fetchIndex;
+			} else {
+				fetchIndexPerID[i] = -1;
+			}
+		}
+
+		if (!fetchIndexes.isEmpty()) {
+			// Fetch the values from file
+			int[] fetchIDs = new int[fetchIndexes.size()];
+			for (Map.Entry<Integer, Integer> entry : fetchIndexes.entrySet()) {
+				fetchIDs[entry.getValue()] = entry.getKey();
+			}
+			byte[][] data = dataStore.getData(fetchIDs);
+
+			NativeValue[] fetchedValues = new NativeValue[fetchIDs.length];
+			for (int j = 0; j < fetchIDs.length; j++) {
+				if (data[j] != null) {
+					fetchedValues[j] = data2value(fetchIDs[j], data[j]);
+					valueCache.put(fetchIDs[j], fetchedValues[j]);
+				}
+			}
+
+			for (int i = 0; i < ids.length; i++) {
+				if (fetchIndexPerID[i] >= 0) {
+					values[i] = fetchedValues[fetchIndexPerID[i]];
+				}
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Gets the IDs for the specified values. Equivalent to calling {@link #getID(Value)} for each of the values, except
+	 * that the values whose IDs are not cached are deduplicated and looked up in a single pass over the data store.
+	 * 
+	 * @param values The values to get the IDs for.
+	 * @return For each of the values, in the same order, the ID for the value or {@link NativeValue#UNKNOWN_ID} if no
+	 *         such ID could be found.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public int[] getIDs(Value[] values) throws IOException {
+		int[] ids = new int[values.length];
+
+		List<Value> lookupValues = new ArrayList<>();
+		int[] lookupIndexes = getUncachedValues(Arrays.asList(values), ids, lookupValues);
+		if (lookupValues.isEmpty()) {
+			return ids;
+		}
+
+		// Look up the values in the data store
+		byte[][] data = new byte[lookupValues.size()][];
+		boolean[] isLegacyData = new boolean[data.length];
+		for (int j = 0; j < data.length; j++) {
+			Value value = lookupValues.get(j);
+			data[j] = value2data(value, false);
+			if (data[j] == null && value instanceof Literal) {
+				data[j] = literal2legacy((Literal) value);
+				isLegacyData[j] = true;
+			}
+		}
+		int[] lookupIDs = getIDs(data);
+
+		// Literals that were not found may have been stored in the legacy encoding
+		byte[][] legacyData = new byte[data.length][];
+		boolean hasLegacyData = false;
+		for (int j = 0; j < data.length; j++) {
+			Value value = lookupValues.get(j);
+			if (lookupIDs[j] == NativeValue.UNKNOWN_ID && data[j] != null && !isLegacyData[j]
+					&& value instanceof Literal) {
+				legacyData[j] = literal2legacy((Literal) value);
+				hasLegacyData = true;
+			}
+		}
+		if (hasLegacyData) {
+			int[] legacyIDs = getIDs(legacyData);
+			for (int j = 0; j < data.length; j++) {
+				if (legacyData[j] != null) {
+					lookupIDs[j] = legacyIDs[j];
+				}
+			}
+		}
+
+		for (int j = 0; j < lookupIDs.length; j++) {
+			if (lookupIDs[j] != NativeValue.UNKNOWN_ID) {
+				cacheID(lookupValues.get(j), lookupIDs[j]);
+			}
+		}
+
+		for (int i = 0; i < ids.length; i++) {
+			if (lookupIndexes[i] >= 0) {
+				ids[i] = lookupIDs[lookupIndexes[i]];
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Stores the supplied values and returns the IDs that have been assigned to them. Equivalent to calling
+	 * {@link #storeValue(Value)} for each of the values, except that the values whose IDs are not cached are
+	 * deduplicated and looked up and stored in a single pass over the data store.
+	 * 
+	 * @param values The values to store.
+	 * @return For each of the values, in iteration order, the ID that has been assigned to the value.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public int[] storeValues(Collection<? extends Value> values) throws IOException {
+		int[] ids = new int[values.size()];
+
+		List<Value> storeValues = new ArrayList<>();
+		int[] storeIndexes = getUncachedValues(values, ids, storeValues);
+		if (storeValues.isEmpty()) {
+			return ids;
+		}
+
+		byte[][] data = new byte[storeValues.size()][];
+		for (int j = 0; j < data.length; j++) {
+			data[j] = value2data(storeValues.get(j), true);
+		}
+
+		int[] storedIDs = dataStore.storeData(data);
+		for (int j = 0; j < storedIDs.length; j++) {
+			Value value = storeValues.get(j);
+			NativeValue nv = isOwnValue(value) ? (NativeValue) value : getNativeValue(value);
+
+			// Store id in value for fast access in any consecutive calls
+			nv.setInternalID(storedIDs[j], revision);
+
+			// Update cache
+			valueIDCache.put(nv, storedIDs[j]);
+		}
+
+		for (int i = 0; i < ids.length; i++) {
+			if (storeIndexes[i] >= 0) {
+				ids[i] = storedIDs[storeIndexes[i]];
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Looks up the IDs of the supplied value data in the data store, skipping <tt>null</tt> entries.
+	 */
+	private int[] getIDs(byte[][] data) throws IOException {
+		int count = 0;
+		for (byte[] d : data) {
+			if (d != null) {
+				count++;
+			}
+		}
+
+		byte[][] queryData = new byte[count][];
+		for (int j = 0, k = 0; j < data.length; j++) {
+			if (data[j] != null) {
+				queryData[k++] = data[j];
+			}
+		}
+		int[] queryIDs = dataStore.getIDs(queryData);
+
+		int[] ids = new int[data.length];
+		for (int j = 0, k = 0; j < data.length; j++) {
+			ids[j] = data[j] != null ? queryIDs[k++] : NativeValue.UNKNOWN_ID;
+		}
+		return ids;
+	}
+
+	/**
+	 * Looks up the IDs of the supplied values in the value objects themselves and in the value-ID cache.
+	 * 
+	 * @param values         The values to get the IDs for.
+	 * @param ids            The array to store the IDs that were found in.
+	 * @param uncachedValues The list to add the distinct values whose IDs could not be found to.
+	 * @return For each of the values, the index of the value in <tt>uncachedValues</tt>, or <tt>-1</tt> if its ID was
+	 *         found.
+	 */
+	private int[] getUncachedValues(Collection<? extends Value> values, int[] ids, List<Value> uncachedValues) {
+		Map<Value, Integer> uncachedIndexes = new HashMap<>();
+		int[] indexes = new int[ids.length];
+
+		int i = 0;
+		for (Value value : values) {
+			int id = getCachedID(value);
+			if (id == NativeValue.UNKNOWN_ID) {
+				Integer index = uncachedIndexes.get(value);
+				if (index == null) {
+					index = uncachedValues.size();
+					uncachedIndexes.put(value, index);
+					uncachedValues.add(value);
+				}
+				indexes[i] = index;
+			} else {
+				indexes[i] = -1;
+			}
+			ids[i++] = id;
+		}
+
+		return indexes;
+	}
+
+	/**
+	 * Gets the ID of the specified value from the value itself or from the value-ID cache.
+	 * 
+	 * @return The ID of the value, or {@link NativeValue#UNKNOWN_ID} if it is not known without a lookup.
+	 */
+	private int getCachedID(Value value) {
+		boolean isOwnValue = isOwnValue(value);
+
+		if (isOwnValue) {
+			NativeValue nativeValue = (NativeValue) value;
+
+			if (revisionIsCurrent(nativeValue)) {
+				int id = nativeValue.getInternalID();
+
+				if (id != NativeValue.UNKNOWN_ID) {
+					return id;
+				}
+			}
+		}
+
+		Integer cachedID = valueIDCache.get(value);
+
+		if (cachedID != null) {
+			int id = cachedID.intValue();
+
+			if (isOwnValue) {
+				// Store id in value for fast access in any consecutive calls
+				((NativeValue) value).setInternalID(id, revision);
+			}
+
+			return id;
+		}
+
+		return NativeValue.UNKNOWN_ID;
+	}
+
+	/**
+	 * Stores the ID of a value that has been looked up in the value itself or in the value-ID cache.
+	 */
+	private void cacheID(Value value, int id) {
+		if (isOwnValue(value)) {
+			// Store id in value for fast access in any consecutive calls
+			((NativeValue) value).setInternalID(id, revision);
+		} else {
+			// Store id in cache
+			NativeValue nv = getNativeValue(value);
+			nv.setInternalID(id, revision);
+			valueIDCache.put(nv, id);
+		}
+	}
+
 	/**
 	 * Removes all values from the ValueStore.
 	 * 
@@ -18,10 +18,12 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 import org.eclipse.rdf4j.common.io.ByteArrayUtil;
 import org.eclipse.rdf4j.common.io.NioFile;
 import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.nativerdf.CacheStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,11 +61,29 @@ public class BTree implements Closeable {
 	 */
 	static final byte FILE_FORMAT_VERSION = 1;
 
+	/**
+	 * The file format version number of BTree files that store their nodes in the compressed node format.
+	 * 
+	 * @see CompressedNodeFormat
+	 */
+	static final byte COMPRESSED_FILE_FORMAT_VERSION = 2;
+
+	/**
+	 * The default maximum amount of memory used to cache the nodes of a BTree, in bytes.
+	 */
+	public static final long DEFAULT_NODE_CACHE_SIZE = 4 * 1024 * 1024;
+
 	/**
 	 * The length of the header field.
 	 */
 	static final int HEADER_LENGTH = 16;
 
+	/**
+	 * Marker value returned by the optimistic read path when a concurrent modification has been detected and the
+	 * lookup needs to be repeated while holding {@link #btreeLock}.
+	 */
+	private static final byte[] OPTIMISTIC_READ_FAILED = new byte[0];
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -92,6 +112,30 @@ public class BTree implements Closeable {
 	 */
 	final ReentrantReadWriteLock btreeLock = new ReentrantReadWriteLock();
 
+	/**
+	 * Memory mapping of the BTree file that is used for optimistic lookups, or <tt>null</tt> if all lookups go through
+	 * the node cache while holding {@link #btreeLock}.
+	 */
+	private final MappedNodeFile mappedFile;
+
+	/**
+	 * Lock used to validate optimistic lookups. Writers hold its write lock (in addition to {@link #btreeLock}) while
+	 * modifying nodes; optimistic readers never block on it but only check whether their stamp is still valid after
+	 * having traversed the tree. Only used when {@link #mappedFile} is not <tt>null</tt>.
+	 */
+	private final StampedLock structureLock = new StampedLock();
+
+	/**
+	 * Per-thread buffer into which node data is copied by optimistic readers.
+	 */
+	private final ThreadLocal<byte[]> nodeBuffer;
+
+	/**
+	 * Per-thread buffer into which optimistic readers copy compressed nodes before decoding them into
+	 * {@link #nodeBuffer}. Only used for compressed BTrees.
+	 */
+	private final ThreadLocal<byte[]> blockBuffer;
+
 	private final ConcurrentNodeCache nodeCache = new ConcurrentNodeCache(id -> {
 		Node node = new Node(id, this);
 		try {
@@ -100,7 +144,7 @@ public class BTree implements Closeable {
 			throw new SailException("Error reading B-tree node", exc);
 		}
 		return node;
-	});
+	}, DEFAULT_NODE_CACHE_SIZE);
 
 	/*
 	 * Info about allocated and unused nodes in the file
@@ -132,20 +176,53 @@ public class BTree implements Closeable {
 	final int slotSize;
 
 	/**
-	 * The maximum number of outgoing branches for a node. Value derived from blockSize and slotSize.
+	 * The format in which nodes are stored in the file, or <tt>null</tt> if nodes are stored uncompressed.
+	 */
+	final CompressedNodeFormat nodeFormat;
+
+	/**
+	 * The maximum number of outgoing branches for a node. Value derived from blockSize and slotSize. For compressed
+	 * BTrees, this only applies to internal nodes.
 	 */
 	final int branchFactor;
 
 	/**
-	 * The minimum number of values for a node (except for the root). Value derived from branchFactor.
+	 * The maximum number of values in a leaf node plus one. Equal to branchFactor for uncompressed BTrees. For
+	 * compressed BTrees, the number of values in a leaf node is primarily limited by their encoded length, but never
+	 * exceeds this value.
+	 */
+	final int leafBranchFactor;
+
+	/**
+	 * The minimum number of values for a node (except for the root). Value derived from branchFactor. For compressed
+	 * BTrees, this only applies to internal nodes.
 	 */
 	final int minValueCount;
 
 	/**
-	 * The size of a node in bytes. Value derived from branchFactor and slotSize.
+	 * The encoded length above which a compressed leaf node is considered to be full. Inserting a value in a node that
+	 * is not full never makes its encoded length exceed the block size.
+	 */
+	final int maxLeafLength;
+
+	/**
+	 * The minimum encoded length of a compressed leaf node (except for the root). Two leaf nodes that are too small to
+	 * give up a value to their sibling can always be merged into a single node.
+	 */
+	final int minLeafLength;
+
+	/**
+	 * The size of a node in bytes, in the uncompressed layout that is used in memory. Value derived from
+	 * leafBranchFactor and slotSize.
 	 */
 	final int nodeSize;
 
+	/**
+	 * The number of bytes that are read and written for a node. Equal to nodeSize for uncompressed BTrees, a whole
+	 * block for compressed BTrees.
+	 */
+	final int storedNodeSize;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -238,6 +315,55 @@ public class BTree implements Closeable {
 	 */
 	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize, RecordComparator comparator,
 			boolean forceSync) throws IOException {
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, false);
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to compare the values that are or will be
+	 * stored in the B-Tree.
+	 * 
+	 * @param dataDir        The directory for the BTree data.
+	 * @param filenamePrefix The prefix for all files used by this BTree.
+	 * @param blockSize      The size (in bytes) of a file block for a single node. Ideally, the size specified is the
+	 *                       size of a block in the used file system.
+	 * @param valueSize      The size (in bytes) of the fixed-length values that are or will be stored in the B-Tree.
+	 * @param comparator     The <tt>RecordComparator</tt> to use for determining whether one value is smaller, larger
+	 *                       or equal to another.
+	 * @param forceSync      Flag indicating whether updates should be synced to disk forcefully by calling
+	 *                       {@link FileChannel#force(boolean)}. This may have a severe impact on write performance.
+	 * @param memoryMapped   Flag indicating whether lookups should read nodes from a memory mapping of the BTree file
+	 *                       using optimistic concurrency control, instead of taking the shared read lock. The block
+	 *                       size must be a power of two when this option is enabled.
+	 * @throws IOException In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize, RecordComparator comparator,
+			boolean forceSync, boolean memoryMapped) throws IOException {
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, memoryMapped, false);
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to compare the values that are or will be
+	 * stored in the B-Tree.
+	 * 
+	 * @param dataDir        The directory for the BTree data.
+	 * @param filenamePrefix The prefix for all files used by this BTree.
+	 * @param blockSize      The size (in bytes) of a file block for a single node. Ideally, the size specified is the
+	 *                       size of a block in the used file system.
+	 * @param valueSize      The size (in bytes) of the fixed-length values that are or will be stored in the B-Tree.
+	 * @param comparator     The <tt>RecordComparator</tt> to use for determining whether one value is smaller, larger
+	 *                       or equal to another.
+	 * @param forceSync      Flag indicating whether updates should be synced to disk forcefully by calling
+	 *                       {@link FileChannel#force(boolean)}. This may have a severe impact on write performance.
+	 * @param memoryMapped   Flag indicating whether lookups should read nodes from a memory mapping of the BTree file
+	 *                       using optimistic concurrency control, instead of taking the shared read lock. The block
+	 *                       size must be a power of two when this option is enabled.
+	 * @param compressed     Flag indicating whether a newly created BTree file should store its nodes in the
+	 *                       compressed node format, which requires a {@link CompressibleRecordComparator}. Existing
+	 *                       files keep the format that they were created with, see {@link #isCompressed()}.
+	 * @throws IOException In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize, RecordComparator comparator,
+			boolean forceSync, boolean memoryMapped, boolean compressed) throws IOException {
 		if (dataDir == null) {
 			throw new IllegalArgumentException("dataDir must not be null");
 		}
@@ -256,6 +382,12 @@ public class BTree implements Closeable {
 		if (comparator == null) {
 			throw new IllegalArgumentException("comparator muts not be null");
 		}
+		if (compressed && !(comparator instanceof CompressibleRecordComparator)) {
+			throw new IllegalArgumentException("compressed node format requires a CompressibleRecordComparator");
+		}
+		if (compressed && blockSize > 1 << 16) {
+			throw new IllegalArgumentException("block size too large for the compressed node format");
+		}
 
 		File file = new File(dataDir, filenamePrefix + ".dat");
 		this.nioFile = new NioFile(file);
@@ -271,6 +403,7 @@ public class BTree implements Closeable {
 			this.valueSize = valueSize;
 			this.rootNodeID = 0;
 			this.height = 0;
+			this.nodeFormat = compressed ? createNodeFormat(comparator, valueSize) : null;
 
 			writeFileHeader();
 
@@ -290,9 +423,17 @@ public class BTree implements Closeable {
 			this.rootNodeID = buf.getInt();
 
 			if (Arrays.equals(MAGIC_NUMBER, magicNumber)) {
-				if (version > FILE_FORMAT_VERSION) {
+				if (version > COMPRESSED_FILE_FORMAT_VERSION) {
 					throw new IOException("Unable to read BTree file " + file + "; it uses a newer file format");
-				} else if (version != FILE_FORMAT_VERSION) {
+				} else if (version == COMPRESSED_FILE_FORMAT_VERSION) {
+					if (!(comparator instanceof CompressibleRecordComparator)) {
+						throw new IOException("Unable to read BTree file " + file
+								+ "; compressed node format requires a CompressibleRecordComparator");
+					}
+					this.nodeFormat = createNodeFormat(comparator, this.valueSize);
+				} else if (version == FILE_FORMAT_VERSION) {
+					this.nodeFormat = null;
+				} else {
 					throw new IOException(
 							"Unable to read BTree file " + file + "; invalid file format version: " + version);
 				}
@@ -301,6 +442,7 @@ public class BTree implements Closeable {
 					throw new IOException(
 							"Unable to read BTree file " + file + "; invalid file format version: " + version);
 				}
+				this.nodeFormat = null;
 				// Write new magic number to file
 				logger.info("Updating file header for btree file '{}'", file.getAbsolutePath());
 				writeFileHeader();
@@ -317,10 +459,38 @@ public class BTree implements Closeable {
 
 		// Calculate derived properties
 		slotSize = 4 + this.valueSize;
-		branchFactor = 1 + (this.blockSize - 8) / slotSize;
+		if (nodeFormat == null) {
+			branchFactor = 1 + (this.blockSize - 8) / slotSize;
+			leafBranchFactor = branchFactor;
+			maxLeafLength = 0;
+			minLeafLength = 0;
+			storedNodeSize = 8 + (branchFactor - 1) * slotSize;
+		} else {
+			// Internal nodes are limited by the number of values that are guaranteed to fit in a block, leaf nodes by
+			// their encoded length. Inserting a value grows a leaf node by at most twice the maximum value length
+			// (the value itself plus the key bytes that its successor can no longer share with its predecessor).
+			int maxEntryLength = nodeFormat.getMaxLeafEntryLength();
+			branchFactor = 1 + (this.blockSize - CompressedNodeFormat.HEADER_LENGTH
+					- CompressedNodeFormat.MAX_NODE_ID_LENGTH) / nodeFormat.getMaxInternalEntryLength();
+			leafBranchFactor = 1
+					+ (this.blockSize - CompressedNodeFormat.HEADER_LENGTH) / nodeFormat.getMinEntryLength();
+			maxLeafLength = this.blockSize - 2 * maxEntryLength;
+			minLeafLength = (this.blockSize - 3 * maxEntryLength) / 2;
+			storedNodeSize = this.blockSize;
+		}
 		// bf=30 --> mvc=14; bf=29 --> mvc=14
 		minValueCount = (branchFactor - 1) / 2;
-		nodeSize = 8 + (branchFactor - 1) * slotSize;
+		nodeSize = 8 + (leafBranchFactor - 1) * slotSize;
+
+		if (memoryMapped) {
+			mappedFile = new MappedNodeFile(file, this.blockSize);
+			nodeBuffer = ThreadLocal.withInitial(() -> new byte[nodeSize]);
+			blockBuffer = nodeFormat != null ? ThreadLocal.withInitial(() -> new byte[storedNodeSize]) : null;
+		} else {
+			mappedFile = null;
+			nodeBuffer = null;
+			blockBuffer = null;
+		}
 
 		// System.out.println("blockSize=" + this.blockSize);
 		// System.out.println("valueSize=" + this.valueSize);
@@ -330,6 +500,11 @@ public class BTree implements Closeable {
 		// System.out.println("nodeSize=" + this.nodeSize);
 	}
 
+	private static CompressedNodeFormat createNodeFormat(RecordComparator comparator, int valueSize) {
+		return new CompressedNodeFormat(valueSize,
+				((CompressibleRecordComparator) comparator).getKeyBytes(valueSize));
+	}
+
 	/*---------*
 	 * Methods *
 	 *---------*/
@@ -341,6 +516,28 @@ public class BTree implements Closeable {
 		return nioFile.getFile();
 	}
 
+	/**
+	 * Checks whether this BTree stores its nodes in the compressed node format.
+	 */
+	public boolean isCompressed() {
+		return nodeFormat != null;
+	}
+
+	/**
+	 * Sets the maximum amount of memory used to cache the nodes of this BTree, in bytes. Defaults to
+	 * {@link #DEFAULT_NODE_CACHE_SIZE}.
+	 */
+	public void setNodeCacheSize(long nodeCacheSize) {
+		nodeCache.setCapacity(nodeCacheSize);
+	}
+
+	/**
+	 * Gets the hit, miss and eviction counters of this BTree's node cache.
+	 */
+	public CacheStatistics getNodeCacheStatistics() {
+		return nodeCache.getStatistics();
+	}
+
 	/**
 	 * Closes the BTree and then deletes its data files.
 	 * 
@@ -388,7 +585,13 @@ public class BTree implements Closeable {
 					try {
 						nioFile.close();
 					} finally {
-						allocatedNodesList.close(syncChanges);
+						try {
+							allocatedNodesList.close(syncChanges);
+						} finally {
+							if (mappedFile != null) {
+								mappedFile.close();
+							}
+						}
 					}
 				}
 			}
@@ -426,6 +629,13 @@ public class BTree implements Closeable {
 	 * @return The value matching the key, or <tt>null</tt> if no such value could be found.
 	 */
 	public byte[] get(byte[] key) throws IOException {
+		if (mappedFile != null) {
+			byte[] result = optimisticSearch(key, null);
+			if (result != OPTIMISTIC_READ_FAILED) {
+				return result;
+			}
+		}
+
 		btreeLock.readLock().lock();
 		try {
 			Node node = readRootNode();
@@ -496,6 +706,11 @@ public class BTree implements Closeable {
 	public long getValueCountEstimate() throws IOException {
 		int allocatedNodesCount = allocatedNodesList.getNodeCount();
 
+		if (nodeFormat != null) {
+			// Assume fill factor of 50% and values that are compressed to half of their size
+			return (long) allocatedNodesCount * blockSize / valueSize;
+		}
+
 		// Assume fill factor of 50%
 		return (long) (allocatedNodesCount * (branchFactor - 1) * 0.5);
 	}
@@ -511,14 +726,25 @@ public class BTree implements Closeable {
 		assert minValue != null : "minValue must not be null";
 		assert maxValue != null : "maxValue must not be null";
 
-		List<PathSegment> minValuePath, maxValuePath;
+		List<PathSegment> minValuePath = null, maxValuePath = null;
 
-		btreeLock.readLock().lock();
-		try {
-			minValuePath = getPath(minValue);
-			maxValuePath = getPath(maxValue);
-		} finally {
-			btreeLock.readLock().unlock();
+		if (mappedFile != null) {
+			minValuePath = new ArrayList<>();
+			maxValuePath = new ArrayList<>();
+			if (optimisticSearch(minValue, minValuePath) == OPTIMISTIC_READ_FAILED
+					|| optimisticSearch(maxValue, maxValuePath) == OPTIMISTIC_READ_FAILED) {
+				minValuePath = maxValuePath = null;
+			}
+		}
+
+		if (minValuePath == null) {
+			btreeLock.readLock().lock();
+			try {
+				minValuePath = getPath(minValue);
+				maxValuePath = getPath(maxValue);
+			} finally {
+				btreeLock.readLock().unlock();
+			}
 		}
 
 		return getValueCountEstimate(minValuePath, maxValuePath);
@@ -552,6 +778,124 @@ public class BTree implements Closeable {
 		return path;
 	}
 
+	/**
+	 * Searches the tree for the supplied key without acquiring any locks, reading nodes from the node cache or, when
+	 * not cached, directly from the memory-mapped file. The result is only returned if no writer has modified the tree
+	 * in the meantime.
+	 * 
+	 * @param key  The key to search for.
+	 * @param path An optional list to which a {@link PathSegment} is added for every visited node.
+	 * @return The value matching the key, <tt>null</tt> if no such value could be found, or
+	 *         {@link #OPTIMISTIC_READ_FAILED} if the tree was modified concurrently.
+	 */
+	private byte[] optimisticSearch(byte[] key, List<PathSegment> path) throws IOException {
+		long stamp = structureLock.tryOptimisticRead();
+		if (stamp == 0L) {
+			// a writer is active
+			return OPTIMISTIC_READ_FAILED;
+		}
+
+		byte[] data = nodeBuffer.get();
+		byte[] result = null;
+
+		try {
+			int nodeID = rootNodeID;
+
+			while (nodeID > 0) {
+				if (!readNodeData(nodeID, data) || !structureLock.validate(stamp)) {
+					return OPTIMISTIC_READ_FAILED;
+				}
+
+				int valueCount = ByteArrayUtil.getInt(data, 0);
+				if (valueCount < 0 || valueCount >= leafBranchFactor) {
+					// inconsistent node data
+					return OPTIMISTIC_READ_FAILED;
+				}
+
+				int valueIdx = search(data, valueCount, key);
+
+				if (path != null) {
+					path.add(new PathSegment(valueIdx, valueCount));
+				}
+
+				if (valueIdx >= 0) {
+					result = ByteArrayUtil.get(data, 8 + valueIdx * slotSize, valueSize);
+					break;
+				}
+
+				// Continue with the child node just left of the first larger value, leaf nodes only contain 0 IDs
+				nodeID = ByteArrayUtil.getInt(data, 4 + (-valueIdx - 1) * slotSize);
+			}
+		} catch (RuntimeException e) {
+			// Node data was modified while it was being read
+			return OPTIMISTIC_READ_FAILED;
+		}
+
+		return structureLock.validate(stamp) ? result : OPTIMISTIC_READ_FAILED;
+	}
+
+	/**
+	 * Copies the data of the specified node to the supplied buffer, preferring the node cache (which may contain
+	 * changes that have not yet been written to disk) over the memory-mapped file. Compressed nodes are decoded into
+	 * the buffer, which may fail with a runtime exception if the node is modified while it is being read.
+	 */
+	private boolean readNodeData(int nodeID, byte[] data) throws IOException {
+		Node node = nodeCache.get(nodeID);
+		if (node != null) {
+			node.copyData(data);
+			return true;
+		}
+		if (nodeFormat == null) {
+			return mappedFile.read(nodeID2offset(nodeID), data, nodeSize);
+		}
+
+		byte[] block = blockBuffer.get();
+		if (!mappedFile.read(nodeID2offset(nodeID), block, storedNodeSize)) {
+			return false;
+		}
+		nodeFormat.decode(block, data, leafBranchFactor - 1);
+		return true;
+	}
+
+	/**
+	 * Binary search over raw node data, see {@link Node#search(byte[])}.
+	 */
+	private int search(byte[] data, int valueCount, byte[] key) {
+		int low = 0;
+		int high = valueCount - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >> 1;
+			int diff = comparator.compareBTreeValues(key, data, 8 + mid * slotSize, valueSize);
+
+			if (diff < 0) {
+				high = mid - 1;
+			} else if (diff > 0) {
+				low = mid + 1;
+			} else {
+				return mid;
+			}
+		}
+		return -low - 1;
+	}
+
+	/**
+	 * Marks the start of a structural modification of this BTree, invalidating any optimistic reads that are in
+	 * progress. Must be called while holding the write lock of {@link #btreeLock}, or the read lock in case of an
+	 * in-place value update.
+	 * 
+	 * @return A stamp that must be passed to {@link #endModification(long)}.
+	 */
+	long startModification() {
+		return mappedFile != null ? structureLock.writeLock() : 0L;
+	}
+
+	void endModification(long stamp) {
+		if (stamp != 0L) {
+			structureLock.unlockWrite(stamp);
+		}
+	}
+
 	private static class PathSegment {
 
 		public final int valueIndex;
@@ -700,6 +1044,7 @@ public class BTree implements Closeable {
 	 */
 	public byte[] insert(byte[] value) throws IOException {
 		btreeLock.writeLock().lock();
+		long stamp = startModification();
 		try {
 			Node rootNode = readRootNode();
 
@@ -734,6 +1079,7 @@ public class BTree implements Closeable {
 
 			return insertResult.oldValue;
 		} finally {
+			endModification(stamp);
 			btreeLock.writeLock().unlock();
 		}
 	}
@@ -828,6 +1174,7 @@ public class BTree implements Closeable {
 	 */
 	public byte[] remove(byte[] key) throws IOException {
 		btreeLock.writeLock().lock();
+		long stamp = startModification();
 		try {
 			byte[] result = null;
 
@@ -860,6 +1207,7 @@ public class BTree implements Closeable {
 
 			return result;
 		} finally {
+			endModification(stamp);
 			btreeLock.writeLock().unlock();
 		}
 	}
@@ -938,12 +1286,12 @@ public class BTree implements Closeable {
 	}
 
 	private void balanceChildNode(Node parentNode, Node childNode, int childIdx) throws IOException {
-		if (childNode.getValueCount() < minValueCount) {
+		if (childNode.isUnderflow()) {
 			// Child node contains too few values, try to borrow one from its right
 			// sibling
 			Node rightSibling = (childIdx < parentNode.getValueCount()) ? parentNode.getChildNode(childIdx + 1) : null;
 
-			if (rightSibling != null && rightSibling.getValueCount() > minValueCount) {
+			if (rightSibling != null && rightSibling.canLendValue()) {
 				// Right sibling has enough values to give one up
 				parentNode.rotateLeft(childIdx, childNode, rightSibling);
 			} else {
@@ -951,7 +1299,7 @@ public class BTree implements Closeable {
 				// left sibling
 				Node leftSibling = (childIdx > 0) ? parentNode.getChildNode(childIdx - 1) : null;
 
-				if (leftSibling != null && leftSibling.getValueCount() > minValueCount) {
+				if (leftSibling != null && leftSibling.canLendValue()) {
 					// Left sibling has enough values to give one up
 					parentNode.rotateRight(childIdx, leftSibling, childNode);
 				} else {
@@ -982,9 +1330,13 @@ public class BTree implements Closeable {
 	 */
 	public void clear() throws IOException {
 		btreeLock.writeLock().lock();
+		long stamp = startModification();
 		try {
 			nodeCache.clear();
-			nioFile.truncate(HEADER_LENGTH);
+			if (mappedFile == null) {
+				// Mapped files are never truncated, optimistic readers may still be accessing the mapped pages
+				nioFile.truncate(HEADER_LENGTH);
+			}
 
 			if (rootNodeID != 0) {
 				rootNodeID = 0;
@@ -993,10 +1345,149 @@ public class BTree implements Closeable {
 
 			allocatedNodesList.clear();
 		} finally {
+			endModification(stamp);
 			btreeLock.writeLock().unlock();
 		}
 	}
 
+	/**
+	 * Fills an empty B-Tree with the values from the supplied iterator. Instead of inserting the values one by one, the
+	 * tree is built bottom-up: nodes are filled left to right and written once, and separator values are passed up to
+	 * the parent level as nodes fill up. The values must be returned in strictly ascending order according to this
+	 * B-Tree's {@link RecordComparator}.
+	 *
+	 * @param values     An iterator over the values to load, in ascending order. The iterator is not closed by this
+	 *                   method.
+	 * @param fillFactor The fraction of each node's capacity that should be filled, between <tt>0.5</tt> and
+	 *                   <tt>1.0</tt>. Fully packed nodes result in the smallest and fastest tree for lookups, whereas
+	 *                   some spare capacity reduces the number of node splits caused by subsequent inserts.
+	 * @return The number of values that have been loaded.
+	 * @throws IOException              If an I/O error occurred.
+	 * @throws IllegalStateException    If the B-Tree is not empty.
+	 * @throws IllegalArgumentException If the values are not in ascending order.
+	 */
+	public long bulkLoad(RecordIterator values, float fillFactor) throws IOException {
+		if (fillFactor < 0.5f || fillFactor > 1.0f) {
+			throw new IllegalArgumentException("fill factor must be between 0.5 and 1.0, is: " + fillFactor);
+		}
+
+		// Nodes must be filled with at least twice the minimum value count so that the right-most node of each level
+		// can borrow values from its left sibling when the input has been exhausted
+		int targetValueCount = Math.max(2 * minValueCount, Math.round(fillFactor * (branchFactor - 1)));
+
+		// Compressed leaf nodes are filled based on their encoded length instead. Appending a value to a leaf node
+		// grows it by at most the maximum value length.
+		int targetLeafLength = 0;
+		if (nodeFormat != null) {
+			int maxEntryLength = nodeFormat.getMaxLeafEntryLength();
+			targetLeafLength = Math.round(fillFactor * (blockSize - maxEntryLength)) - maxEntryLength;
+		}
+
+		btreeLock.writeLock().lock();
+		long stamp = startModification();
+		try {
+			if (rootNodeID != 0) {
+				throw new IllegalStateException("B-Tree must be empty for bulk loading: " + getFile());
+			}
+
+			// The node that is currently being filled on each level of the tree, leaf level first
+			List<Node> openNodes = new ArrayList<>();
+			long valueCount = 0L;
+
+			try {
+				byte[] previousValue = null;
+				byte[] value;
+				while ((value = values.next()) != null) {
+					if (previousValue != null
+							&& comparator.compareBTreeValues(previousValue, value, 0, valueSize) >= 0) {
+						throw new IllegalArgumentException("values must be supplied in strictly ascending order");
+					}
+
+					if (openNodes.isEmpty()) {
+						openNodes.add(createNewNode());
+					}
+					bulkLoadValue(openNodes, 0, value, 0, targetValueCount, targetLeafLength);
+
+					previousValue = value;
+					valueCount++;
+				}
+
+				if (!openNodes.isEmpty()) {
+					int rootLevel = openNodes.size() - 1;
+
+					// The right-most node of each level may contain fewer than the minimum number of values. Fix this
+					// top-down by rotating values in from its (full) left sibling. Each open node is the right-most
+					// child of the open node one level up.
+					for (int level = rootLevel - 1; level >= 0; level--) {
+						Node parentNode = openNodes.get(level + 1);
+						Node node = openNodes.get(level);
+
+						if (node.isUnderflow()) {
+							int childIdx = parentNode.getValueCount();
+							Node leftSibling = parentNode.getChildNode(childIdx - 1);
+							try {
+								while (node.isUnderflow() && leftSibling.canLendValue()) {
+									parentNode.rotateRight(childIdx, leftSibling, node);
+								}
+							} finally {
+								leftSibling.release();
+							}
+						}
+					}
+
+					rootNodeID = openNodes.get(rootLevel).getID();
+					height = openNodes.size();
+					writeFileHeader();
+				}
+			} finally {
+				for (Node node : openNodes) {
+					node.release();
+				}
+			}
+
+			return valueCount;
+		} finally {
+			endModification(stamp);
+			btreeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a value, and the ID of the node to the right of it, to the open node at the specified level. When that
+	 * node is full, the value is passed up to the parent level as a separator and a new node is opened to its right.
+	 */
+	private void bulkLoadValue(List<Node> openNodes, int level, byte[] value, int nodeID, int targetValueCount,
+			int targetLeafLength) throws IOException {
+		Node node = openNodes.get(level);
+
+		boolean full;
+		if (nodeFormat != null && level == 0) {
+			full = node.getValueCount() == leafBranchFactor - 1 || node.getEncodedLength() > targetLeafLength;
+		} else {
+			full = node.getValueCount() >= targetValueCount;
+		}
+
+		if (!full) {
+			node.insertValueNodeIDPair(node.getValueCount(), value, nodeID);
+		} else {
+			// Node is full, start a new node with the supplied node as its left-most child
+			Node newNode = createNewNode();
+			newNode.setChildNodeID(0, nodeID);
+			openNodes.set(level, newNode);
+
+			if (level + 1 == openNodes.size()) {
+				// Full node was the root so far, add a new level on top of it
+				Node parentNode = createNewNode();
+				parentNode.setChildNodeID(0, node.getID());
+				openNodes.add(parentNode);
+			}
+
+			node.release();
+
+			bulkLoadValue(openNodes, level + 1, value, newNode.getID(), targetValueCount, targetLeafLength);
+		}
+	}
+
 	private Node createNewNode() throws IOException {
 		int newNodeID = allocatedNodesList.allocateNode();
 
@@ -1033,9 +1524,9 @@ public class BTree implements Closeable {
 				allocatedNodesList.freeNode(node.getID());
 
 				int maxNodeID = allocatedNodesList.getMaxNodeID();
-				if (node.getID() > maxNodeID) {
+				if (node.getID() > maxNodeID && mappedFile == null) {
 					// Shrink file
-					nioFile.truncate(nodeID2offset(maxNodeID) + nodeSize);
+					nioFile.truncate(nodeID2offset(maxNodeID) + storedNodeSize);
 				}
 			}
 		} else
@@ -1045,7 +1536,7 @@ public class BTree implements Closeable {
 	private void writeFileHeader() throws IOException {
 		ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH);
 		buf.put(MAGIC_NUMBER);
-		buf.put(FILE_FORMAT_VERSION);
+		buf.put(nodeFormat != null ? COMPRESSED_FILE_FORMAT_VERSION : FILE_FORMAT_VERSION);
 		buf.putInt(blockSize);
 		buf.putInt(valueSize);
 		buf.putInt(rootNodeID);
@@ -1075,15 +1566,22 @@ public class BTree implements Closeable {
 		out.println("branch factor   = " + branchFactor);
 		out.println("min value count = " + minValueCount);
 		out.println("node size       = " + nodeSize);
+		out.println("compressed      = " + isCompressed());
 		out.println();
 
 		int nodeCount = 0;
 		int valueCount = 0;
 
-		ByteBuffer buf = ByteBuffer.allocate(nodeSize);
+		byte[] data = new byte[nodeSize];
+		byte[] block = new byte[storedNodeSize];
 		for (long offset = blockSize; offset < nioFile.size(); offset += blockSize) {
-			nioFile.read(buf, offset);
-			buf.rewind();
+			nioFile.read(ByteBuffer.wrap(block), offset);
+			if (nodeFormat != null) {
+				nodeFormat.decode(block, data, leafBranchFactor - 1);
+			} else {
+				System.arraycopy(block, 0, data, 0, nodeSize);
+			}
+			ByteBuffer buf = ByteBuffer.wrap(data);
 
 			int nodeID = offset2nodeID(offset);
 			int count = buf.getInt();
@@ -1106,8 +1604,6 @@ public class BTree implements Closeable {
 
 			// last node ID
 			out.println(buf.getInt());
-
-			buf.clear();
 		}
 		out.println("#nodes          = " + nodeCount);
 		out.println("#values         = " + valueCount);
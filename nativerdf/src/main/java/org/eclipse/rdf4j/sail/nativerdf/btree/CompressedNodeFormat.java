@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.btree;
+
+import org.eclipse.rdf4j.common.io.ByteArrayUtil;
+
+/**
+ * Encodes and decodes the nodes of BTree files that use the compressed node format. In memory, compressed nodes use
+ * the same layout as uncompressed nodes; on disk a node is stored as:
+ *
+ * <pre>
+ * [value count (2 bytes)] [flags (1 byte)] { [child node ID] [prefix length (1 byte)] [key suffix] [other bytes] }* [child node ID]
+ * </pre>
+ *
+ * The key of a value consists of the bytes that are compared by the BTree's {@link CompressibleRecordComparator}, in
+ * the order in which they are compared. As the values in a node are sorted, consecutive values tend to share a long
+ * key prefix; only the length of this shared prefix and the remaining key bytes are stored (front coding). Bytes that
+ * are not part of the key are stored as-is. Child node IDs are stored as variable-length integers and are omitted
+ * altogether for leaf nodes.
+ * <p>
+ * Removing a value from an encoded node never increases its encoded length, since the prefix shared by the
+ * neighbours of a removed value is at least as long as the shorter of their prefixes shared with that value. This
+ * allows leaf nodes to be filled based on their encoded length without the risk of a later modification making them
+ * exceed the block size.
+ */
+class CompressedNodeFormat {
+
+	/**
+	 * The length of the node header, containing the value count and the flags.
+	 */
+	static final int HEADER_LENGTH = 3;
+
+	/**
+	 * The maximum length of an encoded child node ID.
+	 */
+	static final int MAX_NODE_ID_LENGTH = 5;
+
+	/**
+	 * Flag indicating that the node is a leaf node, for which no child node IDs are stored.
+	 */
+	private static final byte LEAF_FLAG = 0x1;
+
+	private final int valueSize;
+
+	private final int slotSize;
+
+	/**
+	 * The positions of the key bytes, in comparison order.
+	 */
+	private final int[] keyBytes;
+
+	/**
+	 * The positions of the bytes that are not part of the key, in ascending order.
+	 */
+	private final int[] otherBytes;
+
+	public CompressedNodeFormat(int valueSize, int[] keyBytes) {
+		if (keyBytes.length == 0 || keyBytes.length > 255) {
+			throw new IllegalArgumentException("number of key bytes must be between 1 and 255: " + keyBytes.length);
+		}
+
+		boolean[] isKeyByte = new boolean[valueSize];
+		for (int position : keyBytes) {
+			if (position < 0 || position >= valueSize || isKeyByte[position]) {
+				throw new IllegalArgumentException("invalid or duplicate key byte position: " + position);
+			}
+			isKeyByte[position] = true;
+		}
+
+		this.valueSize = valueSize;
+		this.slotSize = 4 + valueSize;
+		this.keyBytes = keyBytes.clone();
+		this.otherBytes = new int[valueSize - keyBytes.length];
+
+		for (int position = 0, i = 0; position < valueSize; position++) {
+			if (!isKeyByte[position]) {
+				otherBytes[i++] = position;
+			}
+		}
+	}
+
+	/**
+	 * Gets the maximum length of an encoded value in a leaf node.
+	 */
+	public int getMaxLeafEntryLength() {
+		return 1 + valueSize;
+	}
+
+	/**
+	 * Gets the minimum length of an encoded value. Values in a node have distinct keys, so at least one key byte is
+	 * stored for each value.
+	 */
+	public int getMinEntryLength() {
+		return 2 + otherBytes.length;
+	}
+
+	/**
+	 * Gets the maximum length of an encoded value and its child node ID in an internal node.
+	 */
+	public int getMaxInternalEntryLength() {
+		return 1 + valueSize + MAX_NODE_ID_LENGTH;
+	}
+
+	/**
+	 * Gets the encoded length of a value, excluding its child node ID.
+	 *
+	 * @param data       Node data in the uncompressed layout.
+	 * @param offset     The offset of the value in <tt>data</tt>.
+	 * @param prevOffset The offset of the preceding value in <tt>data</tt>, or <tt>-1</tt> for the first value of a
+	 *                   node.
+	 */
+	public int getValueLength(byte[] data, int offset, int prevOffset) {
+		int[] keyBytes = this.keyBytes;
+		int prefixLength = 0;
+		if (prevOffset >= 0) {
+			while (prefixLength < keyBytes.length) {
+				int position = keyBytes[prefixLength];
+				if (data[prevOffset + position] != data[offset + position]) {
+					break;
+				}
+				prefixLength++;
+			}
+		}
+		return 1 + keyBytes.length - prefixLength + otherBytes.length;
+	}
+
+	/**
+	 * Gets the length of the specified node data when encoded.
+	 *
+	 * @param data       Node data in the uncompressed layout.
+	 * @param valueCount The number of values in the node.
+	 * @param leaf       Whether the node is a leaf node.
+	 */
+	public int getEncodedLength(byte[] data, int valueCount, boolean leaf) {
+		return encode(data, valueCount, leaf, null);
+	}
+
+	/**
+	 * Encodes the specified node data.
+	 *
+	 * @param data       Node data in the uncompressed layout.
+	 * @param valueCount The number of values in the node.
+	 * @param leaf       Whether the node is a leaf node.
+	 * @param dst        The array to write the encoded node to, or <tt>null</tt> to only determine its length.
+	 * @return The length of the encoded node.
+	 */
+	public int encode(byte[] data, int valueCount, boolean leaf, byte[] dst) {
+		if (dst != null) {
+			dst[0] = (byte) (valueCount >>> 8);
+			dst[1] = (byte) valueCount;
+			dst[2] = leaf ? LEAF_FLAG : 0;
+		}
+
+		int pos = HEADER_LENGTH;
+
+		for (int i = 0; i <= valueCount; i++) {
+			int childOffset = 4 + i * slotSize;
+
+			if (!leaf) {
+				int nodeID = ByteArrayUtil.getInt(data, childOffset);
+				do {
+					int b = nodeID & 0x7f;
+					nodeID >>>= 7;
+					if (dst != null) {
+						dst[pos] = (byte) (nodeID != 0 ? b | 0x80 : b);
+					}
+					pos++;
+				} while (nodeID != 0);
+			}
+
+			if (i == valueCount) {
+				break;
+			}
+
+			int offset = childOffset + 4;
+			int entryLength = getValueLength(data, offset, i > 0 ? offset - slotSize : -1);
+
+			if (dst != null) {
+				int prefixLength = 1 + keyBytes.length + otherBytes.length - entryLength;
+				dst[pos] = (byte) prefixLength;
+				int p = pos + 1;
+				for (int k = prefixLength; k < keyBytes.length; k++) {
+					dst[p++] = data[offset + keyBytes[k]];
+				}
+				for (int position : otherBytes) {
+					dst[p++] = data[offset + position];
+				}
+			}
+			pos += entryLength;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * Decodes an encoded node into the uncompressed layout. Child node IDs of leaf nodes are set to <tt>0</tt>.
+	 *
+	 * @param src           The encoded node.
+	 * @param data          The array to write the node data to.
+	 * @param maxValueCount The maximum number of values that fit in <tt>data</tt>.
+	 * @return The number of values in the node.
+	 * @throws IllegalArgumentException If <tt>src</tt> does not contain a valid encoded node. Other runtime exceptions
+	 *                                  may be thrown as well for invalid data.
+	 */
+	public int decode(byte[] src, byte[] data, int maxValueCount) {
+		int valueCount = (src[0] & 0xff) << 8 | (src[1] & 0xff);
+		boolean leaf = (src[2] & LEAF_FLAG) != 0;
+
+		if (valueCount > maxValueCount) {
+			throw new IllegalArgumentException("invalid value count: " + valueCount);
+		}
+
+		ByteArrayUtil.putInt(valueCount, data, 0);
+
+		int pos = HEADER_LENGTH;
+
+		for (int i = 0; i <= valueCount; i++) {
+			int childOffset = 4 + i * slotSize;
+
+			int nodeID = 0;
+			if (!leaf) {
+				int shift = 0;
+				int b;
+				do {
+					b = src[pos++];
+					nodeID |= (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0 && shift < 35);
+			}
+			ByteArrayUtil.putInt(nodeID, data, childOffset);
+
+			if (i == valueCount) {
+				break;
+			}
+
+			int offset = childOffset + 4;
+
+			int prefixLength = src[pos++] & 0xff;
+			if (prefixLength > (i == 0 ? 0 : keyBytes.length)) {
+				throw new IllegalArgumentException("invalid prefix length: " + prefixLength);
+			}
+
+			if (prefixLength > 0) {
+				// Copy the shared prefix along with the rest of the previous value, the other bytes are overwritten
+				System.arraycopy(data, offset - slotSize, data, offset, valueSize);
+			}
+			for (int k = prefixLength; k < keyBytes.length; k++) {
+				data[offset + keyBytes[k]] = src[pos++];
+			}
+			for (int position : otherBytes) {
+				data[offset + position] = src[pos++];
+			}
+		}
+
+		return valueCount;
+	}
+}
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.btree;
+
+/**
+ * A {@link RecordComparator} that compares values byte by byte, using a fixed sequence of byte positions. Comparators
+ * of this type allow a {@link BTree} to store its nodes in the compressed node format, in which each value only stores
+ * the part of this byte sequence that differs from the previous value in the node.
+ */
+public interface CompressibleRecordComparator extends RecordComparator {
+
+	/**
+	 * Gets the positions of the bytes that this comparator compares, in the order in which they are compared. Two
+	 * values must be considered equal if and only if they are equal at all of these positions. Bytes that are not
+	 * included do not affect the order of values.
+	 *
+	 * @param valueSize The size of the values that are compared.
+	 * @return An array of distinct byte positions between <tt>0</tt> (inclusive) and <tt>valueSize</tt> (exclusive).
+	 */
+	public int[] getKeyBytes(int valueSize);
+}
@@ -28,9 +28,13 @@ class ConcurrentNodeCache extends ConcurrentCache<Integer, Node> {
 		}
 	};
 
-	public ConcurrentNodeCache(Function<Integer, Node> reader) {
-		super(0); // cleanUp, when actually run, will try to completely purge the cache (but retain currently used
-					// nodes)
+	/**
+	 * @param reader   The function used to read nodes that are not in the cache.
+	 * @param capacity The maximum amount of memory used by cached nodes, in bytes. Nodes that are in use are never
+	 *                 evicted, so the cache may temporarily exceed this size.
+	 */
+	public ConcurrentNodeCache(Function<Integer, Node> reader, long capacity) {
+		super(capacity, (id, node) -> node.getMemorySize());
 		this.reader = reader;
 	}
 
@@ -40,14 +44,29 @@ class ConcurrentNodeCache extends ConcurrentCache<Integer, Node> {
 
 	public void put(Node node) throws IOException {
 		cache.put(node.getID(), node);
+		recordInsertion(node.getID(), node);
 	}
 
 	public Node readAndUse(int id) {
-		return cache.compute(id, (k, v) -> {
-			Node node = v == null ? reader.apply(k) : v;
+		boolean[] loaded = new boolean[1];
+		Node result = cache.compute(id, (k, v) -> {
+			Node node = v;
+			if (node == null) {
+				node = reader.apply(k);
+				loaded[0] = true;
+			}
 			node.use();
 			return node;
 		});
+
+		// the eviction policy must not be updated from within the compute function
+		if (loaded[0]) {
+			recordMiss();
+			recordInsertion(id, result);
+		} else {
+			recordHit(id);
+		}
+		return result;
 	}
 
 	public boolean discardEmptyUnused(int nodeId) {
@@ -60,7 +79,11 @@ class ConcurrentNodeCache extends ConcurrentCache<Integer, Node> {
 			} else
 				return v;
 		});
-		return nn == null;
+		if (nn == null) {
+			recordRemoval(nodeId);
+			return true;
+		}
+		return false;
 	}
 
 	public void release(Node node, boolean forceSync) {
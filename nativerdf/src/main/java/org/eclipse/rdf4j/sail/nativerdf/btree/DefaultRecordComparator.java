@@ -12,7 +12,7 @@ package org.eclipse.rdf4j.sail.nativerdf.btree;
  * 
  * @author Arjohn Kampman
  */
-public class DefaultRecordComparator implements RecordComparator {
+public class DefaultRecordComparator implements CompressibleRecordComparator {
 
 	// implements RecordComparator.compareBTreeValues()
 	@Override
@@ -23,4 +23,14 @@ public class DefaultRecordComparator implements RecordComparator {
 		}
 		return result;
 	}
+
+	// implements CompressibleRecordComparator.getKeyBytes()
+	@Override
+	public int[] getKeyBytes(int valueSize) {
+		int[] keyBytes = new int[valueSize];
+		for (int i = 0; i < valueSize; i++) {
+			keyBytes[i] = i;
+		}
+		return keyBytes;
+	}
 }
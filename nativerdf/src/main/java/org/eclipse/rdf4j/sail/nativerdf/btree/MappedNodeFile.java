@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.btree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only memory mapping of a BTree file, used by the optimistic (lock-free) read path of {@link BTree}. The file is
+ * mapped in fixed-size segments so that files larger than 2GB can be handled; segments are (re)mapped lazily when a
+ * node beyond the currently mapped region is requested.
+ * <p>
+ * The mapping never writes to the file. Writes continue to go through the {@link org.eclipse.rdf4j.common.io.NioFile}
+ * of the BTree, which on all supported platforms shares the OS page cache with the mapping.
+ */
+class MappedNodeFile implements Closeable {
+
+	/**
+	 * The size of a mapped segment in bytes (64MB). Must be a multiple of the BTree block size, which is guaranteed for
+	 * all power-of-two block sizes up to this value.
+	 */
+	static final int SEGMENT_SIZE = 1 << 26;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	private final int blockSize;
+
+	/**
+	 * The currently mapped segments, replaced as a whole when the mapping is extended.
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	/**
+	 * The number of bytes covered by {@link #segments}.
+	 */
+	private volatile long mappedSize = 0L;
+
+	public MappedNodeFile(File file, int blockSize) throws IOException {
+		if (SEGMENT_SIZE % blockSize != 0) {
+			throw new IllegalArgumentException("block size must be a divisor of " + SEGMENT_SIZE);
+		}
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Copies <tt>length</tt> bytes of the node block that starts at <tt>offset</tt> into <tt>dst</tt>.
+	 *
+	 * @return <tt>false</tt> if the requested block lies beyond the end of the file, in which case the caller should
+	 *         fall back to the regular read path.
+	 */
+	public boolean read(long offset, byte[] dst, int length) throws IOException {
+		assert length <= blockSize : "length exceeds block size";
+
+		if (offset + length > mappedSize && !remap(offset + length)) {
+			return false;
+		}
+
+		ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+		segment.position((int) (offset % SEGMENT_SIZE));
+		segment.get(dst, 0, length);
+		return true;
+	}
+
+	private synchronized boolean remap(long requiredSize) throws IOException {
+		if (requiredSize <= mappedSize) {
+			// another thread has already extended the mapping
+			return true;
+		}
+
+		long fileSize = channel.size();
+		if (requiredSize > fileSize) {
+			return false;
+		}
+
+		int segmentCount = (int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		MappedByteBuffer[] newSegments = new MappedByteBuffer[segmentCount];
+
+		MappedByteBuffer[] oldSegments = segments;
+		for (int i = 0; i < segmentCount; i++) {
+			long position = (long) i * SEGMENT_SIZE;
+			long size = Math.min(SEGMENT_SIZE, fileSize - position);
+
+			if (i < oldSegments.length && oldSegments[i].capacity() == size) {
+				// Segment is unchanged, reuse the existing mapping
+				newSegments[i] = oldSegments[i];
+			} else {
+				newSegments[i] = channel.map(MapMode.READ_ONLY, position, size);
+			}
+		}
+
+		segments = newSegments;
+		mappedSize = fileSize;
+
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segments = new MappedByteBuffer[0];
+		mappedSize = 0L;
+		raf.close();
+	}
+}
@@ -36,6 +36,12 @@ class Node {
 	/** Flag indicating whether the contents of data has changed. */
 	private boolean dataChanged;
 
+	/**
+	 * The encoded length of this node if it is a compressed leaf node, kept up-to-date by value insertions and
+	 * removals. A negative value indicates that the length needs to be recalculated.
+	 */
+	private int encodedLength = -1;
+
 	/** Registered listeners that want to be notified of changes to the node. */
 	private final ConcurrentLinkedDeque<NodeListener> listeners = new ConcurrentLinkedDeque<>();
 
@@ -92,6 +98,13 @@ class Node {
 		return dataChanged;
 	}
 
+	/**
+	 * Gets an estimate of the amount of memory used by this node, in bytes.
+	 */
+	public int getMemorySize() {
+		return 128 + data.length;
+	}
+
 	public int getValueCount() {
 		return valueCount;
 	}
@@ -114,9 +127,68 @@ class Node {
 	}
 
 	public boolean isFull() {
+		if (isCompressedLeaf()) {
+			return valueCount == tree.leafBranchFactor - 1 || getEncodedLength() > tree.maxLeafLength;
+		}
 		return valueCount == tree.branchFactor - 1;
 	}
 
+	/**
+	 * Checks whether this node contains fewer values than required for any node except the root.
+	 */
+	public boolean isUnderflow() {
+		if (isCompressedLeaf()) {
+			return getEncodedLength() < tree.minLeafLength;
+		}
+		return valueCount < tree.minValueCount;
+	}
+
+	/**
+	 * Checks whether this node can give up a value to one of its siblings without becoming underfull.
+	 */
+	public boolean canLendValue() {
+		if (isCompressedLeaf()) {
+			// Removing a value shrinks the encoded node by at most the maximum value length
+			return getEncodedLength() - tree.nodeFormat.getMaxLeafEntryLength() >= tree.minLeafLength;
+		}
+		return valueCount > tree.minValueCount;
+	}
+
+	/**
+	 * Gets the length of this node in the compressed node format.
+	 */
+	int getEncodedLength() {
+		if (encodedLength < 0) {
+			encodedLength = tree.nodeFormat.getEncodedLength(data, valueCount, isLeaf());
+		}
+		return encodedLength;
+	}
+
+	/**
+	 * Gets the sum of the encoded lengths of the values at the specified indexes, each encoded relative to its
+	 * predecessor in the list. Indexes outside of the node's value range are ignored.
+	 */
+	private int getEncodedLength(int... valueIdxs) {
+		int length = 0;
+		int prevOffset = -1;
+		for (int valueIdx : valueIdxs) {
+			if (valueIdx >= 0 && valueIdx < valueCount) {
+				int offset = valueIdx2offset(valueIdx);
+				length += tree.nodeFormat.getValueLength(data, offset, prevOffset);
+				prevOffset = offset;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Checks whether this is a leaf node of a compressed BTree. The capacity of such nodes is determined by their
+	 * encoded length rather than by the number of values.
+	 */
+	private boolean isCompressedLeaf() {
+		return tree.nodeFormat != null && isLeaf();
+	}
+
 	public byte[] getValue(int valueIdx) {
 		assert valueIdx >= 0 : "valueIdx must be positive, is: " + valueIdx;
 		assert valueIdx < valueCount : "valueIdx out of range (" + valueIdx + " >= " + valueCount + ")";
@@ -131,6 +203,7 @@ class Node {
 
 		ByteArrayUtil.put(value, data, valueIdx2offset(valueIdx));
 		dataChanged = true;
+		encodedLength = -1;
 	}
 
 	/**
@@ -146,6 +219,8 @@ class Node {
 
 		byte[] value = getValue(valueIdx);
 
+		int newEncodedLength = getEncodedLengthAfterRemoval(valueIdx);
+
 		int endOffset = valueIdx2offset(valueCount);
 
 		if (valueIdx < valueCount - 1) {
@@ -157,6 +232,7 @@ class Node {
 		clearData(endOffset - tree.slotSize, endOffset);
 
 		setValueCount(--valueCount);
+		encodedLength = newEncodedLength;
 
 		dataChanged = true;
 
@@ -178,6 +254,8 @@ class Node {
 
 		byte[] value = getValue(valueIdx);
 
+		int newEncodedLength = getEncodedLengthAfterRemoval(valueIdx);
+
 		int endOffset = valueIdx2offset(valueCount);
 
 		// Move the rest of the data one slot to the left
@@ -187,6 +265,7 @@ class Node {
 		clearData(endOffset - tree.slotSize, endOffset);
 
 		setValueCount(--valueCount);
+		encodedLength = newEncodedLength;
 
 		dataChanged = true;
 
@@ -195,6 +274,18 @@ class Node {
 		return value;
 	}
 
+	/**
+	 * Determines the encoded length of this node after removal of the specified value, if it is known and can be
+	 * updated cheaply, which is the case for compressed leaf nodes.
+	 */
+	private int getEncodedLengthAfterRemoval(int valueIdx) {
+		if (encodedLength < 0 || !isCompressedLeaf()) {
+			return -1;
+		}
+		return encodedLength - getEncodedLength(valueIdx - 1, valueIdx, valueIdx + 1)
+				+ getEncodedLength(valueIdx - 1, valueIdx + 1);
+	}
+
 	public int getChildNodeID(int nodeIdx) {
 		assert nodeIdx >= 0 : "nodeIdx must be positive, is: " + nodeIdx;
 		assert nodeIdx <= valueCount : "nodeIdx out of range (" + nodeIdx + " > " + valueCount + ")";
@@ -209,6 +300,7 @@ class Node {
 
 		ByteArrayUtil.putInt(nodeID, data, nodeIdx2offset(nodeIdx));
 		dataChanged = true;
+		encodedLength = -1;
 	}
 
 	public Node getChildNode(int nodeIdx) throws IOException {
@@ -265,8 +357,14 @@ class Node {
 		ByteArrayUtil.putInt(nodeID, data, offset + tree.valueSize);
 
 		// Raise the value count
+		int oldEncodedLength = encodedLength;
 		setValueCount(++valueCount);
 
+		if (oldEncodedLength >= 0 && isCompressedLeaf()) {
+			encodedLength = oldEncodedLength - getEncodedLength(valueIdx - 1, valueIdx + 1)
+					+ getEncodedLength(valueIdx - 1, valueIdx, valueIdx + 1);
+		}
+
 		notifyValueAdded(valueIdx);
 
 		dataChanged = true;
@@ -307,14 +405,16 @@ class Node {
 		// can be done because data got one spare slot when it was allocated.
 		insertValueNodeIDPair(newValueIdx, newValue, newNodeID);
 
-		assert valueCount == tree.branchFactor : "Node contains " + valueCount + " values, expected "
-				+ tree.branchFactor;
+		assert isCompressedLeaf() || valueCount == tree.branchFactor : "Node contains " + valueCount
+				+ " values, expected " + tree.branchFactor;
 
-		// Node now contains exactly [branchFactor] values. The median
-		// value at index [branchFactor/2] is moved to the parent
-		// node, the values left of the median stay in this node, the
-		// values right of the median are moved to the new node.
-		int medianIdx = tree.branchFactor / 2;
+		// Node now contains [valueCount] values, which is exactly [branchFactor]
+		// for all but compressed leaf nodes. The median value at index
+		// [valueCount/2] is moved to the parent node, the values left of the
+		// median stay in this node, the values right of the median are moved
+		// to the new node.
+		int totalValueCount = valueCount;
+		int medianIdx = totalValueCount / 2;
 		int medianOffset = valueIdx2offset(medianIdx);
 		int splitOffset = medianOffset + tree.valueSize;
 
@@ -330,7 +430,7 @@ class Node {
 
 		// Update the value counts
 		setValueCount(medianIdx);
-		newNode.setValueCount(tree.branchFactor - medianIdx - 1);
+		newNode.setValueCount(totalValueCount - medianIdx - 1);
 		newNode.dataChanged = true;
 
 		notifyNodeSplit(newNode, medianIdx);
@@ -341,8 +441,9 @@ class Node {
 
 	public void mergeWithRightSibling(byte[] medianValue, Node rightSibling) throws IOException {
 		assert valueCount + rightSibling.getValueCount()
-				+ 1 < tree.branchFactor : "Nodes contain too many values to be merged; left: " + valueCount
-						+ "; right: " + rightSibling.getValueCount();
+				+ 1 < (isCompressedLeaf() ? tree.leafBranchFactor
+						: tree.branchFactor) : "Nodes contain too many values to be merged; left: " + valueCount
+								+ "; right: " + rightSibling.getValueCount();
 
 		// Append median value from parent node
 		insertValueNodeIDPair(valueCount, medianValue, 0);
@@ -444,6 +545,17 @@ class Node {
 	}
 
 	public void read() throws IOException {
+		if (tree.nodeFormat != null) {
+			byte[] block = new byte[tree.storedNodeSize];
+			tree.nioFile.read(ByteBuffer.wrap(block), tree.nodeID2offset(id));
+			try {
+				valueCount = tree.nodeFormat.decode(block, data, tree.leafBranchFactor - 1);
+			} catch (RuntimeException e) {
+				throw new IOException("Unable to decode node " + id + " in " + tree.getFile(), e);
+			}
+			return;
+		}
+
 		ByteBuffer buf = ByteBuffer.wrap(data);
 
 		// Don't fill the spare slot in data:
@@ -456,7 +568,26 @@ class Node {
 		valueCount = ByteArrayUtil.getInt(data, 0);
 	}
 
+	/**
+	 * Copies the node's data (excluding the spare slot) to the supplied buffer. Used by the optimistic read path of
+	 * {@link BTree}, which validates the copied data afterwards.
+	 */
+	void copyData(byte[] dst) {
+		System.arraycopy(data, 0, dst, 0, tree.nodeSize);
+	}
+
 	public void write() throws IOException {
+		if (tree.nodeFormat != null) {
+			byte[] block = new byte[tree.storedNodeSize];
+			int length = tree.nodeFormat.encode(data, valueCount, isLeaf(), block);
+			assert length <= tree.storedNodeSize : "Encoded node exceeds block size (" + length + " bytes)";
+
+			tree.nioFile.write(ByteBuffer.wrap(block), tree.nodeID2offset(id));
+
+			dataChanged = false;
+			return;
+		}
+
 		ByteBuffer buf = ByteBuffer.wrap(data);
 
 		// Don't write the spare slot in data to the file:
@@ -488,6 +619,7 @@ class Node {
 	private void setValueCount(int valueCount) {
 		this.valueCount = valueCount;
 		ByteArrayUtil.putInt(valueCount, data, 0);
+		encodedLength = -1;
 	}
 
 	private int valueIdx2offset(int id) {
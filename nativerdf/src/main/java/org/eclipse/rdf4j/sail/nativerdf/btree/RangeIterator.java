@@ -157,7 +157,12 @@ class RangeIterator implements RecordIterator, NodeListener {
 				throw new IllegalStateException();
 			}
 
-			nextCurrentNode.setValue(currentIdx - 1, value);
+			long stamp = tree.startModification();
+			try {
+				nextCurrentNode.setValue(currentIdx - 1, value);
+			} finally {
+				tree.endModification(stamp);
+			}
 		} finally {
 			tree.btreeLock.readLock().unlock();
 		}
@@ -7,11 +7,16 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail.nativerdf.config;
 
+import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.COMPRESSED_INDEXES;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.FORCE_SYNC;
+import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.INDEX_CACHE_BYTES;
+import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.MEMORY_MAPPED_INDEXES;
+import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.MEMORY_MAPPED_VALUES;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.NAMESPACE;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.NAMESPACE_CACHE_SIZE;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.NAMESPACE_ID_CACHE_SIZE;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.TRIPLE_INDEXES;
+import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.VALUE_CACHE_BYTES;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.VALUE_CACHE_SIZE;
 import static org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreSchema.VALUE_ID_CACHE_SIZE;
 
@@ -45,6 +50,16 @@ public class NativeStoreConfig extends BaseSailConfig {
 
 	private int namespaceIDCacheSize = -1;
 
+	private boolean memoryMappedIndexes = false;
+
+	private boolean memoryMappedValues = false;
+
+	private boolean compressedIndexes = false;
+
+	private long valueCacheBytes = -1;
+
+	private long indexCacheBytes = -1;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -115,6 +130,46 @@ public class NativeStoreConfig extends BaseSailConfig {
 		this.namespaceIDCacheSize = namespaceIDCacheSize;
 	}
 
+	public boolean getMemoryMappedIndexes() {
+		return memoryMappedIndexes;
+	}
+
+	public void setMemoryMappedIndexes(boolean memoryMappedIndexes) {
+		this.memoryMappedIndexes = memoryMappedIndexes;
+	}
+
+	public boolean getMemoryMappedValues() {
+		return memoryMappedValues;
+	}
+
+	public void setMemoryMappedValues(boolean memoryMappedValues) {
+		this.memoryMappedValues = memoryMappedValues;
+	}
+
+	public boolean getCompressedIndexes() {
+		return compressedIndexes;
+	}
+
+	public void setCompressedIndexes(boolean compressedIndexes) {
+		this.compressedIndexes = compressedIndexes;
+	}
+
+	public long getValueCacheBytes() {
+		return valueCacheBytes;
+	}
+
+	public void setValueCacheBytes(long valueCacheBytes) {
+		this.valueCacheBytes = valueCacheBytes;
+	}
+
+	public long getIndexCacheBytes() {
+		return indexCacheBytes;
+	}
+
+	public void setIndexCacheBytes(long indexCacheBytes) {
+		this.indexCacheBytes = indexCacheBytes;
+	}
+
 	@Override
 	public Resource export(Model m) {
 		Resource implNode = super.export(m);
@@ -139,6 +194,21 @@ public class NativeStoreConfig extends BaseSailConfig {
 		if (namespaceIDCacheSize >= 0) {
 			m.add(implNode, NAMESPACE_ID_CACHE_SIZE, vf.createLiteral(namespaceIDCacheSize));
 		}
+		if (memoryMappedIndexes) {
+			m.add(implNode, MEMORY_MAPPED_INDEXES, vf.createLiteral(memoryMappedIndexes));
+		}
+		if (memoryMappedValues) {
+			m.add(implNode, MEMORY_MAPPED_VALUES, vf.createLiteral(memoryMappedValues));
+		}
+		if (compressedIndexes) {
+			m.add(implNode, COMPRESSED_INDEXES, vf.createLiteral(compressedIndexes));
+		}
+		if (valueCacheBytes >= 0) {
+			m.add(implNode, VALUE_CACHE_BYTES, vf.createLiteral(valueCacheBytes));
+		}
+		if (indexCacheBytes >= 0) {
+			m.add(implNode, INDEX_CACHE_BYTES, vf.createLiteral(indexCacheBytes));
+		}
 
 		return implNode;
 	}
@@ -195,6 +265,51 @@ public class NativeStoreConfig extends BaseSailConfig {
 							"Integer value required for " + NAMESPACE_ID_CACHE_SIZE + " property, found " + lit);
 				}
 			});
+
+			Models.objectLiteral(m.filter(implNode, MEMORY_MAPPED_INDEXES, null)).ifPresent(lit -> {
+				try {
+					setMemoryMappedIndexes(lit.booleanValue());
+				} catch (IllegalArgumentException e) {
+					throw new SailConfigException(
+							"Boolean value required for " + MEMORY_MAPPED_INDEXES + " property, found " + lit);
+				}
+			});
+
+			Models.objectLiteral(m.filter(implNode, MEMORY_MAPPED_VALUES, null)).ifPresent(lit -> {
+				try {
+					setMemoryMappedValues(lit.booleanValue());
+				} catch (IllegalArgumentException e) {
+					throw new SailConfigException(
+							"Boolean value required for " + MEMORY_MAPPED_VALUES + " property, found " + lit);
+				}
+			});
+
+			Models.objectLiteral(m.filter(implNode, COMPRESSED_INDEXES, null)).ifPresent(lit -> {
+				try {
+					setCompressedIndexes(lit.booleanValue());
+				} catch (IllegalArgumentException e) {
+					throw new SailConfigException(
+							"Boolean value required for " + COMPRESSED_INDEXES + " property, found " + lit);
+				}
+			});
+
+			Models.objectLiteral(m.filter(implNode, VALUE_CACHE_BYTES, null)).ifPresent(lit -> {
+				try {
+					setValueCacheBytes(lit.longValue());
+				} catch (NumberFormatException e) {
+					throw new SailConfigException(
+							"Integer value required for " + VALUE_CACHE_BYTES + " property, found " + lit);
+				}
+			});
+
+			Models.objectLiteral(m.filter(implNode, INDEX_CACHE_BYTES, null)).ifPresent(lit -> {
+				try {
+					setIndexCacheBytes(lit.longValue());
+				} catch (NumberFormatException e) {
+					throw new SailConfigException(
+							"Integer value required for " + INDEX_CACHE_BYTES + " property, found " + lit);
+				}
+			});
 		} catch (ModelException e) {
 			throw new SailConfigException(e.getMessage(), e);
 		}
@@ -54,6 +54,9 @@ public class NativeStoreFactory implements SailFactory {
 
 			nativeStore.setTripleIndexes(nativeConfig.getTripleIndexes());
 			nativeStore.setForceSync(nativeConfig.getForceSync());
+			nativeStore.setMemoryMappedIndexes(nativeConfig.getMemoryMappedIndexes());
+			nativeStore.setMemoryMappedValues(nativeConfig.getMemoryMappedValues());
+			nativeStore.setCompressedIndexes(nativeConfig.getCompressedIndexes());
 
 			if (nativeConfig.getValueCacheSize() >= 0) {
 				nativeStore.setValueCacheSize(nativeConfig.getValueCacheSize());
@@ -67,6 +70,12 @@ public class NativeStoreFactory implements SailFactory {
 			if (nativeConfig.getNamespaceIDCacheSize() >= 0) {
 				nativeStore.setNamespaceIDCacheSize(nativeConfig.getNamespaceIDCacheSize());
 			}
+			if (nativeConfig.getValueCacheBytes() >= 0) {
+				nativeStore.setValueCacheBytes(nativeConfig.getValueCacheBytes());
+			}
+			if (nativeConfig.getIndexCacheBytes() >= 0) {
+				nativeStore.setIndexCacheBytes(nativeConfig.getIndexCacheBytes());
+			}
 			if (nativeConfig.getIterationCacheSyncThreshold() > 0) {
 				nativeStore.setIterationCacheSyncThreshold(nativeConfig.getIterationCacheSyncThreshold());
 			}
@@ -41,6 +41,21 @@ public class NativeStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/native#namespaceIDCacheSize</tt> */
 	public final static IRI NAMESPACE_ID_CACHE_SIZE;
 
+	/** <tt>http://www.openrdf.org/config/sail/native#memoryMappedIndexes</tt> */
+	public final static IRI MEMORY_MAPPED_INDEXES;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#memoryMappedValues</tt> */
+	public final static IRI MEMORY_MAPPED_VALUES;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#compressedIndexes</tt> */
+	public final static IRI COMPRESSED_INDEXES;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#valueCacheBytes</tt> */
+	public final static IRI VALUE_CACHE_BYTES;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#indexCacheBytes</tt> */
+	public final static IRI INDEX_CACHE_BYTES;
+
 	static {
 		ValueFactory factory = SimpleValueFactory.getInstance();
 		TRIPLE_INDEXES = factory.createIRI(NAMESPACE, "tripleIndexes");
@@ -49,5 +64,10 @@ public class NativeStoreSchema {
 		VALUE_ID_CACHE_SIZE = factory.createIRI(NAMESPACE, "valueIDCacheSize");
 		NAMESPACE_CACHE_SIZE = factory.createIRI(NAMESPACE, "namespaceCacheSize");
 		NAMESPACE_ID_CACHE_SIZE = factory.createIRI(NAMESPACE, "namespaceIDCacheSize");
+		MEMORY_MAPPED_INDEXES = factory.createIRI(NAMESPACE, "memoryMappedIndexes");
+		MEMORY_MAPPED_VALUES = factory.createIRI(NAMESPACE, "memoryMappedValues");
+		COMPRESSED_INDEXES = factory.createIRI(NAMESPACE, "compressedIndexes");
+		VALUE_CACHE_BYTES = factory.createIRI(NAMESPACE, "valueCacheBytes");
+		INDEX_CACHE_BYTES = factory.createIRI(NAMESPACE, "indexCacheBytes");
 	}
 }
@@ -49,6 +49,12 @@ public class DataFile implements Closeable {
 
 	private final boolean forceSync;
 
+	/**
+	 * Memory mapping of the file that is used for reading data, or <tt>null</tt> if all data is read through
+	 * {@link #nioFile}.
+	 */
+	private final MappedFile mappedFile;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -58,6 +64,16 @@ public class DataFile implements Closeable {
 	}
 
 	public DataFile(File file, boolean forceSync) throws IOException {
+		this(file, forceSync, false);
+	}
+
+	/**
+	 * Creates a new DataFile.
+	 * 
+	 * @param memoryMapped Flag indicating whether data should be read from a memory mapping of the file instead of
+	 *                     through file reads.
+	 */
+	public DataFile(File file, boolean forceSync, boolean memoryMapped) throws IOException {
 		this.nioFile = new NioFile(file);
 		this.forceSync = forceSync;
 
@@ -85,6 +101,8 @@ public class DataFile implements Closeable {
 					throw new IOException("Unable to read data file; invalid file format version: " + version);
 				}
 			}
+
+			this.mappedFile = memoryMapped ? new MappedFile(file) : null;
 		} catch (IOException e) {
 			this.nioFile.close();
 			throw e;
@@ -131,9 +149,18 @@ public class DataFile implements Closeable {
 	public byte[] getData(long offset) throws IOException {
 		assert offset > 0 : "offset must be larger than 0, is: " + offset;
 
-		// TODO: maybe get more data in one go is more efficient?
-		int dataLength = nioFile.readInt(offset);
+		int dataLength = getDataLength(offset);
 
+		if (mappedFile != null) {
+			ByteBuffer buf = mappedFile.slice(offset + 4L, dataLength);
+			if (buf != null) {
+				byte[] data = new byte[dataLength];
+				buf.get(data);
+				return data;
+			}
+		}
+
+		// TODO: maybe get more data in one go is more efficient?
 		byte[] data = new byte[dataLength];
 		ByteBuffer buf = ByteBuffer.wrap(data);
 		nioFile.read(buf, offset + 4L);
@@ -141,12 +168,54 @@ public class DataFile implements Closeable {
 		return data;
 	}
 
+	/**
+	 * Checks whether the data that is stored at the specified offset is equal to the supplied data. Stored data with a
+	 * different length is rejected without reading it and with a memory mapping the data is compared in place, without
+	 * copying it.
+	 * 
+	 * @param offset An offset in the data file, must be larger than 0.
+	 * @param data   The data to compare with, must not be <tt>null</tt>.
+	 * @return <tt>true</tt> if the stored data is equal to <tt>data</tt>.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public boolean matchesData(long offset, byte[] data) throws IOException {
+		assert offset > 0 : "offset must be larger than 0, is: " + offset;
+
+		if (getDataLength(offset) != data.length) {
+			return false;
+		}
+
+		if (mappedFile != null) {
+			ByteBuffer buf = mappedFile.slice(offset + 4L, data.length);
+			if (buf != null) {
+				return buf.equals(ByteBuffer.wrap(data));
+			}
+		}
+
+		byte[] storedData = new byte[data.length];
+		nioFile.read(ByteBuffer.wrap(storedData), offset + 4L);
+		return Arrays.equals(data, storedData);
+	}
+
+	private int getDataLength(long offset) throws IOException {
+		if (mappedFile != null) {
+			ByteBuffer buf = mappedFile.slice(offset, 4);
+			if (buf != null) {
+				return buf.getInt(0);
+			}
+		}
+		return nioFile.readInt(offset);
+	}
+
 	/**
 	 * Discards all stored data.
 	 * 
 	 * @throws IOException If an I/O error occurred.
 	 */
 	public void clear() throws IOException {
+		if (mappedFile != null) {
+			mappedFile.reset();
+		}
 		nioFile.truncate(HEADER_LENGTH);
 	}
 
@@ -166,7 +235,13 @@ public class DataFile implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
-		nioFile.close();
+		try {
+			if (mappedFile != null) {
+				mappedFile.close();
+			}
+		} finally {
+			nioFile.close();
+		}
 	}
 
 	/**
@@ -10,7 +10,10 @@ package org.eclipse.rdf4j.sail.nativerdf.datastore;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.CRC32;
 
 import org.eclipse.rdf4j.common.io.ByteArrayUtil;
@@ -46,9 +49,19 @@ public class DataStore implements Closeable {
 	}
 
 	public DataStore(File dataDir, String filePrefix, boolean forceSync) throws IOException {
-		dataFile = new DataFile(new File(dataDir, filePrefix + ".dat"), forceSync);
-		idFile = new IDFile(new File(dataDir, filePrefix + ".id"), forceSync);
-		hashFile = new HashFile(new File(dataDir, filePrefix + ".hash"), forceSync);
+		this(dataDir, filePrefix, forceSync, false);
+	}
+
+	/**
+	 * Creates a new DataStore.
+	 * 
+	 * @param memoryMapped Flag indicating whether the data, ID and hash files should be read from memory mappings of
+	 *                     the files instead of through file reads.
+	 */
+	public DataStore(File dataDir, String filePrefix, boolean forceSync, boolean memoryMapped) throws IOException {
+		dataFile = new DataFile(new File(dataDir, filePrefix + ".dat"), forceSync, memoryMapped);
+		idFile = new IDFile(new File(dataDir, filePrefix + ".id"), forceSync, memoryMapped);
+		hashFile = new HashFile(new File(dataDir, filePrefix + ".hash"), forceSync, memoryMapped);
 	}
 
 	/*---------*
@@ -93,9 +106,8 @@ public class DataStore implements Closeable {
 		try {
 			while ((id = iter.next()) >= 0) {
 				long offset = idFile.getOffset(id);
-				byte[] data = dataFile.getData(offset);
 
-				if (Arrays.equals(queryData, data)) {
+				if (dataFile.matchesData(offset, queryData)) {
 					// Matching data found
 					break;
 				}
@@ -107,6 +119,82 @@ public class DataStore implements Closeable {
 		return id;
 	}
 
+	/**
+	 * Gets the data for each of the specified IDs. The ID file and the data file are each read in file order, and data
+	 * that is requested more than once is read only once.
+	 * 
+	 * @param ids Value IDs, should be larger than 0.
+	 * @return For each of the IDs, in the same order, the data for the ID or <tt>null</tt> if no such data could be
+	 *         found.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public byte[][] getData(int[] ids) throws IOException {
+		long[] offsets = getOffsets(ids);
+
+		byte[][] result = new byte[ids.length][];
+		byte[] data = null;
+		long dataOffset = 0L;
+		for (int i : sortedIndexes(offsets)) {
+			long offset = offsets[i];
+			if (offset != 0L) {
+				if (offset != dataOffset) {
+					data = dataFile.getData(offset);
+					dataOffset = offset;
+				}
+				result[i] = data;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the ID for each of the specified values. The hash file, the ID file and the data file are each read in file
+	 * order, rather than in the order of the values.
+	 * 
+	 * @param queryData The values to get the IDs for, must not contain <tt>null</tt>.
+	 * @return For each of the values, in the same order, the ID for the value or <tt>-1</tt> if no such ID could be
+	 *         found.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public int[] getIDs(byte[][] queryData) throws IOException {
+		int[] result = new int[queryData.length];
+		Arrays.fill(result, -1);
+
+		int[] hashes = new int[queryData.length];
+		for (int i = 0; i < queryData.length; i++) {
+			assert queryData[i] != null : "queryData must not contain null";
+			hashes[i] = getDataHash(queryData[i]);
+		}
+
+		// Collect the IDs of all stored data with matching hash codes
+		int[][] candidates = hashFile.getIDs(hashes);
+
+		int candidateCount = 0;
+		for (int[] ids : candidates) {
+			candidateCount += ids.length;
+		}
+
+		int[] candidateIDs = new int[candidateCount];
+		int[] candidateQueries = new int[candidateCount];
+		for (int i = 0, c = 0; i < candidates.length; i++) {
+			for (int id : candidates[i]) {
+				candidateIDs[c] = id;
+				candidateQueries[c++] = i;
+			}
+		}
+
+		// Compare the candidates with the query data
+		long[] offsets = getOffsets(candidateIDs);
+		for (int c : sortedIndexes(offsets)) {
+			int i = candidateQueries[c];
+			if (result[i] == -1 && offsets[c] != 0L && dataFile.matchesData(offsets[c], queryData[i])) {
+				result[i] = candidateIDs[c];
+			}
+		}
+
+		return result;
+	}
+
 	/**
 	 * Returns the maximum value-ID that is in use.
 	 * 
@@ -140,6 +228,40 @@ public class DataStore implements Closeable {
 		return id;
 	}
 
+	/**
+	 * Stores the supplied values and returns the IDs that have been assigned to them. Existing values are looked up
+	 * using {@link #getIDs(byte[][])}, values that are supplied more than once are stored only once.
+	 * 
+	 * @param data The data to store, must not contain <tt>null</tt>.
+	 * @return For each of the values, in the same order, the ID that has been assigned to the value.
+	 * @exception IOException If an I/O error occurred.
+	 */
+	public int[] storeData(byte[][] data) throws IOException {
+		int[] ids = getIDs(data);
+
+		Map<ByteBuffer, Integer> storedIDs = null;
+		for (int i = 0; i < data.length; i++) {
+			if (ids[i] == -1) {
+				if (storedIDs == null) {
+					storedIDs = new HashMap<>();
+				}
+
+				ByteBuffer key = ByteBuffer.wrap(data[i]);
+				Integer id = storedIDs.get(key);
+				if (id == null) {
+					// Data not stored yet, store it under a new ID.
+					long offset = dataFile.storeData(data[i]);
+					id = idFile.storeOffset(offset);
+					hashFile.storeID(getDataHash(data[i]), id);
+					storedIDs.put(key, id);
+				}
+				ids[i] = id;
+			}
+		}
+
+		return ids;
+	}
+
 	/**
 	 * Synchronizes any recent changes to the data to disk.
 	 * 
@@ -202,6 +324,46 @@ public class DataStore implements Closeable {
 		}
 	}
 
+	/**
+	 * Gets the offsets of the data for the specified IDs, reading the ID file in file order.
+	 */
+	private long[] getOffsets(int[] ids) throws IOException {
+		long[] idKeys = new long[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			assert ids[i] > 0 : "id must be larger than 0, is: " + ids[i];
+			idKeys[i] = ids[i];
+		}
+
+		long[] offsets = new long[ids.length];
+		int prevID = 0;
+		long offset = 0L;
+		for (int i : sortedIndexes(idKeys)) {
+			if (ids[i] != prevID) {
+				offset = idFile.getOffset(ids[i]);
+				prevID = ids[i];
+			}
+			offsets[i] = offset;
+		}
+		return offsets;
+	}
+
+	/**
+	 * Returns the indexes of the supplied keys, sorted by key.
+	 */
+	private static int[] sortedIndexes(long[] keys) {
+		Integer[] indexes = new Integer[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			indexes[i] = i;
+		}
+		Arrays.sort(indexes, (i1, i2) -> Long.compare(keys[i1], keys[i2]));
+
+		int[] result = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			result[i] = indexes[i];
+		}
+		return result;
+	}
+
 	/*--------------------*
 	 * Test/debug methods *
 	 *--------------------*/
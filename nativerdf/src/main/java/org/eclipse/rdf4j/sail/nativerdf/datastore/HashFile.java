@@ -10,16 +10,24 @@ package org.eclipse.rdf4j.sail.nativerdf.datastore;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.eclipse.rdf4j.common.io.NioFile;
 
 /**
- * Class supplying access to a hash file.
+ * Class supplying access to a hash file. The hash file uses linear hashing: the hash table grows one bucket at a time
+ * by splitting a single bucket whenever the load factor is exceeded, so that the cost of growing the table is spread
+ * evenly over the stored items.
+ * <p>
+ * The buckets of the hash table are stored in segments. The first segment contains the initial buckets, each next
+ * segment contains as many buckets as all previous segments together. A segment is allocated at the end of the file
+ * once its first bucket is needed; buckets that have not been split into yet are not written and read as empty
+ * buckets. Overflow buckets are appended to the end of the file as well and are reused once they are no longer needed.
+ * Buckets are identified by their block number, the position of the bucket in the file after the header.
  * 
  * @author Arjohn Kampman
  */
@@ -39,15 +47,28 @@ public class HashFile implements Closeable {
 	private static final byte[] MAGIC_NUMBER = new byte[] { 'n', 'h', 'f' };
 
 	/**
-	 * File format version, stored as the fourth byte in hash files.
+	 * File format version, stored as the fourth byte in hash files. Files that use version 1, which doubled the hash
+	 * table in one go, are converted when they are opened.
 	 */
-	private static final byte FILE_FORMAT_VERSION = 1;
+	private static final byte FILE_FORMAT_VERSION = 2;
+
+	/**
+	 * The maximum number of segments.
+	 */
+	private static final int MAX_SEGMENT_COUNT = 32;
 
 	/**
 	 * The size of the file header in bytes. The file header contains the following data: magic number (3 bytes) file
-	 * format version (1 byte), number of buckets (4 bytes), bucket size (4 bytes) and number of stored items (4 bytes).
+	 * format version (1 byte), number of buckets (4 bytes), bucket size (4 bytes), number of stored items (4 bytes),
+	 * initial number of buckets (4 bytes), first free overflow bucket (4 bytes), number of segments (4 bytes), 4
+	 * reserved bytes and the block numbers of the first buckets of the segments (4 bytes each).
+	 */
+	private static final long HEADER_LENGTH = 32 + 4 * MAX_SEGMENT_COUNT;
+
+	/**
+	 * The size of the file header of version 1 hash files in bytes.
 	 */
-	private static final long HEADER_LENGTH = 16;
+	private static final long V1_HEADER_LENGTH = 16;
 
 	private static final int INIT_BUCKET_COUNT = 64;
 
@@ -64,6 +85,13 @@ public class HashFile implements Closeable {
 	// The number of (non-overflow) buckets in the hash file
 	private volatile int bucketCount;
 
+	// The number of buckets in the first segment
+	private final int initialBucketCount;
+
+	// The number of buckets at the start of the current round of splits, the largest
+	// power-of-two multiple of initialBucketCount that is not larger than bucketCount
+	private int levelBucketCount;
+
 	// The number of items that can be stored in a bucket
 	private final int bucketSize;
 
@@ -76,12 +104,28 @@ public class HashFile implements Closeable {
 	// recordSize = ITEM_SIZE * bucketSize + 4
 	private final int recordSize;
 
+	// The block numbers of the first buckets of the allocated segments
+	private final int[] segments = new int[MAX_SEGMENT_COUNT];
+
+	// The number of allocated segments
+	private int segmentCount;
+
+	// The block number of the first bucket in the list of free overflow buckets, or 0 if there are none
+	private int freeBucket;
+
 	/**
 	 * A read/write lock that is used to prevent structural changes to the hash file while readers are active in order
 	 * to prevent concurrency issues.
 	 */
 	private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
 
+	/**
+	 * Memory mapping of the file that is used for looking up IDs, or <tt>null</tt> if all buckets are read through
+	 * {@link #nioFile}. Only accessed while holding a read lock on {@link #structureLock}, the mapping is reset before
+	 * the file is truncated while holding the write lock.
+	 */
+	private final MappedFile mappedFile;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -91,29 +135,47 @@ public class HashFile implements Closeable {
 	}
 
 	public HashFile(File file, boolean forceSync) throws IOException {
-		this.nioFile = new NioFile(file);
+		this(file, forceSync, false);
+	}
+
+	/**
+	 * Creates a new HashFile.
+	 * 
+	 * @param memoryMapped Flag indicating whether IDs should be looked up in a memory mapping of the file instead of
+	 *                     through file reads.
+	 */
+	public HashFile(File file, boolean forceSync, boolean memoryMapped) throws IOException {
+		this(file, forceSync, memoryMapped, INIT_BUCKET_COUNT, INIT_BUCKET_SIZE);
+	}
+
+	private HashFile(File file, boolean forceSync, boolean memoryMapped, int initBucketCount, int initBucketSize)
+			throws IOException {
+		this.nioFile = new NioFile(upgradeFileFormat(file));
 		this.forceSync = forceSync;
 
 		try {
 			if (nioFile.size() == 0L) {
 				// Empty file, insert bucket count, bucket size
 				// and item count at the start of the file
-				bucketCount = INIT_BUCKET_COUNT;
-				bucketSize = INIT_BUCKET_SIZE;
+				bucketCount = initBucketCount;
+				initialBucketCount = initBucketCount;
+				bucketSize = initBucketSize;
 				itemCount = 0;
 				recordSize = ITEM_SIZE * bucketSize + 4;
 
-				// Initialize the file by writing <_bucketCount> empty buckets
+				// Initialize the file by writing the buckets of the first segment
+				segments[0] = 1;
+				segmentCount = 1;
 				writeEmptyBuckets(HEADER_LENGTH, bucketCount);
 
 				sync();
 			} else {
-				// Read bucket count, bucket size and item count from the file
+				// Read the file header
 				ByteBuffer buf = ByteBuffer.allocate((int) HEADER_LENGTH);
 				nioFile.read(buf, 0L);
 				buf.rewind();
 
-				if (buf.remaining() < HEADER_LENGTH) {
+				if (nioFile.size() < HEADER_LENGTH) {
 					throw new IOException("File too short to be a compatible hash file");
 				}
 
@@ -123,6 +185,13 @@ public class HashFile implements Closeable {
 				bucketCount = buf.getInt();
 				bucketSize = buf.getInt();
 				itemCount = buf.getInt();
+				initialBucketCount = buf.getInt();
+				freeBucket = buf.getInt();
+				segmentCount = buf.getInt();
+				buf.getInt();
+				for (int i = 0; i < MAX_SEGMENT_COUNT; i++) {
+					segments[i] = buf.getInt();
+				}
 
 				if (!Arrays.equals(MAGIC_NUMBER, magicNumber)) {
 					throw new IOException("File doesn't contain compatible hash file data");
@@ -136,6 +205,13 @@ public class HashFile implements Closeable {
 
 				recordSize = ITEM_SIZE * bucketSize + 4;
 			}
+
+			levelBucketCount = initialBucketCount;
+			while (bucketCount - levelBucketCount >= levelBucketCount) {
+				levelBucketCount *= 2;
+			}
+
+			this.mappedFile = memoryMapped ? new MappedFile(file) : null;
 		} catch (IOException e) {
 			this.nioFile.close();
 			throw e;
@@ -161,6 +237,84 @@ public class HashFile implements Closeable {
 		return new IDIterator(hash);
 	}
 
+	/**
+	 * Gets the IDs that have been stored under each of the specified hash codes. The buckets are read in file order and
+	 * each bucket is read only once, also when several of the hash codes map to it.
+	 * 
+	 * @param hashes The hash codes to get the IDs for.
+	 * @return For each of the hash codes, in the same order, the IDs that have been stored under it.
+	 */
+	public int[][] getIDs(int[] hashes) throws IOException {
+		int[][] result = new int[hashes.length][];
+
+		structureLock.readLock().lock();
+		try {
+			// Sort the hash codes by bucket number, keeping track of their original position
+			long[] keys = new long[hashes.length];
+			for (int i = 0; i < hashes.length; i++) {
+				keys[i] = (long) getBucketNo(hashes[i]) << 32 | i;
+			}
+			Arrays.sort(keys);
+
+			ByteBuffer bucketBuffer = mappedFile == null ? ByteBuffer.allocate(recordSize) : null;
+
+			// The hash codes and IDs in the current bucket and its overflow buckets
+			int[] items = new int[2 * bucketSize];
+			int itemCount = 0;
+			long currentBucketNo = -1L;
+
+			for (long key : keys) {
+				long bucketNo = key >>> 32;
+				int i = (int) key;
+
+				if (bucketNo != currentBucketNo) {
+					currentBucketNo = bucketNo;
+					itemCount = 0;
+
+					long bucketOffset = getBlockOffset(getBucketBlock((int) bucketNo));
+					while (true) {
+						ByteBuffer bucket = readBucket(bucketOffset, bucketBuffer);
+
+						for (int slotNo = 0; slotNo < bucketSize; slotNo++) {
+							int id = bucket.getInt(ITEM_SIZE * slotNo + 4);
+							if (id != 0) {
+								if (itemCount == items.length) {
+									items = Arrays.copyOf(items, 2 * items.length);
+								}
+								items[itemCount++] = bucket.getInt(ITEM_SIZE * slotNo);
+								items[itemCount++] = id;
+							}
+						}
+
+						int overflowID = bucket.getInt(ITEM_SIZE * bucketSize);
+						if (overflowID == 0) {
+							break;
+						}
+						bucketOffset = getBlockOffset(overflowID);
+					}
+				}
+
+				int matchCount = 0;
+				for (int j = 0; j < itemCount; j += 2) {
+					if (items[j] == hashes[i]) {
+						matchCount++;
+					}
+				}
+				int[] ids = new int[matchCount];
+				for (int j = 0, k = 0; k < matchCount; j += 2) {
+					if (items[j] == hashes[i]) {
+						ids[k++] = items[j + 1];
+					}
+				}
+				result[i] = ids;
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+
+		return result;
+	}
+
 	/**
 	 * Stores ID under the specified hash code in this hash file.
 	 */
@@ -177,7 +331,7 @@ public class HashFile implements Closeable {
 		if (++itemCount >= loadFactor * bucketCount * bucketSize) {
 			structureLock.writeLock().lock();
 			try {
-				increaseHashTable();
+				splitBucket();
 			} finally {
 				structureLock.writeLock().unlock();
 			}
@@ -216,7 +370,7 @@ public class HashFile implements Closeable {
 				}
 
 				// Continue searching for an empty slot in the overflow bucket
-				bucketOffset = getOverflowBucketOffset(overflowID);
+				bucketOffset = getBlockOffset(overflowID);
 				bucket.clear();
 			}
 		}
@@ -225,12 +379,20 @@ public class HashFile implements Closeable {
 	public void clear() throws IOException {
 		structureLock.writeLock().lock();
 		try {
-			// Truncate the file to remove any overflow buffers
-			nioFile.truncate(HEADER_LENGTH + (long) bucketCount * recordSize);
+			if (mappedFile != null) {
+				mappedFile.reset();
+			}
 
-			// Overwrite normal buckets with empty ones
-			writeEmptyBuckets(HEADER_LENGTH, bucketCount);
+			// Truncate the file to remove all buckets except for those of the first segment
+			nioFile.truncate(HEADER_LENGTH + (long) initialBucketCount * recordSize);
 
+			// Overwrite the remaining buckets with empty ones
+			writeEmptyBuckets(HEADER_LENGTH, initialBucketCount);
+
+			bucketCount = initialBucketCount;
+			levelBucketCount = initialBucketCount;
+			segmentCount = 1;
+			freeBucket = 0;
 			itemCount = 0;
 		} finally {
 			structureLock.writeLock().unlock();
@@ -256,31 +418,21 @@ public class HashFile implements Closeable {
 
 	@Override
 	public void close() throws IOException {
-		nioFile.close();
+		try {
+			if (mappedFile != null) {
+				mappedFile.close();
+			}
+		} finally {
+			nioFile.close();
+		}
 	}
 
 	/*-----------------*
 	 * Utility methods *
 	 *-----------------*/
 
-	private RandomAccessFile createEmptyFile(File file) throws IOException {
-		// Make sure the file exists
-		if (!file.exists()) {
-			boolean created = file.createNewFile();
-			if (!created) {
-				throw new IOException("Failed to create file " + file);
-			}
-		}
-
-		// Open the file in read-write mode and make sure the file is empty
-		RandomAccessFile raf = new RandomAccessFile(file, "rw");
-		raf.setLength(0L);
-
-		return raf;
-	}
-
 	/**
-	 * Writes the bucket count, bucket size and item count to the file header.
+	 * Writes the bucket count, bucket size, item count and segments to the file header.
 	 */
 	private void writeFileHeader() throws IOException {
 		ByteBuffer buf = ByteBuffer.allocate((int) HEADER_LENGTH);
@@ -289,6 +441,13 @@ public class HashFile implements Closeable {
 		buf.putInt(bucketCount);
 		buf.putInt(bucketSize);
 		buf.putInt(itemCount);
+		buf.putInt(initialBucketCount);
+		buf.putInt(freeBucket);
+		buf.putInt(segmentCount);
+		buf.putInt(0);
+		for (int i = 0; i < MAX_SEGMENT_COUNT; i++) {
+			buf.putInt(segments[i]);
+		}
 		buf.rewind();
 
 		nioFile.write(buf, 0L);
@@ -298,27 +457,106 @@ public class HashFile implements Closeable {
 	 * Returns the offset of the bucket for the specified hash code.
 	 */
 	private long getBucketOffset(int hash) {
-		int bucketNo = hash % bucketCount;
-		if (bucketNo < 0) {
-			bucketNo += bucketCount;
+		return getBlockOffset(getBucketBlock(getBucketNo(hash)));
+	}
+
+	/**
+	 * Returns the number of the bucket for the specified hash code.
+	 */
+	private int getBucketNo(int hash) {
+		int bucketNo = Math.floorMod(hash, levelBucketCount);
+		if (bucketNo < bucketCount - levelBucketCount) {
+			// The bucket has already been split in the current round
+			bucketNo = (int) Math.floorMod(hash, 2L * levelBucketCount);
 		}
-		return HEADER_LENGTH + (long) bucketNo * recordSize;
+		return bucketNo;
+	}
+
+	/**
+	 * Returns the block number of the bucket with the specified number.
+	 */
+	private int getBucketBlock(int bucketNo) {
+		int segmentNo = getSegmentNo(bucketNo);
+		return segments[segmentNo] + (bucketNo - getSegmentStart(segmentNo));
+	}
+
+	/**
+	 * Returns the number of the segment that contains the bucket with the specified number.
+	 */
+	private int getSegmentNo(int bucketNo) {
+		return 32 - Integer.numberOfLeadingZeros(bucketNo / initialBucketCount);
+	}
+
+	/**
+	 * Returns the number of the first bucket in the specified segment.
+	 */
+	private int getSegmentStart(int segmentNo) {
+		return segmentNo == 0 ? 0 : initialBucketCount << (segmentNo - 1);
 	}
 
 	/**
-	 * Returns the offset of the overflow bucket with the specified ID.
+	 * Returns the offset of the bucket with the specified block number.
 	 */
-	private long getOverflowBucketOffset(int bucketID) {
-		return HEADER_LENGTH + ((long) bucketCount + (long) bucketID - 1L) * recordSize;
+	private long getBlockOffset(int blockNo) {
+		return HEADER_LENGTH + (blockNo - 1L) * recordSize;
 	}
 
 	/**
-	 * Creates a new overflow bucket and returns its ID.
+	 * Returns the block number of the bucket at the specified offset.
+	 */
+	private int getBlockNo(long offset) {
+		return (int) ((offset - HEADER_LENGTH) / recordSize) + 1;
+	}
+
+	/**
+	 * Reads the bucket at the specified offset for lookups. The bucket is read from the memory mapping of the file if
+	 * possible, or into the supplied buffer otherwise.
+	 * 
+	 * @param buffer The buffer to read the bucket into, or <tt>null</tt> to allocate a new buffer when needed.
+	 * @return A buffer containing the bucket, starting at position <tt>0</tt>. Must not be modified.
+	 */
+	private ByteBuffer readBucket(long bucketOffset, ByteBuffer buffer) throws IOException {
+		if (mappedFile != null) {
+			ByteBuffer bucket = mappedFile.slice(bucketOffset, recordSize);
+			if (bucket != null) {
+				return bucket;
+			}
+		}
+
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate(recordSize);
+		}
+		buffer.clear();
+		nioFile.read(buffer, bucketOffset);
+		return buffer;
+	}
+
+	/**
+	 * Creates a new overflow bucket and returns its block number. Free overflow buckets are reused before the file is
+	 * extended.
 	 */
 	private int createOverflowBucket() throws IOException {
+		if (freeBucket != 0) {
+			int blockNo = freeBucket;
+			long offset = getBlockOffset(blockNo);
+			freeBucket = nioFile.readInt(offset + ITEM_SIZE * bucketSize);
+			writeEmptyBuckets(offset, 1);
+			return blockNo;
+		}
+
 		long offset = nioFile.size();
 		writeEmptyBuckets(offset, 1);
-		return (int) ((offset - HEADER_LENGTH) / recordSize) - bucketCount + 1;
+		return getBlockNo(offset);
+	}
+
+	/**
+	 * Adds an overflow bucket that is no longer used to the list of free overflow buckets.
+	 */
+	private void freeOverflowBucket(int blockNo) throws IOException {
+		ByteBuffer bucket = ByteBuffer.allocate(recordSize);
+		bucket.putInt(ITEM_SIZE * bucketSize, freeBucket);
+		nioFile.write(bucket, getBlockOffset(blockNo));
+		freeBucket = blockNo;
 	}
 
 	private void writeEmptyBuckets(long fileOffset, int bucketCount) throws IOException {
@@ -342,112 +580,186 @@ public class HashFile implements Closeable {
 	}
 
 	/**
-	 * Double the number of buckets in the hash file and rehashes the stored items.
+	 * Adds a bucket to the hash table by splitting the bucket that is next in line in the current round of splits. The
+	 * items in this bucket and its overflow buckets are divided between the bucket and the new bucket; no other buckets
+	 * are read or written. Once all buckets of a round have been split, the number of buckets has doubled and the next
+	 * round starts.
 	 */
-	private void increaseHashTable() throws IOException {
-		long oldTableSize = HEADER_LENGTH + (long) bucketCount * recordSize;
-		long newTableSize = HEADER_LENGTH + (long) bucketCount * recordSize * 2;
-		long oldFileSize = nioFile.size(); // includes overflow buckets
-
-		// Move any overflow buckets out of the way to a temporary file
-		File tmpFile = new File(getFile().getParentFile(), "rehash_" + getFile().getName());
-		try (RandomAccessFile tmpRaf = createEmptyFile(tmpFile)) {
-			FileChannel tmpChannel = tmpRaf.getChannel();
-			// Transfer the overflow buckets to the temp file
-			// FIXME: work around java bug 6431344:
-			// "FileChannel.transferTo() doesn't work if address space runs out"
-			nioFile.transferTo(oldTableSize, oldFileSize - oldTableSize, tmpChannel);
-			// Increase hash table by factor 2
-			writeEmptyBuckets(oldTableSize, bucketCount);
-			bucketCount *= 2;
-			// Discard any remaining overflow buffers
-			nioFile.truncate(newTableSize);
-			ByteBuffer bucket = ByteBuffer.allocate(recordSize);
-			ByteBuffer newBucket = ByteBuffer.allocate(recordSize);
-			// Rehash items in non-overflow buckets, half of these will move to a
-			// new location, but none of them will trigger the creation of new overflow
-			// buckets. Any (now deprecated) references to overflow buckets are
-			// removed too.
-
-			// All items that are moved to a new location end up in one and the same
-			// new and empty bucket. All items are divided between the old and the
-			// new bucket and the changes to the buckets are written to disk only once.
-			for (long bucketOffset = HEADER_LENGTH; bucketOffset < oldTableSize; bucketOffset += recordSize) {
-				nioFile.read(bucket, bucketOffset);
-
-				boolean bucketChanged = false;
-				long newBucketOffset = 0L;
-
-				for (int slotNo = 0; slotNo < bucketSize; slotNo++) {
-					int id = bucket.getInt(ITEM_SIZE * slotNo + 4);
-
-					if (id != 0) {
-						// Slot is not empty
-						int hash = bucket.getInt(ITEM_SIZE * slotNo);
-						long newOffset = getBucketOffset(hash);
-
-						if (newOffset != bucketOffset) {
-							// Move this item to new bucket...
-							newBucket.putInt(hash);
-							newBucket.putInt(id);
-
-							// ...and remove it from the current bucket
-							bucket.putInt(ITEM_SIZE * slotNo, 0);
-							bucket.putInt(ITEM_SIZE * slotNo + 4, 0);
-
-							bucketChanged = true;
-							newBucketOffset = newOffset;
-						}
+	private void splitBucket() throws IOException {
+		int splitBucketNo = bucketCount - levelBucketCount;
+		int newBucketNo = bucketCount;
+		if (newBucketNo == Integer.MAX_VALUE) {
+			// Hash table can't grow any further
+			return;
+		}
+
+		int newBlockNo = allocateBucket(newBucketNo);
+
+		// Read the items of the bucket that is split, along with the block numbers of its overflow buckets
+		int[] items = new int[2 * bucketSize];
+		int itemCount = 0;
+		int[] overflowBlocks = new int[4];
+		int overflowCount = 0;
+
+		ByteBuffer bucket = ByteBuffer.allocate(recordSize);
+		int splitBlockNo = getBucketBlock(splitBucketNo);
+		int blockNo = splitBlockNo;
+		while (blockNo != 0) {
+			bucket.clear();
+			nioFile.read(bucket, getBlockOffset(blockNo));
+
+			for (int slotNo = 0; slotNo < bucketSize; slotNo++) {
+				int id = bucket.getInt(ITEM_SIZE * slotNo + 4);
+				if (id != 0) {
+					if (itemCount == items.length) {
+						items = Arrays.copyOf(items, 2 * items.length);
 					}
+					items[itemCount++] = bucket.getInt(ITEM_SIZE * slotNo);
+					items[itemCount++] = id;
 				}
+			}
 
-				if (bucketChanged) {
-					// Some of the items were moved to the new bucket, write it to
-					// the file
-					newBucket.flip();
-					nioFile.write(newBucket, newBucketOffset);
-					newBucket.clear();
+			blockNo = bucket.getInt(ITEM_SIZE * bucketSize);
+			if (blockNo != 0) {
+				if (overflowCount == overflowBlocks.length) {
+					overflowBlocks = Arrays.copyOf(overflowBlocks, 2 * overflowBlocks.length);
 				}
+				overflowBlocks[overflowCount++] = blockNo;
+			}
+		}
 
-				// Reset overflow ID in the old bucket to 0 if necessary
-				if (bucket.getInt(ITEM_SIZE * bucketSize) != 0) {
-					bucket.putInt(ITEM_SIZE * bucketSize, 0);
-					bucketChanged = true;
-				}
+		// Divide the items between the two buckets, moving the items of the new bucket to the end of the array
+		int stayCount = 0;
+		int[] movedItems = new int[itemCount];
+		int movedCount = 0;
+		for (int i = 0; i < itemCount; i += 2) {
+			if (Math.floorMod(items[i], 2L * levelBucketCount) == splitBucketNo) {
+				items[stayCount++] = items[i];
+				items[stayCount++] = items[i + 1];
+			} else {
+				movedItems[movedCount++] = items[i];
+				movedItems[movedCount++] = items[i + 1];
+			}
+		}
 
-				if (bucketChanged) {
-					// Some of the items were moved to the new bucket or the
-					// overflow ID has been reset; write the bucket back to the file
-					bucket.rewind();
-					nioFile.write(bucket, bucketOffset);
+		// Write both buckets, reusing the overflow buckets of the split bucket
+		int[] nextOverflowBlock = { 0 };
+		writeBucketChain(splitBlockNo, items, stayCount, overflowBlocks, overflowCount, nextOverflowBlock);
+		writeBucketChain(newBlockNo, movedItems, movedCount, overflowBlocks, overflowCount, nextOverflowBlock);
+
+		for (int i = nextOverflowBlock[0]; i < overflowCount; i++) {
+			freeOverflowBucket(overflowBlocks[i]);
+		}
+
+		bucketCount = newBucketNo + 1;
+		if (bucketCount - levelBucketCount == levelBucketCount) {
+			// All buckets of this round have been split
+			levelBucketCount = bucketCount;
+		}
+	}
+
+	/**
+	 * Makes sure that the segment of the bucket with the specified number has been allocated and returns the block
+	 * number of the bucket. A new segment is allocated at the end of the file. Only its last bucket is written, the
+	 * other buckets are written when they are needed.
+	 */
+	private int allocateBucket(int bucketNo) throws IOException {
+		int segmentNo = getSegmentNo(bucketNo);
+		if (segmentNo == segmentCount) {
+			int segmentSize = getSegmentStart(segmentNo);
+			segments[segmentNo] = getBlockNo(nioFile.size());
+			writeEmptyBuckets(getBlockOffset(segments[segmentNo] + segmentSize - 1), 1);
+			segmentCount++;
+		}
+		return getBucketBlock(bucketNo);
+	}
+
+	/**
+	 * Writes the supplied items to the bucket with the specified block number, continuing in overflow buckets when
+	 * needed. The overflow buckets are taken from <tt>overflowBlocks</tt>, starting at the index stored in
+	 * <tt>nextOverflowBlock</tt>, before new ones are created.
+	 */
+	private void writeBucketChain(int blockNo, int[] items, int itemCount, int[] overflowBlocks, int overflowCount,
+			int[] nextOverflowBlock) throws IOException {
+		int i = 0;
+		while (true) {
+			ByteBuffer bucket = ByteBuffer.allocate(recordSize);
+			for (int slotNo = 0; slotNo < bucketSize && i < itemCount; slotNo++) {
+				bucket.putInt(items[i++]);
+				bucket.putInt(items[i++]);
+			}
+
+			int overflowBlockNo = 0;
+			if (i < itemCount) {
+				if (nextOverflowBlock[0] < overflowCount) {
+					overflowBlockNo = overflowBlocks[nextOverflowBlock[0]++];
+				} else {
+					overflowBlockNo = createOverflowBucket();
 				}
+			}
+			bucket.putInt(ITEM_SIZE * bucketSize, overflowBlockNo);
+			bucket.rewind();
+			nioFile.write(bucket, getBlockOffset(blockNo));
 
-				bucket.clear();
-			} // Rehash items in overflow buckets. This might trigger the creation of
-				// new overflow buckets so we can't optimize this in the same way as we
-				// rehash the normal buckets.
-			long tmpFileSize = tmpChannel.size();
-			for (long bucketOffset = 0L; bucketOffset < tmpFileSize; bucketOffset += recordSize) {
-				tmpChannel.read(bucket, bucketOffset);
-
-				for (int slotNo = 0; slotNo < bucketSize; slotNo++) {
-					int id = bucket.getInt(ITEM_SIZE * slotNo + 4);
-
-					if (id != 0) {
-						// Slot is not empty
-						int hash = bucket.getInt(ITEM_SIZE * slotNo);
-						long newBucketOffset = getBucketOffset(hash);
-
-						// Copy this item to its new location
-						storeID(newBucketOffset, hash, id);
+			if (overflowBlockNo == 0) {
+				break;
+			}
+			blockNo = overflowBlockNo;
+		}
+	}
+
+	/**
+	 * Converts the specified hash file to the current file format if it uses file format version 1. The items of the
+	 * old file are copied to a new file, which then replaces the old file.
+	 * 
+	 * @return The specified file.
+	 */
+	private static File upgradeFileFormat(File file) throws IOException {
+		if (file.length() < V1_HEADER_LENGTH) {
+			return file;
+		}
+
+		File tmpFile = new File(file.getParentFile(), "upgrade_" + file.getName());
+
+		try (NioFile oldFile = new NioFile(file)) {
+			ByteBuffer header = ByteBuffer.allocate((int) V1_HEADER_LENGTH);
+			oldFile.read(header, 0L);
+
+			byte[] magicNumber = Arrays.copyOf(header.array(), MAGIC_NUMBER.length);
+			if (!Arrays.equals(MAGIC_NUMBER, magicNumber) || header.get(MAGIC_NUMBER.length) != 1) {
+				// Not a version 1 file, any problems are reported when the file is opened
+				return file;
+			}
+
+			int oldBucketCount = header.getInt(4);
+			int oldBucketSize = header.getInt(8);
+			int oldRecordSize = ITEM_SIZE * oldBucketSize + 4;
+
+			if (tmpFile.exists() && !tmpFile.delete()) {
+				throw new IOException("Failed to delete file " + tmpFile);
+			}
+
+			// The old file consists of normal and overflow buckets only, copy the items of all of them
+			try (HashFile newFile = new HashFile(tmpFile, true, false, oldBucketCount, oldBucketSize)) {
+				ByteBuffer bucket = ByteBuffer.allocate(oldRecordSize);
+				long fileSize = oldFile.size();
+				for (long offset = V1_HEADER_LENGTH; offset + oldRecordSize <= fileSize; offset += oldRecordSize) {
+					bucket.clear();
+					oldFile.read(bucket, offset);
+
+					for (int slotNo = 0; slotNo < oldBucketSize; slotNo++) {
+						int id = bucket.getInt(ITEM_SIZE * slotNo + 4);
+						if (id != 0) {
+							newFile.storeID(bucket.getInt(ITEM_SIZE * slotNo), id);
+						}
 					}
 				}
-
-				bucket.clear();
+				newFile.sync();
 			}
-			// Discard the temp file
 		}
-		tmpFile.delete();
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return file;
 	}
 
 	/*------------------------*
@@ -458,19 +770,24 @@ public class HashFile implements Closeable {
 
 		private final int queryHash;
 
+		/**
+		 * Buffer for buckets that are read through file reads, <tt>null</tt> if the hash file is memory-mapped.
+		 */
+		private final ByteBuffer readBuffer;
+
 		private ByteBuffer bucketBuffer;
 
 		private int slotNo;
 
 		private IDIterator(int hash) throws IOException {
 			queryHash = hash;
-			bucketBuffer = ByteBuffer.allocate(recordSize);
+			readBuffer = mappedFile == null ? ByteBuffer.allocate(recordSize) : null;
 
 			structureLock.readLock().lock();
 			try {
 				// Read initial bucket
 				long bucketOffset = getBucketOffset(hash);
-				nioFile.read(bucketBuffer, bucketOffset);
+				bucketBuffer = readBucket(bucketOffset, readBuffer);
 
 				slotNo = -1;
 			} catch (IOException e) {
@@ -509,9 +826,8 @@ public class HashFile implements Closeable {
 					break;
 				} else {
 					// Continue with overflow bucket
-					bucketBuffer.clear();
-					long bucketOffset = getOverflowBucketOffset(overflowID);
-					nioFile.read(bucketBuffer, bucketOffset);
+					long bucketOffset = getBlockOffset(overflowID);
+					bucketBuffer = readBucket(bucketOffset, readBuffer);
 					slotNo = -1;
 				}
 			}
@@ -10,6 +10,7 @@ package org.eclipse.rdf4j.sail.nativerdf.datastore;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.eclipse.rdf4j.common.io.NioFile;
@@ -54,6 +55,12 @@ public class IDFile implements Closeable {
 
 	private final boolean forceSync;
 
+	/**
+	 * Memory mapping of the file that is used for reading offsets, or <tt>null</tt> if all offsets are read through
+	 * {@link #nioFile}.
+	 */
+	private final MappedFile mappedFile;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -63,6 +70,16 @@ public class IDFile implements Closeable {
 	}
 
 	public IDFile(File file, boolean forceSync) throws IOException {
+		this(file, forceSync, false);
+	}
+
+	/**
+	 * Creates a new IDFile.
+	 * 
+	 * @param memoryMapped Flag indicating whether offsets should be read from a memory mapping of the file instead of
+	 *                     through file reads.
+	 */
+	public IDFile(File file, boolean forceSync, boolean memoryMapped) throws IOException {
 		this.nioFile = new NioFile(file);
 		this.forceSync = forceSync;
 
@@ -89,6 +106,8 @@ public class IDFile implements Closeable {
 					throw new IOException("Unable to read ID file; invalid file format version: " + version);
 				}
 			}
+
+			this.mappedFile = memoryMapped ? new MappedFile(file) : null;
 		} catch (IOException e) {
 			this.nioFile.close();
 			throw e;
@@ -141,6 +160,13 @@ public class IDFile implements Closeable {
 	 */
 	public long getOffset(int id) throws IOException {
 		assert id > 0 : "id must be larger than 0, is: " + id;
+
+		if (mappedFile != null) {
+			ByteBuffer buf = mappedFile.slice(ITEM_SIZE * id, (int) ITEM_SIZE);
+			if (buf != null) {
+				return buf.getLong(0);
+			}
+		}
 		return nioFile.readLong(ITEM_SIZE * id);
 	}
 
@@ -150,6 +176,9 @@ public class IDFile implements Closeable {
 	 * @throws IOException If an I/O error occurred.
 	 */
 	public void clear() throws IOException {
+		if (mappedFile != null) {
+			mappedFile.reset();
+		}
 		nioFile.truncate(HEADER_LENGTH);
 	}
 
@@ -169,6 +198,12 @@ public class IDFile implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
-		nioFile.close();
+		try {
+			if (mappedFile != null) {
+				mappedFile.close();
+			}
+		} finally {
+			nioFile.close();
+		}
 	}
 }
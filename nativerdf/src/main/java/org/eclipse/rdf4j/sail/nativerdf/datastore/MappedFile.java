@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.datastore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only memory mapping of one of the files of a {@link DataStore}. The file is mapped in fixed-size segments so
+ * that files larger than 2GB can be handled. Reads of regions that are not (yet) mapped return <tt>null</tt>, in
+ * which case the caller should read the region through its {@link org.eclipse.rdf4j.common.io.NioFile}.
+ * <p>
+ * The mapping never writes to the file. Writes continue to go through the <tt>NioFile</tt>, which on all supported
+ * platforms shares the OS page cache with the mapping. As appending to a file does not extend existing mappings, the
+ * mapping is extended lazily, once the file has grown by at least {@link #REMAP_THRESHOLD} bytes. Until then, reads of
+ * the newly appended data fall back to the <tt>NioFile</tt>.
+ * <p>
+ * Accessing mapped pages that lie beyond the end of the file is fatal, so {@link #reset()} must be called before the
+ * file is truncated, while no readers are active.
+ */
+class MappedFile implements Closeable {
+
+	/**
+	 * The size of a mapped segment in bytes (64MB).
+	 */
+	static final int SEGMENT_SIZE = 1 << 26;
+
+	/**
+	 * The number of bytes by which the file needs to have grown before the mapping is extended (1MB).
+	 */
+	static final long REMAP_THRESHOLD = 1 << 20;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	/**
+	 * The currently mapped segments, replaced as a whole when the mapping is extended.
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	/**
+	 * The number of bytes covered by {@link #segments}.
+	 */
+	private volatile long mappedSize = 0L;
+
+	public MappedFile(File file) throws IOException {
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+	}
+
+	/**
+	 * Gets a buffer containing the <tt>length</tt> bytes that start at <tt>offset</tt>, without copying them.
+	 *
+	 * @return A buffer with its position at <tt>0</tt> and its limit at <tt>length</tt>, or <tt>null</tt> if the
+	 *         requested region is not mapped or spans more than one segment.
+	 */
+	public ByteBuffer slice(long offset, int length) throws IOException {
+		long end = offset + length;
+		if (end > mappedSize && !remap(end)) {
+			return null;
+		}
+
+		MappedByteBuffer[] segments = this.segments;
+		int segmentNo = (int) (offset / SEGMENT_SIZE);
+		int position = (int) (offset % SEGMENT_SIZE);
+		if (segmentNo >= segments.length || position + length > segments[segmentNo].capacity()) {
+			return null;
+		}
+
+		ByteBuffer buffer = segments[segmentNo].duplicate();
+		buffer.position(position);
+		buffer.limit(position + length);
+		return buffer.slice();
+	}
+
+	private boolean remap(long requiredSize) throws IOException {
+		long fileSize = channel.size();
+		long mappedSize = this.mappedSize;
+		if (requiredSize > fileSize || mappedSize > 0L && fileSize - mappedSize < REMAP_THRESHOLD) {
+			// another thread may have extended the mapping in the meantime
+			return requiredSize <= this.mappedSize;
+		}
+
+		synchronized (this) {
+			MappedByteBuffer[] oldSegments = segments;
+			if (fileSize <= this.mappedSize) {
+				// another thread has already extended the mapping
+				return requiredSize <= this.mappedSize;
+			}
+
+			int segmentCount = (int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			MappedByteBuffer[] newSegments = new MappedByteBuffer[segmentCount];
+
+			for (int i = 0; i < segmentCount; i++) {
+				long position = (long) i * SEGMENT_SIZE;
+				long size = Math.min(SEGMENT_SIZE, fileSize - position);
+
+				if (i < oldSegments.length && oldSegments[i].capacity() == size) {
+					// Segment is unchanged, reuse the existing mapping
+					newSegments[i] = oldSegments[i];
+				} else {
+					newSegments[i] = channel.map(MapMode.READ_ONLY, position, size);
+				}
+			}
+
+			segments = newSegments;
+			this.mappedSize = fileSize;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Discards the current mapping. Must be called before the file is truncated.
+	 */
+	public synchronized void reset() {
+		mappedSize = 0L;
+		segments = new MappedByteBuffer[0];
+	}
+
+	@Override
+	public void close() throws IOException {
+		reset();
+		raf.close();
+	}
+}
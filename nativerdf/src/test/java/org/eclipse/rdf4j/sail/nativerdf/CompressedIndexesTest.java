@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import org.eclipse.rdf4j.common.io.ByteArrayUtil;
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.sail.nativerdf.btree.RecordIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests conversion of triple indexes between the uncompressed and the compressed node format.
+ */
+public class CompressedIndexesTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("nativerdf");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testConvertIndexes() throws Exception {
+		TripleStore store = new TripleStore(dir, "spoc,posc");
+		store.startTransaction();
+		for (int i = 1; i <= 1000; i++) {
+			store.storeTriple(i, i % 10 + 1, i % 100 + 1, i % 3);
+		}
+		store.commit();
+		store.close();
+		assertEquals(1, getFileFormatVersion("spoc"));
+
+		// reopening with compressed indexes converts the existing indexes
+		store = new TripleStore(dir, "spoc,posc", false, false, true);
+		assertEquals(2, getFileFormatVersion("spoc"));
+		assertEquals(2, getFileFormatVersion("posc"));
+		assertTriples(store);
+
+		// added indexes use the compressed format as well
+		store.close();
+		store = new TripleStore(dir, "spoc,posc,opsc", false, false, true);
+		assertEquals(2, getFileFormatVersion("opsc"));
+		assertTriples(store);
+
+		// and back
+		store.close();
+		store = new TripleStore(dir, null);
+		assertEquals(1, getFileFormatVersion("spoc"));
+		assertEquals(1, getFileFormatVersion("opsc"));
+		assertTriples(store);
+		store.close();
+	}
+
+	private void assertTriples(TripleStore store) throws Exception {
+		int count = 0;
+		try (RecordIterator iter = store.getTriples(-1, 3, -1, -1)) {
+			byte[] triple;
+			while ((triple = iter.next()) != null) {
+				assertEquals(3, ByteArrayUtil.getInt(triple, TripleStore.PRED_IDX));
+				count++;
+			}
+		}
+		assertEquals(100, count);
+
+		try (RecordIterator iter = store.getTriples(42, 3, 43, 0)) {
+			assertNotNull(iter.next());
+			assertNull(iter.next());
+		}
+	}
+
+	private int getFileFormatVersion(String fieldSeq) throws Exception {
+		try (InputStream in = new FileInputStream(new File(dir, "triples-" + fieldSeq + ".dat"))) {
+			byte[] header = new byte[4];
+			assertEquals(4, in.read(header));
+			return header[3];
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+/**
+ * Tests the eviction policy and counters of {@link ConcurrentCache}.
+ */
+public class ConcurrentCacheTest {
+
+	@Test
+	public void testCapacity() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(i, "value" + i);
+		}
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(100, statistics.getSize());
+		assertEquals(100, statistics.getWeightedSize());
+		assertEquals(900, statistics.getEvictionCount());
+	}
+
+	@Test
+	public void testWeightedCapacity() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(1000, (key, value) -> value.length());
+		for (int i = 0; i < 1000; i++) {
+			cache.put(i, i % 2 == 0 ? "abcdefghij" : "abcdefghijklmnopqrst");
+		}
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertTrue(statistics.getWeightedSize() <= 1000);
+		assertTrue(statistics.getSize() >= 50);
+	}
+
+	@Test
+	public void testScanResistance() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(100);
+
+		// a working set of frequently used entries
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++) {
+				if (cache.get(i) == null) {
+					cache.put(i, "hot" + i);
+				}
+			}
+		}
+
+		// a scan over many entries that are used only once
+		for (int i = 1000; i < 11000; i++) {
+			if (cache.get(i) == null) {
+				cache.put(i, "cold" + i);
+			}
+		}
+
+		int retained = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.get(i) != null) {
+				retained++;
+			}
+		}
+		assertTrue("hot entries were evicted by scan: " + retained, retained >= 45);
+	}
+
+	@Test
+	public void testStatistics() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(10);
+		cache.put(1, "one");
+
+		assertNotNull(cache.get(1));
+		assertNotNull(cache.get(1));
+		assertNull(cache.get(2));
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(2, statistics.getHitCount());
+		assertEquals(1, statistics.getMissCount());
+		assertEquals(2.0 / 3.0, statistics.getHitRate(), 0.0001);
+		assertEquals(0, statistics.getEvictionCount());
+
+		cache.clear();
+		assertEquals(0, cache.getStatistics().getSize());
+		assertEquals(0, cache.getStatistics().getWeightedSize());
+	}
+
+	@Test
+	public void testVetoedRemoval() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(10) {
+
+			@Override
+			protected boolean onEntryRemoval(Integer key) {
+				return key >= 5;
+			}
+		};
+		for (int i = 0; i < 100; i++) {
+			cache.put(i, "value" + i);
+		}
+
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(cache.get(i));
+		}
+		assertEquals(10, cache.getStatistics().getSize());
+	}
+
+	@Test
+	public void testSetCapacity() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(100);
+		for (int i = 0; i < 100; i++) {
+			cache.put(i, "value" + i);
+		}
+
+		cache.setCapacity(10);
+		assertEquals(10, cache.getStatistics().getSize());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(256);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < 100000; i++) {
+						int key = random.nextInt(1000);
+						Integer value = cache.get(key);
+						if (value == null) {
+							cache.put(key, key);
+						} else {
+							assertEquals(key, value.intValue());
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(400000, statistics.getHitCount() + statistics.getMissCount());
+		assertTrue(statistics.getSize() <= 256);
+		assertEquals(statistics.getSize(), statistics.getWeightedSize());
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.QueryRoot;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EstimatedJoin;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.QueryJoinOptimizer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the join orders that the {@link QueryJoinOptimizer} enumerates with {@link NativeEvaluationStatistics}.
+ */
+public class NativeEvaluationStatisticsTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private File dataDir;
+
+	private ValueStore valueStore;
+
+	private TripleStore tripleStore;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = FileUtil.createTempDir("nativestore");
+		valueStore = new ValueStore(dataDir);
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		try {
+			tripleStore.close();
+			valueStore.close();
+		} finally {
+			FileUtil.deleteDir(dataDir);
+		}
+	}
+
+	@Test
+	public void testStarJoinOrder() throws Exception {
+		IRI a = vf.createIRI(EX_NS, "a");
+		IRI b = vf.createIRI(EX_NS, "b");
+		IRI c = vf.createIRI(EX_NS, "c");
+
+		// 1000 subjects have both a and b, 1000 subjects have c, and only 10 of them also have a and b
+		tripleStore.startTransaction();
+		for (int i = 0; i < 1000; i++) {
+			storeTriple(vf.createIRI(EX_NS, "x" + i), a, i);
+			storeTriple(vf.createIRI(EX_NS, "x" + i), b, i);
+			storeTriple(vf.createIRI(EX_NS, "x" + (990 + i)), c, i);
+		}
+		tripleStore.commit();
+		assertTrue(tripleStore.getStatistics().isValid());
+
+		// ?s a ?x . ?s b ?y . ?s c ?z
+		StatementPattern cPattern = new StatementPattern(new Var("s"), new Var("c2", c), new Var("z"));
+		TupleExpr query = new Join(new Join(new StatementPattern(new Var("s"), new Var("c0", a), new Var("x")),
+				new StatementPattern(new Var("s"), new Var("c1", b), new Var("y"))), cPattern);
+
+		QueryRoot root = new QueryRoot(query);
+		new QueryJoinOptimizer(new NativeEvaluationStatistics(valueStore, tripleStore)).optimize(root, null, null);
+
+		EstimatedJoin join = (EstimatedJoin) root.getArg();
+		assertEquals(10, join.getResultSizeEstimate(), 0.001);
+
+		// the pattern with c is part of the first join, which has 10 rather than 1000 results
+		List<TupleExpr> evaluationOrder = new ArrayList<>();
+		getEvaluationOrder(join, evaluationOrder);
+		assertTrue(evaluationOrder.subList(0, 2).contains(cPattern));
+		assertEquals(10, ((EstimatedJoin) join.getLeftArg()).getResultSizeEstimate(), 0.001);
+	}
+
+	private void storeTriple(IRI subj, IRI pred, int obj) throws Exception {
+		tripleStore.storeTriple(valueStore.storeValue(subj), valueStore.storeValue(pred),
+				valueStore.storeValue(vf.createLiteral(obj)), 0);
+	}
+
+	private void getEvaluationOrder(TupleExpr expr, List<TupleExpr> order) {
+		if (expr instanceof Join) {
+			getEvaluationOrder(((Join) expr).getLeftArg(), order);
+			getEvaluationOrder(((Join) expr).getRightArg(), order);
+		} else {
+			order.add(expr);
+		}
+	}
+}
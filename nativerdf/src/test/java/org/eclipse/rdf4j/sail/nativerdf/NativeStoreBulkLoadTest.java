@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.sail.SailConnection;
+import org.eclipse.rdf4j.sail.SailException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link NativeStore#bulkLoad(java.util.Iterator)}, which replaces the index files and therefore must not run
+ * while connections to the store are open.
+ */
+public class NativeStoreBulkLoadTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private NativeStore store;
+
+	private ValueFactory vf;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new NativeStore(tempFolder.newFolder("dbmodel"), "spoc,posc");
+		store.init();
+		vf = store.getValueFactory();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.shutDown();
+	}
+
+	@Test
+	public void testBulkLoad() throws Exception {
+		assertEquals(100, store.bulkLoad(createStatements(0, 100).iterator()));
+		// statements that are already present are not counted
+		assertEquals(50, store.bulkLoad(createStatements(50, 150).iterator()));
+
+		try (SailConnection con = store.getConnection()) {
+			assertEquals(150, count(con));
+		}
+	}
+
+	@Test
+	public void testBulkLoadRefusedWhileConnectionOpen() throws Exception {
+		store.bulkLoad(createStatements(0, 100).iterator());
+
+		SailConnection con = store.getConnection();
+		try (CloseableIteration<? extends Statement, SailException> iter = con.getStatements(null, null, null,
+				false)) {
+			assertTrue(iter.hasNext());
+			try {
+				store.bulkLoad(createStatements(100, 200).iterator());
+				fail("bulk load replaced the index files while a connection was reading them");
+			} catch (SailException e) {
+				// expected
+			}
+			// the index files are still in place
+			int count = 0;
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+			assertEquals(100, count);
+		} finally {
+			con.close();
+		}
+
+		assertEquals(100, store.bulkLoad(createStatements(100, 200).iterator()));
+		try (SailConnection con2 = store.getConnection()) {
+			assertEquals(200, count(con2));
+			assertFalse(con2.hasStatement(vf.createIRI("urn:s200"), null, null, false));
+		}
+	}
+
+	private List<Statement> createStatements(int from, int to) {
+		IRI p = vf.createIRI("urn:p");
+		List<Statement> statements = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			statements.add(vf.createStatement(vf.createIRI("urn:s" + i), p, vf.createLiteral(i)));
+		}
+		return statements;
+	}
+
+	private int count(SailConnection con) throws SailException {
+		int count = 0;
+		try (CloseableIteration<? extends Statement, SailException> iter = con.getStatements(null, null, null,
+				false)) {
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+		}
+		return count;
+	}
+}
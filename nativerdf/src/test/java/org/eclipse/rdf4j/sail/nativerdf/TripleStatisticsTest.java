@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.sail.nativerdf.TripleStatistics.PredicateStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the maintenance of {@link TripleStatistics} by {@link TripleStore}.
+ */
+public class TripleStatisticsTest {
+
+	private static final int PREDICATE_COUNT = 5;
+
+	private File dataDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = FileUtil.createTempDir("nativestore");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			tripleStore.startTransaction();
+			// two subjects with p1 and p2, one of which has two p2 triples
+			tripleStore.storeTriple(1, 101, 201, 0);
+			tripleStore.storeTriple(1, 102, 202, 0);
+			tripleStore.storeTriple(2, 101, 201, 0);
+			tripleStore.storeTriple(2, 102, 202, 0);
+			tripleStore.storeTriple(2, 102, 203, 0);
+			// one subject with p1 only, in two contexts
+			tripleStore.storeTriple(3, 101, 204, 0);
+			tripleStore.storeTriple(3, 101, 204, 5);
+			tripleStore.commit();
+
+			TripleStatistics statistics = tripleStore.getStatistics();
+			assertTrue(statistics.isValid());
+			assertEquals(7, statistics.getTripleCount());
+			assertEquals(3, statistics.getSubjectCount());
+
+			PredicateStatistics p1 = statistics.getPredicateStatistics(101);
+			assertEquals(4, p1.getTripleCount());
+			assertEquals(3, p1.getSubjectCount());
+			assertEquals(2, p1.getObjectCount());
+
+			PredicateStatistics p2 = statistics.getPredicateStatistics(102);
+			assertEquals(3, p2.getTripleCount());
+			assertEquals(2, p2.getSubjectCount());
+			assertEquals(2, p2.getObjectCount());
+
+			assertEquals(2, statistics.getCharacteristicSetCount());
+			assertEquals(3.0, statistics.getStarCardinality(new int[] { 101, 102 }), 0.0001);
+			assertEquals(0.0, statistics.getStarCardinality(new int[] { 101, 103 }), 0.0001);
+
+			tripleStore.startTransaction();
+			tripleStore.removeTriplesByContext(-1, 102, -1, -1);
+			tripleStore.commit();
+
+			assertNull(statistics.getPredicateStatistics(102));
+			assertEquals(4, statistics.getTripleCount());
+			assertEquals(1, statistics.getCharacteristicSetCount());
+		} finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testIncrementalUpdates() throws Exception {
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			Random random = new Random(42);
+			for (int txn = 0; txn < 20; txn++) {
+				tripleStore.startTransaction();
+				for (int i = 0; i < 200; i++) {
+					int subj = 1 + random.nextInt(100);
+					int pred = 1001 + random.nextInt(PREDICATE_COUNT);
+					int obj = 2001 + random.nextInt(50);
+					if (random.nextInt(4) == 0) {
+						tripleStore.removeTriplesByContext(subj, pred, -1, -1);
+					} else {
+						tripleStore.storeTriple(subj, pred, obj, random.nextInt(3), random.nextBoolean());
+					}
+				}
+				if (txn % 5 == 4) {
+					tripleStore.rollback();
+				} else {
+					tripleStore.commit();
+				}
+
+				List<Object> updated = getSummary(tripleStore.getStatistics());
+				tripleStore.updateStatistics();
+				List<Object> recalculated = getSummary(tripleStore.getStatistics());
+				assertEquals("statistics differ after transaction " + txn, recalculated, updated);
+			}
+		} finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		File statisticsFile = new File(dataDir, "triples.stats");
+
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			tripleStore.startTransaction();
+			tripleStore.storeTriple(1, 2, 3, 0);
+			tripleStore.commit();
+		} finally {
+			tripleStore.close();
+		}
+		assertTrue(statisticsFile.exists());
+
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			assertTrue(tripleStore.getStatistics().isValid());
+			assertEquals(1, tripleStore.getStatistics().getTripleCount());
+
+			tripleStore.startTransaction();
+			tripleStore.storeTriple(4, 2, 3, 0);
+			tripleStore.commit();
+
+			// a crash from here on must not leave outdated statistics
+			assertFalse(statisticsFile.exists());
+		} finally {
+			tripleStore.close();
+		}
+
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			assertEquals(2, tripleStore.getStatistics().getTripleCount());
+			assertEquals(1, tripleStore.getStatistics().getPredicateStatistics(2).getObjectCount());
+		} finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testMissingStatistics() throws Exception {
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			tripleStore.startTransaction();
+			tripleStore.storeTriple(1, 2, 3, 0);
+			tripleStore.commit();
+		} finally {
+			tripleStore.close();
+		}
+		assertTrue(new File(dataDir, "triples.stats").delete());
+
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			assertFalse(tripleStore.getStatistics().isValid());
+
+			tripleStore.updateStatistics();
+			assertTrue(tripleStore.getStatistics().isValid());
+			assertEquals(1, tripleStore.getStatistics().getTripleCount());
+		} finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testUnsupportedIndexes() throws Exception {
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc");
+		try {
+			tripleStore.startTransaction();
+			tripleStore.storeTriple(1, 2, 3, 0);
+			tripleStore.storeTriple(1, 2, 4, 0);
+			tripleStore.commit();
+
+			// no index to look up changed predicate-object pairs
+			assertFalse(tripleStore.getStatistics().isValid());
+
+			tripleStore.updateStatistics();
+			assertTrue(tripleStore.getStatistics().isValid());
+			assertEquals(2, tripleStore.getStatistics().getPredicateStatistics(2).getObjectCount());
+		} finally {
+			tripleStore.close();
+		}
+	}
+
+	private static List<Object> getSummary(TripleStatistics statistics) {
+		List<Object> summary = new ArrayList<>();
+		summary.add(statistics.isValid());
+		summary.add(statistics.getTripleCount());
+		summary.add(statistics.getSubjectCount());
+		summary.add(statistics.getCharacteristicSetCount());
+		for (int pred = 1001; pred <= 1000 + PREDICATE_COUNT; pred++) {
+			PredicateStatistics predStatistics = statistics.getPredicateStatistics(pred);
+			if (predStatistics != null) {
+				summary.add(predStatistics.getTripleCount());
+				summary.add(predStatistics.getSubjectCount());
+				summary.add(predStatistics.getObjectCount());
+			}
+			summary.add(statistics.getStarCardinality(new int[] { 1001, pred }));
+		}
+		return summary;
+	}
+}
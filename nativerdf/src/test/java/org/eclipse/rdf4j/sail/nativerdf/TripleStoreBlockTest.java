@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.sail.nativerdf.btree.RecordIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TripleStore#storeTriples(int[], boolean)} and {@link TripleStore#removeTriplesByContext(int[], boolean)}.
+ */
+public class TripleStoreBlockTest {
+
+	private File dir;
+
+	private TripleStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("nativerdf");
+		store = new TripleStore(dir, "spoc,posc,cspo");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.close();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testStoreTriples() throws Exception {
+		store.startTransaction();
+		store.storeTriple(1, 2, 3, 0);
+		boolean[] added = store.storeTriples(new int[] { 1, 2, 3, 0, 4, 5, 6, 7, 4, 5, 6, 7, 1, 2, 3, 7 }, true);
+		store.commit();
+
+		// the first triple already exists and the third one is a duplicate of the second
+		assertFalse(added[0]);
+		assertTrue(added[1]);
+		assertFalse(added[2]);
+		assertTrue(added[3]);
+
+		assertEquals(3, count(-1, -1, -1, -1));
+		assertEquals(2, count(-1, -1, -1, 7));
+		assertEquals(1, count(-1, 5, -1, -1));
+	}
+
+	@Test
+	public void testRemoveTriples() throws Exception {
+		store.startTransaction();
+		for (int i = 1; i <= 100; i++) {
+			store.storeTriple(i, i % 10 + 1, i % 20 + 1, i % 3);
+		}
+		store.storeTriple(200, 1, 1, 0, false);
+		store.commit();
+
+		int[] quads = new int[4 * 12];
+		for (int i = 0; i < 10; i++) {
+			int subj = 10 * i + 1;
+			quads[4 * i] = subj;
+			quads[4 * i + 1] = subj % 10 + 1;
+			quads[4 * i + 2] = subj % 20 + 1;
+			quads[4 * i + 3] = subj % 3;
+		}
+		// a duplicate and an inferred triple, which is not removed
+		System.arraycopy(quads, 0, quads, 40, 4);
+		System.arraycopy(new int[] { 200, 1, 1, 0 }, 0, quads, 44, 4);
+
+		store.startTransaction();
+		Map<Integer, Long> removed = store.removeTriplesByContext(quads, true);
+		store.commit();
+
+		assertEquals(10, removed.values().stream().mapToLong(Long::longValue).sum());
+		assertEquals(91, count(-1, -1, -1, -1));
+		assertEquals(0, count(-1, 2, -1, -1));
+		assertEquals(91, count(-1, -1, -1, 0) + count(-1, -1, -1, 1) + count(-1, -1, -1, 2));
+	}
+
+	private int count(int subj, int pred, int obj, int context) throws Exception {
+		int count = 0;
+		try (RecordIterator iter = store.getTriples(subj, pred, obj, context)) {
+			while (iter.next() != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.sail.nativerdf.TxnStatusFile.TxnStatus;
+import org.eclipse.rdf4j.sail.nativerdf.btree.RecordIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the concurrent commit and rollback of the indexes of a {@link TripleStore}.
+ */
+public class TripleStoreIndexUpdateTest {
+
+	private static final String INDEXES = "spoc,posc,cspo";
+
+	private File dataDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = FileUtil.createTempDir("nativestore");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testFailedCommitWaitsForOtherIndexes() throws Exception {
+		Set<String> committed = ConcurrentHashMap.newKeySet();
+		TripleStore tripleStore = new FailingTripleStore(dataDir, "posc", committed);
+		try {
+			tripleStore.startTransaction();
+			storeTriples(tripleStore);
+			try {
+				tripleStore.commit();
+				fail("commit should have failed");
+			} catch (IOException e) {
+				assertEquals("posc index failed", e.getMessage());
+			}
+
+			// the other indexes were committed before the exception was thrown
+			assertEquals(2, committed.size());
+			assertTrue(committed.contains("spoc"));
+			assertTrue(committed.contains("cspo"));
+		} finally {
+			tripleStore.close();
+		}
+
+		TxnStatusFile txnStatusFile = new TxnStatusFile(dataDir);
+		try {
+			assertEquals(TxnStatus.COMMITTING, txnStatusFile.getTxnStatus());
+		} finally {
+			txnStatusFile.close();
+		}
+	}
+
+	@Test
+	public void testRecoveryAfterFailedCommit() throws Exception {
+		TripleStore tripleStore = new FailingTripleStore(dataDir, "posc", ConcurrentHashMap.newKeySet());
+		try {
+			tripleStore.startTransaction();
+			storeTriples(tripleStore);
+			try {
+				tripleStore.commit();
+				fail("commit should have failed");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			tripleStore.close();
+		}
+
+		// the uncompleted commit is completed on restart
+		tripleStore = new TripleStore(dataDir, INDEXES);
+		try {
+			assertEquals(100, count(tripleStore, -1, -1, -1, -1));
+			assertEquals(10, count(tripleStore, -1, 2, -1, -1));
+			assertEquals(33, count(tripleStore, -1, -1, -1, 0));
+			assertCommitted(tripleStore);
+		} finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testRollback() throws Exception {
+		TripleStore tripleStore = new TripleStore(dataDir, INDEXES);
+		try {
+			tripleStore.startTransaction();
+			storeTriples(tripleStore);
+			tripleStore.commit();
+
+			tripleStore.startTransaction();
+			for (int i = 101; i <= 200; i++) {
+				tripleStore.storeTriple(i, i % 10 + 1, i % 20 + 1, i % 3);
+			}
+			tripleStore.removeTriplesByContext(-1, 2, -1, -1);
+			tripleStore.rollback();
+
+			assertEquals(100, count(tripleStore, -1, -1, -1, -1));
+			assertEquals(10, count(tripleStore, -1, 2, -1, -1));
+			assertEquals(33, count(tripleStore, -1, -1, -1, 0));
+			assertCommitted(tripleStore);
+		} finally {
+			tripleStore.close();
+		}
+
+		TxnStatusFile txnStatusFile = new TxnStatusFile(dataDir);
+		try {
+			assertEquals(TxnStatus.NONE, txnStatusFile.getTxnStatus());
+		} finally {
+			txnStatusFile.close();
+		}
+	}
+
+	private void storeTriples(TripleStore tripleStore) throws IOException {
+		for (int i = 1; i <= 100; i++) {
+			tripleStore.storeTriple(i, i % 10 + 1, i % 20 + 1, i % 3);
+		}
+	}
+
+	/**
+	 * Checks that no transaction flags are left in any of the indexes.
+	 */
+	private void assertCommitted(TripleStore tripleStore) throws IOException {
+		// these patterns are served by the spoc, posc and cspo index respectively
+		int[][] patterns = { { 1, -1, -1, -1 }, { -1, 2, -1, -1 }, { -1, -1, -1, 0 } };
+		for (int[] pattern : patterns) {
+			try (RecordIterator iter = tripleStore.getTriples(pattern[0], pattern[1], pattern[2], pattern[3], true)) {
+				byte[] data;
+				while ((data = iter.next()) != null) {
+					assertEquals(TripleStore.EXPLICIT_FLAG, data[TripleStore.FLAG_IDX]);
+				}
+			}
+		}
+	}
+
+	private int count(TripleStore tripleStore, int subj, int pred, int obj, int context) throws IOException {
+		int count = 0;
+		try (RecordIterator iter = tripleStore.getTriples(subj, pred, obj, context)) {
+			while (iter.next() != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * A triple store of which the commit of one index fails, while the commit of the other indexes is delayed.
+	 */
+	private static class FailingTripleStore extends TripleStore {
+
+		private final String failingIndex;
+
+		private final Set<String> committed;
+
+		FailingTripleStore(File dir, String failingIndex, Set<String> committed) throws IOException {
+			super(dir, INDEXES);
+			this.failingIndex = failingIndex;
+			this.committed = committed;
+		}
+
+		@Override
+		void commit(TripleIndex index, boolean validCache) throws IOException {
+			if (failingIndex.equals(index.toString())) {
+				throw new IOException(failingIndex + " index failed");
+			}
+
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.commit(index, validCache);
+			committed.add(index.toString());
+		}
+	}
+}
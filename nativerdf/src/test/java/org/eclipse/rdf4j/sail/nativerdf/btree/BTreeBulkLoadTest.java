@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.rdf4j.common.io.ByteArrayUtil;
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests bottom-up loading of a {@link BTree} through {@link BTree#bulkLoad(RecordIterator, float)}.
+ */
+public class BTreeBulkLoadTest {
+
+	private File dir;
+
+	private BTree btree;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("btree");
+		btree = createBTree();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		btree.delete();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testBulkLoadSizes() throws Exception {
+		// covers single-node trees as well as trees whose right-most nodes need rebalancing
+		for (int size = 0; size <= 300; size++) {
+			btree.clear();
+			assertEquals(size, btree.bulkLoad(new SequenceIterator(size), 1.0f));
+			assertContents(size);
+		}
+	}
+
+	@Test
+	public void testModifyAfterBulkLoad() throws Exception {
+		btree.bulkLoad(new SequenceIterator(1000), 1.0f);
+		btree.close();
+
+		btree = createBTree();
+		assertContents(1000);
+
+		// removing all values verifies that all nodes satisfy the minimum fill requirements
+		for (int i = 0; i < 1000; i += 2) {
+			btree.remove(value(i));
+		}
+		for (int i = 0; i < 1000; i++) {
+			if (i % 2 == 0) {
+				assertNull(btree.get(value(i)));
+			} else {
+				assertArrayEquals(value(i), btree.get(value(i)));
+			}
+		}
+		for (int i = 1; i < 1000; i += 2) {
+			btree.remove(value(i));
+		}
+		assertContents(0);
+
+		btree.insert(value(42));
+		assertArrayEquals(value(42), btree.get(value(42)));
+	}
+
+	@Test
+	public void testHalfFilledNodes() throws Exception {
+		btree.bulkLoad(new SequenceIterator(1000), 0.5f);
+		assertContents(1000);
+
+		for (int i = 0; i < 1000; i++) {
+			btree.insert(value(i + 1000));
+		}
+		assertContents(2000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsortedValues() throws Exception {
+		btree.bulkLoad(new RecordIterator() {
+
+			private int count = 0;
+
+			@Override
+			public byte[] next() {
+				return count < 2 ? value(1 - count++) : null;
+			}
+
+			@Override
+			public void set(byte[] record) {
+			}
+
+			@Override
+			public void close() {
+			}
+		}, 1.0f);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNonEmptyTree() throws Exception {
+		btree.insert(value(1));
+		btree.bulkLoad(new SequenceIterator(10), 1.0f);
+	}
+
+	private BTree createBTree() throws IOException {
+		// Small nodes result in deep trees for small numbers of values
+		return new BTree(dir, "test", 64, 4, new DefaultRecordComparator());
+	}
+
+	private void assertContents(int size) throws IOException {
+		try (RecordIterator iter = btree.iterateAll()) {
+			for (int i = 0; i < size; i++) {
+				assertArrayEquals(value(i), iter.next());
+			}
+			assertNull(iter.next());
+		}
+		for (int i = 0; i < size; i++) {
+			assertArrayEquals(value(i), btree.get(value(i)));
+		}
+		assertNull(btree.get(value(size)));
+	}
+
+	private static byte[] value(int i) {
+		byte[] value = new byte[4];
+		ByteArrayUtil.putInt(i, value, 0);
+		return value;
+	}
+
+	private static class SequenceIterator implements RecordIterator {
+
+		private final int size;
+
+		private int next = 0;
+
+		SequenceIterator(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public byte[] next() {
+			return next < size ? value(next++) : null;
+		}
+
+		@Override
+		public void set(byte[] record) {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
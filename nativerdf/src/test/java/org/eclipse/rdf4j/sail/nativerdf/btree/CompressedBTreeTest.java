@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.rdf4j.common.io.ByteArrayUtil;
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link BTree}s that store their nodes in the compressed node format.
+ */
+public class CompressedBTreeTest {
+
+	private File dir;
+
+	private BTree btree;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("btree");
+		btree = createBTree(true, false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		btree.delete();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testRandomInsertAndRemove() throws Exception {
+		List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			values.add(i * 7);
+		}
+		Collections.shuffle(values, new Random(42));
+
+		for (int value : values) {
+			btree.insert(value(value));
+		}
+		assertContents(0, 2000);
+
+		btree.close();
+		btree = createBTree(true, false);
+		assertTrue(btree.isCompressed());
+		assertContents(0, 2000);
+
+		// removing values in random order exercises rotations and merges of leaf nodes
+		for (int value : values.subList(0, 1000)) {
+			assertArrayEquals(value(value), btree.remove(value(value)));
+		}
+		for (int value : values.subList(0, 1000)) {
+			assertNull(btree.get(value(value)));
+		}
+		for (int value : values.subList(1000, 2000)) {
+			assertArrayEquals(value(value), btree.get(value(value)));
+		}
+		for (int value : values.subList(1000, 2000)) {
+			btree.remove(value(value));
+		}
+		try (RecordIterator iter = btree.iterateAll()) {
+			assertNull(iter.next());
+		}
+	}
+
+	@Test
+	public void testBulkLoad() throws Exception {
+		assertEquals(2000, btree.bulkLoad(new SequenceIterator(2000), 1.0f));
+		assertContents(0, 2000);
+
+		for (int i = 0; i < 2000; i += 3) {
+			btree.remove(value(i * 7));
+		}
+		for (int i = 0; i < 2000; i++) {
+			if (i % 3 == 0) {
+				assertNull(btree.get(value(i * 7)));
+			} else {
+				assertArrayEquals(value(i * 7), btree.get(value(i * 7)));
+			}
+		}
+	}
+
+	@Test
+	public void testMemoryMapped() throws Exception {
+		btree.bulkLoad(new SequenceIterator(2000), 1.0f);
+		btree.close();
+
+		btree = createBTree(true, true);
+		assertContents(0, 2000);
+		assertTrue(btree.getValueCountEstimate(value(0), value(7000)) > 0);
+	}
+
+	@Test
+	public void testExistingFormatIsKept() throws Exception {
+		btree.insert(value(1));
+		btree.close();
+
+		btree = createBTree(false, false);
+		assertTrue(btree.isCompressed());
+		assertArrayEquals(value(1), btree.get(value(1)));
+
+		btree.delete();
+		btree = createBTree(false, false);
+		assertFalse(btree.isCompressed());
+	}
+
+	@Test
+	public void testFileSize() throws Exception {
+		btree.bulkLoad(new SequenceIterator(2000), 1.0f);
+		btree.sync();
+
+		BTree uncompressed = new BTree(dir, "uncompressed", 64, 4, new DefaultRecordComparator());
+		try {
+			uncompressed.bulkLoad(new SequenceIterator(2000), 1.0f);
+			uncompressed.sync();
+			assertTrue(btree.getFile().length() * 2 < uncompressed.getFile().length());
+		} finally {
+			uncompressed.delete();
+		}
+	}
+
+	private BTree createBTree(boolean compressed, boolean memoryMapped) throws IOException {
+		// Small nodes result in deep trees for small numbers of values
+		return new BTree(dir, "test", 64, 4, new DefaultRecordComparator(), false, memoryMapped, compressed);
+	}
+
+	private void assertContents(int first, int size) throws IOException {
+		try (RecordIterator iter = btree.iterateAll()) {
+			for (int i = first; i < size; i++) {
+				assertArrayEquals(value(i * 7), iter.next());
+			}
+			assertNull(iter.next());
+		}
+		for (int i = first; i < size; i++) {
+			assertArrayEquals(value(i * 7), btree.get(value(i * 7)));
+			assertNull(btree.get(value(i * 7 + 1)));
+		}
+	}
+
+	private static byte[] value(int i) {
+		byte[] value = new byte[4];
+		ByteArrayUtil.putInt(i, value, 0);
+		return value;
+	}
+
+	private static class SequenceIterator implements RecordIterator {
+
+		private final int size;
+
+		private int next = 0;
+
+		SequenceIterator(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public byte[] next() {
+			return next < size ? value(7 * next++) : null;
+		}
+
+		@Override
+		public void set(byte[] record) {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the optimistic, memory-mapped read path of {@link BTree}.
+ */
+public class MemoryMappedBTreeTest {
+
+	private File dir;
+
+	private BTree btree;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("btree");
+		btree = new BTree(dir, "test", 64, 1, new DefaultRecordComparator(), false, true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		btree.delete();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testGetAfterInsertAndRemove() throws Exception {
+		for (int i = 0; i < 256; i += 2) {
+			btree.insert(value(i));
+		}
+
+		for (int i = 0; i < 256; i++) {
+			if (i % 2 == 0) {
+				assertArrayEquals(value(i), btree.get(value(i)));
+			} else {
+				assertNull(btree.get(value(i)));
+			}
+		}
+
+		for (int i = 0; i < 128; i += 2) {
+			btree.remove(value(i));
+		}
+
+		for (int i = 0; i < 256; i += 2) {
+			if (i < 128) {
+				assertNull(btree.get(value(i)));
+			} else {
+				assertArrayEquals(value(i), btree.get(value(i)));
+			}
+		}
+	}
+
+	@Test
+	public void testGetFromFlushedNodes() throws Exception {
+		for (int i = 0; i < 256; i++) {
+			btree.insert(value(i));
+		}
+		btree.close();
+
+		btree = new BTree(dir, "test", 64, 1, new DefaultRecordComparator(), false, true);
+		for (int i = 0; i < 256; i++) {
+			assertArrayEquals(value(i), btree.get(value(i)));
+		}
+		assertTrue(btree.getValueCountEstimate(value(0), value(255)) > 0);
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		for (int i = 0; i < 256; i++) {
+			btree.insert(value(i));
+		}
+		btree.clear();
+
+		assertNull(btree.get(value(42)));
+		assertEquals(0, btree.getValueCountEstimate(value(0), value(255)));
+
+		btree.insert(value(42));
+		assertArrayEquals(value(42), btree.get(value(42)));
+	}
+
+	private static byte[] value(int i) {
+		return new byte[] { (byte) i };
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.datastore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the batch operations of {@link DataStore} against their single-entry counterparts.
+ */
+public class DataStoreTest {
+
+	private File dir;
+
+	private DataStore dataStore;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("datastore");
+		dataStore = createDataStore(dir);
+	}
+
+	protected DataStore createDataStore(File dir) throws IOException {
+		return new DataStore(dir, "values");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		dataStore.close();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testStoreData() throws Exception {
+		int id1 = dataStore.storeData(data("one"));
+
+		int[] ids = dataStore.storeData(new byte[][] { data("two"), data("one"), data("three"), data("two") });
+
+		assertEquals(id1, ids[1]);
+		assertEquals(ids[0], ids[3]);
+		assertEquals(3, dataStore.getMaxID());
+		assertEquals(ids[0], dataStore.getID(data("two")));
+		assertEquals(ids[2], dataStore.getID(data("three")));
+	}
+
+	@Test
+	public void testGetIDs() throws Exception {
+		byte[][] data = new byte[1000][];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = data("value" + i);
+			dataStore.storeData(data[i]);
+		}
+
+		byte[][] queryData = { data("value42"), data("unknown"), data("value999"), data("value42") };
+		int[] ids = dataStore.getIDs(queryData);
+
+		assertEquals(dataStore.getID(data("value42")), ids[0]);
+		assertEquals(-1, ids[1]);
+		assertEquals(dataStore.getID(data("value999")), ids[2]);
+		assertEquals(ids[0], ids[3]);
+	}
+
+	@Test
+	public void testGetData() throws Exception {
+		int[] ids = dataStore.storeData(new byte[][] { data("one"), data("two"), data("three") });
+
+		byte[][] data = dataStore.getData(new int[] { ids[2], ids[0], ids[2] });
+
+		assertArrayEquals(data("three"), data[0]);
+		assertArrayEquals(data("one"), data[1]);
+		assertArrayEquals(data("three"), data[2]);
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		byte[][] data = new byte[20000][];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = data("http://example.org/value/" + i);
+		}
+		int[] ids = dataStore.storeData(data);
+
+		dataStore.sync();
+		dataStore.close();
+		dataStore = createDataStore(dir);
+
+		for (int i = 0; i < data.length; i += 97) {
+			assertEquals(ids[i], dataStore.getID(data[i]));
+			assertArrayEquals(data[i], dataStore.getData(ids[i]));
+		}
+		assertArrayEquals(ids, dataStore.getIDs(data));
+
+		// values that are stored after reopening must be found as well
+		int id = dataStore.storeData(data("http://example.org/new"));
+		assertEquals(id, dataStore.getID(data("http://example.org/new")));
+		assertArrayEquals(data("http://example.org/new"), dataStore.getData(id));
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		dataStore.storeData(new byte[][] { data("one"), data("two") });
+		dataStore.clear();
+
+		assertEquals(0, dataStore.getMaxID());
+		assertEquals(-1, dataStore.getID(data("one")));
+
+		int id = dataStore.storeData(data("three"));
+		assertEquals(1, id);
+		assertArrayEquals(data("three"), dataStore.getData(id));
+	}
+
+	protected static byte[] data(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
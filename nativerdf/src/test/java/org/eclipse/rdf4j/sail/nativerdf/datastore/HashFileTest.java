@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.datastore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.common.io.NioFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the incremental growth of {@link HashFile}.
+ */
+public class HashFileTest {
+
+	private static final int ITEM_COUNT = 100000;
+
+	private File dir;
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = FileUtil.createTempDir("hashfile");
+		file = new File(dir, "values.hash");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testGrowth() throws Exception {
+		int[] hashes = hashes();
+
+		try (HashFile hashFile = new HashFile(file)) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.storeID(hashes[i], i + 1);
+			}
+
+			assertEquals(ITEM_COUNT, hashFile.getItemCount());
+			assertStored(hashFile, hashes);
+		}
+	}
+
+	@Test
+	public void testGrowthMemoryMapped() throws Exception {
+		int[] hashes = hashes();
+
+		try (HashFile hashFile = new HashFile(file, false, true)) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.storeID(hashes[i], i + 1);
+			}
+
+			assertStored(hashFile, hashes);
+		}
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		int[] hashes = hashes();
+
+		try (HashFile hashFile = new HashFile(file)) {
+			for (int i = 0; i < hashes.length / 2; i++) {
+				hashFile.storeID(hashes[i], i + 1);
+			}
+			hashFile.sync();
+		}
+
+		try (HashFile hashFile = new HashFile(file)) {
+			for (int i = hashes.length / 2; i < hashes.length; i++) {
+				hashFile.storeID(hashes[i], i + 1);
+			}
+			hashFile.sync();
+		}
+
+		try (HashFile hashFile = new HashFile(file)) {
+			assertEquals(ITEM_COUNT, hashFile.getItemCount());
+			assertStored(hashFile, hashes);
+		}
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		int[] hashes = hashes();
+
+		try (HashFile hashFile = new HashFile(file)) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.storeID(hashes[i], i + 1);
+			}
+			long grownSize = file.length();
+
+			hashFile.clear();
+			assertEquals(0, hashFile.getItemCount());
+			assertTrue(file.length() < grownSize);
+			assertArrayEquals(new int[0], hashFile.getIDs(new int[] { hashes[0] })[0]);
+
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.storeID(hashes[i], i + 1);
+			}
+			assertStored(hashFile, hashes);
+		}
+	}
+
+	@Test
+	public void testUpgradeFileFormat() throws Exception {
+		// Write a version 1 file with 2 buckets of 2 slots, the first of which has an overflow bucket
+		int recordSize = 8 * 2 + 4;
+		try (NioFile nioFile = new NioFile(file)) {
+			ByteBuffer buf = ByteBuffer.allocate(16 + 3 * recordSize);
+			buf.put(new byte[] { 'n', 'h', 'f' });
+			buf.put((byte) 1);
+			buf.putInt(2);
+			buf.putInt(2);
+			buf.putInt(5);
+
+			buf.putInt(2).putInt(1).putInt(4).putInt(2).putInt(1);
+			buf.putInt(3).putInt(3).putInt(0).putInt(0).putInt(0);
+			buf.putInt(6).putInt(4).putInt(8).putInt(5).putInt(0);
+			buf.rewind();
+			nioFile.write(buf, 0L);
+		}
+
+		try (HashFile hashFile = new HashFile(file)) {
+			assertEquals(5, hashFile.getItemCount());
+			assertArrayEquals(new int[][] { { 1 }, { 2 }, { 3 }, { 4 }, { 5 }, {} },
+					hashFile.getIDs(new int[] { 2, 4, 3, 6, 8, 7 }));
+		}
+		assertFalse(new File(dir, "upgrade_values.hash").exists());
+	}
+
+	private static int[] hashes() {
+		Random random = new Random(42);
+		int[] hashes = new int[ITEM_COUNT];
+		for (int i = 0; i < hashes.length; i++) {
+			// include some collisions
+			hashes[i] = i % 10 == 0 && i > 0 ? hashes[i - 1] : random.nextInt();
+		}
+		return hashes;
+	}
+
+	private static void assertStored(HashFile hashFile, int[] hashes) throws Exception {
+		int[][] ids = hashFile.getIDs(hashes);
+
+		for (int i = 0; i < hashes.length; i++) {
+			boolean found = false;
+			HashFile.IDIterator iter = hashFile.getIDIterator(hashes[i]);
+			try {
+				for (int id = iter.next(); id != -1; id = iter.next()) {
+					found |= id == i + 1;
+				}
+			} finally {
+				iter.close();
+			}
+			assertTrue("ID not found for item " + i, found);
+
+			boolean foundInBatch = false;
+			for (int id : ids[i]) {
+				foundInBatch |= id == i + 1;
+			}
+			assertTrue("ID not found in batch for item " + i, foundInBatch);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.nativerdf.datastore;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link DataStoreTest} tests against a {@link DataStore} that reads its files through memory mappings.
+ */
+public class MemoryMappedDataStoreTest extends DataStoreTest {
+
+	@Override
+	protected DataStore createDataStore(File dir) throws IOException {
+		return new DataStore(dir, "values", false, true);
+	}
+}
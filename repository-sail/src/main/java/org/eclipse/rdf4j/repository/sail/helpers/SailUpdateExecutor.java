@@ -7,11 +7,24 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.repository.sail.helpers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.StringReader;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
@@ -19,10 +32,12 @@ import org.eclipse.rdf4j.common.iteration.ConvertingIteration;
 import org.eclipse.rdf4j.common.iteration.TimeLimitIteration;
 import org.eclipse.rdf4j.model.BNode;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.vocabulary.SESAME;
 import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.BindingSet;
@@ -82,6 +97,12 @@ import org.slf4j.LoggerFactory;
  */
 public class SailUpdateExecutor {
 
+	/**
+	 * The number of statements that a DELETE/INSERT WHERE operation collects before they are handed to the
+	 * {@link SailConnection} as one block.
+	 */
+	private static final int MODIFY_BATCH_SIZE = 10000;
+
 	private final Logger logger = LoggerFactory.getLogger(SailUpdateExecutor.class);
 
 	private final SailConnection con;
@@ -207,6 +228,11 @@ public class SailUpdateExecutor {
 			}
 		}
 
+		if (con.copyContext(uc, source, destination)) {
+			checkExecutionTime(start, maxExecutionTime);
+			return;
+		}
+
 		// get all statements from source and add them to destination
 		CloseableIteration<? extends Statement, SailException> statements = null;
 		try {
@@ -251,6 +277,12 @@ public class SailUpdateExecutor {
 			return;
 		}
 
+		final long start = System.currentTimeMillis();
+		if (con.copyContext(uc, source, destination)) {
+			checkExecutionTime(start, maxExecTime);
+			return;
+		}
+
 		// get all statements from source and add them to destination
 		CloseableIteration<? extends Statement, SailException> statements = null;
 		try {
@@ -303,6 +335,11 @@ public class SailUpdateExecutor {
 			throw new SailException("execution took too long");
 		}
 
+		if (con.moveContext(uc, source, destination)) {
+			checkExecutionTime(start, maxExecutionTime);
+			return;
+		}
+
 		// remove all statements from source and add them to destination
 		CloseableIteration<? extends Statement, SailException> statements = null;
 
@@ -331,6 +368,18 @@ public class SailUpdateExecutor {
 		}
 	}
 
+	/**
+	 * Checks the time limit of an operation that could not be interrupted while it was executed.
+	 * 
+	 * @param start            The time at which the operation was started, in milliseconds.
+	 * @param maxExecutionTime in seconds.
+	 */
+	private void checkExecutionTime(long start, int maxExecutionTime) throws SailException {
+		if (maxExecutionTime > 0 && System.currentTimeMillis() - start > 1000L * maxExecutionTime) {
+			throw new SailException("execution took too long");
+		}
+	}
+
 	/**
 	 * @param clearExpr
 	 * @param uc
@@ -439,6 +488,18 @@ public class SailUpdateExecutor {
 		}
 	}
 
+	/**
+	 * Executes a DELETE/INSERT WHERE operation. The solutions of the WHERE clause are streamed, and the statements
+	 * that the templates produce are collected and handed to the {@link SailConnection} in blocks of
+	 * {@link #MODIFY_BATCH_SIZE} statements, using
+	 * {@link SailConnection#removeStatements(UpdateContext, java.util.Collection, Resource...)} and
+	 * {@link SailConnection#addStatements(UpdateContext, java.util.Collection)}.
+	 * <p>
+	 * The WHERE clause is evaluated against the state before the operation, since the changes of the operation are
+	 * only made visible at the end of the operation. If the operation both deletes and inserts statements, the
+	 * inserted statements are only added after all deleted statements have been removed, so that a statement that is
+	 * both deleted and inserted is kept. The blocks of inserted statements are written to a temporary file until then.
+	 */
 	protected void executeModify(Modify modify, UpdateContext uc, int maxExecutionTime) throws SailException {
 		try {
 			TupleExpr whereClause = modify.getWhereExpr();
@@ -447,20 +508,77 @@ public class SailUpdateExecutor {
 				whereClause = new QueryRoot(whereClause);
 			}
 
+			List<StatementPattern> deletePatterns = getStatementPatterns(modify.getDeleteExpr());
+			List<StatementPattern> insertPatterns = getStatementPatterns(modify.getInsertExpr());
+			boolean deferInserts = !deletePatterns.isEmpty() && !insertPatterns.isEmpty();
+
+			// the triples to delete, per list of contexts to delete them from
+			Map<List<Resource>, Set<Statement>> deletes = new LinkedHashMap<>();
+			Model inserts = new LinkedHashModel();
+			int deleteCount = 0;
+
+			// the inserts that are deferred until all deletes have been removed
+			SpilledStatements deferredInserts = deferInserts ? new SpilledStatements() : null;
+
 			try (CloseableIteration<? extends BindingSet, QueryEvaluationException> sourceBindings = evaluateWhereClause(
 					whereClause, uc, maxExecutionTime)) {
 				while (sourceBindings.hasNext()) {
 					BindingSet sourceBinding = sourceBindings.next();
-					deleteBoundTriples(sourceBinding, modify.getDeleteExpr(), uc);
+					deleteCount += deleteBoundTriples(sourceBinding, deletePatterns, uc, deletes);
+
+					insertBoundTriples(sourceBinding, insertPatterns, uc, inserts);
 
-					insertBoundTriples(sourceBinding, modify.getInsertExpr(), uc);
+					if (deleteCount >= MODIFY_BATCH_SIZE) {
+						removeStatements(deletes, uc);
+						deleteCount = 0;
+					}
+					if (inserts.size() >= MODIFY_BATCH_SIZE) {
+						if (deferredInserts != null) {
+							deferredInserts.write(inserts);
+						} else {
+							con.addStatements(uc, inserts);
+						}
+						inserts.clear();
+					}
+				}
+
+				removeStatements(deletes, uc);
+				if (deferredInserts != null) {
+					deferredInserts.addStatements(con, uc);
+				}
+			} finally {
+				if (deferredInserts != null) {
+					deferredInserts.close();
 				}
 			}
+
+			if (!inserts.isEmpty()) {
+				con.addStatements(uc, inserts);
+			}
 		} catch (QueryEvaluationException e) {
 			throw new SailException(e);
 		}
 	}
 
+	private List<StatementPattern> getStatementPatterns(TupleExpr template) {
+		if (template == null) {
+			return Collections.emptyList();
+		}
+		return StatementPatternCollector.process(template);
+	}
+
+	/**
+	 * Removes the collected triples from the contexts they have been collected for, and clears the collection.
+	 */
+	private void removeStatements(Map<List<Resource>, Set<Statement>> deletes, UpdateContext uc)
+			throws SailException {
+		for (Map.Entry<List<Resource>, Set<Statement>> entry : deletes.entrySet()) {
+			List<Resource> contexts = entry.getKey();
+			con.removeStatements(uc, entry.getValue(), contexts.toArray(new Resource[contexts.size()]));
+		}
+		deletes.clear();
+	}
+
 	private IRI[] getDefaultRemoveGraphs(Dataset dataset) {
 		if (dataset == null) {
 			return new IRI[0];
@@ -553,83 +671,88 @@ public class SailUpdateExecutor {
 	}
 
 	/**
+	 * Collects the triples that the delete patterns produce for a solution of the WHERE clause.
+	 * 
 	 * @param whereBinding
-	 * @param deleteClause
-	 * @throws SailException
+	 * @param deletePatterns
+	 * @param deletes        The collected triples, per list of contexts to delete them from.
+	 * @return The number of triples that have been added to the collection.
 	 */
-	private void deleteBoundTriples(BindingSet whereBinding, TupleExpr deleteClause, UpdateContext uc)
-			throws SailException {
-		if (deleteClause != null) {
-			List<StatementPattern> deletePatterns = StatementPatternCollector.process(deleteClause);
+	private int deleteBoundTriples(BindingSet whereBinding, List<StatementPattern> deletePatterns, UpdateContext uc,
+			Map<List<Resource>, Set<Statement>> deletes) throws SailException {
+		int count = 0;
 
-			Value patternValue;
-			for (StatementPattern deletePattern : deletePatterns) {
+		Value patternValue;
+		for (StatementPattern deletePattern : deletePatterns) {
 
-				patternValue = getValueForVar(deletePattern.getSubjectVar(), whereBinding);
-				Resource subject = patternValue instanceof Resource ? (Resource) patternValue : null;
+			patternValue = getValueForVar(deletePattern.getSubjectVar(), whereBinding);
+			Resource subject = patternValue instanceof Resource ? (Resource) patternValue : null;
 
-				patternValue = getValueForVar(deletePattern.getPredicateVar(), whereBinding);
-				IRI predicate = patternValue instanceof IRI ? (IRI) patternValue : null;
+			patternValue = getValueForVar(deletePattern.getPredicateVar(), whereBinding);
+			IRI predicate = patternValue instanceof IRI ? (IRI) patternValue : null;
 
-				Value object = getValueForVar(deletePattern.getObjectVar(), whereBinding);
+			Value object = getValueForVar(deletePattern.getObjectVar(), whereBinding);
 
-				Resource context = null;
-				if (deletePattern.getContextVar() != null) {
-					patternValue = getValueForVar(deletePattern.getContextVar(), whereBinding);
-					context = patternValue instanceof Resource ? (Resource) patternValue : null;
-				}
+			Resource context = null;
+			if (deletePattern.getContextVar() != null) {
+				patternValue = getValueForVar(deletePattern.getContextVar(), whereBinding);
+				context = patternValue instanceof Resource ? (Resource) patternValue : null;
+			}
 
-				if (subject == null || predicate == null || object == null) {
-					/*
-					 * skip removal of triple if any variable is unbound (may happen with optional patterns or if triple
-					 * pattern forms illegal triple). See SES-1047 and #610.
-					 */
-					continue;
-				}
+			if (subject == null || predicate == null || object == null) {
+				/*
+				 * skip removal of triple if any variable is unbound (may happen with optional patterns or if triple
+				 * pattern forms illegal triple). See SES-1047 and #610.
+				 */
+				continue;
+			}
 
-				if (context != null) {
-					if (SESAME.NIL.equals(context)) {
-						con.removeStatement(uc, subject, predicate, object, (Resource) null);
-					} else {
-						con.removeStatement(uc, subject, predicate, object, context);
-					}
+			List<Resource> contexts;
+			if (context != null) {
+				if (SESAME.NIL.equals(context)) {
+					contexts = Collections.singletonList((Resource) null);
 				} else {
-					IRI[] remove = getDefaultRemoveGraphs(uc.getDataset());
-					con.removeStatement(uc, subject, predicate, object, remove);
+					contexts = Collections.singletonList(context);
 				}
+			} else {
+				contexts = Arrays.asList(getDefaultRemoveGraphs(uc.getDataset()));
+			}
+
+			Set<Statement> triples = deletes.get(contexts);
+			if (triples == null) {
+				triples = new LinkedHashSet<>();
+				deletes.put(contexts, triples);
+			}
+			if (triples.add(vf.createStatement(subject, predicate, object))) {
+				count++;
 			}
 		}
+
+		return count;
 	}
 
 	/**
+	 * Collects the statements that the insert patterns produce for a solution of the WHERE clause.
+	 * 
 	 * @param whereBinding
-	 * @param insertClause
-	 * @throws SailException
+	 * @param insertPatterns
+	 * @param inserts        The collected statements, each with the context it is to be added to.
 	 */
-	private void insertBoundTriples(BindingSet whereBinding, TupleExpr insertClause, UpdateContext uc)
-			throws SailException {
-		if (insertClause != null) {
-			List<StatementPattern> insertPatterns = StatementPatternCollector.process(insertClause);
-
-			// bnodes in the insert pattern are locally scoped for each
-			// individual source binding.
-			MapBindingSet bnodeMapping = new MapBindingSet();
-			for (StatementPattern insertPattern : insertPatterns) {
-				Statement toBeInserted = createStatementFromPattern(insertPattern, whereBinding, bnodeMapping);
-
-				if (toBeInserted != null) {
-					IRI with = uc.getDataset().getDefaultInsertGraph();
-					if (with == null && toBeInserted.getContext() == null) {
-						con.addStatement(uc, toBeInserted.getSubject(), toBeInserted.getPredicate(),
-								toBeInserted.getObject());
-					} else if (toBeInserted.getContext() == null) {
-						con.addStatement(uc, toBeInserted.getSubject(), toBeInserted.getPredicate(),
-								toBeInserted.getObject(), with);
-					} else {
-						con.addStatement(uc, toBeInserted.getSubject(), toBeInserted.getPredicate(),
-								toBeInserted.getObject(), toBeInserted.getContext());
-					}
+	private void insertBoundTriples(BindingSet whereBinding, List<StatementPattern> insertPatterns, UpdateContext uc,
+			Model inserts) throws SailException {
+		// bnodes in the insert pattern are locally scoped for each
+		// individual source binding.
+		MapBindingSet bnodeMapping = new MapBindingSet();
+		for (StatementPattern insertPattern : insertPatterns) {
+			Statement toBeInserted = createStatementFromPattern(insertPattern, whereBinding, bnodeMapping);
+
+			if (toBeInserted != null) {
+				IRI with = uc.getDataset().getDefaultInsertGraph();
+				if (toBeInserted.getContext() == null && with != null) {
+					toBeInserted = vf.createStatement(toBeInserted.getSubject(), toBeInserted.getPredicate(),
+							toBeInserted.getObject(), with);
 				}
+				inserts.add(toBeInserted);
 			}
 		}
 	}
@@ -747,4 +870,98 @@ public class SailUpdateExecutor {
 		}
 		return value;
 	}
+
+	/**
+	 * Blocks of statements that are written to a temporary file, to be read back once all blocks have been written.
+	 */
+	private static class SpilledStatements implements AutoCloseable {
+
+		/**
+		 * The number of statements after which the object stream is reset, so that it does not keep references to all
+		 * written statements.
+		 */
+		private static final int RESET_INTERVAL = 1024;
+
+		private File file;
+
+		private ObjectOutputStream output;
+
+		private int size;
+
+		/**
+		 * Writes a block of statements to the end of the file. The subject, predicate, object and context of each
+		 * statement are written as separate objects, since the statements of a {@link Model} may not be serializable
+		 * on their own.
+		 */
+		public void write(Collection<Statement> statements) throws SailException {
+			try {
+				if (output == null) {
+					file = File.createTempFile("update", null);
+					output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				}
+				for (Statement st : statements) {
+					output.writeObject(st.getSubject());
+					output.writeObject(st.getPredicate());
+					output.writeObject(st.getObject());
+					output.writeObject(st.getContext());
+					if (++size % RESET_INTERVAL == 0) {
+						output.reset();
+					}
+				}
+			} catch (IOException e) {
+				throw new SailException("could not write deferred statements", e);
+			}
+		}
+
+		/**
+		 * Reads the written statements back, and adds them to a connection in blocks of {@link #MODIFY_BATCH_SIZE}
+		 * statements.
+		 */
+		public void addStatements(SailConnection con, UpdateContext uc) throws SailException {
+			if (output == null) {
+				return;
+			}
+			try {
+				output.close();
+				output = null;
+				try (ObjectInputStream input = new ObjectInputStream(
+						new BufferedInputStream(new FileInputStream(file)))) {
+					Model block = new LinkedHashModel();
+					for (int i = 0; i < size; i++) {
+						Resource subject = (Resource) input.readObject();
+						IRI predicate = (IRI) input.readObject();
+						Value object = (Value) input.readObject();
+						Resource context = (Resource) input.readObject();
+						block.add(subject, predicate, object, context);
+						if (block.size() >= MODIFY_BATCH_SIZE) {
+							con.addStatements(uc, block);
+							block.clear();
+						}
+					}
+					if (!block.isEmpty()) {
+						con.addStatements(uc, block);
+					}
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				throw new SailException("could not read deferred statements", e);
+			}
+		}
+
+		/**
+		 * Deletes the temporary file.
+		 */
+		@Override
+		public void close() {
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException e) {
+					// ignore, the file is deleted anyway
+				}
+			}
+			if (file != null) {
+				file.delete();
+			}
+		}
+	}
 }
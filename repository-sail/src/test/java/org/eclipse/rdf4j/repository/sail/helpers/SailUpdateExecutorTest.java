@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.repository.sail.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the execution of DELETE/INSERT WHERE operations by {@link SailUpdateExecutor}, which hands the statements to
+ * the sail in blocks.
+ */
+public class SailUpdateExecutorTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	/**
+	 * More statements than fit in one block.
+	 */
+	private static final int COUNT = 25000;
+
+	private SailRepository repository;
+
+	private RepositoryConnection con;
+
+	private ValueFactory vf;
+
+	private IRI p;
+
+	private IRI next;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+		vf = con.getValueFactory();
+		p = vf.createIRI(EX_NS, "p");
+		next = vf.createIRI(EX_NS, "next");
+
+		con.begin();
+		for (int i = 0; i < COUNT; i++) {
+			con.add(subject(i), p, object(i));
+			if (i + 1 < COUNT) {
+				con.add(subject(i), next, subject(i + 1));
+			}
+		}
+		con.commit();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		con.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testDeleteInsertAcrossBlocks() throws Exception {
+		// each solution deletes the statement of its subject, and inserts the statement of the next subject, which
+		// is deleted by another solution
+		String update = "PREFIX ex: <" + EX_NS + ">\n" + "DELETE { ?s ex:p ?o } INSERT { ?t ex:p ?o2 } "
+				+ "WHERE { ?s ex:p ?o ; ex:next ?t . ?t ex:p ?o2 }";
+		con.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+
+		assertEquals(COUNT - 1, count(p));
+		assertFalse(con.hasStatement(subject(0), p, object(0), false));
+		for (int i = 1; i < COUNT; i++) {
+			assertTrue(con.hasStatement(subject(i), p, object(i), false));
+		}
+	}
+
+	@Test
+	public void testDeleteInsertSameStatements() throws Exception {
+		IRI q = vf.createIRI(EX_NS, "q");
+		String update = "PREFIX ex: <" + EX_NS + ">\n" + "DELETE { ?s ex:p ?o } INSERT { ?s ex:p ?o ; ex:q ?o } "
+				+ "WHERE { ?s ex:p ?o }";
+		con.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+
+		assertEquals(COUNT, count(p));
+		assertEquals(COUNT, count(q));
+		assertTrue(con.hasStatement(subject(COUNT - 1), q, object(COUNT - 1), false));
+	}
+
+	@Test
+	public void testDeleteWhere() throws Exception {
+		String update = "PREFIX ex: <" + EX_NS + ">\n" + "DELETE { ?s ex:p ?o } WHERE { ?s ex:p ?o ; ex:next ?t }";
+		con.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+
+		assertEquals(1, count(p));
+		assertTrue(con.hasStatement(subject(COUNT - 1), p, object(COUNT - 1), false));
+	}
+
+	private IRI subject(int i) {
+		return vf.createIRI(EX_NS, "s" + i);
+	}
+
+	private IRI object(int i) {
+		return vf.createIRI(EX_NS, "o" + i);
+	}
+
+	private int count(IRI predicate) throws Exception {
+		int count = 0;
+		try (RepositoryResult<?> result = con.getStatements(null, predicate, null, false)) {
+			while (result.hasNext()) {
+				result.next();
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.common.concurrent.locks;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the contention counters of a {@link StripedReadWriteLockManager}.
+ */
+public class LockStatistics {
+
+	private final long readLockCount;
+
+	private final long contendedReadLockCount;
+
+	private final long writeLockCount;
+
+	private final long contendedWriteLockCount;
+
+	private final long waitNanos;
+
+	public LockStatistics(long readLockCount, long contendedReadLockCount, long writeLockCount,
+			long contendedWriteLockCount, long waitNanos) {
+		this.readLockCount = readLockCount;
+		this.contendedReadLockCount = contendedReadLockCount;
+		this.writeLockCount = writeLockCount;
+		this.contendedWriteLockCount = contendedWriteLockCount;
+		this.waitNanos = waitNanos;
+	}
+
+	/**
+	 * Gets the number of read locks that have been acquired.
+	 */
+	public long getReadLockCount() {
+		return readLockCount;
+	}
+
+	/**
+	 * Gets the number of requests for a read lock that had to wait for a writer.
+	 */
+	public long getContendedReadLockCount() {
+		return contendedReadLockCount;
+	}
+
+	/**
+	 * Gets the number of write locks that have been acquired.
+	 */
+	public long getWriteLockCount() {
+		return writeLockCount;
+	}
+
+	/**
+	 * Gets the number of requests for a write lock that had to wait for readers or another writer.
+	 */
+	public long getContendedWriteLockCount() {
+		return contendedWriteLockCount;
+	}
+
+	/**
+	 * Gets the total time that requests for read and write locks have waited.
+	 */
+	public long getWaitTime(TimeUnit unit) {
+		return unit.convert(waitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "readLocks=" + readLockCount + ", contendedReadLocks=" + contendedReadLockCount + ", writeLocks="
+				+ writeLockCount + ", contendedWriteLocks=" + contendedWriteLockCount + ", waitTimeMillis="
+				+ getWaitTime(TimeUnit.MILLISECONDS);
+	}
+}
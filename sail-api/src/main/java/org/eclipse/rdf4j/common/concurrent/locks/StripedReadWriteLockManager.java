@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.common.concurrent.locks;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read/write lock manager that does not synchronize readers with each other. Active read locks are counted in a
+ * number of counters, each on its own cache line, and each thread increments the counter that its ID maps to. A read
+ * lock is acquired without blocking as long as no writer is active or waiting; a monitor is only used when a reader has
+ * to wait for a writer or a writer has to wait for readers.
+ * <p>
+ * A writer announces itself with a flag, and then checks that no read locks are active. With reader preference, like
+ * {@link ReadPrefReadWriteLockManager}, a writer that finds active read locks withdraws and waits for them to be
+ * released, so that threads that already hold a read lock can always acquire another one. With writer preference, like
+ * {@link WritePrefReadWriteLockManager}, a waiting writer keeps its flag and new readers wait until it is done, so that
+ * a steady stream of readers can not starve writers. Locks may be released by another thread than the one that
+ * acquired them.
+ * <p>
+ * Like {@link LockManager}, active locks are registered with weak references. When a thread has been waiting for a lock
+ * for a while, the garbage collector is run and locks that were abandoned without being released are released.
+ */
+public class StripedReadWriteLockManager implements ReadWriteLockManager {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of counter slots per stripe, so that each stripe has its own cache line.
+	 */
+	private static final int PADDING = 8;
+
+	/**
+	 * Number of milliseconds that a thread waits for a lock before abandoned locks are searched for.
+	 */
+	private static final int INITIAL_WAIT_TO_COLLECT = 10000;
+
+	private static final int MAX_WAIT_TO_COLLECT = 90 * 60 * 1000;
+
+	/**
+	 * The stripe index of the registration of a write lock.
+	 */
+	private static final int WRITE_LOCK = -1;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Logger logger = LoggerFactory.getLogger(StripedReadWriteLockManager.class);
+
+	/**
+	 * The number of active read locks per stripe. A read lock is released on the stripe that it was acquired on.
+	 */
+	private final AtomicLongArray readerCounts;
+
+	private final int stripeMask;
+
+	/**
+	 * Flag indicating whether new readers wait for writers that are waiting for the active read locks to be released.
+	 */
+	private final boolean writerPreference;
+
+	/**
+	 * Controls whether the stack trace of the acquisition of each lock is kept, to be logged if the lock is abandoned.
+	 */
+	private final boolean trackLocks;
+
+	/**
+	 * Flag indicating whether a writer is active or is checking for active readers.
+	 */
+	private final AtomicBoolean writerActive = new AtomicBoolean();
+
+	/**
+	 * The number of writers that are waiting for the write lock.
+	 */
+	private final AtomicInteger waitingWriters = new AtomicInteger();
+
+	/**
+	 * Monitor on which waiting readers and writers block.
+	 */
+	private final Object monitor = new Object();
+
+	/**
+	 * The registrations of the active locks, which are used to release locks that were abandoned.
+	 */
+	private final Set<LockReference> activeLocks = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Number of milliseconds that a thread waits for a lock before abandoned locks are searched for, doubled each time
+	 * that no abandoned locks are found. Guarded by the monitor.
+	 */
+	private int waitToCollect;
+
+	private final LongAdder readLockCount = new LongAdder();
+
+	private final LongAdder contendedReadLockCount = new LongAdder();
+
+	private final LongAdder writeLockCount = new LongAdder();
+
+	private final LongAdder contendedWriteLockCount = new LongAdder();
+
+	private final LongAdder waitNanos = new LongAdder();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new lock manager with reader preference and a stripe count of four times the number of processors.
+	 */
+	public StripedReadWriteLockManager() {
+		this(false, false);
+	}
+
+	/**
+	 * Creates a new lock manager with reader preference.
+	 *
+	 * @param stripeCount The minimum number of reader counters, which is rounded up to a power of two.
+	 */
+	public StripedReadWriteLockManager(int stripeCount) {
+		this(false, false, stripeCount, INITIAL_WAIT_TO_COLLECT);
+	}
+
+	/**
+	 * Creates a new lock manager with a stripe count of four times the number of processors.
+	 *
+	 * @param trackLocks       Controls whether to keep a stack trace of active locks, which is logged when a lock is
+	 *                         abandoned.
+	 * @param writerPreference Controls whether new readers wait for a waiting writer. Threads that already hold a read
+	 *                         lock can then not acquire another one while a writer is waiting.
+	 */
+	public StripedReadWriteLockManager(boolean trackLocks, boolean writerPreference) {
+		this(trackLocks, writerPreference, 4 * Runtime.getRuntime().availableProcessors(), INITIAL_WAIT_TO_COLLECT);
+	}
+
+	/**
+	 * Creates a new lock manager.
+	 *
+	 * @param trackLocks          Controls whether to keep a stack trace of active locks, which is logged when a lock
+	 *                            is abandoned.
+	 * @param writerPreference    Controls whether new readers wait for a waiting writer.
+	 * @param stripeCount         The minimum number of reader counters, which is rounded up to a power of two.
+	 * @param collectionFrequency Number of milliseconds to block the first thread, waiting for a lock, before running
+	 *                            the memory garbage collection, to free abandoned active locks.
+	 */
+	public StripedReadWriteLockManager(boolean trackLocks, boolean writerPreference, int stripeCount,
+			int collectionFrequency) {
+		int stripes = 1;
+		while (stripes < stripeCount) {
+			stripes <<= 1;
+		}
+		readerCounts = new AtomicLongArray(stripes * PADDING);
+		stripeMask = stripes - 1;
+		this.writerPreference = writerPreference;
+		this.trackLocks = trackLocks || Properties.lockTrackingEnabled();
+		this.waitToCollect = collectionFrequency;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public Lock tryReadLock() {
+		return acquireReadLock();
+	}
+
+	/**
+	 * Gets a read lock. This method blocks while a write lock is in use and, with writer preference, while a writer is
+	 * waiting.
+	 */
+	@Override
+	public Lock getReadLock() throws InterruptedException {
+		Lock lock = acquireReadLock();
+		if (lock != null) {
+			return lock;
+		}
+
+		contendedReadLockCount.increment();
+		long start = System.nanoTime();
+		try {
+			while (true) {
+				synchronized (monitor) {
+					while (isReaderBlocked()) {
+						await();
+					}
+				}
+				lock = acquireReadLock();
+				if (lock != null) {
+					return lock;
+				}
+			}
+		} finally {
+			waitNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Lock tryWriteLock() {
+		return acquireWriteLock();
+	}
+
+	/**
+	 * Gets an exclusive write lock. This method blocks while another write lock or any read locks are in use.
+	 */
+	@Override
+	public Lock getWriteLock() throws InterruptedException {
+		Lock lock = acquireWriteLock();
+		if (lock != null) {
+			return lock;
+		}
+
+		contendedWriteLockCount.increment();
+		long start = System.nanoTime();
+		try {
+			synchronized (monitor) {
+				waitingWriters.incrementAndGet();
+				try {
+					if (writerPreference) {
+						return awaitWriteLock();
+					}
+					while (true) {
+						while (writerActive.get() || getReaderCount() > 0) {
+							await();
+						}
+						lock = acquireWriteLock();
+						if (lock != null) {
+							return lock;
+						}
+					}
+				} finally {
+					waitingWriters.decrementAndGet();
+					if (writerPreference) {
+						// readers may be waiting for this writer
+						monitor.notifyAll();
+					}
+				}
+			}
+		} finally {
+			waitNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Gets a snapshot of the contention counters of this lock manager.
+	 */
+	public LockStatistics getStatistics() {
+		return new LockStatistics(readLockCount.sum(), contendedReadLockCount.sum(), writeLockCount.sum(),
+				contendedWriteLockCount.sum(), waitNanos.sum());
+	}
+
+	private boolean isReaderBlocked() {
+		return writerActive.get() || writerPreference && waitingWriters.get() > 0;
+	}
+
+	private Lock acquireReadLock() {
+		if (isReaderBlocked()) {
+			return null;
+		}
+
+		int index = getStripeIndex();
+		readerCounts.incrementAndGet(index);
+		// a writer that set its flag before the increment has to see the increment, or we see its flag
+		if (writerActive.get()) {
+			releaseReadLock(index);
+			return null;
+		}
+
+		readLockCount.increment();
+		ReadLock lock = new ReadLock();
+		lock.reference = register(lock, index);
+		return lock;
+	}
+
+	private void releaseReadLock(int index) {
+		readerCounts.decrementAndGet(index);
+		if (waitingWriters.get() > 0) {
+			synchronized (monitor) {
+				monitor.notifyAll();
+			}
+		}
+	}
+
+	private Lock acquireWriteLock() {
+		if (!writerActive.compareAndSet(false, true)) {
+			return null;
+		}
+
+		if (getReaderCount() == 0) {
+			return createWriteLock();
+		}
+
+		// give way to the active readers, which may need another read lock before they can release theirs
+		releaseWriteLock();
+		return null;
+	}
+
+	/**
+	 * Sets the writer flag as soon as no other writer is active, so that no new read locks are acquired, and then waits
+	 * for the active read locks to be released. Must be called while synchronized on the monitor.
+	 */
+	private Lock awaitWriteLock() throws InterruptedException {
+		while (!writerActive.compareAndSet(false, true)) {
+			await();
+		}
+
+		boolean acquired = false;
+		try {
+			while (getReaderCount() > 0) {
+				await();
+			}
+			acquired = true;
+		} finally {
+			if (!acquired) {
+				releaseWriteLock();
+			}
+		}
+		return createWriteLock();
+	}
+
+	private Lock createWriteLock() {
+		writeLockCount.increment();
+		WriteLock lock = new WriteLock();
+		lock.reference = register(lock, WRITE_LOCK);
+		return lock;
+	}
+
+	private void releaseWriteLock() {
+		synchronized (monitor) {
+			writerActive.set(false);
+			monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits on the monitor, and releases abandoned locks if no notification arrived in time. Must be called while
+	 * synchronized on the monitor.
+	 */
+	private void await() throws InterruptedException {
+		int timeout = waitToCollect;
+		long start = System.currentTimeMillis();
+		monitor.wait(timeout);
+		if (System.currentTimeMillis() - start >= timeout) {
+			releaseAbandoned();
+		}
+	}
+
+	private LockReference register(Lock lock, int index) {
+		LockReference reference = new LockReference(lock, index, trackLocks);
+		activeLocks.add(reference);
+		return reference;
+	}
+
+	/**
+	 * Releases the registration of a lock and, unless it has already been released as abandoned, the lock itself.
+	 */
+	private void release(LockReference reference) {
+		if (activeLocks.remove(reference)) {
+			if (reference.index == WRITE_LOCK) {
+				releaseWriteLock();
+			} else {
+				releaseReadLock(reference.index);
+			}
+		}
+	}
+
+	/**
+	 * Runs the garbage collection and releases the locks that are no longer referenced. Must be called while
+	 * synchronized on the monitor.
+	 */
+	private void releaseAbandoned() {
+		System.gc();
+		Thread.yield();
+		boolean stalled = true;
+		Iterator<LockReference> iter = activeLocks.iterator();
+		while (iter.hasNext()) {
+			LockReference reference = iter.next();
+			if (reference.get() == null) {
+				logAbandonedLock(reference);
+				release(reference);
+				stalled = false;
+			}
+		}
+		if (stalled && waitToCollect < MAX_WAIT_TO_COLLECT) {
+			// no active locks were found to be abandoned, wait longer next time before running gc
+			waitToCollect = waitToCollect * 2;
+		}
+	}
+
+	private void logAbandonedLock(LockReference reference) {
+		String alias = reference.index == WRITE_LOCK ? "Write" : "Read";
+		if (reference.stack == null && logger.isWarnEnabled()) {
+			String msg = alias + " lock abandoned; lock was acquired in {}; consider setting the {} system property";
+			logger.warn(msg, reference.acquiredName, Properties.TRACK_LOCKS);
+		} else if (logger.isWarnEnabled()) {
+			String msg = alias + " lock abandoned; lock was acquired in " + reference.acquiredName;
+			logger.warn(msg, reference.stack);
+		}
+	}
+
+	private long getReaderCount() {
+		long count = 0;
+		for (int i = 0; i <= stripeMask; i++) {
+			count += readerCounts.get(i * PADDING);
+		}
+		return count;
+	}
+
+	private int getStripeIndex() {
+		long threadId = Thread.currentThread().getId();
+		int stripe = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & stripeMask;
+		return stripe * PADDING;
+	}
+
+	/*---------------------------*
+	 * Inner class LockReference *
+	 *---------------------------*/
+
+	/**
+	 * The registration of an active lock, which does not keep the lock from being garbage collected.
+	 */
+	private static class LockReference extends WeakReference<Lock> {
+
+		/**
+		 * The stripe index of a read lock, or {@link #WRITE_LOCK}.
+		 */
+		final int index;
+
+		final String acquiredName;
+
+		final Throwable stack;
+
+		LockReference(Lock lock, int index, boolean trackLocks) {
+			super(lock);
+			this.index = index;
+			this.acquiredName = Thread.currentThread().getName();
+			this.stack = trackLocks ? new Throwable(acquiredName + " acquired a lock") : null;
+		}
+	}
+
+	/*----------------------*
+	 * Inner class ReadLock *
+	 *----------------------*/
+
+	private class ReadLock implements Lock {
+
+		private LockReference reference;
+
+		private boolean active = true;
+
+		@Override
+		public synchronized boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public synchronized void release() {
+			if (active) {
+				active = false;
+				StripedReadWriteLockManager.this.release(reference);
+			}
+		}
+	}
+
+	/*-----------------------*
+	 * Inner class WriteLock *
+	 *-----------------------*/
+
+	private class WriteLock implements Lock {
+
+		private LockReference reference;
+
+		private boolean active = true;
+
+		@Override
+		public synchronized boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public synchronized void release() {
+			if (active) {
+				active = false;
+				StripedReadWriteLockManager.this.release(reference);
+			}
+		}
+	}
+}
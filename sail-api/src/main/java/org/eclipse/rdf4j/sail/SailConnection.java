@@ -7,6 +7,8 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail;
 
+import java.util.Collection;
+
 import org.eclipse.rdf4j.IsolationLevel;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.model.IRI;
@@ -334,6 +336,92 @@ public interface SailConnection extends AutoCloseable {
 		removeStatement(op, subj, (IRI) pred, obj, contexts);
 	}
 
+	/**
+	 * Adds a block of statements to the store. Called when adding statements through a {@link UpdateExpr} operation.
+	 * Each statement is added to its own context, or as a context-less statement if its context is <tt>null</tt>. The
+	 * default implementation calls {@link #addStatement(UpdateContext, Resource, IRI, Value, Resource...)} for each
+	 * statement.
+	 * 
+	 * @param op         operation properties of the {@link UpdateExpr} operation producing these statements.
+	 * @param statements The statements to add.
+	 * @throws SailException         If the statements could not be added, for example because no transaction is
+	 *                               active.
+	 * @throws IllegalStateException If the connection has been closed.
+	 */
+	default void addStatements(UpdateContext op, Collection<? extends Statement> statements) throws SailException {
+		for (Statement st : statements) {
+			if (st.getContext() == null) {
+				addStatement(op, st.getSubject(), st.getPredicate(), st.getObject());
+			} else {
+				addStatement(op, st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			}
+		}
+	}
+
+	/**
+	 * Removes the subject, predicate and object of each of a block of statements from the specified contexts. The
+	 * contexts of the statements themselves are ignored. Called when removing statements through a {@link UpdateExpr}
+	 * operation. The default implementation calls
+	 * {@link #removeStatement(UpdateContext, Resource, IRI, Value, Resource...)} for each statement.
+	 * 
+	 * @param op         operation properties of the {@link UpdateExpr} operation removing these statements.
+	 * @param statements The statements to remove.
+	 * @param contexts   The context(s) from which to remove the statements. Note that this parameter is a vararg and as
+	 *                   such is optional. If no contexts are specified the method operates on the entire repository. A
+	 *                   <tt>null</tt> value can be used to match context-less statements.
+	 * @throws SailException         If the statements could not be removed, for example because no transaction is
+	 *                               active.
+	 * @throws IllegalStateException If the connection has been closed.
+	 */
+	default void removeStatements(UpdateContext op, Collection<? extends Statement> statements,
+			Resource... contexts) throws SailException {
+		for (Statement st : statements) {
+			removeStatement(op, st.getSubject(), st.getPredicate(), st.getObject(), contexts);
+		}
+	}
+
+	/**
+	 * Adds all statements of a context to another context, without passing them through this connection one at a
+	 * time. Called for the ADD, COPY and MOVE {@link UpdateExpr} operations. Statements that the destination context
+	 * already contains are not affected. The default implementation does not support this and returns <tt>false</tt>,
+	 * in which case the caller should read the statements with
+	 * {@link #getStatements(Resource, IRI, Value, boolean, Resource...)} and add them with
+	 * {@link #addStatement(UpdateContext, Resource, IRI, Value, Resource...)}.
+	 * 
+	 * @param op          operation properties of the {@link UpdateExpr} operation producing these statements. Inferred
+	 *                    statements of the source context are copied if the operation includes inferred statements.
+	 * @param source      The context to copy the statements from, or <tt>null</tt> for context-less statements.
+	 * @param destination The context to copy the statements to, or <tt>null</tt> to copy them as context-less
+	 *                    statements.
+	 * @return <tt>true</tt> if the statements have been copied, <tt>false</tt> if this connection can not copy contexts
+	 *         and nothing has been changed.
+	 * @throws SailException         If the statements could not be copied, for example because no transaction is
+	 *                               active.
+	 * @throws IllegalStateException If the connection has been closed.
+	 */
+	default boolean copyContext(UpdateContext op, Resource source, Resource destination) throws SailException {
+		return false;
+	}
+
+	/**
+	 * Moves all statements of a context to another context, like
+	 * {@link #copyContext(UpdateContext, Resource, Resource)} followed by the removal of the copied statements from the
+	 * source context. The default implementation does not support this and returns <tt>false</tt>.
+	 * 
+	 * @param op          operation properties of the {@link UpdateExpr} operation producing these statements.
+	 * @param source      The context to move the statements from, or <tt>null</tt> for context-less statements.
+	 * @param destination The context to move the statements to, or <tt>null</tt> to move them to the context-less
+	 *                    statements.
+	 * @return <tt>true</tt> if the statements have been moved, <tt>false</tt> if this connection can not move contexts
+	 *         and nothing has been changed.
+	 * @throws SailException         If the statements could not be moved, for example because no transaction is
+	 *                               active.
+	 * @throws IllegalStateException If the connection has been closed.
+	 */
+	default boolean moveContext(UpdateContext op, Resource source, Resource destination) throws SailException {
+		return false;
+	}
+
 	/**
 	 * Indicates that the given <code>op</code> will not be used in any call again. Implementations should use this to
 	 * flush of any temporary operation states that may have occurred.
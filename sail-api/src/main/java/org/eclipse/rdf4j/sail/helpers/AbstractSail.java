@@ -314,6 +314,18 @@ public abstract class AbstractSail implements Sail {
 		}
 	}
 
+	/**
+	 * Checks whether any connections to this store are currently open, i.e. have been obtained through
+	 * {@link #getConnection()} and have not yet been closed.
+	 * 
+	 * @return <tt>true</tt> if at least one connection is open, <tt>false</tt> otherwise.
+	 */
+	protected boolean hasActiveConnections() {
+		synchronized (activeConnections) {
+			return !activeConnections.isEmpty();
+		}
+	}
+
 	/**
 	 * Appends the provided {@link IsolationLevels} to the SAIL's list of supported isolation levels.
 	 * 
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.common.concurrent.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link StripedReadWriteLockManager}.
+ */
+public class StripedReadWriteLockManagerTest {
+
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	@Test
+	public void testMutualExclusionReaderPreference() throws Exception {
+		assertMutualExclusion(new StripedReadWriteLockManager(false, false, 4, 10000));
+	}
+
+	@Test
+	public void testMutualExclusionWriterPreference() throws Exception {
+		assertMutualExclusion(new StripedReadWriteLockManager(false, true, 4, 10000));
+	}
+
+	@Test
+	public void testTryLocks() throws Exception {
+		StripedReadWriteLockManager manager = new StripedReadWriteLockManager(4);
+
+		Lock readLock = manager.tryReadLock();
+		assertNotNull(readLock);
+		assertNull(manager.tryWriteLock());
+		// with reader preference, a thread that holds a read lock can get another one
+		Lock nestedLock = manager.tryReadLock();
+		assertNotNull(nestedLock);
+		nestedLock.release();
+		readLock.release();
+		assertFalse(readLock.isActive());
+
+		Lock writeLock = manager.tryWriteLock();
+		assertNotNull(writeLock);
+		assertNull(manager.tryReadLock());
+		assertNull(manager.tryWriteLock());
+		writeLock.release();
+		assertFalse(writeLock.isActive());
+
+		// releasing a lock twice has no effect
+		writeLock.release();
+		writeLock = manager.tryWriteLock();
+		assertNotNull(writeLock);
+		writeLock.release();
+	}
+
+	@Test
+	public void testWriterProgressUnderConstantReads() throws Exception {
+		final StripedReadWriteLockManager manager = new StripedReadWriteLockManager(false, true, 4, 10000);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicInteger readCount = new AtomicInteger();
+
+		// a reader only releases its read lock once a reader acquired one after it, or after a while, so that there is
+		// always an active read lock as long as new readers are let in
+		List<Thread> readers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			readers.add(start(() -> {
+				while (!done.get()) {
+					Lock lock = manager.getReadLock();
+					try {
+						int ticket = readCount.incrementAndGet();
+						long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+						while (readCount.get() == ticket && System.nanoTime() < deadline) {
+							Thread.yield();
+						}
+					} finally {
+						lock.release();
+					}
+				}
+			}));
+		}
+		while (readCount.get() < 100) {
+			Thread.sleep(1);
+		}
+
+		Thread writer = start(() -> {
+			for (int i = 0; i < 3; i++) {
+				manager.getWriteLock().release();
+			}
+		});
+		writer.join(10000);
+		boolean starved = writer.isAlive();
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		writer.join();
+
+		assertNull(failure.get());
+		assertFalse("writer starved by readers", starved);
+		assertEquals(3, manager.getStatistics().getWriteLockCount());
+	}
+
+	@Test
+	public void testNewReadersWaitForWaitingWriter() throws Exception {
+		final StripedReadWriteLockManager manager = new StripedReadWriteLockManager(false, true, 4, 10000);
+		Lock readLock = manager.getReadLock();
+
+		Thread writer = start(() -> manager.getWriteLock().release());
+		awaitBlocked(writer);
+		assertNull(manager.tryReadLock());
+
+		readLock.release();
+		writer.join();
+		assertNull(failure.get());
+		assertNotNull(manager.tryReadLock());
+	}
+
+	@Test
+	public void testContentionCounters() throws Exception {
+		final StripedReadWriteLockManager manager = new StripedReadWriteLockManager(4);
+		manager.getReadLock().release();
+		manager.getReadLock().release();
+		manager.getWriteLock().release();
+
+		LockStatistics statistics = manager.getStatistics();
+		assertEquals(2, statistics.getReadLockCount());
+		assertEquals(0, statistics.getContendedReadLockCount());
+		assertEquals(1, statistics.getWriteLockCount());
+		assertEquals(0, statistics.getContendedWriteLockCount());
+		assertEquals(0, statistics.getWaitTime(TimeUnit.NANOSECONDS));
+
+		// a writer waits for a reader
+		Lock readLock = manager.getReadLock();
+		Thread writer = start(() -> manager.getWriteLock().release());
+		awaitBlocked(writer);
+		Thread.sleep(10);
+		readLock.release();
+		writer.join();
+
+		// a reader waits for a writer
+		Lock writeLock = manager.getWriteLock();
+		Thread reader = start(() -> manager.getReadLock().release());
+		awaitBlocked(reader);
+		Thread.sleep(10);
+		writeLock.release();
+		reader.join();
+
+		assertNull(failure.get());
+		statistics = manager.getStatistics();
+		assertEquals(4, statistics.getReadLockCount());
+		assertEquals(1, statistics.getContendedReadLockCount());
+		assertEquals(3, statistics.getWriteLockCount());
+		assertEquals(1, statistics.getContendedWriteLockCount());
+		assertTrue(statistics.getWaitTime(TimeUnit.MILLISECONDS) >= 20);
+	}
+
+	@Test
+	public void testAbandonedReadLock() throws Exception {
+		final StripedReadWriteLockManager manager = new StripedReadWriteLockManager(false, true, 4, 100);
+		manager.getReadLock();
+
+		assertWriteLockAcquired(manager);
+	}
+
+	@Test
+	public void testAbandonedWriteLock() throws Exception {
+		final StripedReadWriteLockManager manager = new StripedReadWriteLockManager(false, false, 4, 100);
+		manager.getWriteLock();
+
+		Thread reader = start(() -> manager.getReadLock().release());
+		reader.join(10000);
+		assertNull(failure.get());
+		assertFalse("abandoned write lock was not released", reader.isAlive());
+		assertWriteLockAcquired(manager);
+	}
+
+	private void assertMutualExclusion(final StripedReadWriteLockManager manager) throws Exception {
+		final AtomicInteger activeReaders = new AtomicInteger();
+		final AtomicInteger activeWriters = new AtomicInteger();
+		final int iterations = 2000;
+
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			threads.add(start(() -> {
+				for (int j = 0; j < iterations; j++) {
+					Lock lock = manager.getReadLock();
+					try {
+						activeReaders.incrementAndGet();
+						assertEquals(0, activeWriters.get());
+						Thread.yield();
+						assertEquals(0, activeWriters.get());
+						activeReaders.decrementAndGet();
+					} finally {
+						lock.release();
+					}
+				}
+			}));
+		}
+		for (int i = 0; i < 2; i++) {
+			threads.add(start(() -> {
+				for (int j = 0; j < iterations / 10; j++) {
+					Lock lock = manager.getWriteLock();
+					try {
+						assertEquals(1, activeWriters.incrementAndGet());
+						assertEquals(0, activeReaders.get());
+						Thread.yield();
+						assertEquals(0, activeReaders.get());
+						activeWriters.decrementAndGet();
+					} finally {
+						lock.release();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		LockStatistics statistics = manager.getStatistics();
+		assertEquals(4 * iterations, statistics.getReadLockCount());
+		assertEquals(2 * iterations / 10, statistics.getWriteLockCount());
+		assertNotNull(manager.tryWriteLock());
+	}
+
+	private void assertWriteLockAcquired(final StripedReadWriteLockManager manager) throws Exception {
+		Thread writer = start(() -> manager.getWriteLock().release());
+		writer.join(10000);
+		assertNull(failure.get());
+		assertFalse("abandoned lock was not released", writer.isAlive());
+	}
+
+	private Thread start(final Task task) {
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Waits until a thread blocks on a lock.
+	 */
+	private void awaitBlocked(Thread thread) throws InterruptedException {
+		while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+			assertTrue(thread.isAlive());
+			Thread.sleep(1);
+		}
+	}
+
+	private interface Task {
+
+		void run() throws Exception;
+	}
+}
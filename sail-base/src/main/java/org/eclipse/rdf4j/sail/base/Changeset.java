@@ -8,6 +8,7 @@
 package org.eclipse.rdf4j.sail.base;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -18,6 +19,7 @@ import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.ModelFactory;
 import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.Var;
@@ -252,6 +254,39 @@ abstract class Changeset implements SailSink, ModelFactory {
 		}
 	}
 
+	@Override
+	public synchronized void approveAll(Collection<? extends Statement> statements) {
+		for (Statement st : statements) {
+			approve(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+		}
+	}
+
+	@Override
+	public synchronized void deprecateAll(Collection<? extends Statement> statements) {
+		if (statements.isEmpty()) {
+			return;
+		}
+		if (deprecated == null) {
+			deprecated = createEmptyModel();
+		}
+		Set<Resource> contexts = new HashSet<>();
+		for (Statement st : statements) {
+			if (approved != null) {
+				approved.remove(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			}
+			deprecated.add(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			contexts.add(st.getContext());
+		}
+		// check each context once, instead of once per statement
+		if (approvedContexts != null) {
+			for (Resource ctx : contexts) {
+				if (approvedContexts.contains(ctx) && !approved.contains(null, null, null, ctx)) {
+					approvedContexts.remove(ctx);
+				}
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.sail.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.algebra.FunctionCall;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.eclipse.rdf4j.query.algebra.evaluation.util.BoundedConcurrentCache;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+
+/**
+ * A bounded cache of optimized query plans that is shared by the connections of a {@link SailStore}, so that queries
+ * that are evaluated repeatedly are only optimized once. Plans are looked up by the structure of the query model, the
+ * dataset and the bindings of the query. The binding values are part of the key because the optimizers substitute
+ * them into the plan, so a query that is evaluated with many different binding values gets a plan for each of them.
+ * When the cache is full, approximately the least recently used plans are evicted, see
+ * {@link BoundedConcurrentCache}.
+ * <p>
+ * Since the join order of a plan depends on the statistics of the store, the estimated cardinalities of the statement
+ * patterns of a plan are recorded when it is added. A plan is only reused while none of these cardinalities has
+ * drifted by more than {@link #MAX_CARDINALITY_DRIFT}, so that changes to the store that do not affect a plan keep it
+ * in the cache. If the statistics themselves are recalculated, all plans are discarded with {@link #invalidate()}.
+ */
+public class QueryPlanCache {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default maximum number of plans in the cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * The relative change of the estimated cardinality of a statement pattern above which the plans that contain it are
+	 * optimized again.
+	 */
+	public static final double MAX_CARDINALITY_DRIFT = 0.2;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final BoundedConcurrentCache<Key, Plan> plans;
+
+	/**
+	 * The number of times the cache has been invalidated.
+	 */
+	private final AtomicLong epoch = new AtomicLong();
+
+	/**
+	 * The number of lookups that found a plan that was outdated, which are counted as misses.
+	 */
+	private final AtomicLong driftCount = new AtomicLong();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param capacity The maximum number of plans in the cache.
+	 */
+	public QueryPlanCache(int capacity) {
+		plans = new BoundedConcurrentCache<>(capacity);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the current epoch of the cache, which must be passed to {@link #put} for a plan that is optimized after
+	 * this call.
+	 */
+	public long getEpoch() {
+		return epoch.get();
+	}
+
+	/**
+	 * Gets a copy of the optimized plan of a query. A plan of which the estimated cardinalities have drifted is
+	 * removed, and counted as a miss.
+	 *
+	 * @param query      The query model, as passed to the connection.
+	 * @param dataset    The dataset of the query.
+	 * @param bindings   The bindings of the query.
+	 * @param statistics The current statistics of the store.
+	 * @return A copy of the plan that the caller can evaluate, or <tt>null</tt> if the plan is not in the cache.
+	 */
+	public TupleExpr get(TupleExpr query, Dataset dataset, BindingSet bindings, EvaluationStatistics statistics) {
+		Key key = new Key(query, dataset, bindings);
+		Plan plan = plans.get(key);
+		if (plan == null) {
+			return null;
+		}
+
+		if (plan.epoch != epoch.get() || plan.hasDrifted(statistics)) {
+			driftCount.incrementAndGet();
+			plans.remove(key);
+			return null;
+		}
+		return plan.plan.clone();
+	}
+
+	/**
+	 * Adds the optimized plan of a query to the cache, unless the cache has been invalidated since the plan was
+	 * optimized or the plan may not be reused. Copies of the query, the bindings and the plan are stored, so that the
+	 * caller may continue to use them.
+	 *
+	 * @param query    The query model, as passed to the connection.
+	 * @param dataset  The dataset of the query.
+	 * @param bindings The bindings of the query.
+	 * @param plan       The optimized plan.
+	 * @param epoch      The {@link #getEpoch() epoch} of the cache before the query was optimized.
+	 * @param statistics The statistics that the plan was optimized with.
+	 */
+	public void put(TupleExpr query, Dataset dataset, BindingSet bindings, TupleExpr plan, long epoch,
+			EvaluationStatistics statistics) {
+		if (!isReusable(query) || this.epoch.get() != epoch) {
+			return;
+		}
+
+		Key key = new Key(query.clone(), dataset, bindings == null ? null : new QueryBindingSet(bindings));
+		// a plan that is added while the cache is invalidated is discarded by the next lookup
+		plans.put(key, new Plan(plan.clone(), epoch, statistics));
+	}
+
+	/**
+	 * Discards all plans, because the statistics that they are based on have been recalculated.
+	 */
+	public void invalidate() {
+		epoch.incrementAndGet();
+		plans.clear();
+	}
+
+	/**
+	 * Gets the number of plans in the cache.
+	 */
+	public int size() {
+		return plans.size();
+	}
+
+	/**
+	 * Gets the number of times a plan was found in the cache.
+	 */
+	public long getHitCount() {
+		return plans.getHitCount() - driftCount.get();
+	}
+
+	/**
+	 * Gets the number of times a plan was not found in the cache, or had drifted, and the query had to be optimized.
+	 */
+	public long getMissCount() {
+		return plans.getMissCount() + driftCount.get();
+	}
+
+	/**
+	 * Gets the fraction of lookups that found the plan in the cache, or <tt>0</tt> if there have been no lookups.
+	 */
+	public double getHitRate() {
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * Determines whether the optimized plan of a query may be reused for later evaluations. This is not the case if the
+	 * query contains function calls without arguments, such as NOW(), that may have been replaced by the value they
+	 * had when the query was optimized.
+	 */
+	private boolean isReusable(TupleExpr query) {
+		final boolean[] reusable = { true };
+		query.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+			@Override
+			public void meet(FunctionCall node) {
+				if (node.getArgs().isEmpty()) {
+					reusable[0] = false;
+				} else {
+					super.meet(node);
+				}
+			}
+		});
+		return reusable[0];
+	}
+
+	/*------------------*
+	 * Inner class Plan *
+	 *------------------*/
+
+	/**
+	 * An optimized plan with the estimated cardinalities of its statement patterns.
+	 */
+	private static class Plan {
+
+		private final TupleExpr plan;
+
+		private final long epoch;
+
+		private final List<StatementPattern> patterns = new ArrayList<>();
+
+		private final double[] cardinalities;
+
+		Plan(TupleExpr plan, long epoch, EvaluationStatistics statistics) {
+			this.plan = plan;
+			this.epoch = epoch;
+
+			plan.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+
+				@Override
+				public void meet(StatementPattern node) {
+					patterns.add(node);
+				}
+			});
+			cardinalities = new double[patterns.size()];
+			for (int i = 0; statistics != null && i < cardinalities.length; i++) {
+				cardinalities[i] = statistics.getCardinality(patterns.get(i));
+			}
+		}
+
+		/**
+		 * Checks whether the estimated cardinality of any of the statement patterns has changed by more than
+		 * {@link #MAX_CARDINALITY_DRIFT} since the plan was optimized.
+		 */
+		boolean hasDrifted(EvaluationStatistics statistics) {
+			for (int i = 0; statistics != null && i < cardinalities.length; i++) {
+				double cardinality = statistics.getCardinality(patterns.get(i));
+				if (Math.abs(cardinality - cardinalities[i]) > MAX_CARDINALITY_DRIFT
+						* Math.max(cardinalities[i], 1.0)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/*-----------------*
+	 * Inner class Key *
+	 *-----------------*/
+
+	private static class Key {
+
+		private final TupleExpr query;
+
+		private final Dataset dataset;
+
+		private final BindingSet bindings;
+
+		private final int hashCode;
+
+		Key(TupleExpr query, Dataset dataset, BindingSet bindings) {
+			this.query = query;
+			this.dataset = dataset;
+			this.bindings = bindings;
+			this.hashCode = Objects.hash(query, dataset, bindings);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hashCode == other.hashCode && query.equals(other.query) && Objects.equals(dataset, other.dataset)
+					&& Objects.equals(bindings, other.bindings);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -7,9 +7,12 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail.base;
 
+import java.util.Collection;
+
 import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.sail.SailConflictException;
 import org.eclipse.rdf4j.sail.SailException;
@@ -112,4 +115,33 @@ public interface SailSink extends SailClosable {
 	 */
 	void deprecate(Resource subj, IRI pred, Value obj, Resource ctx) throws SailException;
 
+	/**
+	 * Adds a block of statements to the store. Each statement is added to its own context, or to the default graph if
+	 * its context is <tt>null</tt>. The default implementation calls {@link #approve(Resource, IRI, Value, Resource)}
+	 * for each statement; stores that can add a block of statements more efficiently should override this method.
+	 * 
+	 * @param statements The statements to add.
+	 * @throws SailException If the statements could not be added.
+	 */
+	default void approveAll(Collection<? extends Statement> statements) throws SailException {
+		for (Statement st : statements) {
+			approve(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+		}
+	}
+
+	/**
+	 * Removes a block of statements from the store. Each statement is removed from its own context, or from the default
+	 * graph if its context is <tt>null</tt>. The default implementation calls
+	 * {@link #deprecate(Resource, IRI, Value, Resource)} for each statement; stores that can remove a block of
+	 * statements more efficiently should override this method.
+	 * 
+	 * @param statements The statements to remove.
+	 * @throws SailException If the statements could not be removed.
+	 */
+	default void deprecateAll(Collection<? extends Statement> statements) throws SailException {
+		for (Statement st : statements) {
+			deprecate(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+		}
+	}
+
 }
@@ -20,7 +20,6 @@ import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.ModelFactory;
 import org.eclipse.rdf4j.model.Resource;
-import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.impl.LinkedHashModelFactory;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
@@ -478,15 +477,11 @@ class SailSourceBranch implements SailSource {
 		}
 		Model deprecated = change.getDeprecated();
 		if (deprecated != null) {
-			for (Statement st : deprecated) {
-				sink.deprecate(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
-			}
+			sink.deprecateAll(deprecated);
 		}
 		Model approved = change.getApproved();
 		if (approved != null) {
-			for (Statement st : approved) {
-				sink.approve(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
-			}
+			sink.approveAll(approved);
 		}
 	}
 
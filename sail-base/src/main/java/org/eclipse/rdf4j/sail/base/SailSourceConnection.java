@@ -7,7 +7,10 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.sail.base;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.rdf4j.IsolationLevel;
@@ -61,6 +64,16 @@ import org.eclipse.rdf4j.sail.inferencer.InferencerConnection;
 public abstract class SailSourceConnection extends NotifyingSailConnectionBase
 		implements InferencerConnection, FederatedServiceResolverClient {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of statements that {@link #copyContext(UpdateContext, Resource, Resource)} and
+	 * {@link #moveContext(UpdateContext, Resource, Resource)} pass to the sink at a time.
+	 */
+	private static final int COPY_BLOCK_SIZE = 10000;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -191,23 +204,32 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase
 		if (federatedServiceResolver != null && evalStrat instanceof FederatedServiceResolverClient) {
 			((FederatedServiceResolverClient) evalStrat).setFederatedServiceResolver(federatedServiceResolver);
 		}
+		if (evalStrat instanceof StrictEvaluationStrategy) {
+			((StrictEvaluationStrategy) evalStrat).setEvaluationStatistics(store.getEvaluationStatistics());
+		}
 		return evalStrat;
 	}
 
+	/**
+	 * Gets the cache of optimized query plans that is shared by the connections of the store. Overridden by stores that
+	 * cache plans, see {@link QueryPlanCache}.
+	 * 
+	 * @return The cache, or <tt>null</tt> if query plans are not cached.
+	 */
+	protected QueryPlanCache getQueryPlanCache() {
+		return null;
+	}
+
 	@Override
 	protected CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluateInternal(TupleExpr tupleExpr,
 			Dataset dataset, BindingSet bindings, boolean includeInferred) throws SailException {
 		flush();
 		logger.trace("Incoming query model:\n{}", tupleExpr);
 
-		// Clone the tuple expression to allow for more aggresive optimizations
-		tupleExpr = tupleExpr.clone();
-
-		if (!(tupleExpr instanceof QueryRoot)) {
-			// Add a dummy root node to the tuple expressions to allow the
-			// optimizers to modify the actual root node
-			tupleExpr = new QueryRoot(tupleExpr);
-		}
+		QueryPlanCache planCache = getQueryPlanCache();
+		TupleExpr plan = planCache != null
+				? planCache.get(tupleExpr, dataset, bindings, store.getEvaluationStatistics())
+				: null;
 
 		SailSource branch = null;
 		SailDataset rdfDataset = null;
@@ -222,25 +244,17 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase
 			TripleSource tripleSource = new SailDatasetTripleSource(vf, rdfDataset);
 			EvaluationStrategy strategy = getEvaluationStrategy(dataset, tripleSource);
 
-			new BindingAssigner().optimize(tupleExpr, dataset, bindings);
-			new ConstantOptimizer(strategy).optimize(tupleExpr, dataset, bindings);
-			// The regex as string function optimizer works better if the constants are resolved
-			new RegexAsStringFunctionOptimizer(vf).optimize(tupleExpr, dataset, bindings);
-			new CompareOptimizer().optimize(tupleExpr, dataset, bindings);
-			new ConjunctiveConstraintSplitter().optimize(tupleExpr, dataset, bindings);
-			new DisjunctiveConstraintOptimizer().optimize(tupleExpr, dataset, bindings);
-			new SameTermFilterOptimizer().optimize(tupleExpr, dataset, bindings);
-			new QueryModelNormalizer().optimize(tupleExpr, dataset, bindings);
-			new QueryJoinOptimizer(store.getEvaluationStatistics()).optimize(tupleExpr, dataset, bindings);
-			// new SubSelectJoinOptimizer().optimize(tupleExpr, dataset,
-			// bindings);
-			new IterativeEvaluationOptimizer().optimize(tupleExpr, dataset, bindings);
-			new FilterOptimizer().optimize(tupleExpr, dataset, bindings);
-			new OrderLimitOptimizer().optimize(tupleExpr, dataset, bindings);
-
-			logger.trace("Optimized query model:\n{}", tupleExpr);
-
-			iter1 = strategy.evaluate(tupleExpr, EmptyBindingSet.getInstance());
+			if (plan == null) {
+				long epoch = planCache != null ? planCache.getEpoch() : 0L;
+				plan = optimize(tupleExpr, dataset, bindings, strategy);
+				if (planCache != null) {
+					planCache.put(tupleExpr, dataset, bindings, plan, epoch, store.getEvaluationStatistics());
+				}
+			} else {
+				logger.trace("Cached query model:\n{}", plan);
+			}
+
+			iter1 = strategy.evaluate(plan, EmptyBindingSet.getInstance());
 			iter2 = interlock(iter1, rdfDataset, branch);
 			allGood = true;
 			return iter2;
@@ -273,6 +287,36 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase
 		}
 	}
 
+	private TupleExpr optimize(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, EvaluationStrategy strategy) {
+		// Clone the tuple expression to allow for more aggresive optimizations
+		tupleExpr = tupleExpr.clone();
+
+		if (!(tupleExpr instanceof QueryRoot)) {
+			// Add a dummy root node to the tuple expressions to allow the
+			// optimizers to modify the actual root node
+			tupleExpr = new QueryRoot(tupleExpr);
+		}
+
+		new BindingAssigner().optimize(tupleExpr, dataset, bindings);
+		new ConstantOptimizer(strategy).optimize(tupleExpr, dataset, bindings);
+		// The regex as string function optimizer works better if the constants are resolved
+		new RegexAsStringFunctionOptimizer(vf).optimize(tupleExpr, dataset, bindings);
+		new CompareOptimizer().optimize(tupleExpr, dataset, bindings);
+		new ConjunctiveConstraintSplitter().optimize(tupleExpr, dataset, bindings);
+		new DisjunctiveConstraintOptimizer().optimize(tupleExpr, dataset, bindings);
+		new SameTermFilterOptimizer().optimize(tupleExpr, dataset, bindings);
+		new QueryModelNormalizer().optimize(tupleExpr, dataset, bindings);
+		new QueryJoinOptimizer(store.getEvaluationStatistics()).optimize(tupleExpr, dataset, bindings);
+		// new SubSelectJoinOptimizer().optimize(tupleExpr, dataset,
+		// bindings);
+		new IterativeEvaluationOptimizer().optimize(tupleExpr, dataset, bindings);
+		new FilterOptimizer().optimize(tupleExpr, dataset, bindings);
+		new OrderLimitOptimizer().optimize(tupleExpr, dataset, bindings);
+
+		logger.trace("Optimized query model:\n{}", tupleExpr);
+		return tupleExpr;
+	}
+
 	@Override
 	protected void closeInternal() throws SailException {
 		// no-op
@@ -506,6 +550,143 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase
 		removeStatementsInternal(subj, pred, obj, contexts);
 	}
 
+	/**
+	 * Adds the statements to the sink of the operation as a single block, unless connection listeners have to be
+	 * notified of each statement that is added.
+	 */
+	@Override
+	public void addStatements(UpdateContext op, Collection<? extends Statement> statements) throws SailException {
+		if (hasConnectionListeners()) {
+			super.addStatements(op, statements);
+			return;
+		}
+		verifyIsOpen();
+		verifyIsActive();
+		synchronized (datasets) {
+			if (op == null && !datasets.containsKey(null)) {
+				SailSource source = branch(false);
+				datasets.put(null, source.dataset(getIsolationLevel()));
+				explicitSinks.put(null, source.sink(getIsolationLevel()));
+			}
+			assert explicitSinks.containsKey(op);
+			if (!statements.isEmpty()) {
+				explicitSinks.get(op).approveAll(statements);
+			}
+		}
+		for (Statement st : statements) {
+			if (st.getContext() == null) {
+				addStatementInternal(st.getSubject(), st.getPredicate(), st.getObject());
+			} else {
+				addStatementInternal(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+			}
+		}
+	}
+
+	/**
+	 * Looks up the statements that match in the dataset of the operation, which does not include the changes of the
+	 * operation itself, and removes them from the sink of the operation as a single block.
+	 */
+	@Override
+	public void removeStatements(UpdateContext op, Collection<? extends Statement> statements, Resource... contexts)
+			throws SailException {
+		verifyIsOpen();
+		verifyIsActive();
+		synchronized (datasets) {
+			if (op == null && !datasets.containsKey(null)) {
+				SailSource source = branch(false);
+				datasets.put(null, source.dataset(getIsolationLevel()));
+				explicitSinks.put(null, source.sink(getIsolationLevel()));
+			}
+			assert explicitSinks.containsKey(op);
+			SailDataset dataset = datasets.get(op);
+			List<Statement> removed = new ArrayList<>();
+			for (Statement st : statements) {
+				try (CloseableIteration<? extends Statement, SailException> iter = dataset
+						.getStatements(st.getSubject(), st.getPredicate(), st.getObject(), contexts)) {
+					while (iter.hasNext()) {
+						removed.add(iter.next());
+					}
+				}
+			}
+			if (!removed.isEmpty()) {
+				explicitSinks.get(op).deprecateAll(removed);
+				for (Statement st : removed) {
+					notifyStatementRemoved(st);
+				}
+			}
+		}
+		for (Statement st : statements) {
+			removeStatementsInternal(st.getSubject(), st.getPredicate(), st.getObject(), contexts);
+		}
+	}
+
+	/**
+	 * Reads the statements of the source context from the dataset of the operation and adds them to the sink of the
+	 * operation in blocks. Returns <tt>false</tt> if connection listeners have to be notified of each statement.
+	 */
+	@Override
+	public boolean copyContext(UpdateContext op, Resource source, Resource destination) throws SailException {
+		return copy(op, source, destination, false);
+	}
+
+	/**
+	 * Reads the statements of the source context from the dataset of the operation, adds them to the destination
+	 * context and removes them from the source context, in blocks. Returns <tt>false</tt> if connection listeners
+	 * have to be notified of each statement.
+	 */
+	@Override
+	public boolean moveContext(UpdateContext op, Resource source, Resource destination) throws SailException {
+		return copy(op, source, destination, true);
+	}
+
+	private boolean copy(UpdateContext op, Resource source, Resource destination, boolean move)
+			throws SailException {
+		if (hasConnectionListeners()) {
+			return false;
+		}
+		verifyIsOpen();
+		verifyIsActive();
+		synchronized (datasets) {
+			if (op == null && !datasets.containsKey(null)) {
+				SailSource branch = branch(false);
+				datasets.put(null, branch.dataset(getIsolationLevel()));
+				explicitSinks.put(null, branch.sink(getIsolationLevel()));
+			}
+			assert explicitSinks.containsKey(op);
+			SailSink sink = explicitSinks.get(op);
+			List<Statement> copied = new ArrayList<>(COPY_BLOCK_SIZE);
+			List<Statement> removed = new ArrayList<>(move ? COPY_BLOCK_SIZE : 0);
+			try (CloseableIteration<? extends Statement, SailException> iter = datasets.get(op).getStatements(null,
+					null, null, source)) {
+				while (iter.hasNext()) {
+					Statement st = iter.next();
+					if (destination == null) {
+						copied.add(vf.createStatement(st.getSubject(), st.getPredicate(), st.getObject()));
+					} else {
+						copied.add(vf.createStatement(st.getSubject(), st.getPredicate(), st.getObject(), destination));
+					}
+					if (move) {
+						removed.add(st);
+					}
+					if (copied.size() >= COPY_BLOCK_SIZE || !iter.hasNext()) {
+						sink.approveAll(copied);
+						sink.deprecateAll(removed);
+						for (Statement copy : copied) {
+							addStatementInternal(copy.getSubject(), copy.getPredicate(), copy.getObject(), destination);
+						}
+						for (Statement original : removed) {
+							removeStatementsInternal(original.getSubject(), original.getPredicate(),
+									original.getObject(), source);
+						}
+						copied.clear();
+						removed.clear();
+					}
+				}
+			}
+		}
+		return true;
+	}
+
 	@Override
 	protected void endUpdateInternal(UpdateContext op) throws SailException {
 		synchronized (datasets) {